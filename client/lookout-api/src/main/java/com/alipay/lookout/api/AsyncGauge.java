@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+/**
+ * Marks an expensive gauge whose value should be computed off the poller thread. Registries that
+ * support it refresh the delegate on a small dedicated pool and report the last cached value, so a
+ * slow gauge never delays the report. Registries that do not support it simply call the delegate.
+ *
+ * <pre>
+ * registry.gauge(id, AsyncGauge.of(new Gauge&lt;Long&gt;() {...}, 500, 180000));
+ * </pre>
+ */
+public final class AsyncGauge<T extends Number> implements Gauge<T> {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+    public static final long DEFAULT_STALE_MILLIS   = 180000;
+
+    private final Gauge<T>   delegate;
+    private final long       timeoutMillis;
+    private final long       staleMillis;
+
+    private AsyncGauge(Gauge<T> delegate, long timeoutMillis, long staleMillis) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        if (timeoutMillis <= 0 || staleMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis and staleMillis must be > 0");
+        }
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+        this.staleMillis = staleMillis;
+    }
+
+    /**
+     * Wraps the gauge with the default timeout and staleness limit.
+     *
+     * @param delegate the expensive gauge
+     * @param <T>      value type
+     * @return async gauge
+     */
+    public static <T extends Number> AsyncGauge<T> of(Gauge<T> delegate) {
+        return of(delegate, DEFAULT_TIMEOUT_MILLIS, DEFAULT_STALE_MILLIS);
+    }
+
+    /**
+     * @param delegate      the expensive gauge
+     * @param timeoutMillis a refresh running longer than this is interrupted and counted as a timeout
+     * @param staleMillis   a cached value older than this is no longer reported
+     * @param <T>           value type
+     * @return async gauge
+     */
+    public static <T extends Number> AsyncGauge<T> of(Gauge<T> delegate, long timeoutMillis,
+                                                      long staleMillis) {
+        return new AsyncGauge<T>(delegate, timeoutMillis, staleMillis);
+    }
+
+    public Gauge<T> getDelegate() {
+        return delegate;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getStaleMillis() {
+        return staleMillis;
+    }
+
+    /**
+     * Computes the value synchronously.
+     *
+     * @return the current value of the delegate
+     */
+    @Override
+    public T value() {
+        return delegate.value();
+    }
+}
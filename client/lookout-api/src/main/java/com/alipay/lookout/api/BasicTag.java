@@ -18,8 +18,6 @@ package com.alipay.lookout.api;
 
 import com.alipay.lookout.common.Assert;
 
-import java.util.Arrays;
-
 /**
  * Immutable implementation of Tag.
  * Created by kevin.luy@alipay.com on 2017/1/26.
@@ -70,7 +68,7 @@ public final class BasicTag implements Tag {
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(new String[] { key, value });
+        return 31 * (31 + key.hashCode()) + value.hashCode();
     }
 
     @Override
@@ -18,7 +18,6 @@ package com.alipay.lookout.api;
 
 import com.alipay.lookout.common.Assert;
 
-import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -29,6 +28,7 @@ final class DefaultId implements Id {
 
     private final String name;
     private final TagSet tags;
+    private final int    hash;
 
     public DefaultId(String name) {
         this(name, TagSet.EMPTY);
@@ -37,6 +37,7 @@ final class DefaultId implements Id {
     DefaultId(String name, TagSet tags) {
         this.name = Assert.notNull(name, "name");
         this.tags = Assert.notNull(tags, "tags");
+        this.hash = 31 * name.hashCode() + tags.hashCode();
     }
 
     @Override
@@ -51,27 +52,35 @@ final class DefaultId implements Id {
 
     @Override
     public DefaultId withTag(Tag tag) {
-        return new DefaultId(name, tags.add(tag));
+        return withTagSet(tags.add(tag));
     }
 
     @Override
     public DefaultId withTag(String key, String value) {
-        return new DefaultId(name, tags.add(key, value));
+        return withTagSet(tags.add(key, value));
     }
 
     @Override
     public DefaultId withTags(Tag... ts) {
-        return new DefaultId(name, tags.addAll(ts));
+        return withTagSet(tags.addAll(ts));
     }
 
     @Override
     public DefaultId withTags(Iterable<Tag> ts) {
-        return new DefaultId(name, tags.addAll(ts));
+        return withTagSet(tags.addAll(ts));
     }
 
     @Override
     public DefaultId withTags(Map<String, String> ts) {
-        return new DefaultId(name, tags.addAll(ts));
+        return withTagSet(tags.addAll(ts));
+    }
+
+    private DefaultId withTagSet(TagSet ts) {
+        return ts == tags ? this : new DefaultId(name, ts);
+    }
+
+    void visitTags(TagVisitor visitor) {
+        tags.visit(visitor);
     }
 
     @Override
@@ -81,12 +90,12 @@ final class DefaultId implements Id {
         if (obj == null || !(obj instanceof DefaultId))
             return false;
         DefaultId other = (DefaultId) obj;
-        return name.equals(other.name) && tags.equals(other.tags);
+        return hash == other.hash && name.equals(other.name) && tags.equals(other.tags);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(new Object[] { name, tags });
+        return hash;
     }
 
     @Override
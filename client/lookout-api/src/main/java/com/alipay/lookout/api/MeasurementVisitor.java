@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+/**
+ * Receives the measurements of a metric without materializing an {@link Indicator}.
+ * <p>
+ * Implementations are usually owned by the poller and recycled between polls, see {@link VisitableMetric}.
+ */
+public interface MeasurementVisitor {
+
+    /**
+     * @param name  measurement name, {@link Measurement#EMPTY_STR} if the metric has a single value
+     * @param value value
+     */
+    void visit(String name, long value);
+
+    /**
+     * @param name  measurement name, {@link Measurement#EMPTY_STR} if the metric has a single value
+     * @param value value
+     */
+    void visit(String name, double value);
+
+    /**
+     * for non-numeric values, eg: info.
+     *
+     * @param name  measurement name, {@link Measurement#EMPTY_STR} if the metric has a single value
+     * @param value value
+     */
+    void visit(String name, Object value);
+}
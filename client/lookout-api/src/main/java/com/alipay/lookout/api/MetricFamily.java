@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+import com.alipay.lookout.common.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A family of metrics sharing the same base id and the same tag keys, differing only in the tag values.
+ * <p>
+ * Metrics are resolved from the registry once per distinct tag values and then cached in a tree of
+ * maps keyed by the values, so later lookups neither build an {@link Id} nor hash a {@link TagSet}.
+ * For a small fixed set of values, {@link #bind(String[][])} resolves them all ahead into an array,
+ * and the hot path costs one array index.
+ * <pre>
+ * MetricFamily&lt;Counter&gt; calls = MetricFamily.counters(registry, registry.createId("rpc.calls"), "service", "method");
+ * calls.get(service, method).inc();
+ * </pre>
+ * At most {@code maxCached} distinct values are cached, later ones are still resolved, but from the
+ * registry on every call. Metrics the registry refuses (noop metrics, eg: reaching max metrics number)
+ * are never cached.
+ *
+ * @param <M> metric type
+ */
+public abstract class MetricFamily<M extends Metric> {
+
+    public static final int     DEFAULT_MAX_CACHED = 1024;
+
+    private final Registry      registry;
+    private final Id            baseId;
+    private final String[]      tagKeys;
+    private final int           maxCached;
+
+    private final Node          root   = new Node();
+    private final AtomicInteger cached = new AtomicInteger();
+
+    protected MetricFamily(Registry registry, Id baseId, int maxCached, String... tagKeys) {
+        Assert.notNull(registry, "registry");
+        Assert.notNull(baseId, "baseId");
+        Assert.checkArg(tagKeys != null && tagKeys.length > 0, "tagKeys must not be empty");
+        this.registry = registry;
+        this.baseId = baseId;
+        this.tagKeys = tagKeys.clone();
+        this.maxCached = maxCached;
+    }
+
+    public static MetricFamily<Counter> counters(Registry registry, Id baseId, String... tagKeys) {
+        return new MetricFamily<Counter>(registry, baseId, DEFAULT_MAX_CACHED, tagKeys) {
+            @Override
+            protected Counter resolve(Registry registry, Id id) {
+                return registry.counter(id);
+            }
+        };
+    }
+
+    public static MetricFamily<Timer> timers(Registry registry, Id baseId, String... tagKeys) {
+        return new MetricFamily<Timer>(registry, baseId, DEFAULT_MAX_CACHED, tagKeys) {
+            @Override
+            protected Timer resolve(Registry registry, Id id) {
+                return registry.timer(id);
+            }
+        };
+    }
+
+    public static MetricFamily<DistributionSummary> distributionSummaries(Registry registry,
+                                                                          Id baseId,
+                                                                          String... tagKeys) {
+        return new MetricFamily<DistributionSummary>(registry, baseId, DEFAULT_MAX_CACHED,
+            tagKeys) {
+            @Override
+            protected DistributionSummary resolve(Registry registry, Id id) {
+                return registry.distributionSummary(id);
+            }
+        };
+    }
+
+    /**
+     * get or create the metric from the registry
+     *
+     * @param registry registry
+     * @param id       full id
+     * @return metric
+     */
+    protected abstract M resolve(Registry registry, Id id);
+
+    public Id baseId() {
+        return baseId;
+    }
+
+    public String[] tagKeys() {
+        return tagKeys.clone();
+    }
+
+    /**
+     * for families with one tag key.
+     *
+     * @param value tag value
+     * @return metric
+     */
+    public M get(String value) {
+        checkArity(1);
+        Assert.notNull(value, tagKeys[0]);
+        Object m = root.children.get(value);
+        return m != null ? MetricFamily.<M> cast(m) : create(value);
+    }
+
+    /**
+     * for families with two tag keys.
+     *
+     * @param value1 value of the first tag key
+     * @param value2 value of the second tag key
+     * @return metric
+     */
+    public M get(String value1, String value2) {
+        checkArity(2);
+        Assert.notNull(value1, tagKeys[0]);
+        Assert.notNull(value2, tagKeys[1]);
+        Node node = (Node) root.children.get(value1);
+        Object m = node == null ? null : node.children.get(value2);
+        return m != null ? MetricFamily.<M> cast(m) : create(value1, value2);
+    }
+
+    /**
+     * @param values tag values in the order of tag keys
+     * @return metric
+     */
+    public M get(String... values) {
+        checkArity(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Assert.notNull(values[i], tagKeys[i]);
+        }
+        Object current = root;
+        for (int i = 0; i < values.length && current != null; i++) {
+            current = ((Node) current).children.get(values[i]);
+        }
+        return current != null ? MetricFamily.<M> cast(current) : create(values);
+    }
+
+    /**
+     * resolve all the given tag values at once.
+     *
+     * @param values each element is a group of tag values in the order of tag keys
+     * @return bound metrics, in the order of values
+     */
+    public Bound<M> bind(String[]... values) {
+        Metric[] metrics = new Metric[values.length];
+        for (int i = 0; i < values.length; i++) {
+            metrics[i] = get(values[i]);
+        }
+        return new Bound<M>(metrics);
+    }
+
+    private void checkArity(int n) {
+        if (n != tagKeys.length) {
+            throw new IllegalArgumentException("expect " + tagKeys.length + " tag values, but got "
+                                               + n);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T cast(Object metric) {
+        return (T) metric;
+    }
+
+    private M create(String... values) {
+        Id id = baseId;
+        for (int i = 0; i < values.length; i++) {
+            id = id.withTag(tagKeys[i], values[i]);
+        }
+        M m = resolve(registry, id);
+        if (m == null || !id.equals(m.id()) || cached.get() >= maxCached) {
+            return m;
+        }
+        Node node = root;
+        for (int i = 0; i < values.length - 1; i++) {
+            Node child = (Node) node.children.get(values[i]);
+            if (child == null) {
+                child = new Node();
+                Object prev = node.children.putIfAbsent(values[i], child);
+                if (prev != null) {
+                    child = (Node) prev;
+                }
+            }
+            node = child;
+        }
+        if (node.children.putIfAbsent(values[values.length - 1], m) == null) {
+            cached.incrementAndGet();
+        }
+        return m;
+    }
+
+    /**
+     * evict all the cached metrics, the following lookups resolve them from the registry again.
+     */
+    public void clear() {
+        root.children.clear();
+        cached.set(0);
+    }
+
+    private static final class Node {
+        final ConcurrentMap<String, Object> children = new ConcurrentHashMap<String, Object>();
+    }
+
+    /**
+     * metrics resolved ahead, looked up by index.
+     *
+     * @param <M> metric type
+     */
+    public static final class Bound<M extends Metric> {
+        private final Metric[] metrics;
+
+        Bound(Metric[] metrics) {
+            this.metrics = metrics;
+        }
+
+        public M get(int index) {
+            return MetricFamily.<M> cast(metrics[index]);
+        }
+
+        public int size() {
+            return metrics.length;
+        }
+    }
+}
@@ -17,17 +17,23 @@
 package com.alipay.lookout.api;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 抽象实现, 实现了id的构建 和 clock 的支持
  * Created by kevin.luy@alipay.com on 2017/2/14.
  */
 public abstract class MetricRegistry implements Registry {
-    private boolean     propagateWarnings = true;
-    private final Clock clock;
+    private boolean                                       propagateWarnings = true;
+    private final Clock                                   clock;
+    /**
+     * the snapshot of the current window, by step
+     */
+    private final ConcurrentHashMap<Long, MetricSnapshot> snapshots;
 
     public MetricRegistry(Clock clock) {
         this.clock = clock;
+        this.snapshots = new ConcurrentHashMap<Long, MetricSnapshot>();
     }
 
     /**
@@ -62,6 +68,63 @@ public abstract class MetricRegistry implements Registry {
         return createId(name).withTags(tags);
     }
 
+    /**
+     * Creates a family of counters sharing the base id and the tag keys, see {@link MetricFamily}.
+     *
+     * @param baseId  name and fixed tags of the counters
+     * @param tagKeys keys of the varying tags
+     * @return counter family
+     */
+    public MetricFamily<Counter> counterFamily(Id baseId, String... tagKeys) {
+        return MetricFamily.counters(this, baseId, tagKeys);
+    }
+
+    /**
+     * Creates a family of timers sharing the base id and the tag keys, see {@link MetricFamily}.
+     *
+     * @param baseId  name and fixed tags of the timers
+     * @param tagKeys keys of the varying tags
+     * @return timer family
+     */
+    public MetricFamily<Timer> timerFamily(Id baseId, String... tagKeys) {
+        return MetricFamily.timers(this, baseId, tagKeys);
+    }
+
+    /**
+     * Creates a family of distribution summaries sharing the base id and the tag keys, see {@link MetricFamily}.
+     *
+     * @param baseId  name and fixed tags of the distribution summaries
+     * @param tagKeys keys of the varying tags
+     * @return distribution summary family
+     */
+    public MetricFamily<DistributionSummary> distributionSummaryFamily(Id baseId,
+                                                                       String... tagKeys) {
+        return MetricFamily.distributionSummaries(this, baseId, tagKeys);
+    }
+
+    /**
+     * Returns the snapshot of the current step window, see {@link MetricSnapshot}. Exporters
+     * polling with the same step share the snapshot, so each metric is measured once per step.
+     *
+     * @param stepMillis step of the exporter in milliseconds
+     * @return snapshot of the current window
+     */
+    public MetricSnapshot snapshot(long stepMillis) {
+        long now = clock.wallTime();
+        Long key = stepMillis;
+        for (;;) {
+            MetricSnapshot current = snapshots.get(key);
+            if (current != null && current.covers(now)) {
+                return current;
+            }
+            MetricSnapshot fresh = new MetricSnapshot(now, stepMillis);
+            if (current == null ? snapshots.putIfAbsent(key, fresh) == null : snapshots.replace(
+                key, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
     @Override
     public void propagate(String msg, Throwable t) {
         // LookoutLoggerFactory.getLogger(getClass()).warn(msg, t);
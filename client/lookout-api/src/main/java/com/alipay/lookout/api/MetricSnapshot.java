@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The measurements of the metrics of a registry within one step window, shared by all the
+ * exporters reading that registry. A metric is measured the first time an exporter asks for it in
+ * the window, later requests replay the same values, so every exporter reports the same values and
+ * the measuring cost does not grow with the number of exporters.
+ * <p>
+ * The recorded values never change once published. Obtain the snapshot of the current window
+ * from {@link MetricRegistry#snapshot(long)}.
+ */
+public final class MetricSnapshot {
+    private final long                                  stepMillis;
+    private final long                                  window;
+    private final ConcurrentHashMap<Id, MeasuredValues> values;
+
+    MetricSnapshot(long wallTime, long stepMillis) {
+        if (stepMillis <= 0) {
+            throw new IllegalArgumentException("stepMillis must be > 0: " + stepMillis);
+        }
+        this.stepMillis = stepMillis;
+        this.window = wallTime / stepMillis;
+        this.values = new ConcurrentHashMap<Id, MeasuredValues>();
+    }
+
+    /**
+     * @return step of the window in milliseconds
+     */
+    public long stepMillis() {
+        return stepMillis;
+    }
+
+    /**
+     * @return start time of the window in milliseconds
+     */
+    public long windowStart() {
+        return window * stepMillis;
+    }
+
+    /**
+     * @param wallTime current time in milliseconds
+     * @return whether the given time is within the window of this snapshot
+     */
+    public boolean covers(long wallTime) {
+        return wallTime / stepMillis == window;
+    }
+
+    /**
+     * @return number of metrics measured so far
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * visit the measurements of a metric, measuring it if it is not yet in this snapshot.
+     *
+     * @param metric  metric
+     * @param visitor measurement visitor
+     * @return timestamp of the measurements
+     */
+    public long accept(Metric metric, MeasurementVisitor visitor) {
+        return values(metric).accept(visitor);
+    }
+
+    /**
+     * @param metric metric
+     * @return the measurements of the metric as an indicator
+     */
+    public Indicator<?> measure(Metric metric) {
+        return values(metric).toIndicator(metric.id());
+    }
+
+    private MeasuredValues values(Metric metric) {
+        MeasuredValues v = values.get(metric.id());
+        // the metric was replaced under the same id (eg: expired), measure the new one
+        if (v != null && v.metric == metric) {
+            return v;
+        }
+        MeasuredValues measured = new MeasuredValues(metric);
+        if (v == null) {
+            v = values.putIfAbsent(metric.id(), measured);
+            return v == null ? measured : v;
+        }
+        values.put(metric.id(), measured);
+        return measured;
+    }
+
+    /**
+     * the immutable measurements of one metric, primitive values are kept unboxed.
+     */
+    private static final class MeasuredValues implements MeasurementVisitor {
+        private static final byte KIND_LONG   = 0;
+        private static final byte KIND_DOUBLE = 1;
+        private static final byte KIND_OBJECT = 2;
+
+        private final Metric      metric;
+        private final long        timestamp;
+        private int               size;
+        private String[]          names       = new String[4];
+        private byte[]            kinds       = new byte[4];
+        private long[]            longs       = new long[4];
+        private double[]          doubles     = new double[4];
+        private Object[]          objects     = new Object[4];
+
+        MeasuredValues(Metric metric) {
+            this.metric = metric;
+            this.timestamp = Utils.accept(metric, this);
+        }
+
+        long accept(MeasurementVisitor visitor) {
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case KIND_LONG:
+                        visitor.visit(names[i], longs[i]);
+                        break;
+                    case KIND_DOUBLE:
+                        visitor.visit(names[i], doubles[i]);
+                        break;
+                    default:
+                        visitor.visit(names[i], objects[i]);
+                }
+            }
+            return timestamp;
+        }
+
+        Indicator<?> toIndicator(Id id) {
+            Indicator<Object> indicator = new Indicator<Object>(timestamp, id);
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case KIND_LONG:
+                        indicator.addMeasurement(names[i], longs[i]);
+                        break;
+                    case KIND_DOUBLE:
+                        indicator.addMeasurement(names[i], doubles[i]);
+                        break;
+                    default:
+                        indicator.addMeasurement(names[i], objects[i]);
+                }
+            }
+            return indicator;
+        }
+
+        @Override
+        public void visit(String name, long value) {
+            int i = append(name, KIND_LONG);
+            longs[i] = value;
+        }
+
+        @Override
+        public void visit(String name, double value) {
+            int i = append(name, KIND_DOUBLE);
+            doubles[i] = value;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            int i = append(name, KIND_OBJECT);
+            objects[i] = value;
+        }
+
+        private int append(String name, byte kind) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                String[] newNames = new String[capacity];
+                byte[] newKinds = new byte[capacity];
+                long[] newLongs = new long[capacity];
+                double[] newDoubles = new double[capacity];
+                Object[] newObjects = new Object[capacity];
+                System.arraycopy(names, 0, newNames, 0, size);
+                System.arraycopy(kinds, 0, newKinds, 0, size);
+                System.arraycopy(longs, 0, newLongs, 0, size);
+                System.arraycopy(doubles, 0, newDoubles, 0, size);
+                System.arraycopy(objects, 0, newObjects, 0, size);
+                names = newNames;
+                kinds = newKinds;
+                longs = newLongs;
+                doubles = newDoubles;
+                objects = newObjects;
+            }
+            names[size] = name;
+            kinds[size] = kind;
+            return size++;
+        }
+    }
+}
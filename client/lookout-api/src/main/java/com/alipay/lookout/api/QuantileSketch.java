@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+/**
+ * Track the sample distribution of events with a mergeable sketch, so that quantiles can be computed
+ * across instances on the server side. Each step reports the count and the serialized sketch
+ * ({@link Statistic#sketch}) of the values recorded during the step.
+ */
+public interface QuantileSketch extends Metric {
+
+    /**
+     * Updates the sketch with the specified amount.
+     *
+     * @param amount Amount for an event being measured, in the unit of the sketch. If the amount is
+     *               less than 0 the value will be dropped.
+     */
+    void record(long amount);
+
+    /**
+     * The number of values recorded in the last step
+     *
+     * @return count
+     */
+    long count();
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+/**
+ * Decides which events of a hot timer are actually timed. The decision costs a few arithmetic
+ * operations on a per-sampler random state and never reads the clock, except that an adaptive
+ * sampler looks at the clock once every {@link #ADJUST_INTERVAL} calls.
+ * <p>
+ * The state is updated without synchronization: concurrent callers may occasionally see the same
+ * random value, which only makes the sampling slightly less random and never biases the reported
+ * values, since they are scaled by the exact event count. Each sampled timer must own its sampler.
+ *
+ * <pre>
+ * registry.sampledTimer(id, Sampler.fixed(0.01));
+ * registry.sampledTimer(id, Sampler.adaptive(100));
+ * </pre>
+ */
+public abstract class Sampler {
+    /**
+     * an adaptive sampler re-evaluates its rate every this many calls
+     */
+    public static final int  ADJUST_INTERVAL = 1024;
+
+    private static final int RATE_SCALE      = Integer.MAX_VALUE;
+
+    private int              seed            = (int) System.nanoTime() | 1;
+
+    Sampler() {
+    }
+
+    /**
+     * Samples a fixed fraction of the events.
+     *
+     * @param rate fraction of the events to time, in (0, 1]
+     * @return sampler
+     */
+    public static Sampler fixed(double rate) {
+        return new FixedSampler(rate);
+    }
+
+    /**
+     * Samples about the given number of events per second whatever the call rate is, so a timer
+     * under light load is fully sampled.
+     *
+     * @param samplesPerSecond target number of timed events per second
+     * @return sampler
+     */
+    public static Sampler adaptive(double samplesPerSecond) {
+        return adaptive(samplesPerSecond, Clock.SYSTEM);
+    }
+
+    /**
+     * @param samplesPerSecond target number of timed events per second
+     * @param clock            clock used to measure the call rate
+     * @return sampler
+     */
+    public static Sampler adaptive(double samplesPerSecond, Clock clock) {
+        return new AdaptiveSampler(samplesPerSecond, clock);
+    }
+
+    /**
+     * @return whether the current event should be timed
+     */
+    public abstract boolean sample();
+
+    /**
+     * @return the current sampling rate, in (0, 1]
+     */
+    public abstract double rate();
+
+    static int threshold(double rate) {
+        return rate >= 1 ? RATE_SCALE : (int) (rate * RATE_SCALE);
+    }
+
+    /**
+     * @param threshold see {@link #threshold(double)}
+     * @return true with a probability of threshold / Integer.MAX_VALUE
+     */
+    boolean nextBelow(int threshold) {
+        if (threshold == RATE_SCALE) {
+            return true;
+        }
+        // xorshift32
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return (x >>> 1) < threshold;
+    }
+
+    private static void checkRate(double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate must be in (0, 1]: " + rate);
+        }
+    }
+
+    static final class FixedSampler extends Sampler {
+        private final double rate;
+        private final int    threshold;
+
+        FixedSampler(double rate) {
+            checkRate(rate);
+            this.rate = rate;
+            this.threshold = threshold(rate);
+        }
+
+        @Override
+        public boolean sample() {
+            return nextBelow(threshold);
+        }
+
+        @Override
+        public double rate() {
+            return rate;
+        }
+    }
+
+    static final class AdaptiveSampler extends Sampler {
+        /**
+         * the call rate is measured over windows of at least this length
+         */
+        static final long       WINDOW_NANOS = 100000000L;
+
+        private final double    samplesPerSecond;
+        private final Clock     clock;
+        private volatile int    threshold    = RATE_SCALE;
+        private volatile double rate         = 1;
+        private int             calls;
+        private long            windowStart;
+        private long            windowCalls;
+
+        AdaptiveSampler(double samplesPerSecond, Clock clock) {
+            if (!(samplesPerSecond > 0)) {
+                throw new IllegalArgumentException("samplesPerSecond must be > 0");
+            }
+            if (clock == null) {
+                throw new NullPointerException("clock");
+            }
+            this.samplesPerSecond = samplesPerSecond;
+            this.clock = clock;
+            this.windowStart = clock.monotonicTime();
+        }
+
+        @Override
+        public boolean sample() {
+            if ((++calls & (ADJUST_INTERVAL - 1)) == 0) {
+                adjust();
+            }
+            return nextBelow(threshold);
+        }
+
+        private synchronized void adjust() {
+            windowCalls += ADJUST_INTERVAL;
+            long now = clock.monotonicTime();
+            long elapsed = now - windowStart;
+            if (elapsed < WINDOW_NANOS) {
+                return;
+            }
+            double callsPerSecond = windowCalls * 1e9 / elapsed;
+            double r = Math.min(1, samplesPerSecond / callsPerSecond);
+            rate = r;
+            threshold = threshold(r);
+            windowStart = now;
+            windowCalls = 0;
+        }
+
+        @Override
+        public double rate() {
+            return rate;
+        }
+    }
+}
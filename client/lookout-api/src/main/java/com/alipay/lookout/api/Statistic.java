@@ -41,6 +41,11 @@ public enum Statistic {
      */
     buckets,
 
+    /**
+     * mergeable quantile sketch of the amounts recorded, see LogLinearSketch
+     */
+    sketch,
+
     //    /**
     //     * The sum of the squares of the amounts recorded.
     //     */
@@ -64,5 +69,11 @@ public enum Statistic {
     /**
      * info. not only numerical value;
      */
-    info
+    info,
+
+    /**
+     * fraction of the events that were timed by a sampled timer; the other values are already
+     * scaled to all the events
+     */
+    sampleRate
 }
@@ -19,24 +19,39 @@ package com.alipay.lookout.api;
 import com.alipay.lookout.common.Assert;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An immutable set of tags.
  * 1.sorted by the tag key;
  * 2.unique tag key;
  * 3.compatible with JDK6;
+ * <p>
+ * tags are kept in a flat array (k0,v0,k1,v1...) sorted by key, keys are interned,
+ * and the hash code is computed once.
  *
  * Created by kevin.luy@alipay.com on 2017/1/26.
  */
 final class TagSet implements Iterable<Tag> {
 
     /**
-     * tagkey-tag;
-     * value(tag) can be reset;
+     * 只 intern tag key; tag value 的基数可能很高(比如 userId), intern 后永远不会被释放.
+     * 最多 intern 的 key 个数, 防止 key 基数异常时无限增长
      */
-    private final TreeMap<String, Tag> tags;
+    private static final int                               MAX_INTERNED = 65536;
 
-    static final TagSet                EMPTY = new TagSet(new TreeMap<String, Tag>());
+    private static final ConcurrentHashMap<String, String> INTERNED     = new ConcurrentHashMap<String, String>();
+
+    private static final String[]                          NO_TAGS      = new String[0];
+
+    static final TagSet                                    EMPTY        = new TagSet(NO_TAGS);
+
+    /**
+     * sorted by key: k0,v0,k1,v1...
+     */
+    private final String[]                                 kvs;
+
+    private final int                                      hash;
 
     /**
      * Create a new tag set.
@@ -53,23 +68,83 @@ final class TagSet implements Iterable<Tag> {
     }
 
     public TagSet(TreeMap<String, Tag> tags) {
-        this.tags = tags;
+        this(toArray(tags));
+    }
+
+    private TagSet(String[] kvs) {
+        this.kvs = kvs;
+        this.hash = Arrays.hashCode(kvs);
+    }
+
+    private static String[] toArray(TreeMap<String, Tag> tags) {
+        String[] kvs = new String[tags.size() * 2];
+        int i = 0;
+        for (Tag tag : tags.values()) {
+            kvs[i++] = intern(tag.key());
+            kvs[i++] = tag.value();
+        }
+        return kvs;
+    }
+
+    private static String intern(String s) {
+        String interned = INTERNED.get(s);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return s;
+        }
+        interned = INTERNED.putIfAbsent(s, s);
+        return interned == null ? s : interned;
     }
 
     @Override
     public Iterator<Tag> iterator() {
-        return Collections.unmodifiableCollection(tags.values()).iterator();
+        return new Iterator<Tag>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < kvs.length;
+            }
+
+            @Override
+            public Tag next() {
+                if (i >= kvs.length) {
+                    throw new NoSuchElementException();
+                }
+                Tag tag = new BasicTag(kvs[i], kvs[i + 1]);
+                i += 2;
+                return tag;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    void visit(TagVisitor visitor) {
+        for (int i = 0; i < kvs.length; i += 2) {
+            visitor.visit(kvs[i], kvs[i + 1]);
+        }
     }
 
     boolean isEmpty() {
-        return tags.isEmpty();
+        return kvs.length == 0;
+    }
+
+    int size() {
+        return kvs.length / 2;
     }
 
     /**
      * Add a new tag to the set.
      */
     TagSet add(String k, String v) {
-        return add(new BasicTag(k, v));
+        Assert.notNull(k, "tag key");
+        return new Builder(kvs, 1).put(k, v == null ? "" : v).build(this);
     }
 
     /**
@@ -78,11 +153,7 @@ final class TagSet implements Iterable<Tag> {
     TagSet add(Tag tag) {
         if (tag == null)
             return this;
-        TreeMap<String, Tag> newTags = new TreeMap<String, Tag>(tags);
-        //add(or update) a new tag
-        newTags.put(tag.key(), tag);
-        //generate new one
-        return new TagSet(newTags);
+        return add(tag.key(), tag.value());
     }
 
     /**
@@ -91,15 +162,22 @@ final class TagSet implements Iterable<Tag> {
     TagSet addAll(Iterable<Tag> ts) {
         if (ts instanceof TagSet) {
             TagSet data = (TagSet) ts;
-            return addAll(data.tags.values());
+            if (isEmpty()) {
+                return data;
+            }
+            Builder builder = new Builder(kvs, data.size());
+            for (int i = 0; i < data.kvs.length; i += 2) {
+                builder.put(data.kvs[i], data.kvs[i + 1]);
+            }
+            return builder.build(this);
         }
-        Iterator<Tag> it = ts.iterator();
-        TreeMap<String, Tag> newTags = new TreeMap<String, Tag>(tags);
-        while (it.hasNext()) {
-            BasicTag tag = BasicTag.of(it.next());
-            newTags.put(tag.key(), tag);
+        Builder builder = new Builder(kvs, ts instanceof Collection ? ((Collection) ts).size()
+            : 4);
+        for (Tag t : ts) {
+            BasicTag tag = BasicTag.of(t);
+            builder.put(tag.key(), tag.value());
         }
-        return new TagSet(newTags);
+        return builder.build(this);
     }
 
     /**
@@ -109,11 +187,12 @@ final class TagSet implements Iterable<Tag> {
         if (ts == null || ts.isEmpty()) {
             return this;
         }
-        TreeMap<String, Tag> newTags = new TreeMap<String, Tag>(tags);
+        Builder builder = new Builder(kvs, ts.size());
         for (Map.Entry<String, String> entry : ts.entrySet()) {
-            newTags.put(entry.getKey(), new BasicTag(entry.getKey(), entry.getValue()));
+            BasicTag tag = new BasicTag(entry.getKey(), entry.getValue());
+            builder.put(tag.key(), tag.value());
         }
-        return new TagSet(newTags);
+        return builder.build(this);
     }
 
     /**
@@ -125,13 +204,12 @@ final class TagSet implements Iterable<Tag> {
         if (ts.length == 0) {
             return this;
         }
-        TreeMap<String, Tag> newTags = new TreeMap<String, Tag>(tags);
-        int length = ts.length / 2;
-        for (int i = 0; i < length; i++) {
-            final int j = i * 2;
-            newTags.put(ts[j], new BasicTag(ts[j], ts[j + 1]));
+        Builder builder = new Builder(kvs, ts.length / 2);
+        for (int j = 0; j < ts.length; j += 2) {
+            BasicTag tag = new BasicTag(ts[j], ts[j + 1]);
+            builder.put(tag.key(), tag.value());
         }
-        return new TagSet(newTags);
+        return builder.build(this);
     }
 
     /**
@@ -141,13 +219,12 @@ final class TagSet implements Iterable<Tag> {
         if (ts.length == 0) {
             return this;
         }
-        TreeMap<String, Tag> newTags = new TreeMap<String, Tag>(tags);
+        Builder builder = new Builder(kvs, ts.length);
         for (int i = 0; i < ts.length; ++i) {
-            BasicTag basicTag = BasicTag.of(ts[i]);
-            newTags.put(basicTag.key(), basicTag);
+            BasicTag tag = BasicTag.of(ts[i]);
+            builder.put(tag.key(), tag.value());
         }
-        return new TagSet(newTags);
-
+        return builder.build(this);
     }
 
     @Override
@@ -157,21 +234,109 @@ final class TagSet implements Iterable<Tag> {
         if (o == null || getClass() != o.getClass())
             return false;
         TagSet other = (TagSet) o;
-        if (tags.size() != other.tags.size())
+        if (hash != other.hash || kvs.length != other.kvs.length)
             return false;
-
-        return tags.equals(other.tags);
+        return Arrays.equals(kvs, other.kvs);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(tags.values().toArray());
+        return hash;
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append(tags.values());
+        builder.append('[');
+        for (int i = 0; i < kvs.length; i += 2) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(kvs[i]).append('=').append(kvs[i + 1]);
+        }
+        builder.append(']');
         return builder.toString();
     }
+
+    /**
+     * 在已排序的 kv 数组上插入或覆盖 tag, 最终生成新的 TagSet
+     */
+    private static final class Builder {
+        private final int reserve;
+        private String[]  kvs;
+        private int       length;
+        private boolean   changed;
+
+        /**
+         * @param base     sorted kvs, never modified
+         * @param expected expected number of tags to put
+         */
+        Builder(String[] base, int expected) {
+            this.reserve = expected * 2;
+            this.kvs = base;
+            this.length = base.length;
+        }
+
+        Builder put(String k, String v) {
+            int i = indexOf(k);
+            if (i >= 0) {
+                if (!kvs[i + 1].equals(v)) {
+                    ensureCopied(0);
+                    kvs[i + 1] = v;
+                }
+                return this;
+            }
+            int pos = -(i + 1);
+            ensureCopied(2);
+            System.arraycopy(kvs, pos, kvs, pos + 2, length - pos);
+            kvs[pos] = intern(k);
+            kvs[pos + 1] = v;
+            length += 2;
+            return this;
+        }
+
+        /**
+         * binary search on keys
+         *
+         * @return index of the key, or -(insertion point + 1)
+         */
+        private int indexOf(String k) {
+            int low = 0;
+            int high = length / 2 - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = kvs[mid * 2].compareTo(k);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid * 2;
+                }
+            }
+            return -(low * 2 + 1);
+        }
+
+        private void ensureCopied(int extra) {
+            if (!changed || length + extra > kvs.length) {
+                int capacity;
+                if (changed) {
+                    capacity = Math.max(length + extra, kvs.length * 2);
+                } else {
+                    capacity = length + Math.max(extra, reserve);
+                }
+                String[] copy = new String[capacity];
+                System.arraycopy(kvs, 0, copy, 0, length);
+                kvs = copy;
+                changed = true;
+            }
+        }
+
+        TagSet build(TagSet origin) {
+            if (!changed) {
+                return origin;
+            }
+            return new TagSet(length == kvs.length ? kvs : Arrays.copyOf(kvs, length));
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+import java.util.Map;
+
+/**
+ * Track the keys with the largest total weight (heavy hitters) with a bounded number of counters.
+ * Each step reports the total weight recorded during the step, and the top keys of the step as
+ * separate series tagged with the key tags.
+ */
+public interface TopCounter extends Metric {
+
+    /**
+     * Adds the weight to the key identified by the tags.
+     *
+     * @param weight weight of the event, non-positive weights are dropped
+     * @param tags   tags identifying the key
+     */
+    void record(long weight, Tag... tags);
+
+    /**
+     * Adds the weight to the key identified by the tags.
+     *
+     * @param weight weight of the event, non-positive weights are dropped
+     * @param tags   tags identifying the key
+     */
+    void record(long weight, Map<String, String> tags);
+}
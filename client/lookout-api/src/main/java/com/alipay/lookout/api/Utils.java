@@ -52,4 +52,47 @@ public final class Utils {
         }
         return null;
     }
+
+    /**
+     * visit the tags of an id, ids created by registries are visited without allocation.
+     *
+     * @param id      metricId
+     * @param visitor tag visitor
+     */
+    public static void visitTags(Id id, TagVisitor visitor) {
+        if (id instanceof DefaultId) {
+            ((DefaultId) id).visitTags(visitor);
+            return;
+        }
+        for (Tag t : id.tags()) {
+            visitor.visit(t.key(), t.value());
+        }
+    }
+
+    /**
+     * visit the measurements of a metric, metrics not implementing {@link VisitableMetric}
+     * are measured by {@link Metric#measure()}.
+     *
+     * @param metric  metric
+     * @param visitor measurement visitor
+     * @return timestamp of the measurements
+     */
+    public static long accept(Metric metric, MeasurementVisitor visitor) {
+        if (metric instanceof VisitableMetric) {
+            return ((VisitableMetric) metric).accept(visitor);
+        }
+        Indicator<?> indicator = metric.measure();
+        for (Object obj : indicator.measurements()) {
+            Measurement<?> m = (Measurement<?>) obj;
+            Object value = m.value();
+            if (value instanceof Long || value instanceof Integer) {
+                visitor.visit(m.name(), ((Number) value).longValue());
+            } else if (value instanceof Double) {
+                visitor.visit(m.name(), ((Double) value).doubleValue());
+            } else {
+                visitor.visit(m.name(), value);
+            }
+        }
+        return indicator.getTimestamp();
+    }
 }
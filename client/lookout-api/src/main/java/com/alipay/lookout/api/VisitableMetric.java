@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+/**
+ * A metric able to write its measurements into a {@link MeasurementVisitor} directly, it is the
+ * allocation free alternative of {@link #measure()}. Both have the same side effects (eg: polling
+ * the step values), so a poll uses only one of them.
+ * <p>
+ * Use {@link Utils#accept(Metric, MeasurementVisitor)} to visit any metric.
+ */
+public interface VisitableMetric extends Metric {
+
+    /**
+     * visit the measurements of this metric.
+     *
+     * @param visitor visitor
+     * @return timestamp of the measurements
+     */
+    long accept(MeasurementVisitor visitor);
+}
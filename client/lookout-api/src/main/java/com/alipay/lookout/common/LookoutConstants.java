@@ -36,4 +36,7 @@ public interface LookoutConstants {
     //ant cloud shared middleware identification
     String INSTANCE_ID_NAME  = "instance_id";
 
+    //超过 cardinality 限制的 tag 组合合并到的 series 的 tag key, 以及被替换的 tag value
+    String OVERFLOW          = "__overflow__";
+
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.sketch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe approximate distinct counter using linear counting over a fixed-size bitmap.
+ * <p>
+ * Each item sets one bit chosen by its (re-mixed) hash, and the number of distinct items is
+ * estimated from the fraction of bits still clear: {@code -m * ln(zeros / m)}. Memory is fixed at
+ * {@code m / 8} bytes, and {@link #add(int)}, {@link #contains(int)} and {@link #estimate()} are
+ * O(1). The estimate stays within a few percent while the cardinality is below about {@code m};
+ * {@link #contains(int)} may return false positives at the rate {@code setBits / m}.
+ */
+public final class LinearCounter {
+
+    private final AtomicLongArray words;
+    private final int             bits;
+    private final AtomicInteger   setBits = new AtomicInteger();
+
+    /**
+     * @param bits bitmap size, rounded up to a power of two of at least 64
+     */
+    public LinearCounter(int bits) {
+        int size = 64;
+        while (size < bits && size < (1 << 30)) {
+            size <<= 1;
+        }
+        this.bits = size;
+        this.words = new AtomicLongArray(size >>> 6);
+    }
+
+    /**
+     * @param hash hash code of the item
+     * @return true if the bit of the item was clear, i.e. the item is probably new
+     */
+    public boolean add(int hash) {
+        int index = index(hash);
+        int word = index >>> 6;
+        long mask = 1L << index;
+        for (;;) {
+            long old = words.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, old, old | mask)) {
+                setBits.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param hash hash code of the item
+     * @return true if the item has probably been added
+     */
+    public boolean contains(int hash) {
+        int index = index(hash);
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return estimated number of distinct items added
+     */
+    public double estimate() {
+        int set = setBits.get();
+        if (set >= bits) {
+            // saturated, only a lower bound is known
+            return bits * Math.log(bits);
+        }
+        return -bits * Math.log((double) (bits - set) / bits);
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    private int index(int hash) {
+        // murmur3 fmix32, the low bits of hashCode are often poorly distributed
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & (bits - 1);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.sketch;
+
+import com.alipay.lookout.common.Assert;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, mergeable quantile sketch: the non-empty slots of a log-linear histogram.
+ * <p>
+ * Values lower than {@code 2^precisionBits} have their own slot; above that every power-of-2 range
+ * is split into {@code 2^(precisionBits-1)} equal sub-slots (the same layout as the client side
+ * {@code LogLinearHistogram}), so a quantile estimated from the middle of a slot has a relative
+ * error of at most {@code 1/2^precisionBits}. Sketches with the same precision merge exactly by
+ * adding the counts of each slot, so fleet-wide quantiles need no raw samples.
+ * <p>
+ * The text form ({@link #encode()}/{@link #decode(String)}) is url-safe base64 of varints:
+ * version, precisionBits, highestTrackableValue, scaleExponent(zigzag), slot count, then
+ * (index delta, count) pairs. It is shared by the client reporter and the gateway.
+ */
+public final class LogLinearSketch {
+
+    public static final int     MAX_PRECISION_BITS = 16;
+
+    private static final int    VERSION            = 1;
+
+    private static final char[] BASE64             = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                                                      + "abcdefghijklmnopqrstuvwxyz0123456789-_")
+                                                       .toCharArray();
+
+    private final int           precisionBits;
+    private final long          highestTrackableValue;
+    private final int           scaleExponent;
+    private final int[]         indexes;
+    private final long[]        counts;
+    private final long          totalCount;
+
+    /**
+     * @param precisionBits         precision bits of the histogram the slots come from
+     * @param highestTrackableValue values greater than it are counted in the overflow slot
+     * @param scaleExponent         recorded values multiplied by 10^scaleExponent are in the
+     *                              reported unit, eg: -6 for microseconds reported in seconds
+     * @param indexes               slot indexes, strictly ascending
+     * @param counts                positive counts of the slots
+     */
+    public LogLinearSketch(int precisionBits, long highestTrackableValue, int scaleExponent,
+                           int[] indexes, long[] counts) {
+        Assert.checkArg(precisionBits >= 1 && precisionBits <= MAX_PRECISION_BITS,
+            "precisionBits must between 1 and " + MAX_PRECISION_BITS);
+        Assert.checkArg(highestTrackableValue >= 0, "highestTrackableValue must not be negative");
+        Assert.checkArg(indexes.length == counts.length, "indexes and counts must be same length");
+        int overflowIndex = overflowIndex(highestTrackableValue, precisionBits);
+        long total = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            boolean ascending = i == 0 || indexes[i] > indexes[i - 1];
+            Assert.checkArg(indexes[i] >= 0 && indexes[i] <= overflowIndex && ascending,
+                "illegal slot index " + indexes[i]);
+            Assert.checkArg(counts[i] > 0, "slot count must be positive");
+            total += counts[i];
+        }
+        this.precisionBits = precisionBits;
+        this.highestTrackableValue = highestTrackableValue;
+        this.scaleExponent = scaleExponent;
+        this.indexes = indexes;
+        this.counts = counts;
+        this.totalCount = total;
+    }
+
+    /**
+     * @param highestTrackableValue highest trackable value
+     * @param precisionBits         precision bits
+     * @return index of the overflow slot, also the number of regular slots
+     */
+    public static int overflowIndex(long highestTrackableValue, int precisionBits) {
+        return slotIndex(highestTrackableValue, precisionBits) + 1;
+    }
+
+    private static int slotIndex(long value, int precisionBits) {
+        if (value <= 0) {
+            return 0;
+        }
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        if (magnitude <= 0) {
+            return (int) value;
+        }
+        return (magnitude << (precisionBits - 1)) + (int) (value >>> magnitude);
+    }
+
+    /**
+     * @param index slot index
+     * @return the lowest value counted in the slot
+     */
+    public long lowestEquivalentValue(int index) {
+        if (index == overflowIndex(highestTrackableValue, precisionBits)) {
+            return highestTrackableValue + 1;
+        }
+        int halfShift = precisionBits - 1;
+        int magnitude = (index >> halfShift) - 1;
+        if (magnitude <= 0) {
+            return index;
+        }
+        return ((long) (index - (magnitude << halfShift))) << magnitude;
+    }
+
+    /**
+     * @param index slot index
+     * @return the highest value counted in the slot
+     */
+    public long highestEquivalentValue(int index) {
+        int overflowIndex = overflowIndex(highestTrackableValue, precisionBits);
+        if (index == overflowIndex) {
+            return Long.MAX_VALUE;
+        }
+        if (index == overflowIndex - 1) {
+            return highestTrackableValue;
+        }
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    /**
+     * estimate the value at the quantile, in the reported unit (see scaleExponent).
+     * values in the overflow slot are estimated as {@code highestTrackableValue + 1}.
+     *
+     * @param quantile 0~1
+     * @return estimated value, NaN if the sketch is empty
+     */
+    public double quantile(double quantile) {
+        Assert.checkArg(quantile >= 0 && quantile <= 1, "quantile must between 0 and 1");
+        if (totalCount == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * totalCount));
+        long seen = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return scale(representativeValue(indexes[i]));
+            }
+        }
+        return scale(representativeValue(indexes[indexes.length - 1]));
+    }
+
+    private double representativeValue(int index) {
+        long low = lowestEquivalentValue(index);
+        if (index == overflowIndex(highestTrackableValue, precisionBits)) {
+            return low;
+        }
+        long high = highestEquivalentValue(index);
+        return low + (high - low) / 2.0;
+    }
+
+    private double scale(double value) {
+        return scaleExponent == 0 ? value : value * Math.pow(10, scaleExponent);
+    }
+
+    /**
+     * merge two sketches of the same precision and unit. If the highest trackable values differ,
+     * the overflow slot of the narrower one is counted in the slot of its lower bound.
+     *
+     * @param other another sketch
+     * @return a new sketch, both inputs are left unchanged
+     */
+    public LogLinearSketch merge(LogLinearSketch other) {
+        Assert.checkArg(precisionBits == other.precisionBits,
+            "can not merge sketches of different precision");
+        Assert.checkArg(scaleExponent == other.scaleExponent,
+            "can not merge sketches of different unit");
+        long highest = Math.max(highestTrackableValue, other.highestTrackableValue);
+        int[] a = other.remap(highest);
+        int[] b = remap(highest);
+        int[] mergedIndexes = new int[a.length + b.length];
+        long[] mergedCounts = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            int index;
+            long count = 0;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                index = a[i];
+            } else {
+                index = b[j];
+            }
+            while (i < a.length && a[i] == index) {
+                count += other.counts[i++];
+            }
+            while (j < b.length && b[j] == index) {
+                count += counts[j++];
+            }
+            if (n > 0 && mergedIndexes[n - 1] == index) {
+                mergedCounts[n - 1] += count;
+            } else {
+                mergedIndexes[n] = index;
+                mergedCounts[n++] = count;
+            }
+        }
+        return new LogLinearSketch(precisionBits, highest, scaleExponent, Arrays.copyOf(
+            mergedIndexes, n), Arrays.copyOf(mergedCounts, n));
+    }
+
+    /**
+     * @return slot indexes in the layout of a wider highest trackable value, still ascending
+     */
+    private int[] remap(long highest) {
+        if (highest == highestTrackableValue) {
+            return indexes;
+        }
+        int overflowIndex = overflowIndex(highestTrackableValue, precisionBits);
+        int[] remapped = indexes.clone();
+        if (remapped.length > 0 && remapped[remapped.length - 1] == overflowIndex) {
+            remapped[remapped.length - 1] = slotIndex(highestTrackableValue + 1, precisionBits);
+        }
+        return remapped;
+    }
+
+    /**
+     * @return url-safe base64 text form, without padding
+     */
+    public String encode() {
+        VarintWriter out = new VarintWriter(16 + indexes.length * 3);
+        out.write(VERSION);
+        out.write(precisionBits);
+        out.write(highestTrackableValue);
+        out.write((scaleExponent << 1) ^ (scaleExponent >> 31));
+        out.write(indexes.length);
+        int last = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            out.write(indexes[i] - last);
+            out.write(counts[i]);
+            last = indexes[i];
+        }
+        return base64(out.buf, out.size);
+    }
+
+    /**
+     * @param text text form of a sketch
+     * @return the sketch
+     * @throws IllegalArgumentException if the text is not a valid sketch
+     */
+    public static LogLinearSketch decode(String text) {
+        VarintReader in = new VarintReader(unbase64(text));
+        int version = (int) in.read();
+        Assert.checkArg(version == VERSION, "unsupported sketch version " + version);
+        int precisionBits = (int) in.read();
+        long highestTrackableValue = in.read();
+        int zigzag = (int) in.read();
+        int scaleExponent = (zigzag >>> 1) ^ -(zigzag & 1);
+        long length = in.read();
+        Assert.checkArg(length <= in.remaining() / 2, "illegal sketch length " + length);
+        int[] indexes = new int[(int) length];
+        long[] counts = new long[(int) length];
+        int last = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            last += (int) in.read();
+            indexes[i] = last;
+            counts[i] = in.read();
+        }
+        Assert.checkArg(in.remaining() == 0, "unexpected trailing bytes in sketch");
+        return new LogLinearSketch(precisionBits, highestTrackableValue, scaleExponent, indexes,
+            counts);
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    public int getScaleExponent() {
+        return scaleExponent;
+    }
+
+    /**
+     * @return total number of recorded values
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return number of non-empty slots
+     */
+    public int size() {
+        return indexes.length;
+    }
+
+    public int getIndex(int i) {
+        return indexes[i];
+    }
+
+    public long getCount(int i) {
+        return counts[i];
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearSketch{precisionBits=" + precisionBits + ", highestTrackableValue="
+               + highestTrackableValue + ", count=" + totalCount + ", slots=" + indexes.length
+               + "}";
+    }
+
+    private static String base64(byte[] data, int length) {
+        StringBuilder sb = new StringBuilder((length * 4 + 2) / 3);
+        for (int i = 0; i < length; i += 3) {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < length) {
+                b |= (data[i + 1] & 0xff) << 8;
+            }
+            if (i + 2 < length) {
+                b |= data[i + 2] & 0xff;
+            }
+            sb.append(BASE64[(b >>> 18) & 0x3f]).append(BASE64[(b >>> 12) & 0x3f]);
+            if (i + 1 < length) {
+                sb.append(BASE64[(b >>> 6) & 0x3f]);
+            }
+            if (i + 2 < length) {
+                sb.append(BASE64[b & 0x3f]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] unbase64(String text) {
+        Assert.checkArg(text != null && text.length() % 4 != 1, "illegal sketch text");
+        byte[] data = new byte[text.length() * 3 / 4];
+        int bits = 0, buffered = 0, n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            bits = (bits << 6) | base64Value(text.charAt(i));
+            buffered += 6;
+            if (buffered >= 8) {
+                buffered -= 8;
+                data[n++] = (byte) (bits >>> buffered);
+            }
+        }
+        return data;
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '-') {
+            return 62;
+        }
+        if (c == '_') {
+            return 63;
+        }
+        throw new IllegalArgumentException("illegal sketch character " + c);
+    }
+
+    private static final class VarintWriter {
+        private byte[] buf;
+        private int    size;
+
+        VarintWriter(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void write(long value) {
+            if (size + 10 > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + 10));
+            }
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+    }
+
+    private static final class VarintReader {
+        private final byte[] buf;
+        private int          pos;
+
+        VarintReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long read() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                Assert.checkArg(pos < buf.length, "truncated sketch");
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint in sketch");
+        }
+
+        int remaining() {
+            return buf.length - pos;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.top;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发的 Space-Saving (heavy hitters) sketch: 用固定数量的计数器近似统计权重最大的 key.
+ * <p>
+ * 计数器按 key 的 hash 分散在若干 stripe 中, 每个 stripe 是一个独立的 Space-Saving 结构. 已被监视的 key
+ * 更新时只做一次 map 查找和 CAS 加法, 不加锁; 只有新 key 需要替换 stripe 内计数最小的计数器时才锁住该 stripe.
+ * <p>
+ * 误差: 每个 key 的估计值不低于真实值, 高估部分不超过 {@link Entry#getError()}, 而 error 不超过所在 stripe
+ * 总权重除以 stripe 的计数器数量. 与被替换的计数器并发进行的更新可能丢失, 这些更新属于计数最小的 key.
+ *
+ * @param <K> key type, 需要正确实现 equals/hashCode
+ */
+public final class SpaceSavingSketch<K> {
+
+    private static final int                  MAX_STRIPES         = 16;
+    /**
+     * 每个 stripe 至少保留的计数器数量, 替换时需要扫描整个 stripe, 因此也不宜太大
+     */
+    private static final int                  MIN_STRIPE_CAPACITY = 32;
+
+    private static final Comparator<Entry<?>> DESC                = new DescComparator();
+
+    private final Stripe[]                    stripes;
+    private final int                         mask;
+    private final int                         capacity;
+
+    /**
+     * @param capacity 计数器总数, 误差上界约为 总权重 / capacity
+     */
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must greater than 0");
+        }
+        int n = 1;
+        while (n < MAX_STRIPES && capacity / (n * 2) >= MIN_STRIPE_CAPACITY) {
+            n *= 2;
+        }
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(capacity / n + (i < capacity % n ? 1 : 0));
+        }
+        this.mask = n - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param key    key
+     * @param weight weight, 非正数被忽略
+     */
+    public void add(K key, long weight) {
+        if (key == null || weight <= 0) {
+            return;
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        stripes[h & mask].add(key, weight);
+    }
+
+    /**
+     * @param n 最多返回的数量
+     * @return 按估计值降序的前 n 个 key
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entry<K>> top(int n) {
+        List<Entry<K>> entries = new ArrayList<Entry<K>>(capacity);
+        for (Stripe stripe : stripes) {
+            stripe.collect((List) entries);
+        }
+        Collections.sort(entries, (Comparator) DESC);
+        return entries.size() > n ? new ArrayList<Entry<K>>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * @return 所有计数器的总和, 即记录的总权重(不含并发替换时丢失的部分)
+     */
+    public long total() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.total();
+        }
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static final class DescComparator implements Comparator<Entry<?>> {
+        @Override
+        public int compare(Entry<?> o1, Entry<?> o2) {
+            return o1.count < o2.count ? 1 : (o1.count > o2.count ? -1 : 0);
+        }
+    }
+
+    private static final class Counter {
+        final Object     key;
+        final AtomicLong count;
+        final long       error;
+
+        Counter(Object key, long count, long error) {
+            this.key = key;
+            this.count = new AtomicLong(count);
+            this.error = error;
+        }
+    }
+
+    private static final class Stripe {
+        private final ConcurrentHashMap<Object, Counter> index;
+        private final Counter[]                          counters;
+        private int                                      size;
+
+        Stripe(int capacity) {
+            this.index = new ConcurrentHashMap<Object, Counter>(capacity * 2);
+            this.counters = new Counter[capacity];
+        }
+
+        void add(Object key, long weight) {
+            Counter counter = index.get(key);
+            if (counter != null) {
+                counter.count.addAndGet(weight);
+                return;
+            }
+            synchronized (this) {
+                counter = index.get(key);
+                if (counter != null) {
+                    counter.count.addAndGet(weight);
+                    return;
+                }
+                if (size < counters.length) {
+                    counter = new Counter(key, weight, 0);
+                    counters[size++] = counter;
+                } else {
+                    // 替换计数最小的 key, 新 key 继承其计数作为误差
+                    int min = 0;
+                    long minCount = counters[0].count.get();
+                    for (int i = 1; i < counters.length && minCount > 0; i++) {
+                        long c = counters[i].count.get();
+                        if (c < minCount) {
+                            min = i;
+                            minCount = c;
+                        }
+                    }
+                    index.remove(counters[min].key);
+                    counter = new Counter(key, minCount + weight, minCount);
+                    counters[min] = counter;
+                }
+                index.put(key, counter);
+            }
+        }
+
+        synchronized void collect(List<Entry<Object>> out) {
+            for (int i = 0; i < size; i++) {
+                Counter counter = counters[i];
+                out.add(new Entry<Object>(counter.key, counter.count.get(), counter.error));
+            }
+        }
+
+        synchronized long total() {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += counters[i].count.get();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 一个 key 的估计结果, 真实值在 [count - error, count] 之间
+     *
+     * @param <K> key type
+     */
+    public static final class Entry<K> {
+        private final K    key;
+        private final long count;
+        private final long error;
+
+        Entry(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @param key new key
+         * @param <T> type of new key
+         * @return entry with the same count and error
+         */
+        public <T> Entry<T> withKey(T key) {
+            return new Entry<T>(key, count, error);
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + "[error=" + error + "]";
+        }
+    }
+}
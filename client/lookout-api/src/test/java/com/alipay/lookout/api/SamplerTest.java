@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SamplerTest {
+
+    @Test
+    public void testFixed() {
+        Sampler sampler = Sampler.fixed(0.01);
+        int sampled = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (sampler.sample()) {
+                sampled++;
+            }
+        }
+        Assert.assertTrue(String.valueOf(sampled), sampled > 800 && sampled < 1200);
+        Assert.assertEquals(0.01, sampler.rate(), 0);
+    }
+
+    @Test
+    public void testAdaptive() {
+        ManualClock clock = new ManualClock();
+        Sampler sampler = Sampler.adaptive(1000, clock);
+        Assert.assertEquals(1.0, sampler.rate(), 0);
+
+        // 每微秒一次调用, 即每秒 1000000 次
+        for (int i = 1; i <= 200000; i++) {
+            clock.setMonotonicTime(i * 1000L);
+            sampler.sample();
+        }
+        Assert.assertEquals(0.001, sampler.rate(), 0.0001);
+
+        // 调用变少后恢复全采样
+        long now = clock.monotonicTime();
+        for (int i = 1; i <= 2 * Sampler.ADJUST_INTERVAL; i++) {
+            clock.setMonotonicTime(now + i * 1000000L);
+            sampler.sample();
+        }
+        Assert.assertEquals(1.0, sampler.rate(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        Sampler.fixed(0);
+    }
+}
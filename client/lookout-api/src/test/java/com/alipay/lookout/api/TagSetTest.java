@@ -23,6 +23,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -97,4 +98,53 @@ public class TagSetTest {
 
     }
 
+    @Test
+    public void testAddSameTag() {
+        TagSet ts = TagSet.EMPTY.add("k1", "v1").add("k2", "v2");
+        Assert.assertSame(ts, ts.add("k1", "v1"));
+        Assert.assertSame(ts, ts.addAll(new String[] { "k2", "v2" }));
+        Assert.assertEquals("[k1=v1, k2=v2]", ts.add("k2", null).add("k2", "v2").toString());
+    }
+
+    @Test
+    public void testInternKeysOnly() {
+        List<String> a = kvs(TagSet.EMPTY.add(new String("userId"), new String("u1")));
+        List<String> b = kvs(TagSet.EMPTY.add(new String("userId"), new String("u1")));
+        Assert.assertSame(a.get(0), b.get(0));
+        // 高基数的 tag value 不会被全局缓存
+        Assert.assertNotSame(a.get(1), b.get(1));
+        Assert.assertEquals(a.get(1), b.get(1));
+    }
+
+    private static List<String> kvs(TagSet ts) {
+        final List<String> kvs = new ArrayList<String>();
+        ts.visit(new TagVisitor() {
+            @Override
+            public void visit(String key, String value) {
+                kvs.add(key);
+                kvs.add(value);
+            }
+        });
+        return kvs;
+    }
+
+    @Test
+    public void testManyTagsSorted() {
+        Map<String, String> map = new HashMap<String, String>();
+        TagSet ts = TagSet.EMPTY;
+        for (int i = 19; i >= 0; i--) {
+            String k = "k" + (char) ('a' + i);
+            map.put(k, "v" + i);
+            ts = ts.add(k, "v" + i);
+        }
+        TagSet other = TagSet.create(map);
+        Assert.assertEquals(20, other.size());
+        Assert.assertEquals(ts, other);
+        Assert.assertEquals(ts.hashCode(), other.hashCode());
+        String prev = "";
+        for (Tag tag : other) {
+            Assert.assertTrue(prev.compareTo(tag.key()) < 0);
+            prev = tag.key();
+        }
+    }
 }
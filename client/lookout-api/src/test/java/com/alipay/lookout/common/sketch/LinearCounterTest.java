@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.sketch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinearCounterTest {
+
+    @Test
+    public void testEstimate() {
+        LinearCounter counter = new LinearCounter(8192);
+        Assert.assertEquals(8192, counter.getBits());
+        for (int i = 0; i < 1000; i++) {
+            counter.add(("user-" + i).hashCode());
+            // 重复添加不影响估计值
+            counter.add(("user-" + i).hashCode());
+        }
+        Assert.assertEquals(1000, counter.estimate(), 30);
+        Assert.assertTrue(counter.contains("user-1".hashCode()));
+    }
+
+    @Test
+    public void testAddReturnsNewBit() {
+        LinearCounter counter = new LinearCounter(10);
+        Assert.assertEquals(64, counter.getBits());
+        Assert.assertTrue(counter.add(42));
+        Assert.assertFalse(counter.add(42));
+        Assert.assertEquals(0, new LinearCounter(64).estimate(), 0);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.sketch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LogLinearSketchTest {
+
+    /**
+     * 按 slot 计数构造 sketch, 模拟客户端 histogram 的快照
+     */
+    private static LogLinearSketch sketchOf(int precisionBits, long highest, long[] values) {
+        LogLinearSketch layout = new LogLinearSketch(precisionBits, highest, 0, new int[0],
+            new long[0]);
+        long[] slots = new long[LogLinearSketch.overflowIndex(highest, precisionBits) + 1];
+        for (long v : values) {
+            int index = 0;
+            while (index < slots.length - 1 && layout.highestEquivalentValue(index) < v) {
+                index++;
+            }
+            slots[index]++;
+        }
+        int n = 0;
+        int[] indexes = new int[slots.length];
+        long[] counts = new long[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] > 0) {
+                indexes[n] = i;
+                counts[n++] = slots[i];
+            }
+        }
+        return new LogLinearSketch(precisionBits, highest, 0, Arrays.copyOf(indexes, n),
+            Arrays.copyOf(counts, n));
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        long[] values = new long[1000];
+        Random random = new Random(7);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000000);
+        }
+        LogLinearSketch sketch = sketchOf(6, 1L << 20, values);
+        String text = sketch.encode();
+        LogLinearSketch decoded = LogLinearSketch.decode(text);
+
+        Assert.assertEquals(sketch.getCount(), decoded.getCount());
+        Assert.assertEquals(sketch.size(), decoded.size());
+        for (int i = 0; i < sketch.size(); i++) {
+            Assert.assertEquals(sketch.getIndex(i), decoded.getIndex(i));
+            Assert.assertEquals(sketch.getCount(i), decoded.getCount(i));
+        }
+        Assert.assertEquals(text, decoded.encode());
+        Assert.assertTrue(text.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void testQuantileError() {
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i + 1) * 100L;
+        }
+        LogLinearSketch sketch = sketchOf(6, 1L << 24, values);
+        double[] quantiles = { 0.5, 0.9, 0.99, 0.999 };
+        for (double q : quantiles) {
+            double exact = values[(int) Math.ceil(q * values.length) - 1];
+            double estimated = sketch.quantile(q);
+            Assert.assertEquals(exact, estimated, exact / 64);
+        }
+        Assert.assertTrue(Double.isNaN(sketchOf(6, 100, new long[0]).quantile(0.5)));
+    }
+
+    @Test
+    public void testMerge() {
+        long[] a = { 1, 2, 3, 1000, 5000 };
+        long[] b = { 3, 4, 1000, 200000 };
+        LogLinearSketch merged = sketchOf(6, 1L << 20, a).merge(sketchOf(6, 1L << 20, b));
+        long[] all = { 1, 2, 3, 1000, 5000, 3, 4, 1000, 200000 };
+        LogLinearSketch expected = sketchOf(6, 1L << 20, all);
+        Assert.assertEquals(expected.encode(), merged.encode());
+        Assert.assertEquals(9, merged.getCount());
+
+        // 溢出值在合并到更宽的 sketch 后计入其下界所在的 slot
+        LogLinearSketch narrow = sketchOf(6, 1000, new long[] { 10, 5000 });
+        LogLinearSketch wide = sketchOf(6, 1L << 20, new long[] { 10 });
+        LogLinearSketch mixed = narrow.merge(wide);
+        Assert.assertEquals(1L << 20, mixed.getHighestTrackableValue());
+        Assert.assertEquals(3, mixed.getCount());
+        Assert.assertEquals(1001, mixed.quantile(1), 1001 / 64.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        sketchOf(6, 100, new long[] { 1 }).merge(sketchOf(7, 100, new long[] { 1 }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeMalformed() {
+        LogLinearSketch.decode("AQY!");
+    }
+
+    @Test
+    public void testScale() {
+        LogLinearSketch sketch = new LogLinearSketch(6, 1000000, -6, new int[] { 10 },
+            new long[] { 3 });
+        Assert.assertEquals(10e-6, LogLinearSketch.decode(sketch.encode()).quantile(0.5), 1e-12);
+    }
+}
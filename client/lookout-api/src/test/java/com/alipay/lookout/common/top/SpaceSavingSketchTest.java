@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.common.top;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class SpaceSavingSketchTest {
+
+    @Test
+    public void testExactWithinCapacity() {
+        SpaceSavingSketch<String> sketch = new SpaceSavingSketch<String>(16);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("k" + i, i + 1);
+        }
+        sketch.add("k0", 100);
+        sketch.add("k1", 0);
+        sketch.add(null, 1);
+
+        List<SpaceSavingSketch.Entry<String>> top = sketch.top(3);
+        Assert.assertEquals(3, top.size());
+        Assert.assertEquals("k0", top.get(0).getKey());
+        Assert.assertEquals(101, top.get(0).getCount());
+        Assert.assertEquals(0, top.get(0).getError());
+        Assert.assertEquals("k9", top.get(1).getKey());
+        Assert.assertEquals("k8", top.get(2).getKey());
+        Assert.assertEquals(155, sketch.total());
+    }
+
+    @Test
+    public void testHeavyHittersWithLongTail() {
+        SpaceSavingSketch<Integer> sketch = new SpaceSavingSketch<Integer>(256);
+        Random random = new Random(1);
+        long total = 0;
+        for (int i = 0; i < 200000; i++) {
+            // 5 个热点 key 占一半流量, 其余均匀分布在 10 万个 key 上
+            int key = random.nextBoolean() ? random.nextInt(5) : 100 + random.nextInt(100000);
+            sketch.add(key, 1);
+            total++;
+        }
+        Assert.assertEquals(total, sketch.total());
+
+        List<SpaceSavingSketch.Entry<Integer>> top = sketch.top(5);
+        for (SpaceSavingSketch.Entry<Integer> entry : top) {
+            Assert.assertTrue(entry.toString(), entry.getKey() < 5);
+            // 每个热点约 20000 次, 误差不超过 stripe 总权重 / stripe 容量
+            Assert.assertTrue(entry.toString(), entry.getCount() - entry.getError() < 21000);
+            Assert.assertTrue(entry.toString(), entry.getCount() > 19000);
+            Assert.assertTrue(entry.toString(), entry.getError() <= total * 8 / 256);
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final SpaceSavingSketch<String> sketch = new SpaceSavingSketch<String>(64);
+        final int threads = 4;
+        final int perThread = 100000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        sketch.add("hot" + (i & 3), 1);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        // 热点 key 一直被监视, 并发更新不会丢失
+        for (SpaceSavingSketch.Entry<String> entry : sketch.top(4)) {
+            Assert.assertEquals(entry.toString(), threads * perThread / 4, entry.getCount());
+        }
+        Assert.assertEquals(threads * perThread, sketch.total());
+    }
+}
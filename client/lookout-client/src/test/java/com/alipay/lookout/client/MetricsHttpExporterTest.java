@@ -110,4 +110,47 @@ public class MetricsHttpExporterTest {
             e.close();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConditionalGet() throws IOException, InterruptedException {
+        LookoutConfig config = new LookoutConfig();
+        LookoutRegistry lookoutRegistry = new LookoutRegistry(Clock.SYSTEM, null, config, null,
+            1000L);
+        lookoutRegistry.counter(lookoutRegistry.createId("foo")).inc();
+        PollerController pc = new PollerController(lookoutRegistry);
+        MetricsHttpExporter e = new MetricsHttpExporter(pc);
+        e.start();
+
+        CloseableHttpClient hc = HttpClients.createDefault();
+        try {
+            // 第一次请求激活 poller, 使用较大的 step 保证后续两次请求之间不会产生新的 slot
+            HttpClientUtils.closeQuietly(hc.execute(RequestBuilder.get(
+                "http://localhost:19399/get?step=60000").build()));
+            Thread.sleep(500);
+
+            String etag;
+            CloseableHttpResponse response = hc.execute(RequestBuilder.get(
+                "http://localhost:19399/get?since=-1").build());
+            try {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                etag = response.getFirstHeader("ETag").getValue();
+                String content = EntityUtils.toString(response.getEntity());
+                assertTrue(content.contains("\"cursor\":"));
+            } finally {
+                HttpClientUtils.closeQuietly(response);
+            }
+
+            // since 是只读的, 数据没有变化时返回 304
+            response = hc.execute(RequestBuilder.get("http://localhost:19399/get?since=-1")
+                .addHeader("If-None-Match", etag).build());
+            try {
+                assertEquals(304, response.getStatusLine().getStatusCode());
+            } finally {
+                HttpClientUtils.closeQuietly(response);
+            }
+        } finally {
+            HttpClientUtils.closeQuietly(hc);
+            e.close();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.alipay.lookout.api.info.Info;
 import com.alipay.lookout.common.Assert;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.core.common.NewMetricFunction;
+import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.core.config.MetricConfig;
 import com.alipay.lookout.event.MetricRegistryListener;
 import com.alipay.lookout.spi.MetricsImporter;
@@ -31,28 +32,53 @@ import com.alipay.lookout.spi.MetricsImporterLocator;
 import org.apache.commons.configuration2.MapConfiguration;
 import org.slf4j.Logger;
 
+import java.lang.ref.WeakReference;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_GAUGE_ASYNC_THREADS;
 import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_MAX_METRICS_NUMBER;
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_MAX_SERIES_PER_NAME;
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_MAX_VALUES_PER_TAG_KEY;
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS;
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_SNAPSHOT_ENABLE;
 
 /**
  * Base class of a simple registry
  */
 public abstract class AbstractRegistry extends MetricRegistry {
-    protected final Logger                      logger        = LookoutLoggerFactory
-                                                                  .getLogger(getClass());
+    protected final Logger                                        logger             = LookoutLoggerFactory
+                                                                                         .getLogger(getClass());
 
-    private final ConcurrentHashMap<Id, Metric> metrics;
+    private final ConcurrentHashMap<Id, Metric>                   metrics;
 
-    private MetricConfig                        config;
+    private MetricConfig                                          config;
 
-    private final List<MetricRegistryListener>  listeners     = new CopyOnWriteArrayList<MetricRegistryListener>();
+    private final List<MetricRegistryListener>                    listeners          = new CopyOnWriteArrayList<MetricRegistryListener>();
 
-    private volatile boolean                    maxNumWarning = true;
+    private volatile boolean                                      maxNumWarning      = true;
+
+    private final CardinalityLimiter                              cardinalityLimiter = new CardinalityLimiter(this);
+
+    /**
+     * 开启 lookout.meter.expire.idle.steps 后第一次注册 Expirable meter 时创建
+     */
+    volatile IdleMeterSweeper                                     idleMeterSweeper;
+    private boolean                                               destroyed;
+    /**
+     * 被回收的 meter, 调用方可能仍持有引用; 再次被获取或记录时重新注册同一个实例, 没有引用后由清理任务移除
+     */
+    private final ConcurrentHashMap<Id, WeakReference<Expirable>> expired            = new ConcurrentHashMap<Id, WeakReference<Expirable>>();
+    private Counter                                               expiredMeters;
+    private Counter                                               revivedMeters;
+
+    /**
+     * 第一次注册 AsyncGauge 时创建
+     */
+    private volatile AsyncGaugeRefresher                          asyncGaugeRefresher;
 
     /**
      * @param clock  Clock used for performing all timing measurements.
@@ -148,6 +174,9 @@ public abstract class AbstractRegistry extends MetricRegistry {
 
     @Override
     public <T extends Number> Gauge<T> gauge(Id id, final Gauge<T> gauge) {
+        if (gauge instanceof AsyncGauge) {
+            return asyncGauge(id, (AsyncGauge<T>) gauge);
+        }
         return (Gauge<T>) computeIfAbsent(metrics, id, new NewMetricFunction<Metric>() {
             @Override
             public Metric apply(Id id) {
@@ -161,6 +190,41 @@ public abstract class AbstractRegistry extends MetricRegistry {
         });
     }
 
+    private <T extends Number> Gauge<T> asyncGauge(Id id, final AsyncGauge<T> gauge) {
+        final AsyncGaugeRefresher refresher = asyncGaugeRefresher();
+        Metric m = computeIfAbsent(metrics, id, new NewMetricFunction<Metric>() {
+            @Override
+            public Metric apply(Id id) {
+                return new AsyncGaugeWrapper<T>(id, gauge, clock(), refresher);
+            }
+
+            @Override
+            public Metric noopMetric() {
+                return NoopGauge.INSTANCE;
+            }
+        });
+        if (m instanceof AsyncGaugeWrapper) {
+            // 注册后马上刷新一次, 第一次 poll 时就有值
+            ((AsyncGaugeWrapper) m).refresh();
+        }
+        return (Gauge<T>) m;
+    }
+
+    private AsyncGaugeRefresher asyncGaugeRefresher() {
+        AsyncGaugeRefresher refresher = asyncGaugeRefresher;
+        if (refresher == null) {
+            synchronized (this) {
+                refresher = asyncGaugeRefresher;
+                if (refresher == null) {
+                    refresher = new AsyncGaugeRefresher(this, Math.max(1,
+                        config.getInt(LOOKOUT_GAUGE_ASYNC_THREADS, 1)));
+                    asyncGaugeRefresher = refresher;
+                }
+            }
+        }
+        return refresher;
+    }
+
     @Override
     public <I, Y extends Info<I>> Info info(Id id, final Y info) {
         return (Info<I>) computeIfAbsent(metrics, id, new NewMetricFunction<Metric>() {
@@ -192,6 +256,7 @@ public abstract class AbstractRegistry extends MetricRegistry {
         //            String.format("this id: %s is not gauge or info!", id));
         Metric metric = metrics.remove(id);
         if (metric != null) {
+            cardinalityLimiter.onRemoved(id);
             onMetricRemoved(metric);
         }
     }
@@ -219,7 +284,7 @@ public abstract class AbstractRegistry extends MetricRegistry {
                 public Counter noopMetric() {
                     return NoopCounter.INSTANCE;
                 }
-            });
+            }, true);
 
             if (!(m instanceof Counter)) {
                 logTypeError(id, Counter.class, m.getClass());
@@ -237,7 +302,28 @@ public abstract class AbstractRegistry extends MetricRegistry {
      */
     private <T extends Metric> T computeIfAbsent(ConcurrentHashMap<Id, Metric> map, Id id,
                                                  NewMetricFunction<? extends Metric> f) {
+        return computeIfAbsent(map, id, f, false);
+    }
+
+    /**
+     * @param limited 是否受 per-name cardinality 限制, 超过限制时返回 overflow series
+     */
+    private <T extends Metric> T computeIfAbsent(ConcurrentHashMap<Id, Metric> map, Id id,
+                                                 NewMetricFunction<? extends Metric> f,
+                                                 boolean limited) {
         Metric m = map.get(id);
+        if (m != null) {
+            return (T) m;
+        }
+        if (limited) {
+            Id admitted = cardinalityLimiter.admit(id,
+                config.getInt(LOOKOUT_MAX_SERIES_PER_NAME, 0),
+                config.getInt(LOOKOUT_MAX_VALUES_PER_TAG_KEY, 0));
+            if (admitted != id) {
+                id = admitted;
+                m = map.get(id);
+            }
+        }
         if (m == null) {
             //如果metrics过多了，则给个noop，并给出提示;
             if (map.size() >= config.getInt(LOOKOUT_MAX_METRICS_NUMBER,
@@ -253,17 +339,143 @@ public abstract class AbstractRegistry extends MetricRegistry {
                 return (T) f.noopMetric();
             }
             //if the key exists,this execution is useless!
-            Metric tmp = f.apply(id);
+            WeakReference<Expirable> ref = expired.get(id);
+            Expirable dead = ref == null ? null : ref.get();
+            Metric tmp = dead != null ? dead : f.apply(id);
+            if (tmp == null) {
+                return null;
+            }
             m = map.putIfAbsent(id, tmp);
             if (m == null) {
                 //first register
                 m = tmp;
+                if (dead != null) {
+                    expired.remove(id, ref);
+                    dead.activity().revived();
+                    revivedMeters.inc();
+                }
+                cardinalityLimiter.onAdded(id);
                 onMetricAdded(tmp);
+                if (tmp instanceof Expirable && idleMeterSweeper == null
+                    && idleStepsBeforeExpiry() > 0) {
+                    startIdleMeterSweeper();
+                }
             }
         }
         return (T) m;
     }
 
+    /**
+     * 回收的轮次和 poll 不对齐, 至少空闲 {@link IdleMeterSweeper#MIN_IDLE_STEPS} 轮才回收,
+     * 保证 meter 最后一个 step 的数据已经被 poll
+     *
+     * @return 连续多少个 step 没有更新的 meter 被回收, 不大于 0 表示不回收
+     */
+    protected int idleStepsBeforeExpiry() {
+        int steps = config.getInt(LOOKOUT_METER_EXPIRE_IDLE_STEPS, 0);
+        return steps <= 0 ? steps : Math.max(IdleMeterSweeper.MIN_IDLE_STEPS, steps);
+    }
+
+    /**
+     * 停止 registry 的后台任务(空闲 meter 的回收), 之后不会再有 meter 被回收
+     */
+    public synchronized void destroy() {
+        destroyed = true;
+        if (idleMeterSweeper != null) {
+            idleMeterSweeper.stop();
+        }
+    }
+
+    /**
+     * exporter 读取 measure 结果时使用的 snapshot, 见 {@link MetricSnapshot}
+     *
+     * @param stepMillis exporter 的 step
+     * @return 当前 step 的 snapshot, 未开启 lookout.snapshot.enable 时为 null, 由 exporter 直接 measure
+     */
+    public MetricSnapshot pollSnapshot(long stepMillis) {
+        if (!config.getBoolean(LOOKOUT_SNAPSHOT_ENABLE, false)) {
+            return null;
+        }
+        return snapshot(stepMillis);
+    }
+
+    /**
+     * @return NORMAL priority 的 step 的 snapshot, 见 {@link #pollSnapshot(long)}
+     */
+    public MetricSnapshot pollSnapshot() {
+        return pollSnapshot(normalStepMillis());
+    }
+
+    long normalStepMillis() {
+        return config instanceof LookoutConfig ? ((LookoutConfig) config)
+            .stepMillis(PRIORITY.NORMAL) : IdleMeterSweeper.DEFAULT_STEP_MILLIS;
+    }
+
+    private synchronized void startIdleMeterSweeper() {
+        if (idleMeterSweeper == null && !destroyed) {
+            MixinMetric mixinMetric = mixinMetric(createId("lookout.reg"));
+            expiredMeters = mixinMetric.counter("expired");
+            revivedMeters = mixinMetric.counter("revived");
+            idleMeterSweeper = new IdleMeterSweeper(this, metrics);
+            idleMeterSweeper.start();
+        }
+    }
+
+    /**
+     * 回收长时间没有更新的 meter, 被回收的 meter 再次被获取或记录时重新注册同一个实例
+     */
+    void expire(final Id id, final Expirable metric) {
+        // 先放入 expired 再移除, 移除后的获取一定能拿到这个实例
+        WeakReference<Expirable> ref = new WeakReference<Expirable>(metric);
+        expired.put(id, ref);
+        if (!metrics.remove(id, metric)) {
+            expired.remove(id, ref);
+            return;
+        }
+        cardinalityLimiter.onRemoved(id);
+        expiredMeters.inc();
+        onMetricRemoved(metric);
+        metric.activity().expired(new Runnable() {
+            @Override
+            public void run() {
+                revive(id, metric, this);
+            }
+        });
+    }
+
+    /**
+     * 调用方持有的 meter 再次被记录, 和新建 meter 一样受 metric 数量和 cardinality 的限制
+     */
+    private void revive(Id id, final Expirable metric, Runnable retry) {
+        Metric m = computeIfAbsent(metrics, id, new NewMetricFunction<Metric>() {
+            @Override
+            public Metric apply(Id id) {
+                // 只在被限制替换为 overflow id 时调用
+                return null;
+            }
+
+            @Override
+            public Metric noopMetric() {
+                return null;
+            }
+        }, true);
+        if (m != metric) {
+            // 超过了限制, 下次记录时重试
+            metric.activity().retry(retry);
+        }
+    }
+
+    /**
+     * 移除已经没有引用的被回收 meter
+     */
+    void purgeExpired() {
+        for (Map.Entry<Id, WeakReference<Expirable>> entry : expired.entrySet()) {
+            if (entry.getValue().get() == null) {
+                expired.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     protected final <T extends Metric> T computeIfAbsent(Id id,
                                                          NewMetricFunction<? extends Metric> f) {
         return computeIfAbsent(metrics, id, f);
@@ -300,7 +512,7 @@ public abstract class AbstractRegistry extends MetricRegistry {
                 public DistributionSummary noopMetric() {
                     return NoopDistributionSummary.INSTANCE;
                 }
-            });
+            }, true);
 
             if (!(m instanceof DistributionSummary)) {
                 logTypeError(id, DistributionSummary.class, m.getClass());
@@ -334,7 +546,43 @@ public abstract class AbstractRegistry extends MetricRegistry {
                 public Timer noopMetric() {
                     return NoopTimer.INSTANCE;
                 }
-            });
+            }, true);
+            if (!(m instanceof Timer)) {
+                logTypeError(id, Timer.class, m.getClass());
+                m = NoopTimer.INSTANCE;
+            }
+            return (Timer) m;
+        } catch (Exception e) {
+            propagate(e);
+            return NoopTimer.INSTANCE;
+        }
+    }
+
+    /**
+     * 创建一个采样的 timer, 用于调用极其频繁的路径: 每次调用只累加精确计数, 只有被采样的调用才计时,
+     * 上报时按采样率放大 totalTime 和 bucket 计数.
+     * <p>
+     * 如果该 id 已经存在, 直接返回已有的 timer, sampler 不生效.
+     *
+     * @param id      metric id
+     * @param sampler 该 timer 独占的 sampler
+     * @return timer
+     */
+    public final Timer sampledTimer(Id id, final Sampler sampler) {
+        try {
+            Assert.notNull(sampler, "sampler");
+            Metric m = computeIfAbsent(metrics, id, new NewMetricFunction<Timer>() {
+                @Override
+                public Timer apply(Id id) {
+                    return new SampledTimer(id, newTimer(id), newCounter(id), newCounter(id),
+                        sampler, clock());
+                }
+
+                @Override
+                public Timer noopMetric() {
+                    return NoopTimer.INSTANCE;
+                }
+            }, true);
             if (!(m instanceof Timer)) {
                 logTypeError(id, Timer.class, m.getClass());
                 m = NoopTimer.INSTANCE;
@@ -370,7 +618,7 @@ public abstract class AbstractRegistry extends MetricRegistry {
                 public Metric noopMetric() {
                     return NoopMixinMetric.INSTANCE;
                 }
-            });
+            }, true);
 
             if (!(m instanceof MixinMetric)) {
                 logTypeError(id, MixinMetric.class, m.getClass());
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+/**
+ * meter 的活跃标记, 用于回收长时间没有更新的 meter:
+ * <ul>
+ * <li>记录数据时调用 {@link #touch()}, 只有标记被清除后的第一次记录会写, 其余只是一次 volatile 读, 不调用时钟</li>
+ * <li>registry 的清理任务每轮清除一次标记, 连续多轮都没有被标记的 meter 从 registry 中移除</li>
+ * <li>被移除的 meter 如果再次被记录(调用方持有了引用), 会自动重新注册到 registry; 被限制拒绝时, 下次记录时重试</li>
+ * </ul>
+ */
+public final class ActivityTracker {
+    private volatile boolean  active = true;
+    /**
+     * 被移除后设置, 再次记录时重新注册
+     */
+    private volatile Runnable revive;
+    /**
+     * 连续没有被更新的轮数, 只有清理任务访问
+     */
+    private int               idleRounds;
+
+    /**
+     * mark the meter as updated
+     */
+    public void touch() {
+        if (!active) {
+            active = true;
+            runRevive();
+        }
+    }
+
+    /**
+     * 清除标记
+     *
+     * @return 连续没有被更新的轮数
+     */
+    int sweep() {
+        if (active) {
+            active = false;
+            idleRounds = 0;
+        } else {
+            idleRounds++;
+        }
+        return idleRounds;
+    }
+
+    /**
+     * meter 已从 registry 移除
+     *
+     * @param revive 重新注册
+     */
+    void expired(Runnable revive) {
+        this.revive = revive;
+        // 移除的同时被记录了, touch 可能没有看到 revive, 由这里重新注册
+        if (active) {
+            runRevive();
+        }
+    }
+
+    /**
+     * 重新注册被拒绝, 下次记录时重试
+     *
+     * @param revive 重新注册
+     */
+    void retry(Runnable revive) {
+        synchronized (this) {
+            this.revive = revive;
+        }
+        active = false;
+    }
+
+    /**
+     * meter 已经通过 registry 的获取重新注册, 不需要再由记录触发
+     */
+    void revived() {
+        synchronized (this) {
+            revive = null;
+        }
+        active = true;
+    }
+
+    private void runRevive() {
+        if (revive == null) {
+            return;
+        }
+        Runnable r;
+        synchronized (this) {
+            r = revive;
+            revive = null;
+        }
+        if (r != null) {
+            r.run();
+        }
+    }
+}
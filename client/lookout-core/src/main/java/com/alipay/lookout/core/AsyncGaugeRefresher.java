@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.common.LookoutConstants;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步 gauge 的刷新线程池, 每个 registry 一个, 第一次注册 {@link AsyncGauge} 时创建.
+ * 刷新开始时在单独的定时线程上安排超时检查, 超时不依赖 poller 下一次读取 gauge.
+ */
+final class AsyncGaugeRefresher {
+    static final int                          QUEUE_CAPACITY = 1024;
+
+    private final Registry                    registry;
+    private final ThreadPoolExecutor          executor;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Counter                     rejected;
+
+    AsyncGaugeRefresher(Registry registry, int threads) {
+        this.registry = registry;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            daemonThreadFactory("lookout-gauge-refresher-"));
+        executor.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1,
+            daemonThreadFactory("lookout-gauge-timeout-"));
+        timer.setKeepAliveTime(60, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+
+        MixinMetric mixin = registry.mixinMetric(registry.createId("lookout.gauge.async.pool")
+            .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+        mixin.gauge("queueSize", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return executor.getQueue().size();
+            }
+        });
+        rejected = mixin.counter("rejected");
+    }
+
+    /**
+     * 每个 gauge(按 name 聚合)的刷新耗时、超时、失败和过期次数
+     */
+    MixinMetric gaugeStats(Id gaugeId) {
+        return registry.mixinMetric(registry.createId("lookout.gauge.async")
+            .withTag("gauge", gaugeId.name())
+            .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.inc();
+            return false;
+        }
+    }
+
+    /**
+     * @return null if the check can not be scheduled
+     */
+    ScheduledFuture<?> scheduleTimeout(Runnable check, long timeoutMillis) {
+        try {
+            return timer.schedule(check, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + next.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
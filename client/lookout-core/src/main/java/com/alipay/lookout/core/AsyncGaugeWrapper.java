@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.api.composite.MixinMetric;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link AsyncGauge} 的包装: 读取时只返回上次缓存的值, 同时在刷新线程池中异步计算下一个值, 不阻塞 poller 线程.
+ * <ul>
+ * <li>同一时刻最多一个刷新任务, 开始执行后超过 timeout 的刷新会被中断并计入 timeouts, 不依赖下一次读取</li>
+ * <li>缓存的值超过 staleness 限制后不再上报(measure 结果中没有 measurement), 并计入 stale</li>
+ * </ul>
+ */
+public final class AsyncGaugeWrapper<T extends Number> implements Gauge<T>, VisitableMetric {
+    private static final int                   QUEUED      = 0;
+    private static final int                   RUNNING     = 1;
+    private static final int                   TIMED_OUT   = 2;
+    private static final int                   DONE        = 3;
+
+    private final Id                           id;
+    private final AsyncGauge<T>                gauge;
+    private final Clock                        clock;
+    private final AsyncGaugeRefresher          refresher;
+
+    private final Timer                        refreshTime;
+    private final Counter                      timeouts;
+    private final Counter                      failures;
+    private final Counter                      stale;
+
+    private volatile T                         cached;
+    /**
+     * wall time of the cached value
+     */
+    private volatile long                      cachedTime;
+    private final AtomicReference<RefreshTask> inflight    = new AtomicReference<RefreshTask>();
+
+    AsyncGaugeWrapper(Id id, AsyncGauge<T> gauge, Clock clock, AsyncGaugeRefresher refresher) {
+        this.id = id;
+        this.gauge = gauge;
+        this.clock = clock;
+        this.refresher = refresher;
+        MixinMetric stats = refresher.gaugeStats(id);
+        refreshTime = stats.timer("refreshTime");
+        timeouts = stats.counter("timeouts");
+        failures = stats.counter("failures");
+        stale = stats.counter("stale");
+    }
+
+    public Gauge getOriginalOne() {
+        return gauge.getDelegate();
+    }
+
+    @Override
+    public Indicator measure() {
+        T value = freshValue();
+        refresh();
+        if (value == null) {
+            return new Indicator(clock.wallTime(), id);
+        }
+        return new Indicator(clock.wallTime(), id, value.doubleValue());
+    }
+
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        long timestamp = clock.wallTime();
+        T value = freshValue();
+        refresh();
+        if (value != null) {
+            visitor.visit(Measurement.EMPTY_STR, value.doubleValue());
+        }
+        return timestamp;
+    }
+
+    @Override
+    public Id id() {
+        return id;
+    }
+
+    /**
+     * @return the last cached value, may be stale, or null if never refreshed
+     */
+    @Override
+    public T value() {
+        T value = cached;
+        refresh();
+        return value;
+    }
+
+    private T freshValue() {
+        T value = cached;
+        if (value != null && clock.wallTime() - cachedTime > gauge.getStaleMillis()) {
+            stale.inc();
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * 如果没有正在进行的刷新则提交一个; 否则检查正在进行的刷新是否超时(定时检查无法安排时的兜底)
+     */
+    void refresh() {
+        RefreshTask current = inflight.get();
+        if (current != null) {
+            current.checkTimeout();
+            return;
+        }
+        RefreshTask newTask = new RefreshTask();
+        if (inflight.compareAndSet(null, newTask) && !refresher.execute(newTask)) {
+            inflight.compareAndSet(newTask, null);
+        }
+    }
+
+    /**
+     * state 和 runner 的修改都持有 task 的锁, 保证中断只会发给仍在执行这个 task 的线程
+     */
+    private final class RefreshTask implements Runnable {
+        private volatile int   state        = QUEUED;
+        private Thread         runner;
+        /**
+         * 开始执行的时间, 超时从这里算起, 排队的时间不计入
+         */
+        private long           startTime;
+        private final Runnable timeoutCheck = new Runnable() {
+                                                @Override
+                                                public void run() {
+                                                    checkTimeout();
+                                                }
+                                            };
+
+        void checkTimeout() {
+            if (state != RUNNING) {
+                return;
+            }
+            synchronized (this) {
+                if (state != RUNNING
+                    || System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(gauge
+                        .getTimeoutMillis())) {
+                    return;
+                }
+                state = TIMED_OUT;
+                timeouts.inc();
+                // 运行中的刷新被中断, 等 delegate 真正返回后才允许下一次刷新, 避免慢 gauge 占满线程池
+                runner.interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            long start;
+            synchronized (this) {
+                runner = Thread.currentThread();
+                start = startTime = System.nanoTime();
+                state = RUNNING;
+            }
+            ScheduledFuture<?> check = refresher.scheduleTimeout(timeoutCheck,
+                gauge.getTimeoutMillis());
+            try {
+                T value = gauge.getDelegate().value();
+                if (value != null) {
+                    cached = value;
+                    cachedTime = clock.wallTime();
+                }
+            } catch (Throwable e) {
+                failures.inc();
+            } finally {
+                if (check != null) {
+                    check.cancel(false);
+                }
+                synchronized (this) {
+                    state = DONE;
+                    runner = null;
+                }
+                refreshTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                // 清除可能残留的超时中断, 不影响线程池的下一个任务
+                Thread.interrupted();
+                inflight.compareAndSet(this, null);
+            }
+        }
+    }
+}
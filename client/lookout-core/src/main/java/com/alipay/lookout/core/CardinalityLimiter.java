@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.common.LookoutConstants;
+import com.alipay.lookout.common.log.LookoutLoggerFactory;
+import com.alipay.lookout.common.sketch.LinearCounter;
+import org.slf4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按 metric name 限制 series 数量, 防止某个 metric 的 tag(如 userId)爆炸后占满全局的 metric 数量上限:
+ * <ul>
+ * <li>每个 tag key 最多接受 maxValues 个不同的 value, 之后新的 value 替换为 __overflow__</li>
+ * <li>每个 name 的 series 数超过限制后, 新的 tag 组合合并到只带 priority 和 __overflow__ tag 的一个 series</li>
+ * </ul>
+ * 只在 registry 中不存在该 id 时检查(O(1)), 已有的 series 不受影响; 占用的内存受上述限制约束.
+ * tag value 按引用它的 series 计数, series 被删除或回收后释放.
+ * 被合并的 series 数和用 {@link LinearCounter} 近似统计的真实 series 数记录在 lookout.cardinality{metric=name},
+ * 这些统计本身不受限制.
+ */
+final class CardinalityLimiter {
+    private static final Logger                         logger         = LookoutLoggerFactory
+                                                                           .getLogger(CardinalityLimiter.class);
+    /**
+     * 近似统计每个 name 被请求的 series 数所用的 bitmap 位数(1KB), 几千以内误差在几个百分点
+     */
+    static final int                                    DEMAND_BITS    = 8192;
+    /**
+     * 每个 name 最多缓存多少个被合并的 id 到 overflow id 的映射, 超过后不再缓存, 每次都重新检查并计入 rejected
+     */
+    static final int                                    MAX_OVERFLOWED = 4096;
+    static final String                                 STATS_NAME     = "lookout.cardinality";
+
+    private final AbstractRegistry                      registry;
+    private final ConcurrentHashMap<String, NameBudget> budgets        = new ConcurrentHashMap<String, NameBudget>();
+
+    CardinalityLimiter(AbstractRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @param id        a new id
+     * @param maxSeries max series of the name, no limit if not positive
+     * @param maxValues max distinct values of each tag key of the name, no limit if not positive
+     * @return the id itself if admitted, otherwise the overflow id to record into
+     */
+    Id admit(Id id, int maxSeries, int maxValues) {
+        if ((maxSeries <= 0 && maxValues <= 0) || STATS_NAME.equals(id.name())
+            || isOverflow(id)) {
+            return id;
+        }
+        NameBudget budget = budget(id.name());
+        Id cached = budget.overflowed(id, maxSeries, maxValues);
+        if (cached != null) {
+            return cached;
+        }
+        budget.demand(id);
+        Id admitted = id;
+        if (maxValues > 0) {
+            admitted = budget.limitTagValues(id, maxValues);
+        }
+        if (maxSeries > 0 && budget.series.get() >= maxSeries) {
+            admitted = overflowId(id);
+        }
+        if (admitted != id) {
+            budget.reject(id, admitted);
+        }
+        return admitted;
+    }
+
+    void onAdded(Id id) {
+        if (!isOverflow(id)) {
+            NameBudget budget = budget(id.name());
+            budget.series.incrementAndGet();
+            budget.retainTagValues(id);
+        }
+    }
+
+    void onRemoved(Id id) {
+        NameBudget budget = budgets.get(id.name());
+        if (budget != null && !isOverflow(id)) {
+            budget.series.decrementAndGet();
+            budget.releaseTagValues(id);
+            // 有了空余, 之前被合并的 id 可能可以接受了
+            budget.clearOverflowed();
+        }
+    }
+
+    int seriesCount(String name) {
+        NameBudget budget = budgets.get(name);
+        return budget == null ? 0 : budget.series.get();
+    }
+
+    int tagValueCount(String name, String key) {
+        NameBudget budget = budgets.get(name);
+        if (budget == null) {
+            return 0;
+        }
+        Map<String, AtomicInteger> values = budget.tagValues.get(key);
+        return values == null ? 0 : values.size();
+    }
+
+    private NameBudget budget(String name) {
+        NameBudget budget = budgets.get(name);
+        if (budget == null) {
+            budget = new NameBudget(name);
+            NameBudget old = budgets.putIfAbsent(name, budget);
+            if (old != null) {
+                budget = old;
+            }
+        }
+        return budget;
+    }
+
+    private static boolean isOverflow(Id id) {
+        for (Tag tag : id.tags()) {
+            if (LookoutConstants.OVERFLOW.equals(tag.key())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * priority 不计入 tag value 的限制, 替换后的 __overflow__ value 也不占用名额
+     */
+    private static boolean isLimitedTag(Tag tag) {
+        return !LookoutConstants.TAG_PRIORITY_KEY.equals(tag.key())
+               && !LookoutConstants.OVERFLOW.equals(tag.value());
+    }
+
+    private Id overflowId(Id id) {
+        Id overflow = registry.createId(id.name());
+        for (Tag tag : id.tags()) {
+            // 保留 priority, 否则会被上报到错误的 step
+            if (LookoutConstants.TAG_PRIORITY_KEY.equals(tag.key())) {
+                overflow = overflow.withTag(tag);
+            }
+        }
+        return overflow.withTag(LookoutConstants.OVERFLOW, "true");
+    }
+
+    private final class NameBudget {
+        private final String                                                              name;
+        private final AtomicInteger                                                       series     = new AtomicInteger();
+        /**
+         * 每个 tag key 已接受的 value 及引用它的 series 数, 最多 maxValues 个
+         */
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String, AtomicInteger>> tagValues  = new ConcurrentHashMap<String, ConcurrentHashMap<String, AtomicInteger>>();
+        /**
+         * 被合并的 id 到 overflow id, 同一个 id 再次被请求时不用重复检查和分配, 也不重复计入 rejected
+         */
+        private final ConcurrentHashMap<Id, Id>                                           overflowed = new ConcurrentHashMap<Id, Id>();
+        private volatile long                                                             limits;
+        private final AtomicBoolean                                                       warned     = new AtomicBoolean();
+        private volatile LinearCounter                                                    demanded;
+        private volatile Counter                                                          rejected;
+
+        NameBudget(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return 缓存的 overflow id, 限制调整后缓存失效
+         */
+        Id overflowed(Id id, int maxSeries, int maxValues) {
+            long current = ((long) maxSeries << 32) | (maxValues & 0xFFFFFFFFL);
+            if (limits != current) {
+                limits = current;
+                overflowed.clear();
+                return null;
+            }
+            return overflowed.get(id);
+        }
+
+        void clearOverflowed() {
+            if (!overflowed.isEmpty()) {
+                overflowed.clear();
+            }
+        }
+
+        /**
+         * 近似统计该 name 下被请求过的不同 series 数(包括被合并的), 反映真实的基数
+         */
+        void demand(Id id) {
+            LinearCounter counter = demanded;
+            if (counter == null) {
+                synchronized (this) {
+                    counter = demanded;
+                    if (counter == null) {
+                        counter = new LinearCounter(DEMAND_BITS);
+                        demanded = counter;
+                    }
+                }
+            }
+            counter.add(id.hashCode());
+        }
+
+        /**
+         * 并发注册时可能略微超过 maxValues, 只用于限制数量级
+         */
+        Id limitTagValues(Id id, int maxValues) {
+            Map<String, String> replaced = null;
+            for (Tag tag : id.tags()) {
+                if (!isLimitedTag(tag)) {
+                    continue;
+                }
+                Map<String, AtomicInteger> values = tagValues.get(tag.key());
+                if (values == null || values.size() < maxValues
+                    || values.containsKey(tag.value())) {
+                    continue;
+                }
+                if (replaced == null) {
+                    replaced = new LinkedHashMap<String, String>();
+                }
+                replaced.put(tag.key(), LookoutConstants.OVERFLOW);
+            }
+            return replaced == null ? id : id.withTags(replaced);
+        }
+
+        void retainTagValues(Id id) {
+            for (Tag tag : id.tags()) {
+                if (!isLimitedTag(tag)) {
+                    continue;
+                }
+                ConcurrentHashMap<String, AtomicInteger> values = tagValues.get(tag.key());
+                if (values == null) {
+                    values = new ConcurrentHashMap<String, AtomicInteger>();
+                    ConcurrentHashMap<String, AtomicInteger> old = tagValues.putIfAbsent(
+                        tag.key(), values);
+                    if (old != null) {
+                        values = old;
+                    }
+                }
+                while (true) {
+                    AtomicInteger refs = values.get(tag.value());
+                    if (refs == null) {
+                        if (values.putIfAbsent(tag.value(), new AtomicInteger(1)) == null) {
+                            break;
+                        }
+                        continue;
+                    }
+                    int n = refs.get();
+                    // 为 0 的计数正在被移除, 重新放入一个
+                    if (n > 0 && refs.compareAndSet(n, n + 1)) {
+                        break;
+                    }
+                    if (n <= 0) {
+                        values.remove(tag.value(), refs);
+                    }
+                }
+            }
+        }
+
+        void releaseTagValues(Id id) {
+            for (Tag tag : id.tags()) {
+                if (!isLimitedTag(tag)) {
+                    continue;
+                }
+                ConcurrentHashMap<String, AtomicInteger> values = tagValues.get(tag.key());
+                AtomicInteger refs = values == null ? null : values.get(tag.value());
+                if (refs != null && refs.decrementAndGet() <= 0) {
+                    values.remove(tag.value(), refs);
+                }
+            }
+        }
+
+        void reject(Id id, Id overflow) {
+            if (overflowed.size() < MAX_OVERFLOWED && overflowed.putIfAbsent(id, overflow) != null) {
+                // 并发请求同一个 id, 已经计入
+                return;
+            }
+            if (warned.compareAndSet(false, true)) {
+                logger.warn("metric {} exceeds its cardinality limit, new series like {} are "
+                            + "recorded into {}", name, id, overflow);
+            }
+            Counter counter = rejected;
+            if (counter == null) {
+                MixinMetric mixin = registry.mixinMetric(registry.createId(STATS_NAME)
+                    .withTag("metric", name)
+                    .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+                mixin.gauge("estimatedSeries", new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        LinearCounter estimator = demanded;
+                        return estimator == null ? 0L : Math.round(estimator.estimate());
+                    }
+                });
+                counter = mixin.counter("rejected");
+                rejected = counter;
+            }
+            counter.inc();
+        }
+    }
+}
@@ -26,11 +26,12 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Counter implementation for the default registry.
  */
-final class DefaultCounter implements Counter {
+final class DefaultCounter implements Counter, Expirable {
 
-    private final Clock      clock;
-    private final Id         id;
-    private final AtomicLong count;
+    private final Clock           clock;
+    private final Id              id;
+    private final AtomicLong      count;
+    private final ActivityTracker activity = new ActivityTracker();
 
     DefaultCounter(Clock clock, Id id) {
         this.clock = clock;
@@ -43,6 +44,11 @@ final class DefaultCounter implements Counter {
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public Indicator<Long> measure() {
         long now = clock.wallTime();
@@ -52,11 +58,13 @@ final class DefaultCounter implements Counter {
 
     @Override
     public void inc() {
+        activity.touch();
         count.incrementAndGet();
     }
 
     @Override
     public void inc(long amount) {
+        activity.touch();
         count.addAndGet(amount);
     }
 
@@ -67,6 +75,7 @@ final class DefaultCounter implements Counter {
 
     @Override
     public void dec(long n) {
+        activity.touch();
         count.addAndGet(-n);
     }
 
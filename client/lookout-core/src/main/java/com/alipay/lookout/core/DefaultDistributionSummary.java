@@ -23,12 +23,13 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Distribution summary implementation for the default registry.
  */
-final class DefaultDistributionSummary implements DistributionSummary {
+final class DefaultDistributionSummary implements DistributionSummary, Expirable {
 
-    private final Clock      clock;
-    private final Id         id;
-    private final AtomicLong count;
-    private final AtomicLong totalAmount;
+    private final Clock           clock;
+    private final Id              id;
+    private final AtomicLong      count;
+    private final AtomicLong      totalAmount;
+    private final ActivityTracker activity    = new ActivityTracker();
 
     DefaultDistributionSummary(Clock clock, Id id) {
         this.clock = clock;
@@ -42,8 +43,14 @@ final class DefaultDistributionSummary implements DistributionSummary {
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public void record(long amount) {
+        activity.touch();
         if (amount >= 0) {
             totalAmount.addAndGet(amount);
             count.incrementAndGet();
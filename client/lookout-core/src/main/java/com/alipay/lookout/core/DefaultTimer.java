@@ -27,11 +27,12 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Timer implementation for the default registry.
  */
-final class DefaultTimer extends AbstractTimer {
+final class DefaultTimer extends AbstractTimer implements Expirable {
 
-    private final Id         id;
-    private final AtomicLong count;
-    private final AtomicLong totalTime;
+    private final Id              id;
+    private final AtomicLong      count;
+    private final AtomicLong      totalTime;
+    private final ActivityTracker activity  = new ActivityTracker();
 
     DefaultTimer(Clock clock, Id id) {
         super(clock);
@@ -45,8 +46,14 @@ final class DefaultTimer extends AbstractTimer {
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public void record(long amount, TimeUnit unit) {
+        activity.touch();
         if (amount < 0)
             return;
         long millisec = TimeUnit.MILLISECONDS.convert(amount, unit);
@@ -21,7 +21,7 @@ import com.alipay.lookout.api.*;
 /**
  * Created by kevin.luy@alipay.com on 2017/2/20.
  */
-public final class GaugeWrapper<T extends Number> implements Gauge<T>, Metric {
+public final class GaugeWrapper<T extends Number> implements Gauge<T>, VisitableMetric {
     private Gauge<T> gauge;
     private Clock    clock;
     private Id       id;
@@ -41,6 +41,13 @@ public final class GaugeWrapper<T extends Number> implements Gauge<T>, Metric {
         return new Indicator(clock.wallTime(), id(), value().doubleValue());
     }
 
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        long timestamp = clock.wallTime();
+        visitor.visit(Measurement.EMPTY_STR, value().doubleValue());
+        return timestamp;
+    }
+
     @Override
     public Id id() {
         return id;
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Metric;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回收长时间没有更新的 {@link Expirable} meter.
+ * <p>
+ * 每个 step(NORMAL priority)为一轮, 每轮遍历一次 registry 并清除 meter 的活跃标记, 连续
+ * lookout.meter.expire.idle.steps 轮没有被更新的 meter 从 registry 中移除并通知 listener;
+ * 每轮开始时清除调用方已经不再引用的被回收 meter.
+ * 每轮的遍历分成多批, 每秒一批, 在后台线程中进行; ConcurrentHashMap 的遍历不加锁, 不影响记录和 poll.
+ * 定时任务只弱引用 sweeper, registry 被 {@link AbstractRegistry#destroy()} 或不再被引用后任务被取消.
+ */
+final class IdleMeterSweeper implements Runnable {
+    static final long                           TICK_MILLIS         = 1000;
+    static final int                            MIN_BATCH           = 1000;
+    static final long                           DEFAULT_STEP_MILLIS = 60000;
+    static final int                            MIN_IDLE_STEPS      = 2;
+
+    private static ScheduledExecutorService     executor;
+
+    private final AbstractRegistry              registry;
+    private final ConcurrentHashMap<Id, Metric> metrics;
+    private Iterator<Map.Entry<Id, Metric>>     round;
+    private ScheduledFuture<?>                  future;
+    private long                                roundStart;
+    private int                                 batch;
+
+    IdleMeterSweeper(AbstractRegistry registry, ConcurrentHashMap<Id, Metric> metrics) {
+        this.registry = registry;
+        this.metrics = metrics;
+    }
+
+    synchronized void start() {
+        SweepTask task = new SweepTask(this);
+        future = scheduler().scheduleWithFixedDelay(task, TICK_MILLIS, TICK_MILLIS,
+            TimeUnit.MILLISECONDS);
+        task.future = future;
+    }
+
+    synchronized void stop() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    synchronized boolean isStopped() {
+        return future == null || future.isCancelled();
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "lookout-idle-meter-sweeper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public void run() {
+        try {
+            sweep(System.currentTimeMillis());
+        } catch (Throwable e) {
+            registry.logger.warn("fail to sweep idle meters", e);
+        }
+    }
+
+    void sweep(long now) {
+        int idleSteps = registry.idleStepsBeforeExpiry();
+        if (idleSteps <= 0) {
+            round = null;
+            return;
+        }
+        if (round == null) {
+            long step = registry.normalStepMillis();
+            if (now - roundStart < step) {
+                return;
+            }
+            roundStart = now;
+            registry.purgeExpired();
+            round = metrics.entrySet().iterator();
+            // 保证一轮在一个 step 内遍历完
+            batch = (int) Math.max(MIN_BATCH, metrics.size() * TICK_MILLIS / step + 1);
+        }
+        for (int i = 0; i < batch && round.hasNext(); i++) {
+            Map.Entry<Id, Metric> entry = round.next();
+            Metric metric = entry.getValue();
+            if (metric instanceof Expirable
+                && ((Expirable) metric).activity().sweep() >= idleSteps) {
+                registry.expire(entry.getKey(), (Expirable) metric);
+            }
+        }
+        if (!round.hasNext()) {
+            round = null;
+        }
+    }
+
+    /**
+     * 只弱引用 sweeper, 不阻止 registry 被回收; sweeper 被回收后取消自己
+     */
+    private static final class SweepTask implements Runnable {
+        private final WeakReference<IdleMeterSweeper> sweeper;
+        volatile ScheduledFuture<?>                   future;
+
+        SweepTask(IdleMeterSweeper sweeper) {
+            this.sweeper = new WeakReference<IdleMeterSweeper>(sweeper);
+        }
+
+        @Override
+        public void run() {
+            IdleMeterSweeper s = sweeper.get();
+            if (s != null) {
+                s.run();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
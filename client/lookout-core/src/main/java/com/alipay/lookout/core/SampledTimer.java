@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采样的 timer: 只有被 {@link Sampler} 选中的事件才计时并记录到 delegate, 其余事件只累加一个计数器.
+ * <p>
+ * 计数器与 delegate 由同一个 registry 创建, 两者的 step 语义一致. measure 时用精确计数与采样数之比
+ * 放大 totalTime 和 bucket 计数, elapPerExec/max/sketch 是采样事件的统计量, 不需要放大; 同时以
+ * {@link Statistic#sampleRate} 上报实际的采样率.
+ */
+final class SampledTimer implements Timer, ResettableStep, MetricIterable, Expirable {
+
+    private final Id              id;
+    private final Timer           delegate;
+    private final Counter         count;
+    private final Counter         sampled;
+    private final Sampler         sampler;
+    private final Clock           clock;
+    private final ActivityTracker activity = new ActivityTracker();
+
+    SampledTimer(Id id, Timer delegate, Counter count, Counter sampled, Sampler sampler,
+                 Clock clock) {
+        this.id = id;
+        this.delegate = delegate;
+        this.count = count;
+        this.sampled = sampled;
+        this.sampler = sampler;
+        this.clock = clock;
+    }
+
+    @Override
+    public Id id() {
+        return id;
+    }
+
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
+    @Override
+    public void record(long amount, TimeUnit unit) {
+        activity.touch();
+        count.inc();
+        if (sampler.sample()) {
+            sampled.inc();
+            delegate.record(amount, unit);
+        }
+    }
+
+    @Override
+    public <T> T record(Callable<T> callable) throws Exception {
+        activity.touch();
+        count.inc();
+        if (!sampler.sample()) {
+            return callable.call();
+        }
+        sampled.inc();
+        long start = clock.monotonicTime();
+        try {
+            return callable.call();
+        } finally {
+            delegate.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void record(Runnable runnable) {
+        activity.touch();
+        count.inc();
+        if (!sampler.sample()) {
+            runnable.run();
+            return;
+        }
+        sampled.inc();
+        long start = clock.monotonicTime();
+        try {
+            runnable.run();
+        } finally {
+            delegate.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void buckets(long[] buckets) {
+        delegate.buckets(buckets);
+    }
+
+    @Override
+    public long count() {
+        return count.count();
+    }
+
+    @Override
+    public long totalTime() {
+        return Math.round(delegate.totalTime() * scale(count.count(), sampled.count()));
+    }
+
+    @Override
+    public void setStep(long step) {
+        if (delegate instanceof ResettableStep) {
+            ((ResettableStep) delegate).setStep(step);
+        }
+        if (count instanceof ResettableStep) {
+            ((ResettableStep) count).setStep(step);
+        }
+        if (sampled instanceof ResettableStep) {
+            ((ResettableStep) sampled).setStep(step);
+        }
+    }
+
+    @Override
+    public Indicator measure() {
+        long exact = count.count();
+        long sampledCount = sampled.count();
+        double scale = scale(exact, sampledCount);
+        Indicator<?> source = delegate.measure();
+
+        Indicator indicator = new Indicator(source.getTimestamp(), id);
+        for (Measurement<?> m : source.measurements()) {
+            String name = m.name();
+            if (Statistic.count.name().equals(name)) {
+                indicator.addMeasurement(name, exact);
+            } else if (Statistic.totalTime.name().equals(name)) {
+                indicator.addMeasurement(name, scale(m.value(), scale));
+            } else {
+                indicator.addMeasurement(m);
+            }
+        }
+        indicator.addMeasurement(Statistic.sampleRate.name(),
+            exact <= 0 ? sampler.rate() : (double) sampledCount / exact);
+        return indicator;
+    }
+
+    @Override
+    public Iterator<Metric> iterator() {
+        if (!(delegate instanceof MetricIterable)) {
+            return null;
+        }
+        final Iterator<Metric> buckets = ((MetricIterable) delegate).iterator();
+        if (buckets == null) {
+            return null;
+        }
+        final double scale = scale(count.count(), sampled.count());
+        return new Iterator<Metric>() {
+            @Override
+            public boolean hasNext() {
+                return buckets.hasNext();
+            }
+
+            @Override
+            public Metric next() {
+                return new ScaledMetric(buckets.next(), scale);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return 每个采样事件代表的事件数, 本 step 没有采样到事件时为 0
+     */
+    static double scale(long exact, long sampled) {
+        return sampled <= 0 ? 0 : (double) exact / sampled;
+    }
+
+    static Object scale(Object value, double scale) {
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue() * scale;
+        }
+        if (value instanceof Number) {
+            return Math.round(((Number) value).longValue() * scale);
+        }
+        return value;
+    }
+
+    /**
+     * 按采样率放大的 bucket 计数
+     */
+    static final class ScaledMetric implements Metric {
+        private final Metric metric;
+        private final double scale;
+
+        ScaledMetric(Metric metric, double scale) {
+            this.metric = metric;
+            this.scale = scale;
+        }
+
+        @Override
+        public Id id() {
+            return metric.id();
+        }
+
+        @Override
+        public Indicator measure() {
+            Indicator<?> source = metric.measure();
+            Indicator indicator = new Indicator(source.getTimestamp(), source.id());
+            for (Measurement<?> m : source.measurements()) {
+                indicator.addMeasurement(m.name(), scale(m.value(), scale));
+            }
+            return indicator;
+        }
+    }
+}
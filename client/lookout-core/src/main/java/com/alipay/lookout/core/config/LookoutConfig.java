@@ -34,6 +34,18 @@ public final class LookoutConfig extends MapConfiguration implements MetricConfi
     public static final String                      LOOKOUT_AGENT_HOST_ADDRESS              = "lookout.agent.host.address";
     public static final String                      LOOKOUT_AGENT_TEST_URL                  = "lookout.agent.host.test.url";
     public static final String                      LOOKOUT_MAX_METRICS_NUMBER              = "lookout.max.metrics.number";
+    /**
+     * 同一个 metric name 下最多的 series(tag 组合)数, 超过后新的 tag 组合合并到带 __overflow__ tag 的一个 series, 默认 0 表示不限制
+     */
+    public static final String                      LOOKOUT_MAX_SERIES_PER_NAME             = "lookout.max.series.per.name";
+    /**
+     * 同一个 metric name 下每个 tag key 最多的(近似)不同 value 数, 超过后新的 value 替换为 __overflow__, 默认 0 表示不限制
+     */
+    public static final String                      LOOKOUT_MAX_VALUES_PER_TAG_KEY          = "lookout.max.values.per.tag.key";
+    /**
+     * 连续多少个 step(NORMAL priority)没有更新的 counter/timer/distribution summary 从 registry 中回收, 适用于 Id 带有短期 tag 的 meter, 默认 0 表示不回收, 大于 0 时至少为 2
+     */
+    public static final String                      LOOKOUT_METER_EXPIRE_IDLE_STEPS         = "lookout.meter.expire.idle.steps";
     public static final String                      LOOKOUT_REPORT_BATCH_SIZE               = "lookout.report.batch.size";
     public static final String                      LOOKOUT_REPORT_COMPRESSION_THRESHOLD    = "lookout.report.compression.threshhold";
     public static final String                      LOOKOUT_AUTOPOLL_INFO_METRIC_IGNORE     = "lookout.autopoll.info.ignore";
@@ -46,8 +58,123 @@ public final class LookoutConfig extends MapConfiguration implements MetricConfi
     public static final String                      LOOKOUT_EXPORTER_IDLE_SECONDS           = "lookout.exporter.idle.seconds";
     public static final String                      LOOKOUT_EXPORTER_ENABLE                 = "lookout.exporter.enable";
     public static final String                      LOOKOUT_EXPORTER_ACCESS_TOKEN           = "lookout.exporter.access.token";
+    /**
+     * exporter 处理拉取请求的线程数
+     */
+    public static final String                      LOOKOUT_EXPORTER_THREADS                = "lookout.exporter.threads";
 
     public static final String                      LOOKOUT_PROMETHEUS_EXPORTER_SERVER_PORT = "lookout.prometheus.exporter.server.port";
+    /**
+     * 使用分段(striped)的 cell 代替单个 AtomicLong 记录 step 数据, 适合被大量线程并发更新的 metric
+     */
+    public static final String                      LOOKOUT_STEP_STRIPED_ENABLE             = "lookout.step.striped.enable";
+    /**
+     * Timer 的每个记录线程写自己的统计数据, 采集时通过相位切换交换缓冲并合并, 适合被大量线程高频记录的 timer
+     */
+    public static final String                      LOOKOUT_TIMER_PER_THREAD_ENABLE         = "lookout.timer.per.thread.enable";
+    /**
+     * bucket 统计所用 log-linear histogram 的精度(bit 数, 1~16), 相对误差不超过 1/2^(bits-1)
+     */
+    public static final String                      LOOKOUT_BUCKET_PRECISION_BITS           = "lookout.bucket.precision.bits";
+    /**
+     * Timer 和 DistributionSummary 额外上报可合并的 quantile sketch(statistic 为 sketch), 用于服务端跨实例计算分位数
+     */
+    public static final String                      LOOKOUT_SKETCH_ENABLE                   = "lookout.sketch.enable";
+    /**
+     * quantile sketch 的精度(bit 数, 1~16), 分位数相对误差不超过 1/2^bits, 默认 6
+     */
+    public static final String                      LOOKOUT_SKETCH_PRECISION_BITS           = "lookout.sketch.precision.bits";
+    /**
+     * step 类型 metric 使用后台线程定时刷新的粗粒度时钟判断 step 切换, 记录数据时不再调用 System.currentTimeMillis
+     */
+    public static final String                      LOOKOUT_STEP_COARSE_CLOCK_ENABLE        = "lookout.step.coarse.clock.enable";
+    /**
+     * 粗粒度时钟的精度(毫秒), step 的切换最多延后这么久, 默认 10
+     */
+    public static final String                      LOOKOUT_STEP_COARSE_CLOCK_RESOLUTION    = "lookout.step.coarse.clock.resolution.millis";
+    /**
+     * poll 时复用上一次的 LookoutMeasurement 对象, 开启后 MetricObserver 不能在 update 返回后继续持有 measures
+     */
+    public static final String                      LOOKOUT_POLL_RECYCLE_ENABLE             = "lookout.poll.recycle.enable";
+    /**
+     * 一次 poll 的 metric 数量达到该值时, 分片交给 worker 线程池并行 measure, 默认 5000, 小于等于 0 表示不并行
+     */
+    public static final String                      LOOKOUT_POLL_PARALLEL_THRESHOLD         = "lookout.poll.parallel.threshold";
+    /**
+     * 并行 measure 的 worker 线程数(所有 priority 共享, poll 线程自身也参与), 默认 2
+     */
+    public static final String                      LOOKOUT_POLL_PARALLEL_THREADS           = "lookout.poll.parallel.threads";
+    /**
+     * 一次 poll 的截止时间占 step 的百分比, 默认 80. 超过截止时间后剩余的 metric 本次不再 measure, 保证下一次 poll 准时
+     */
+    public static final String                      LOOKOUT_POLL_DEADLINE_PERCENT           = "lookout.poll.deadline.percent";
+    /**
+     * 采集调度使用 hashed timing wheel 代替 DelayQueue, 所有 priority 共享一个 tick 线程, 每次执行后按 step 边界校正漂移
+     */
+    public static final String                      LOOKOUT_SCHEDULER_TIMING_WHEEL_ENABLE   = "lookout.scheduler.timing.wheel.enable";
+    /**
+     * timing wheel 的 tick 间隔(毫秒), 任务最多延后一个 tick 执行, 默认 10
+     */
+    public static final String                      LOOKOUT_SCHEDULER_TICK_MILLIS           = "lookout.scheduler.tick.millis";
+    /**
+     * AsyncGauge 后台刷新线程数, 默认 1
+     */
+    public static final String                      LOOKOUT_GAUGE_ASYNC_THREADS             = "lookout.gauge.async.threads";
+    /**
+     * 稀疏上报: 跳过值没有变化的 gauge 和 step 内没有记录的 counter/timer 等 metric
+     */
+    public static final String                      LOOKOUT_REPORT_SPARSE_ENABLE            = "lookout.report.sparse.enable";
+    /**
+     * 稀疏上报时, 没有变化的 metric 至少每隔多少秒上报一次, 默认 300
+     */
+    public static final String                      LOOKOUT_REPORT_SPARSE_HEARTBEAT_SECONDS = "lookout.report.sparse.heartbeat.seconds";
+    /**
+     * 压缩上报时使用分块的 framed snappy 格式(Content-Encoding: x-snappy-framed), 需要 gateway 支持
+     */
+    public static final String                      LOOKOUT_REPORT_SNAPPY_FRAMED_ENABLE     = "lookout.report.snappy.framed.enable";
+    /**
+     * 允许使用二进制格式上报, 仅当 gateway 在响应头 Accept-Post 中声明支持时才会使用, 否则仍使用 json 文本格式
+     */
+    public static final String                      LOOKOUT_REPORT_BINARY_ENABLE            = "lookout.report.binary.enable";
+    /**
+     * 在独立的线程池中异步发送上报数据, poll 线程只负责编码, 不再等待 gateway 响应
+     */
+    public static final String                      LOOKOUT_REPORT_ASYNC_ENABLE             = "lookout.report.async.enable";
+    /**
+     * 异步上报时同时在途的批次数上限, 默认 4
+     */
+    public static final String                      LOOKOUT_REPORT_ASYNC_MAX_INFLIGHT       = "lookout.report.async.max.inflight";
+    /**
+     * 异步上报窗口已满时 poll 线程最多等待的毫秒数, 超时则丢弃该批次, 默认 1000
+     */
+    public static final String                      LOOKOUT_REPORT_ASYNC_WAIT_MILLIS        = "lookout.report.async.wait.millis";
+    /**
+     * 因网络异常发送失败的上报数据暂存到该目录下的内存映射文件中, 找到可用的 gateway 后再重放; 不配置则不暂存
+     */
+    public static final String                      LOOKOUT_REPORT_SPILL_DIR                = "lookout.report.spill.dir";
+    /**
+     * 暂存文件占用的磁盘空间上限(字节), 满了淘汰最老的数据, 默认 32MB
+     */
+    public static final String                      LOOKOUT_REPORT_SPILL_MAX_BYTES          = "lookout.report.spill.max.bytes";
+    /**
+     * 暂存数据的最长保留时间(秒), 超过则不再重放, 默认 1800
+     */
+    public static final String                      LOOKOUT_REPORT_SPILL_MAX_AGE_SECONDS    = "lookout.report.spill.max.age.seconds";
+    /**
+     * common tags 不再合并到每个 measurement, 而是以 Common-Tags header 随每次上报发送一次, 由 gateway 展开;
+     * 需要 gateway 支持, 默认 false
+     */
+    public static final String                      LOOKOUT_REPORT_COMMON_TAGS_HEADER       = "lookout.report.common.tags.header.enable";
+    /**
+     * 所有 exporter 共享每个 step 的 measure 结果(见 MetricRegistry#snapshot), 每个 metric 每个 step
+     * 只 measure 一次, 各 exporter 上报的值一致; 默认 false
+     */
+    public static final String                      LOOKOUT_SNAPSHOT_ENABLE                 = "lookout.snapshot.enable";
+    /**
+     * client 自身开销的监控数据: 每次 poll 的 CPU 时间/分配字节数/metric 数, 各类型 metric 的
+     * measure 耗时, 上报字节数/压缩率/发送耗时; 默认 false
+     */
+    public static final String                      LOOKOUT_SELF_METRICS_ENABLE             = "lookout.self.metrics.enable";
     // default value
     public static final int                         DEFAULT_WEB_SERVER_PORT                 = 8083;
     public static final int                         DEFAULT_HTTP_EXPORTER_PORT              = 19399;
@@ -20,11 +20,12 @@ import com.alipay.lookout.api.Counter;
 import com.alipay.lookout.api.DistributionSummary;
 import com.alipay.lookout.api.Gauge;
 import com.alipay.lookout.api.Id;
-import com.alipay.lookout.api.Indicator;
-import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.MeasurementVisitor;
 import com.alipay.lookout.api.Metric;
-import com.alipay.lookout.api.Tag;
+import com.alipay.lookout.api.MetricSnapshot;
+import com.alipay.lookout.api.TagVisitor;
 import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.api.Utils;
 import com.alipay.lookout.api.composite.MixinMetric;
 import com.alipay.lookout.api.info.Info;
 import com.alipay.lookout.common.Assert;
@@ -40,34 +41,67 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
+ * 一个 metric 在某个时刻的度量数据.
+ * <p>
+ * values 和 tags 保存在可复用的数组中, 通过 {@link #reset(Metric, CommonTagsAccessor)} 可以在多次 poll 之间
+ * 复用同一个对象, 稳定状态下 poll 几乎不产生新对象.
+ *
  * Created by kevin.luy@alipay.com on 2017/2/7.
  */
-public class LookoutMeasurement {
-    public static final String        BRACES_LEFT  = "{";
-    public static final String        BRACES_RIGHT = "}";
-    public static final String        COMMA        = ",";
-    public static final String        QUOTE        = "\"";
-    public static final String        COLON        = ":";
-    static final String               TIME_KEY     = "time";
-    static final String               TAGS_KEY     = "tags";
-    private final Map<String, Object> values       = new LinkedHashMap<String, Object>(2);
-    private final Map<String, Object> metas        = new LinkedHashMap<String, Object>(2);
-    //reference cache
-    private final Map<String, String> tags;
-
-    private final Id                  metricId;
-    private final Date                date;
+public class LookoutMeasurement implements MeasurementVisitor {
+    public static final String BRACES_LEFT  = "{";
+    public static final String BRACES_RIGHT = "}";
+    public static final String COMMA        = ",";
+    public static final String QUOTE        = "\"";
+    public static final String COLON        = ":";
+    static final String        TIME_KEY     = "time";
+    static final String        TAGS_KEY     = "tags";
+    static final String        TYPE_TAG     = "_type_";
+
+    private static final byte  KIND_LONG    = 0;
+    private static final byte  KIND_DOUBLE  = 1;
+    private static final byte  KIND_OBJECT  = 2;
+
+    private Id                 metricId;
+    private long               timestamp;
+
+    // values: 同一下标对应一个 measurement
+    private int                valueCount;
+    private String[]           names        = new String[4];
+    private byte[]             kinds        = new byte[4];
+    private long[]             longs        = new long[4];
+    private double[]           doubles      = new double[4];
+    private Object[]           objects      = new Object[4];
+
+    // tags: k0,v0,k1,v1...
+    private int                tagCount;
+    private String[]           tagKvs       = new String[16];
+
+    // id 的 tag 不重复, 直接追加
+    private final TagVisitor   idTagsWriter = new TagVisitor() {
+                                                @Override
+                                                public void visit(String key, String value) {
+                                                    appendTag(key, value);
+                                                }
+                                            };
+
+    /**
+     * an empty measurement to be filled by {@link #reset(Metric, CommonTagsAccessor)}
+     */
+    public LookoutMeasurement() {
+    }
 
     public LookoutMeasurement(Date date, Id id) {
-        this.date = date;
-        metas.put(TIME_KEY, date);
-        tags = new HashMap<String, String>();
-        metas.put(TAGS_KEY, tags);
+        this.timestamp = date.getTime();
         this.metricId = id;
     }
 
     public Date getDate() {
-        return date;
+        return new Date(timestamp);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
     }
 
     public Id metricId() {
@@ -75,132 +109,332 @@ public class LookoutMeasurement {
     }
 
     public void addTag(String tagName, String tagValue) {
-        tags.put(tagName, tagValue);
+        int i = indexOfTag(tagName);
+        if (i >= 0) {
+            tagKvs[i + 1] = tagValue;
+            return;
+        }
+        appendTag(tagName, tagValue);
+    }
+
+    private void appendTag(String tagName, String tagValue) {
+        int i = tagCount * 2;
+        if (i + 2 > tagKvs.length) {
+            String[] newKvs = new String[tagKvs.length * 2];
+            System.arraycopy(tagKvs, 0, newKvs, 0, i);
+            tagKvs = newKvs;
+        }
+        tagKvs[i] = tagName;
+        tagKvs[i + 1] = tagValue;
+        tagCount++;
+    }
+
+    private int indexOfTag(String key) {
+        for (int i = 0; i < tagCount * 2; i += 2) {
+            if (tagKvs[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public boolean containsTag(String key) {
-        return tags.containsKey(key);
+        return indexOfTag(key) >= 0;
+    }
+
+    /**
+     * @param key tag key
+     * @return tag value, null if not found
+     */
+    public String getTag(String key) {
+        int i = indexOfTag(key);
+        return i >= 0 ? tagKvs[i + 1] : null;
+    }
+
+    /**
+     * @return number of tags
+     */
+    public int tagCount() {
+        return tagCount;
+    }
+
+    /**
+     * @param index tag index, [0, tagCount)
+     * @return tag key
+     */
+    public String tagKey(int index) {
+        return tagKvs[index * 2];
+    }
+
+    /**
+     * @param index tag index, [0, tagCount)
+     * @return tag value
+     */
+    public String tagValue(int index) {
+        return tagKvs[index * 2 + 1];
+    }
+
+    /**
+     * @return number of values
+     */
+    public int valueCount() {
+        return valueCount;
+    }
+
+    /**
+     * visit the values in order, primitive values are not boxed.
+     *
+     * @param visitor visitor
+     */
+    public void acceptValues(MeasurementVisitor visitor) {
+        for (int i = 0; i < valueCount; i++) {
+            switch (kinds[i]) {
+                case KIND_LONG:
+                    visitor.visit(names[i], longs[i]);
+                    break;
+                case KIND_DOUBLE:
+                    visitor.visit(names[i], doubles[i]);
+                    break;
+                default:
+                    visitor.visit(names[i], objects[i]);
+            }
+        }
     }
 
     public void put(String key, Object value) {
         //        Assert.checkArg(!TIME_KEY.equalsIgnoreCase(key),"");
         //        Assert.checkArg(!TAGS_KEY.equalsIgnoreCase(key),"");
-        values.put(key, value);
+        int i = slot(key);
+        kinds[i] = KIND_OBJECT;
+        objects[i] = value;
+    }
+
+    @Override
+    public void visit(String name, long value) {
+        int i = slot(name);
+        kinds[i] = KIND_LONG;
+        longs[i] = value;
+    }
+
+    @Override
+    public void visit(String name, double value) {
+        int i = slot(name);
+        kinds[i] = KIND_DOUBLE;
+        doubles[i] = value;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+        //printValue for info metric
+        put(name, MeasurementUtil.printValue(value));
+    }
+
+    /**
+     * @return index of the value named key, a new one is appended if absent
+     */
+    private int slot(String key) {
+        Assert.notNull(key, String.format("empty measure name,metric: %s!", metricId));
+        for (int i = 0; i < valueCount; i++) {
+            if (names[i].equals(key)) {
+                objects[i] = null;
+                return i;
+            }
+        }
+        if (valueCount == names.length) {
+            int capacity = names.length * 2;
+            String[] newNames = new String[capacity];
+            byte[] newKinds = new byte[capacity];
+            long[] newLongs = new long[capacity];
+            double[] newDoubles = new double[capacity];
+            Object[] newObjects = new Object[capacity];
+            System.arraycopy(names, 0, newNames, 0, valueCount);
+            System.arraycopy(kinds, 0, newKinds, 0, valueCount);
+            System.arraycopy(longs, 0, newLongs, 0, valueCount);
+            System.arraycopy(doubles, 0, newDoubles, 0, valueCount);
+            System.arraycopy(objects, 0, newObjects, 0, valueCount);
+            names = newNames;
+            kinds = newKinds;
+            longs = newLongs;
+            doubles = newDoubles;
+            objects = newObjects;
+        }
+        names[valueCount] = key;
+        return valueCount++;
+    }
+
+    private Object valueAt(int i) {
+        switch (kinds[i]) {
+            case KIND_LONG:
+                return longs[i];
+            case KIND_DOUBLE:
+                return doubles[i];
+            default:
+                return objects[i];
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
-        tojson(stringBuilder, values, metas);
+        appendTo(stringBuilder);
         return stringBuilder.toString();
     }
 
-    private StringBuilder tojson(StringBuilder stringBuilder, Map<String, Object> values,
-                                 Map<String, Object> metas) {
+    /**
+     * append the json of this measurement, without creating the intermediate string.
+     *
+     * @param stringBuilder output
+     * @return stringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder stringBuilder) {
         stringBuilder.append(BRACES_LEFT);
-        map2json(stringBuilder, metas);
-        Map<String, Object> map = new HashMap<String, Object>(1);
-        map.put(metricId.name(), values);
-        stringBuilder.append(COMMA);
-        map2json(stringBuilder, map);
+        //time
+        stringBuilder.append(QUOTE).append(TIME_KEY).append(QUOTE).append(COLON).append(QUOTE)
+            .append(DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format(timestamp))
+            .append(QUOTE).append(COMMA);
+        //tags
+        stringBuilder.append(QUOTE).append(TAGS_KEY).append(QUOTE).append(COLON)
+            .append(BRACES_LEFT);
+        for (int i = 0; i < tagCount * 2; i += 2) {
+            if (i > 0) {
+                stringBuilder.append(COMMA);
+            }
+            stringBuilder.append(QUOTE).append(tagKvs[i]).append(QUOTE).append(COLON);
+            appendString(stringBuilder, tagKvs[i + 1]);
+        }
+        stringBuilder.append(BRACES_RIGHT).append(COMMA);
+        //values
+        stringBuilder.append(QUOTE).append(metricId.name()).append(QUOTE).append(COLON)
+            .append(BRACES_LEFT);
+        for (int i = 0; i < valueCount; i++) {
+            if (i > 0) {
+                stringBuilder.append(COMMA);
+            }
+            stringBuilder.append(QUOTE).append(names[i]).append(QUOTE).append(COLON);
+            switch (kinds[i]) {
+                case KIND_LONG:
+                    stringBuilder.append(longs[i]);
+                    break;
+                case KIND_DOUBLE:
+                    stringBuilder.append(doubles[i]);
+                    break;
+                default:
+                    appendObject(stringBuilder, objects[i]);
+            }
+        }
+        stringBuilder.append(BRACES_RIGHT);
         stringBuilder.append(BRACES_RIGHT);
         return stringBuilder;
     }
 
-    private StringBuilder map2json(StringBuilder stringBuilder, Map<String, Object> map) {
-        if (!map.isEmpty()) {
-            int size = map.size();
-            for (Map.Entry<String, Object> entry : map.entrySet()) {
-                //key print
-                stringBuilder.append(QUOTE).append(entry.getKey()).append(QUOTE).append(COLON);
-                //key:tags,tags:value
-                if (entry.getValue() instanceof Map) {
-                    stringBuilder.append(BRACES_LEFT);
-                    map2json(stringBuilder, (Map<String, Object>) entry.getValue());
-                    stringBuilder.append(BRACES_RIGHT);
-                }
-                //key:time,time:value
-                else if (entry.getValue() instanceof Date) {
-                    String timestamp = DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT
-                        .format((Date) (entry.getValue()));
-                    stringBuilder.append(QUOTE).append(timestamp).append(QUOTE);
-                }
-                //value:number
-                else if (entry.getValue() instanceof Number) {
-                    stringBuilder.append(entry.getValue());
-                } else {
-                    stringBuilder.append(QUOTE)
-                        .append(StringEscapeUtils.escapeJson(entry.getValue().toString()))
-                        .append(QUOTE);
-                }
-                if (--size > 0) {
-                    stringBuilder.append(COMMA);
-                }
-            }
+    private static void appendObject(StringBuilder stringBuilder, Object value) {
+        if (value instanceof Number) {
+            stringBuilder.append(value);
+        } else if (value instanceof Date) {
+            String timestamp = DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format((Date) value);
+            stringBuilder.append(QUOTE).append(timestamp).append(QUOTE);
+        } else {
+            appendString(stringBuilder, value == null ? null : value.toString());
         }
-        return stringBuilder;
+    }
+
+    private static void appendString(StringBuilder stringBuilder, String value) {
+        if (value == null) {
+            stringBuilder.append("null");
+            return;
+        }
+        stringBuilder.append(QUOTE).append(StringEscapeUtils.escapeJson(value)).append(QUOTE);
     }
 
     /**
      * Getter method for property <tt>tags</tt>.
      *
-     * @return property value of tags
+     * @return a new map of the tags
      */
     public Map<String, String> getTags() {
+        Map<String, String> tags = new HashMap<String, String>(tagCount * 2);
+        for (int i = 0; i < tagCount * 2; i += 2) {
+            tags.put(tagKvs[i], tagKvs[i + 1]);
+        }
         return tags;
     }
 
     /**
      * Getter method for property <tt>values</tt>.
      *
-     * @return property value of values
+     * @return a new map of the values
      */
     public Map<String, Object> getValues() {
+        Map<String, Object> values = new LinkedHashMap<String, Object>(valueCount * 2);
+        for (int i = 0; i < valueCount; i++) {
+            values.put(names[i], valueAt(i));
+        }
         return values;
     }
 
     /**
+     * clear the values and tags, then fill this measurement with the metric
+     *
      * @param metric             带解析的metric对象
      * @param commonTagsAccessor 方便添加common tags,可以为null
-     * @return
+     * @return this
      */
-    public static LookoutMeasurement from(Metric metric, CommonTagsAccessor commonTagsAccessor) {
-        Indicator indicator = metric.measure();
-        Id id = metric.id();
-        LookoutMeasurement measurement = new LookoutMeasurement(new Date(indicator.getTimestamp()),
-            id);
-        for (Object mObj : indicator.measurements()) {
-            Measurement m = (Measurement) mObj;
-            Assert.notNull(m.name(), String.format("empty measure name,metric: %s!", metric.id()));
-            //printValue for info metric
-            measurement.put(m.name(), MeasurementUtil.printValue(m.value()));
-        }
-        for (Tag tag : id.tags()) {
-            measurement.addTag(tag.key(), tag.value());
+    public LookoutMeasurement reset(Metric metric, CommonTagsAccessor commonTagsAccessor) {
+        return reset(metric, commonTagsAccessor, null);
+    }
+
+    /**
+     * clear the values and tags, then fill this measurement with the values of the metric in the
+     * snapshot
+     *
+     * @param metric             带解析的metric对象
+     * @param commonTagsAccessor 方便添加common tags,可以为null
+     * @param snapshot           共享的 measure 结果, 为null时直接 measure metric
+     * @return this
+     */
+    public LookoutMeasurement reset(Metric metric, CommonTagsAccessor commonTagsAccessor,
+                                    MetricSnapshot snapshot) {
+        for (int i = 0; i < valueCount; i++) {
+            objects[i] = null;
         }
+        valueCount = 0;
+        tagCount = 0;
+        metricId = metric.id();
+        timestamp = snapshot == null ? Utils.accept(metric, this) : snapshot
+            .accept(metric, this);
+        Utils.visitTags(metricId, idTagsWriter);
         //add reserved tag
         if (metric instanceof Info) {
-            measurement.addTag("_type_", "i");
+            addTag(TYPE_TAG, "i");
         } else if (metric instanceof Counter) {
-            measurement.addTag("_type_", "c");
+            addTag(TYPE_TAG, "c");
         } else if (metric instanceof Timer) {
-            measurement.addTag("_type_", "t");
+            addTag(TYPE_TAG, "t");
         } else if (metric instanceof Gauge) {
-            measurement.addTag("_type_", "g");
+            addTag(TYPE_TAG, "g");
         } else if (metric instanceof DistributionSummary) {
-            measurement.addTag("_type_", "d");
+            addTag(TYPE_TAG, "d");
         } else if (metric instanceof MixinMetric) {
-            measurement.addTag("_type_", "m");
+            addTag(TYPE_TAG, "m");
         }
         // add common tags,If already assigned then ignore
         if (commonTagsAccessor != null) {
             Map<String, String> commonTags = (commonTagsAccessor).commonTags();
             for (Map.Entry<String, String> tagEntry : commonTags.entrySet()) {
-                if (!measurement.containsTag(tagEntry.getKey())) {
-                    measurement.addTag(tagEntry.getKey(), tagEntry.getValue());
+                if (!containsTag(tagEntry.getKey())) {
+                    appendTag(tagEntry.getKey(), tagEntry.getValue());
                 }
             }
         }
-        return measurement;
+        return this;
+    }
+
+    /**
+     * @param metric             带解析的metric对象
+     * @param commonTagsAccessor 方便添加common tags,可以为null
+     * @return
+     */
+    public static LookoutMeasurement from(Metric metric, CommonTagsAccessor commonTagsAccessor) {
+        return new LookoutMeasurement().reset(metric, commonTagsAccessor);
     }
 }
@@ -25,6 +25,8 @@ import java.util.Map;
  */
 public interface MetricObserver<T> {
     /**
+     * 开启 {@link com.alipay.lookout.core.config.LookoutConfig#LOOKOUT_POLL_RECYCLE_ENABLE} 后, measures
+     * 会在下一次 poll 时被复用, 需要在 update 返回之后继续使用的话请自行拷贝.
      *
      * @param measures 每次更新推送的measures
      * @param metadata 附带的上下文元数据
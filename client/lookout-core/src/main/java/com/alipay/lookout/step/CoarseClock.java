@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.Clock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 粗粒度时钟: 由一个后台线程按固定精度刷新当前时间, {@link #wallTime()} 只是一次 volatile 读.
+ * <p>
+ * 用于 step 类型 metric 每次记录时判断是否需要滚动, step 的切换最多延后一个精度.
+ * 不适合测量耗时, {@link #monotonicTime()} 仍然直接读取源时钟.
+ */
+public final class CoarseClock implements Clock {
+    private static final Map<Long, CoarseClock> SYSTEM_CLOCKS    = new HashMap<Long, CoarseClock>();
+
+    private final Clock                         source;
+    private final long                          resolutionMillis;
+    private volatile long                       wallTime;
+    private volatile boolean                    running          = true;
+
+    /**
+     * 相同精度的系统时钟共用一个实例(和一个线程)
+     *
+     * @param resolutionMillis resolution in milliseconds
+     * @return coarse clock backed by {@link Clock#SYSTEM}
+     */
+    public static synchronized CoarseClock system(long resolutionMillis) {
+        CoarseClock clock = SYSTEM_CLOCKS.get(resolutionMillis);
+        if (clock == null) {
+            clock = new CoarseClock(Clock.SYSTEM, resolutionMillis);
+            SYSTEM_CLOCKS.put(resolutionMillis, clock);
+        }
+        return clock;
+    }
+
+    /**
+     * the ticker thread is started immediately, call {@link #stop()} if the clock is no longer used.
+     *
+     * @param source           source clock
+     * @param resolutionMillis resolution in milliseconds
+     */
+    public CoarseClock(Clock source, long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("resolution must greater than 0");
+        }
+        this.source = source;
+        this.resolutionMillis = resolutionMillis;
+        this.wallTime = source.wallTime();
+        Thread ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, "lookout-coarse-clock-" + resolutionMillis + "ms");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private void tick() {
+        while (running) {
+            try {
+                Thread.sleep(resolutionMillis);
+            } catch (InterruptedException e) {
+                // 不响应中断, 只能通过 stop 结束
+            }
+            wallTime = source.wallTime();
+        }
+    }
+
+    @Override
+    public long wallTime() {
+        long now = wallTime;
+        return running ? now : source.wallTime();
+    }
+
+    @Override
+    public long monotonicTime() {
+        return source.monotonicTime();
+    }
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * stop the ticker thread, the clock falls back to the source clock afterwards.
+     */
+    public void stop() {
+        running = false;
+    }
+}
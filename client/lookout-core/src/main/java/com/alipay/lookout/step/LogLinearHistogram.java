@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.common.Assert;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, lock-free log-linear histogram (HdrHistogram style).
+ * <p>
+ * Values lower than {@code 2^precisionBits} have their own slot; above that every power-of-2 range
+ * is split into {@code 2^(precisionBits-1)} equal sub-slots, so the relative error of a slot is at
+ * most {@code 1/2^(precisionBits-1)}. The slot index is computed in O(1) from the leading zeros of
+ * the value, all slots are preallocated, and values above {@code highestTrackableValue} share the
+ * last (overflow) slot.
+ */
+public class LogLinearHistogram {
+
+    public static final int       DEFAULT_PRECISION_BITS = 7;
+    public static final int       MAX_PRECISION_BITS     = 16;
+
+    private final int             precisionBits;
+    private final int             halfShift;
+    private final long            highestTrackableValue;
+    private final int             overflowIndex;
+    private final AtomicLongArray counts;
+
+    /**
+     * @param highestTrackableValue values greater than it are counted in the overflow slot
+     * @param precisionBits         1~16, higher means smaller slots and more memory
+     */
+    public LogLinearHistogram(long highestTrackableValue, int precisionBits) {
+        Assert.checkArg(highestTrackableValue >= 0, "highestTrackableValue must not be negative");
+        Assert.checkArg(precisionBits >= 1 && precisionBits <= MAX_PRECISION_BITS,
+            "precisionBits must between 1 and " + MAX_PRECISION_BITS);
+        this.precisionBits = precisionBits;
+        this.halfShift = precisionBits - 1;
+        this.highestTrackableValue = highestTrackableValue;
+        this.overflowIndex = slotIndex(highestTrackableValue) + 1;
+        this.counts = new AtomicLongArray(overflowIndex + 1);
+    }
+
+    /**
+     * record a value, negative values are counted as 0.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(value));
+    }
+
+    /**
+     * increase the count of a slot, for callers that already have the index of the value.
+     *
+     * @param index slot index
+     */
+    public void increment(int index) {
+        counts.incrementAndGet(index);
+    }
+
+    /**
+     * @param value value
+     * @return index of the slot the value belongs to
+     */
+    public int indexOf(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        if (value > highestTrackableValue) {
+            return overflowIndex;
+        }
+        return slotIndex(value);
+    }
+
+    private int slotIndex(long value) {
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        if (magnitude <= 0) {
+            return (int) value;
+        }
+        return (magnitude << halfShift) + (int) (value >>> magnitude);
+    }
+
+    /**
+     * @param index slot index
+     * @return the lowest value counted in the slot
+     */
+    public long lowestEquivalentValue(int index) {
+        if (index == overflowIndex) {
+            return highestTrackableValue + 1;
+        }
+        int magnitude = (index >> halfShift) - 1;
+        if (magnitude <= 0) {
+            return index;
+        }
+        return ((long) (index - (magnitude << halfShift))) << magnitude;
+    }
+
+    /**
+     * @param index slot index
+     * @return the highest value counted in the slot
+     */
+    public long highestEquivalentValue(int index) {
+        if (index == overflowIndex) {
+            return Long.MAX_VALUE;
+        }
+        if (index == overflowIndex - 1) {
+            return highestTrackableValue;
+        }
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    /**
+     * @return number of slots, including the overflow slot
+     */
+    public int length() {
+        return counts.length();
+    }
+
+    public long get(int index) {
+        return counts.get(index);
+    }
+
+    /**
+     * get the count of the slot and reset it to 0 atomically, so no concurrent record is lost.
+     *
+     * @param index slot index
+     * @return count
+     */
+    public long getAndReset(int index) {
+        return counts.getAndSet(index, 0L);
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+}
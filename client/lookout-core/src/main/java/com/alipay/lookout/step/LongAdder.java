@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+/**
+ * A striped sum of long values, JDK6 backport of jsr166e LongAdder.
+ */
+public class LongAdder extends Striped64 {
+
+    @Override
+    final long fn(long v, long x) {
+        return v + x;
+    }
+
+    @Override
+    final long identity() {
+        return 0L;
+    }
+
+    public void add(long x) {
+        update(x);
+    }
+
+    public void increment() {
+        update(1L);
+    }
+
+    public long sum() {
+        return combine();
+    }
+
+    public long sumThenReset() {
+        return combineThenReset();
+    }
+}
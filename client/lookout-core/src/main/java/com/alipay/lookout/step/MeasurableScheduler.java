@@ -41,8 +41,19 @@ public class MeasurableScheduler extends ThreadPoolExecutor implements Scheduled
     Registry                        registry;
 
     public MeasurableScheduler(final Registry registry, final String name, int poolSize) {
+        this(registry, name, name, poolSize);
+    }
+
+    /**
+     * @param registry   registry of the self metrics
+     * @param name       name of the self metrics, schedulers with the same name share them
+     * @param threadName thread name prefix
+     * @param poolSize   pool size
+     */
+    public MeasurableScheduler(final Registry registry, final String name,
+                               final String threadName, int poolSize) {
         super(poolSize, poolSize, 0, TimeUnit.NANOSECONDS, new DelayQueue(),
-            newThreadFactory(name), new AbortPolicy());
+            newThreadFactory(threadName), new AbortPolicy());
         this.registry = registry;
         Id mixinMetricId = registry.createId("lookout.scheduler." + name).withTag(
             LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name());
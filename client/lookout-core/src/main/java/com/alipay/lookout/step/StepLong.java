@@ -13,7 +13,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p><b>This class is an internal implementation detail only intended for use within spectator.
  * It is subject to change without notice.</b></p>
  */
-public class StepLong implements StepValue {
+public class StepLong implements StepLongValue {
 
     private final long       init;
     private final Clock      clock;
@@ -41,6 +41,7 @@ public class StepLong implements StepValue {
      *
      * @param step
      */
+    @Override
     public void setStep(long step) {
         if (step <= 0) {
             throw new IllegalArgumentException("step must greater than 0");
@@ -75,14 +76,21 @@ public class StepLong implements StepValue {
         return current;
     }
 
+    @Override
+    public void record(long amount) {
+        getCurrent().addAndGet(amount);
+    }
+
     /**
      * Get the value for the last completed interval.
      */
+    @Override
     public long poll() {
         rollCount(clock.wallTime());
         return previous;
     }
 
+    @Override
     public long previous() {
         return previous;
     }
@@ -111,6 +119,7 @@ public class StepLong implements StepValue {
                + ", lastInitPos=" + lastInitPos.get() + '}';
     }
 
+    @Override
     public long getStep() {
         return step;
     }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+/**
+ * A long value mapped to a step interval, which meters record into and pollers read from.
+ * The accumulate function (sum or max) depends on the implementation.
+ */
+public interface StepLongValue extends StepValue {
+
+    /**
+     * Accumulate an amount into the current interval.
+     *
+     * @param amount amount
+     */
+    void record(long amount);
+
+    /**
+     * Get the value for the last completed interval.
+     *
+     * @return value
+     */
+    long poll();
+
+    /**
+     * Get the value for the last completed interval without rolling.
+     *
+     * @return value
+     */
+    long previous();
+
+    /**
+     * reset the step, drops the values of current and previous intervals.
+     *
+     * @param step step
+     */
+    void setStep(long step);
+
+    long getStep();
+}
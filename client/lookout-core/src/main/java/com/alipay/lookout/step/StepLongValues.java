@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.Clock;
+
+/**
+ * factory of {@link StepLongValue}s.
+ */
+public final class StepLongValues {
+
+    private StepLongValues() {
+    }
+
+    /**
+     * @param clock   clock
+     * @param step    step
+     * @param striped use striped cells or a single AtomicLong
+     * @return a step value summing the recorded amounts
+     */
+    public static StepLongValue newSum(Clock clock, long step, boolean striped) {
+        return striped ? new StripedStepLong(clock, step, new LongAdder()) : new StepLong(0L,
+            clock, step);
+    }
+
+    /**
+     * @param clock   clock
+     * @param step    step
+     * @param striped use striped cells or a single AtomicLong
+     * @return a step value keeping the max recorded amount
+     */
+    public static StepLongValue newMax(Clock clock, long step, boolean striped) {
+        return striped ? new StripedStepLong(clock, step, new LongMaxUpdater())
+            : new StepMaxLong(0L, clock, step);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.Clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link StepLong} keeping the maximum recorded value of the interval.
+ */
+public class StepMaxLong extends StepLong {
+
+    public StepMaxLong(long init, Clock clock, long step) {
+        super(init, clock, step);
+    }
+
+    @Override
+    public void record(long amount) {
+        AtomicLong maxValue = getCurrent();
+        long max = maxValue.get();
+        while (amount > max && !maxValue.compareAndSet(max, amount)) {
+            max = maxValue.get();
+        }
+    }
+}
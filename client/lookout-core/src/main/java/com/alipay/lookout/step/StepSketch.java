@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.Clock;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Step 版本的 quantile sketch: 当前 step 的数据无锁地记录在一个 {@link LogLinearHistogram} 中,
+ * 步长切换时逐个 slot 取出并清零, 生成上一个 step 的 {@link LogLinearSketch} 快照.
+ */
+public class StepSketch {
+
+    private final Clock              clock;
+    private volatile long            step;
+    private final int                scaleExponent;
+    private final LogLinearHistogram histogram;
+
+    private volatile LogLinearSketch previous;
+
+    private final AtomicLong         lastInitPos;
+
+    /**
+     * @param clock                 clock
+     * @param step                  step millis
+     * @param highestTrackableValue values greater than it are counted in the overflow slot
+     * @param precisionBits         precision bits
+     * @param scaleExponent         see {@link LogLinearSketch#getScaleExponent()}
+     */
+    public StepSketch(Clock clock, long step, long highestTrackableValue, int precisionBits,
+                      int scaleExponent) {
+        this.clock = clock;
+        this.step = step;
+        this.scaleExponent = scaleExponent;
+        this.histogram = new LogLinearHistogram(highestTrackableValue, precisionBits);
+        this.lastInitPos = new AtomicLong(clock.wallTime() / step);
+    }
+
+    /**
+     * 重新设置step, 丢弃已记录的数据
+     *
+     * @param step step millis
+     */
+    public void setStep(long step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must greater than 0");
+        }
+        this.step = step;
+        this.lastInitPos.set(clock.wallTime() / step);
+        this.previous = null;
+        drain();
+    }
+
+    private void roll() {
+        final long stepTime = clock.wallTime() / step;
+        final long lastInit = lastInitPos.get();
+        // 如果正好到达下一个步长区间，则并发竞争成功的线程做实际更新；
+        if (lastInit < stepTime && lastInitPos.compareAndSet(lastInit, stepTime)) {
+            LogLinearSketch sketch = drain();
+            // 滚动比预期延后超过1步时, 取出的数据已经过期
+            previous = lastInit == stepTime - 1 ? sketch : null;
+        }
+    }
+
+    private LogLinearSketch drain() {
+        int[] indexes = new int[16];
+        long[] counts = new long[16];
+        int n = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            if (histogram.get(i) == 0) {
+                continue;
+            }
+            long count = histogram.getAndReset(i);
+            if (count == 0) {
+                continue;
+            }
+            if (n == indexes.length) {
+                indexes = Arrays.copyOf(indexes, n * 2);
+                counts = Arrays.copyOf(counts, n * 2);
+            }
+            indexes[n] = i;
+            counts[n++] = count;
+        }
+        return new LogLinearSketch(histogram.getPrecisionBits(),
+            histogram.getHighestTrackableValue(), scaleExponent, Arrays.copyOf(indexes, n),
+            Arrays.copyOf(counts, n));
+    }
+
+    /**
+     * record a value, negative values are dropped.
+     *
+     * @param value value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        roll();
+        histogram.record(value);
+    }
+
+    /**
+     * @return sketch of the last completed step, null if nothing was recorded
+     */
+    public LogLinearSketch poll() {
+        roll();
+        LogLinearSketch sketch = previous;
+        return sketch == null || sketch.getCount() == 0 ? null : sketch;
+    }
+
+    /**
+     * @return the timestamp for the end of the last completed interval
+     */
+    public long timestamp() {
+        return lastInitPos.get() * step;
+    }
+
+    public long getStep() {
+        return step;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A JDK6 compatible backport of the jsr166e Striped64 idea: one uncontended base value plus a lazily
+ * grown table of padded cells, so that concurrent writers spread over different cache lines instead of
+ * spinning on one shared AtomicLong.
+ * <p>
+ * Subclasses define the accumulate function (sum, max ...) through {@link #fn(long, long)}.
+ */
+public abstract class Striped64 extends Number {
+
+    static final int                        NCPU           = Runtime.getRuntime()
+                                                               .availableProcessors();
+
+    /**
+     * per-thread hash code, never zero
+     */
+    private static final ThreadLocal<int[]> threadHashCode = new ThreadHashCode();
+
+    private static final class ThreadHashCode extends ThreadLocal<int[]> {
+        private final Random rnd = new Random();
+
+        @Override
+        protected int[] initialValue() {
+            int h = rnd.nextInt();
+            return new int[] { h == 0 ? 1 : h };
+        }
+    }
+
+    /**
+     * Padded AtomicLong, reducing cache contention between neighbour cells.
+     */
+    static final class Cell extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        Cell(long x) {
+            super(x);
+        }
+    }
+
+    private final AtomicLong                base           = new AtomicLong();
+    private volatile Cell[]                 cells;
+    private final AtomicBoolean             cellsBusy      = new AtomicBoolean(false);
+
+    /**
+     * accumulate function
+     *
+     * @param v current value
+     * @param x the update value
+     * @return new value
+     */
+    abstract long fn(long v, long x);
+
+    /**
+     * the identity value of a fresh cell(after reset)
+     *
+     * @return identity
+     */
+    abstract long identity();
+
+    /**
+     * Accumulate x into the value.
+     *
+     * @param x the update value
+     */
+    public void update(long x) {
+        Cell[] as = cells;
+        if (as == null) {
+            // uncontended fast path
+            long b = base.get();
+            long next = fn(b, x);
+            if (next == b || base.compareAndSet(b, next)) {
+                return;
+            }
+        } else {
+            int[] hc = threadHashCode.get();
+            Cell a = as[(as.length - 1) & hc[0]];
+            if (a != null) {
+                long v = a.get();
+                long next = fn(v, x);
+                if (next == v || a.compareAndSet(v, next)) {
+                    return;
+                }
+            }
+        }
+        retryUpdate(x);
+    }
+
+    /**
+     * Handles cases of updates involving initialization, resizing, creating new Cells, and/or
+     * contention.
+     */
+    private void retryUpdate(long x) {
+        int[] hc = threadHashCode.get();
+        int h = hc[0];
+        boolean collide = false;
+        for (;;) {
+            Cell[] as = cells;
+            int n;
+            if (as != null && (n = as.length) > 0) {
+                Cell a = as[(n - 1) & h];
+                if (a == null) {
+                    if (!cellsBusy.get()) {
+                        Cell r = new Cell(fn(identity(), x));
+                        if (cellsBusy.compareAndSet(false, true)) {
+                            boolean created = false;
+                            try {
+                                Cell[] rs = cells;
+                                int m, j;
+                                if (rs != null && (m = rs.length) > 0
+                                    && rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    created = true;
+                                }
+                            } finally {
+                                cellsBusy.set(false);
+                            }
+                            if (created) {
+                                break;
+                            }
+                            continue; // slot is now non-empty
+                        }
+                    }
+                    collide = false;
+                } else {
+                    long v = a.get();
+                    long next = fn(v, x);
+                    if (next == v || a.compareAndSet(v, next)) {
+                        break;
+                    } else if (n >= NCPU || cells != as) {
+                        collide = false; // at max size or stale
+                    } else if (!collide) {
+                        collide = true;
+                    } else if (cellsBusy.compareAndSet(false, true)) {
+                        try {
+                            if (cells == as) { // expand table unless stale
+                                Cell[] rs = new Cell[n << 1];
+                                System.arraycopy(as, 0, rs, 0, n);
+                                cells = rs;
+                            }
+                        } finally {
+                            cellsBusy.set(false);
+                        }
+                        collide = false;
+                        continue; // retry with expanded table
+                    }
+                }
+                // rehash(xorshift)
+                h ^= h << 13;
+                h ^= h >>> 17;
+                h ^= h << 5;
+                hc[0] = h;
+            } else if (!cellsBusy.get() && cells == as && cellsBusy.compareAndSet(false, true)) {
+                boolean init = false;
+                try {
+                    if (cells == as) {
+                        Cell[] rs = new Cell[2];
+                        rs[h & 1] = new Cell(fn(identity(), x));
+                        cells = rs;
+                        init = true;
+                    }
+                } finally {
+                    cellsBusy.set(false);
+                }
+                if (init) {
+                    break;
+                }
+            } else {
+                // fall back on using base
+                long b = base.get();
+                long next = fn(b, x);
+                if (next == b || base.compareAndSet(b, next)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Combines base and all cells. The result is not an atomic snapshot, concurrent updates may
+     * or may not be included.
+     *
+     * @return combined value
+     */
+    long combine() {
+        long r = base.get();
+        Cell[] as = cells;
+        if (as != null) {
+            for (Cell a : as) {
+                if (a != null) {
+                    r = fn(r, a.get());
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Combines base and all cells and resets them to identity. Each cell is swapped atomically, so
+     * an update racing with the reset is either reported now or kept for the next round, never lost.
+     *
+     * @return combined value before reset
+     */
+    long combineThenReset() {
+        long id = identity();
+        long r = base.getAndSet(id);
+        Cell[] as = cells;
+        if (as != null) {
+            for (Cell a : as) {
+                if (a != null) {
+                    r = fn(r, a.getAndSet(id));
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * reset to identity
+     */
+    public void reset() {
+        combineThenReset();
+    }
+
+    @Override
+    public long longValue() {
+        return combine();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) combine();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) combine();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) combine();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(combine());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.Clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The striped alternative of {@link StepLong}, the current interval is kept by a {@link Striped64}
+ * (sum or max) so that hot meters recorded by many threads do not contend on one AtomicLong.
+ * Rollover semantics are the same as {@link StepLong}.
+ */
+public class StripedStepLong implements StepLongValue {
+
+    private final Clock      clock;
+    private volatile long    step;
+
+    private volatile long    previous;
+    private final Striped64  current;
+
+    private final AtomicLong lastInitPos;
+
+    /**
+     * @param clock   clock
+     * @param step    step
+     * @param current a fresh {@link LongAdder} or {@link LongMaxUpdater}
+     */
+    public StripedStepLong(Clock clock, long step, Striped64 current) {
+        this.clock = clock;
+        this.step = step;
+        this.current = current;
+        this.lastInitPos = new AtomicLong(clock.wallTime() / step);
+    }
+
+    @Override
+    public void setStep(long step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must greater than 0");
+        }
+        long lastPos = clock.wallTime() / step;
+        this.step = step;
+        this.lastInitPos.set(lastPos);
+        this.previous = 0L;
+        this.current.reset();
+    }
+
+    private void rollCount(long now) {
+        final long stepTime = now / step;
+        final long lastInit = lastInitPos.get();
+        if (lastInit < stepTime && lastInitPos.compareAndSet(lastInit, stepTime)) {
+            final long v = current.combineThenReset();
+            previous = (lastInit == stepTime - 1) ? v : 0L;
+        }
+    }
+
+    @Override
+    public void record(long amount) {
+        rollCount(clock.wallTime());
+        current.update(amount);
+    }
+
+    @Override
+    public long poll() {
+        rollCount(clock.wallTime());
+        return previous;
+    }
+
+    @Override
+    public long previous() {
+        return previous;
+    }
+
+    @Override
+    public double pollAsRate() {
+        final long amount = poll();
+        final double period = step / 1000.0;
+        return amount / period;
+    }
+
+    @Override
+    public long timestamp() {
+        return lastInitPos.get() * step;
+    }
+
+    @Override
+    public long getStep() {
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedStepLong{previous=" + previous + ", current=" + current.combine()
+               + ", lastInitPos=" + lastInitPos.get() + '}';
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.common.LookoutConstants;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 hashed timing wheel 的调度器, 用于代替 {@link MeasurableScheduler} 的 DelayQueue:
+ * <ul>
+ * <li>一个 tick 线程每隔 tickMillis 推进一格, 同一格到期的任务批量交给 worker 执行, 加入和取消任务都是 O(1)</li>
+ * <li>超过一圈的任务记录剩余圈数, 每经过一圈减一, 不需要多层 wheel</li>
+ * <li>周期任务每次执行后按 wall time 重新对齐到首次执行时刻所在的相位(即 step 边界的偏移), tick 取整和时钟误差不会累积</li>
+ * </ul>
+ * 任务最多延后一个 tick 执行, 不会提前执行. 周期任务执行完成后才会重新放入 wheel, 同一个任务不会并发执行.
+ */
+public class TimingWheelScheduler implements ScheduledService {
+    public static final long         DEFAULT_TICK_MILLIS = 10;
+    public static final int          DEFAULT_WHEEL_SIZE  = 512;
+
+    private final long               tickNanos;
+    private final Bucket[]           wheel;
+    private final int                mask;
+    /**
+     * 新加入(或重新调度)的任务, 由 tick 线程批量放入 wheel
+     */
+    private final Queue<WheelTask>   pending             = new ConcurrentLinkedQueue<WheelTask>();
+    private final AtomicInteger      pendingCount        = new AtomicInteger();
+    private final ThreadPoolExecutor workers;
+    private final Thread             ticker;
+    private final long               startNanos;
+    private final Clock              clock;
+    private volatile boolean         shutdown;
+    /**
+     * 只有 tick 线程访问
+     */
+    private long                     currentTick;
+
+    private final Counter            activeCount;
+    private final Timer              taskExecutionTime;
+    private final Timer              scheduleLag;
+    private final Counter            skipped;
+
+    public TimingWheelScheduler(Registry registry, String name, int poolSize) {
+        this(registry, name, name, poolSize, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param registry   registry of the self metrics
+     * @param name       name of the self metrics, schedulers with the same name share them
+     * @param threadName thread name prefix
+     * @param poolSize   worker pool size
+     * @param tickMillis tick duration, the scheduling precision
+     * @param wheelSize  bucket count of the wheel, rounded up to a power of two
+     */
+    public TimingWheelScheduler(Registry registry, String name, String threadName, int poolSize,
+                                long tickMillis, int wheelSize) {
+        if (poolSize <= 0 || tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("poolSize, tickMillis and wheelSize must be > 0");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.clock = registry.clock();
+
+        Id mixinMetricId = registry.createId("lookout.scheduler." + name).withTag(
+            LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name());
+        MixinMetric mixinMetric = registry.mixinMetric(mixinMetricId);
+        mixinMetric.gauge("pending", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return pendingCount.get();
+            }
+        });
+        activeCount = mixinMetric.counter("activeThreads");
+        taskExecutionTime = mixinMetric.timer("taskExecutionTime");
+        //实际开始执行时间 - 应该执行的时间
+        scheduleLag = mixinMetric.timer("scheduleLag");
+        skipped = mixinMetric.counter("skipped");
+
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), newThreadFactory(threadName));
+        this.startNanos = System.nanoTime();
+        this.ticker = newThreadFactory(threadName + "-tick").newThread(new Runnable() {
+            @Override
+            public void run() {
+                runTicker();
+            }
+        });
+        ticker.start();
+    }
+
+    private static ThreadFactory newThreadFactory(final String id) {
+        return new ThreadFactory() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final String name = "lookout-" + id + "-" + next.getAndIncrement();
+                final Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * 延迟执行一次
+     */
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        WheelTask task = new WheelTask(command, 0);
+        task.init(Math.max(delay, 0), unit);
+        add(task);
+        return task;
+    }
+
+    /**
+     * 按固定速率执行, 执行耗时超过 period 时跳过错过的周期(计入 skipped), 周期的精度为毫秒.
+     */
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRateSkipIfLong(Runnable command, long initialDelay,
+                                                            long period, TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        long periodMillis = unit.toMillis(period);
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("period must be >= 1ms");
+        WheelTask task = new WheelTask(command, periodMillis);
+        task.init(Math.max(initialDelay, 0), unit);
+        add(task);
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        ticker.interrupt();
+        workers.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void add(WheelTask task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("scheduler has been shut down");
+        }
+        pendingCount.incrementAndGet();
+        pending.add(task);
+    }
+
+    private void runTicker() {
+        List<WheelTask> expired = new ArrayList<WheelTask>();
+        while (!shutdown) {
+            if (!waitForNextTick()) {
+                break;
+            }
+            transferPending();
+            wheel[(int) (currentTick & mask)].expire(expired);
+            // 同一格到期的任务批量交给 worker
+            for (WheelTask task : expired) {
+                pendingCount.decrementAndGet();
+                try {
+                    workers.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+                }
+            }
+            expired.clear();
+            currentTick++;
+        }
+        // 关闭后剩余的任务不会再执行
+        for (Bucket bucket : wheel) {
+            bucket.cancelAll();
+        }
+        WheelTask task;
+        while ((task = pending.poll()) != null) {
+            task.cancel(false);
+        }
+        pendingCount.set(0);
+    }
+
+    /**
+     * 等待到当前 tick 结束, 该 tick 内到期的任务此时都已到期
+     *
+     * @return false if interrupted by shutdown
+     */
+    private boolean waitForNextTick() {
+        long deadline = tickNanos * (currentTick + 1);
+        for (;;) {
+            long sleepMillis = (deadline - (System.nanoTime() - startNanos) + 999999) / 1000000;
+            if (sleepMillis <= 0) {
+                return true;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (shutdown) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferPending() {
+        WheelTask task;
+        while ((task = pending.poll()) != null) {
+            if (task.isCancelled()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            long calculated = task.deadline / tickNanos;
+            task.remainingRounds = (calculated - currentTick) / wheel.length;
+            // 已经过期的任务放到当前格, 马上执行
+            long ticks = Math.max(calculated, currentTick);
+            wheel[(int) (ticks & mask)].tasks.add(task);
+        }
+    }
+
+    /**
+     * wheel 的一格, 只有 tick 线程访问
+     */
+    private final class Bucket {
+        private final List<WheelTask> tasks = new ArrayList<WheelTask>();
+
+        void expire(List<WheelTask> expired) {
+            if (tasks.isEmpty()) {
+                return;
+            }
+            Iterator<WheelTask> it = tasks.iterator();
+            while (it.hasNext()) {
+                WheelTask task = it.next();
+                if (task.isCancelled()) {
+                    it.remove();
+                    pendingCount.decrementAndGet();
+                } else if (task.remainingRounds <= 0) {
+                    it.remove();
+                    expired.add(task);
+                } else {
+                    task.remainingRounds--;
+                }
+            }
+        }
+
+        void cancelAll() {
+            for (WheelTask task : tasks) {
+                task.cancel(false);
+            }
+            tasks.clear();
+        }
+    }
+
+    private final class WheelTask extends FutureTask<Object> implements
+                                                          RunnableScheduledFuture<Object> {
+        /**
+         * 周期(毫秒), 0 表示只执行一次
+         */
+        private final long    periodMillis;
+        /**
+         * 到期时间, 相对 startNanos 的纳秒数
+         */
+        private volatile long deadline;
+        /**
+         * 本次执行对应的 wall time, 周期任务按它对齐后续执行时间
+         */
+        private long          wallTime;
+        /**
+         * 只有 tick 线程访问
+         */
+        private long          remainingRounds;
+
+        WheelTask(Runnable runnable, long periodMillis) {
+            super(runnable, null);
+            this.periodMillis = periodMillis;
+        }
+
+        void init(long delay, TimeUnit unit) {
+            this.wallTime = clock.wallTime() + unit.toMillis(delay);
+            this.deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodMillis > 0;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            scheduleLag.record(Math.max(start - startNanos - deadline, 0), TimeUnit.NANOSECONDS);
+            activeCount.inc();
+            try {
+                if (!isPeriodic()) {
+                    super.run();
+                } else if (runAndReset() && !shutdown) {
+                    reschedule();
+                }
+            } finally {
+                activeCount.dec();
+                taskExecutionTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * 下次执行时间以上次应执行的 wall time 加整数个周期计算, 而不是在实际执行时间上累加,
+         * 因此 tick 取整、调度延迟以及 nanoTime 与 wall time 的偏差不会累积.
+         */
+        private void reschedule() {
+            long now = clock.wallTime();
+            long next = wallTime + periodMillis;
+            if (next < now) {
+                //执行超过了一个周期, 跳过错过的周期
+                long missed = (now - next + periodMillis - 1) / periodMillis;
+                next += missed * periodMillis;
+                skipped.inc(missed);
+            }
+            wallTime = next;
+            deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(next - now);
+            try {
+                add(this);
+            } catch (RejectedExecutionException e) {
+                cancel(false);
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - startNanos), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this)
+                return 0;
+            long d = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return (d == 0) ? 0 : ((d < 0) ? -1 : 1);
+        }
+    }
+}
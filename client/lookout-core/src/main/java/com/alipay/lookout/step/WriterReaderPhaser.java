@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 写者无等待的双缓冲切换协议(同 HdrHistogram 的 WriterReaderPhaser).
+ * <p>
+ * 写者在写当前(active)缓冲前后分别调用 {@link #writerCriticalSectionEnter()} 和
+ * {@link #writerCriticalSectionExit(long)}, 都只是一次原子自增, 不会被读者阻塞.
+ * 读者先把 active 与 inactive 缓冲交换, 再调用 {@link #flipPhase()},
+ * 该方法返回时所有仍在写旧缓冲的写者都已退出, 读者可以安全地读取并清空旧缓冲.
+ * 同一时刻只允许一个读者调用 flipPhase, 由调用方保证.
+ */
+public class WriterReaderPhaser {
+
+    private final AtomicLong startEpoch   = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch  = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @return 进入时的 epoch, 需要原样传给 {@link #writerCriticalSectionExit(long)}
+     */
+    public long writerCriticalSectionEnter() {
+        return startEpoch.getAndIncrement();
+    }
+
+    /**
+     * @param criticalValueAtEnter {@link #writerCriticalSectionEnter()} 的返回值
+     */
+    public void writerCriticalSectionExit(long criticalValueAtEnter) {
+        if (criticalValueAtEnter < 0) {
+            oddEndEpoch.getAndIncrement();
+        } else {
+            evenEndEpoch.getAndIncrement();
+        }
+    }
+
+    /**
+     * 切换相位, 等待所有在切换前进入临界区的写者退出.
+     */
+    public void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        // 新相位的结束计数先归位, 之后进入的写者都计入新相位
+        if (nextPhaseIsEven) {
+            evenEndEpoch.set(initialStartValue);
+        } else {
+            oddEndEpoch.set(initialStartValue);
+        }
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            // 写者的临界区很短, 通常不会等待
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+    }
+}
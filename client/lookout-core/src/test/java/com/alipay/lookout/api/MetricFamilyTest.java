@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.api;
+
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricFamilyTest {
+
+    @Test
+    public void testGetIsCached() {
+        DefaultRegistry registry = new DefaultRegistry();
+        MetricFamily<Counter> family = registry.counterFamily(
+            registry.createId("rpc.calls").withTag("app", "a"), "service", "method");
+        Counter counter = family.get("svc", "m1");
+        counter.inc();
+        Assert.assertSame(counter, family.get("svc", "m1"));
+        Assert.assertSame(counter, family.get(new String[] { "svc", "m1" }));
+        Assert.assertNotSame(counter, family.get("svc", "m2"));
+
+        Id id = registry.createId("rpc.calls").withTag("app", "a").withTag("service", "svc")
+            .withTag("method", "m1");
+        Assert.assertSame(counter, registry.counter(id));
+        Assert.assertEquals(1, counter.count());
+    }
+
+    @Test
+    public void testBind() {
+        DefaultRegistry registry = new DefaultRegistry();
+        MetricFamily<Timer> family = registry.timerFamily(registry.createId("rpc.rt"), "code");
+        MetricFamily.Bound<Timer> bound = family.bind(new String[] { "200" },
+            new String[] { "500" });
+        Assert.assertEquals(2, bound.size());
+        Assert.assertSame(family.get("200"), bound.get(0));
+        Assert.assertSame(family.get("500"), bound.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArity() {
+        DefaultRegistry registry = new DefaultRegistry();
+        registry.counterFamily(registry.createId("rpc.calls"), "service", "method").get("svc");
+    }
+
+    @Test
+    public void testNullValue() {
+        DefaultRegistry registry = new DefaultRegistry();
+        MetricFamily<Counter> family = registry.counterFamily(registry.createId("rpc.calls"),
+            "service");
+        try {
+            family.get((String) null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("service"));
+        }
+    }
+
+    @Test
+    public void testNoopNotCached() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_METRICS_NUMBER, 0);
+        DefaultRegistry registry = new DefaultRegistry(Clock.SYSTEM, config);
+        MetricFamily<Counter> family = registry.counterFamily(registry.createId("rpc.calls"),
+            "service");
+        family.get("svc").inc();
+        Assert.assertNull(registry.get(registry.createId("rpc.calls").withTag("service", "svc")));
+
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_METRICS_NUMBER, 10);
+        family.get("svc").inc();
+        Assert.assertEquals(1, family.get("svc").count());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.common.LookoutConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncGaugeWrapperTest {
+
+    @Test
+    public void testReadCachedValue() throws InterruptedException {
+        DefaultRegistry registry = new DefaultRegistry();
+        final AtomicInteger calls = new AtomicInteger();
+        Gauge<Integer> gauge = registry.gauge(registry.createId("async.fast"),
+            AsyncGauge.of(new Gauge<Integer>() {
+                @Override
+                public Integer value() {
+                    return calls.incrementAndGet();
+                }
+            }));
+        Assert.assertTrue(gauge instanceof AsyncGaugeWrapper);
+        Assert.assertTrue(waitForValue(gauge));
+        Indicator<?> indicator = ((Metric) gauge).measure();
+        Assert.assertEquals(1, indicator.measurements().size());
+        // 每次读取最多触发一次刷新
+        Assert.assertTrue(calls.get() <= 3);
+    }
+
+    @Test
+    public void testSlowGaugeTimeout() throws InterruptedException {
+        DefaultRegistry registry = new DefaultRegistry();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Id id = registry.createId("async.slow");
+        Gauge<Integer> gauge = registry.gauge(id, AsyncGauge.of(new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 1;
+            }
+        }, 50, 60000));
+
+        long start = System.nanoTime();
+        Indicator<?> indicator = ((Metric) gauge).measure();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        Assert.assertTrue(indicator.measurements().isEmpty());
+
+        Thread.sleep(100);
+        ((Metric) gauge).measure();
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        Counter timeouts = registry.mixinMetric(
+            registry.createId("lookout.gauge.async").withTag("gauge", id.name())
+                .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name())).counter(
+            "timeouts");
+        Assert.assertEquals(1, timeouts.count());
+        // 中断后 delegate 返回的值仍然被缓存
+        Assert.assertTrue(waitForValue(gauge));
+    }
+
+    @Test
+    public void testTimeoutWithoutRead() throws InterruptedException {
+        DefaultRegistry registry = new DefaultRegistry();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Id id = registry.createId("async.hang");
+        registry.gauge(id, AsyncGauge.of(new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 1;
+            }
+        }, 50, 60000));
+        // 唯一的刷新线程被占用时, 其他 gauge 排队等待
+        Gauge<Integer> other = registry.gauge(registry.createId("async.other"),
+            AsyncGauge.of(new Gauge<Integer>() {
+                @Override
+                public Integer value() {
+                    return 1;
+                }
+            }));
+
+        // 注册后再也不读取 async.hang, 超时仍然按配置的时间触发
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        Counter timeouts = registry.mixinMetric(
+            registry.createId("lookout.gauge.async").withTag("gauge", id.name())
+                .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name())).counter(
+            "timeouts");
+        Assert.assertEquals(1, timeouts.count());
+        Assert.assertTrue(waitForValue(other));
+    }
+
+    @Test
+    public void testStaleValueNotReported() throws InterruptedException {
+        ManualClock clock = new ManualClock();
+        clock.setWallTime(1000);
+        DefaultRegistry registry = new DefaultRegistry(clock);
+        final AtomicInteger fail = new AtomicInteger();
+        Gauge<Integer> gauge = registry.gauge(registry.createId("async.stale"),
+            AsyncGauge.of(new Gauge<Integer>() {
+                @Override
+                public Integer value() {
+                    if (fail.get() > 0) {
+                        throw new IllegalStateException("unavailable");
+                    }
+                    return 7;
+                }
+            }, 1000, 5000));
+        Assert.assertTrue(waitForValue(gauge));
+        fail.set(1);
+        clock.setWallTime(7000);
+        Assert.assertTrue(((Metric) gauge).measure().measurements().isEmpty());
+        // value() 仍然返回最后一次的缓存值
+        Assert.assertEquals(7, gauge.value().intValue());
+    }
+
+    private static boolean waitForValue(Gauge<?> gauge) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (gauge.value() != null) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+}
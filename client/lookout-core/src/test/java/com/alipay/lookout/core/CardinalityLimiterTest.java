@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.*;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.common.LookoutConstants;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CardinalityLimiterTest {
+
+    @Test
+    public void testSeriesOverflow() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_SERIES_PER_NAME, 3);
+        DefaultRegistry registry = new DefaultRegistry(config);
+
+        for (int i = 0; i < 10; i++) {
+            registry.counter(registry.createId("rpc.calls").withTag("user", "u" + i)
+                .withTag(LookoutConstants.LOW_PRIORITY_TAG)).inc();
+        }
+        // 已存在的 series 不受影响
+        registry.counter(registry.createId("rpc.calls").withTag("user", "u0")
+            .withTag(LookoutConstants.LOW_PRIORITY_TAG)).inc();
+
+        Id overflowId = registry.createId("rpc.calls").withTag(LookoutConstants.OVERFLOW, "true")
+            .withTag(LookoutConstants.LOW_PRIORITY_TAG);
+        Counter overflow = registry.get(overflowId);
+        Assert.assertNotNull(overflow);
+        Assert.assertEquals(7, overflow.count());
+        Counter u0 = registry.get(registry.createId("rpc.calls").withTag("user", "u0")
+            .withTag(LookoutConstants.LOW_PRIORITY_TAG));
+        Assert.assertEquals(2, u0.count());
+        Assert.assertNull(registry.get(registry.createId("rpc.calls").withTag("user", "u5")
+            .withTag(LookoutConstants.LOW_PRIORITY_TAG)));
+
+        MixinMetric stats = registry.mixinMetric(registry.createId("lookout.cardinality")
+            .withTag("metric", "rpc.calls")
+            .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+        Assert.assertEquals(7, stats.counter("rejected").count());
+        long estimated = -1;
+        for (Object obj : stats.measure().measurements()) {
+            Measurement<?> measurement = (Measurement<?>) obj;
+            if ("estimatedSeries".equals(measurement.name())) {
+                estimated = ((Number) measurement.value()).longValue();
+            }
+        }
+        Assert.assertEquals(10, estimated);
+
+        // 其他 metric 不受影响
+        registry.counter(registry.createId("other").withTag("user", "u9")).inc();
+        Assert.assertNotNull(registry.get(registry.createId("other").withTag("user", "u9")));
+    }
+
+    @Test
+    public void testTagValueOverflow() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_VALUES_PER_TAG_KEY, 5);
+        DefaultRegistry registry = new DefaultRegistry(config);
+
+        for (int i = 0; i < 100; i++) {
+            registry.timer(registry.createId("rpc.rt").withTag("user", "u" + i)
+                .withTag("method", i % 2 == 0 ? "get" : "put"));
+        }
+        int series = 0;
+        for (int i = 0; i < 100; i++) {
+            if (registry.get(registry.createId("rpc.rt").withTag("user", "u" + i)
+                .withTag("method", i % 2 == 0 ? "get" : "put")) != null) {
+                series++;
+            }
+        }
+        Assert.assertEquals(5, series);
+        // 超过限制的 user 被替换, 低基数的 method 保留
+        Timer get = registry.get(registry.createId("rpc.rt")
+            .withTag("user", LookoutConstants.OVERFLOW).withTag("method", "get"));
+        Assert.assertNotNull(get);
+    }
+
+    @Test
+    public void testRemoveReleasesBudget() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_SERIES_PER_NAME, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        Id a = registry.createId("conn").withTag("host", "a");
+        Id b = registry.createId("conn").withTag("host", "b");
+        registry.counter(a);
+        registry.removeMetric(a);
+        registry.counter(b);
+        Assert.assertNotNull(registry.get(b));
+    }
+
+    @Test
+    public void testRepeatedOverflowIdCountedOnce() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_SERIES_PER_NAME, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        registry.counter(registry.createId("rpc.calls").withTag("user", "u0")).inc();
+        Id u1 = registry.createId("rpc.calls").withTag("user", "u1");
+        for (int i = 0; i < 10; i++) {
+            registry.counter(u1).inc();
+        }
+        Counter overflow = registry.get(registry.createId("rpc.calls").withTag(
+            LookoutConstants.OVERFLOW, "true"));
+        Assert.assertEquals(10, overflow.count());
+        MixinMetric stats = registry.mixinMetric(registry.createId("lookout.cardinality")
+            .withTag("metric", "rpc.calls")
+            .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+        Assert.assertEquals(1, stats.counter("rejected").count());
+    }
+
+    @Test
+    public void testStatsNotLimited() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_SERIES_PER_NAME, 1);
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_VALUES_PER_TAG_KEY, 2);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        for (int i = 0; i < 5; i++) {
+            registry.counter(registry.createId("name" + i).withTag("user", "a"));
+            registry.counter(registry.createId("name" + i).withTag("user", "b"));
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(registry.get(registry.createId("lookout.cardinality")
+                .withTag("metric", "name" + i)
+                .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name())));
+        }
+    }
+
+    @Test
+    public void testRemoveReleasesTagValues() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_VALUES_PER_TAG_KEY, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        Id a = registry.createId("conn").withTag("host", "a");
+        Id b = registry.createId("conn").withTag("host", "b");
+        registry.counter(a);
+        registry.counter(b);
+        Assert.assertNull(registry.get(b));
+        registry.removeMetric(a);
+        registry.counter(b);
+        Assert.assertNotNull(registry.get(b));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.Counter;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.PRIORITY;
+import com.alipay.lookout.core.config.LookoutConfig;
+import com.alipay.lookout.event.MetricRegistryListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IdleMeterSweeperTest {
+
+    @Test
+    public void testExpireAndRevive() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS, 2);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        final List<Metric> removed = new ArrayList<Metric>();
+        final List<Metric> added = new ArrayList<Metric>();
+        registry.addListener(new MetricRegistryListener() {
+            @Override
+            public void onRemoved(Metric metric) {
+                removed.add(metric);
+            }
+
+            @Override
+            public void onAdded(Metric metric) {
+                added.add(metric);
+            }
+        });
+
+        Id idleId = registry.createId("idle");
+        Id busyId = registry.createId("busy");
+        Counter idle = registry.counter(idleId);
+        Counter busy = registry.counter(busyId);
+        IdleMeterSweeper sweeper = registry.idleMeterSweeper;
+        Assert.assertNotNull(sweeper);
+
+        long step = config.stepMillis(PRIORITY.NORMAL);
+        for (int i = 1; i <= 3; i++) {
+            busy.inc();
+            sweeper.sweep(i * step);
+        }
+        Assert.assertNull(registry.get(idleId));
+        Assert.assertSame(busy, registry.get(busyId));
+        Assert.assertTrue(removed.contains(idle));
+        Assert.assertFalse(removed.contains(busy));
+
+        // 调用方持有引用, 再次记录时重新注册
+        added.clear();
+        idle.inc();
+        Assert.assertSame(idle, registry.get(idleId));
+        Assert.assertTrue(added.contains(idle));
+        Assert.assertEquals(1, idle.count());
+    }
+
+    @Test
+    public void testLookupReturnsExpiredMeter() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        Id id = registry.createId("idle");
+        Counter held = registry.counter(id);
+        expireAll(registry, config);
+        Assert.assertNull(registry.get(id));
+
+        // 获取到的是调用方持有的同一个实例, 之后通过持有的引用记录的数据不会丢失
+        Counter counter = registry.counter(id);
+        Assert.assertSame(held, counter);
+        held.inc();
+        Assert.assertSame(held, registry.get(id));
+        Assert.assertEquals(1, counter.count());
+    }
+
+    @Test
+    public void testReviveRespectsMaxMetrics() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        Id id = registry.createId("idle");
+        Counter held = registry.counter(id);
+        expireAll(registry, config);
+
+        int size = 0;
+        for (Metric ignored : registry) {
+            size++;
+        }
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_METRICS_NUMBER, size);
+        held.inc();
+        Assert.assertNull(registry.get(id));
+
+        // 被拒绝后, 下次记录时重试
+        config.setProperty(LookoutConfig.LOOKOUT_MAX_METRICS_NUMBER, size + 1);
+        held.inc();
+        Assert.assertSame(held, registry.get(id));
+        Assert.assertEquals(2, held.count());
+    }
+
+    private static void expireAll(DefaultRegistry registry, LookoutConfig config) {
+        long step = config.stepMillis(PRIORITY.NORMAL);
+        for (int i = 1; i <= 3; i++) {
+            registry.idleMeterSweeper.sweep(i * step);
+        }
+    }
+
+    @Test
+    public void testAtLeastTwoIdleSteps() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS, 1);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        Assert.assertEquals(2, registry.idleStepsBeforeExpiry());
+        Id id = registry.createId("idle");
+        registry.counter(id).inc();
+
+        // 只空闲一轮的 meter 最后一个 step 可能还没有被 poll, 不回收
+        long step = config.stepMillis(PRIORITY.NORMAL);
+        registry.idleMeterSweeper.sweep(step);
+        registry.idleMeterSweeper.sweep(2 * step);
+        Assert.assertNotNull(registry.get(id));
+        registry.idleMeterSweeper.sweep(3 * step);
+        Assert.assertNull(registry.get(id));
+    }
+
+    @Test
+    public void testDestroyStopsSweeper() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_METER_EXPIRE_IDLE_STEPS, 2);
+        DefaultRegistry registry = new DefaultRegistry(config);
+        registry.counter(registry.createId("idle"));
+        Assert.assertFalse(registry.idleMeterSweeper.isStopped());
+        registry.destroy();
+        Assert.assertTrue(registry.idleMeterSweeper.isStopped());
+
+        DefaultRegistry destroyed = new DefaultRegistry(config);
+        destroyed.destroy();
+        destroyed.counter(destroyed.createId("idle"));
+        Assert.assertNull(destroyed.idleMeterSweeper);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        DefaultRegistry registry = new DefaultRegistry(new LookoutConfig());
+        registry.counter(registry.createId("idle"));
+        Assert.assertNull(registry.idleMeterSweeper);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.core;
+
+import com.alipay.lookout.api.Gauge;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.MetricSnapshot;
+import com.alipay.lookout.core.config.LookoutConfig;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetricSnapshotTest {
+
+    @Test
+    public void testMeasureOncePerStep() {
+        ManualClock clock = new ManualClock();
+        clock.setWallTime(1000);
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_SNAPSHOT_ENABLE, true);
+        DefaultRegistry registry = new DefaultRegistry(clock, config);
+        final AtomicInteger calls = new AtomicInteger();
+        Id id = registry.createId("calls");
+        registry.gauge(id, new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return calls.incrementAndGet();
+            }
+        });
+        Metric gauge = registry.get(id);
+
+        // 两个 exporter 在同一个 step 内读到同一个值
+        MetricSnapshot first = registry.pollSnapshot(60000);
+        LookoutMeasurement a = new LookoutMeasurement().reset(gauge, null, first);
+        clock.setWallTime(59999);
+        MetricSnapshot second = registry.pollSnapshot(60000);
+        Assert.assertSame(first, second);
+        LookoutMeasurement b = new LookoutMeasurement().reset(gauge, null, second);
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(a.toString(), b.toString());
+        Assert.assertEquals(1.0, second.measure(gauge).measurements().iterator().next().value());
+        Assert.assertEquals(Measurement.EMPTY_STR, second.measure(gauge).measurements()
+            .iterator().next().name());
+
+        // 下一个 step 重新 measure
+        clock.setWallTime(60000);
+        MetricSnapshot next = registry.pollSnapshot(60000);
+        Assert.assertNotSame(first, next);
+        next.measure(gauge);
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        DefaultRegistry registry = new DefaultRegistry(new LookoutConfig());
+        Assert.assertNull(registry.pollSnapshot());
+        Assert.assertNotNull(registry.snapshot(60000));
+    }
+}
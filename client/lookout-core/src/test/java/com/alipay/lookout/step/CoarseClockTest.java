@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.ManualClock;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CoarseClockTest {
+
+    @Test
+    public void tick() throws Exception {
+        ManualClock source = new ManualClock(1000L, 7L);
+        CoarseClock clock = new CoarseClock(source, 1L);
+        try {
+            Assert.assertEquals(1000L, clock.wallTime());
+            Assert.assertEquals(7L, clock.monotonicTime());
+
+            source.setWallTime(2000L);
+            for (int i = 0; i < 500 && clock.wallTime() != 2000L; i++) {
+                Thread.sleep(2);
+            }
+            Assert.assertEquals(2000L, clock.wallTime());
+        } finally {
+            clock.stop();
+        }
+        // falls back to the source once stopped
+        source.setWallTime(3000L);
+        Assert.assertEquals(3000L, clock.wallTime());
+    }
+
+    @Test
+    public void stepRollover() throws Exception {
+        ManualClock source = new ManualClock(0L, 0L);
+        CoarseClock clock = new CoarseClock(source, 1L);
+        try {
+            StepLong v = new StepLong(0L, clock, 10L);
+            v.getCurrent().incrementAndGet();
+            source.setWallTime(10L);
+            for (int i = 0; i < 500 && clock.wallTime() != 10L; i++) {
+                Thread.sleep(2);
+            }
+            Assert.assertEquals(1L, v.poll());
+        } finally {
+            clock.stop();
+        }
+    }
+
+    @Test
+    public void sharedSystemClock() {
+        CoarseClock clock = CoarseClock.system(5L);
+        Assert.assertSame(clock, CoarseClock.system(5L));
+        Assert.assertNotSame(clock, CoarseClock.system(6L));
+        Assert.assertEquals(5L, clock.getResolutionMillis());
+        Assert.assertTrue(Math.abs(System.currentTimeMillis() - clock.wallTime()) < 1000L);
+    }
+}
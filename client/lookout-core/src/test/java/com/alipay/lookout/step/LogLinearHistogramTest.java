@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LogLinearHistogramTest {
+
+    @Test
+    public void linearRange() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1000L, 7);
+        for (int v = 0; v < 128; v++) {
+            Assert.assertEquals(v, histogram.indexOf(v));
+            Assert.assertEquals(v, histogram.lowestEquivalentValue(v));
+            Assert.assertEquals(v, histogram.highestEquivalentValue(v));
+        }
+        Assert.assertEquals(0, histogram.indexOf(-5L));
+    }
+
+    @Test
+    public void slotsAreContiguous() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1L << 40, 5);
+        long expectedLow = 0;
+        for (int i = 0; i < histogram.length() - 1; i++) {
+            Assert.assertEquals(expectedLow, histogram.lowestEquivalentValue(i));
+            long high = histogram.highestEquivalentValue(i);
+            Assert.assertEquals(i, histogram.indexOf(expectedLow));
+            Assert.assertEquals(i, histogram.indexOf(high));
+            // 相对误差
+            Assert.assertTrue(high - expectedLow <= Math.max(0, expectedLow / 16));
+            expectedLow = high + 1;
+        }
+        Assert.assertEquals(expectedLow, (1L << 40) + 1);
+    }
+
+    @Test
+    public void overflow() {
+        LogLinearHistogram histogram = new LogLinearHistogram(500L, 7);
+        int overflow = histogram.length() - 1;
+        Assert.assertEquals(overflow, histogram.indexOf(501L));
+        Assert.assertEquals(overflow, histogram.indexOf(Long.MAX_VALUE));
+        Assert.assertEquals(overflow - 1, histogram.indexOf(500L));
+        Assert.assertEquals(501L, histogram.lowestEquivalentValue(overflow));
+    }
+
+    @Test
+    public void recordAndReset() {
+        LogLinearHistogram histogram = new LogLinearHistogram(500L, 7);
+        histogram.record(3L);
+        histogram.record(3L);
+        histogram.record(1000L);
+        Assert.assertEquals(2L, histogram.getAndReset(histogram.indexOf(3L)));
+        Assert.assertEquals(0L, histogram.get(histogram.indexOf(3L)));
+        Assert.assertEquals(1L, histogram.get(histogram.length() - 1));
+    }
+}
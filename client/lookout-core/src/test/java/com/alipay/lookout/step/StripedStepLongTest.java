@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.ManualClock;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(JUnit4.class)
+public class StripedStepLongTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Before
+    public void init() {
+        clock.setWallTime(0L);
+    }
+
+    @Test
+    public void sumCrossStepBoundary() {
+        StepLongValue v = StepLongValues.newSum(clock, 10L, true);
+        v.record(1L);
+        v.record(2L);
+        Assert.assertEquals(0L, v.poll());
+        clock.setWallTime(10L);
+        Assert.assertEquals(3L, v.poll());
+        //漏读一个 step, previous 归零
+        clock.setWallTime(30L);
+        Assert.assertEquals(0L, v.poll());
+    }
+
+    @Test
+    public void maxCrossStepBoundary() {
+        StepLongValue v = StepLongValues.newMax(clock, 10L, true);
+        v.record(5L);
+        v.record(3L);
+        v.record(7L);
+        clock.setWallTime(10L);
+        Assert.assertEquals(7L, v.poll());
+        v.record(2L);
+        clock.setWallTime(20L);
+        Assert.assertEquals(2L, v.poll());
+    }
+
+    @Test
+    public void atomicMax() {
+        StepLongValue v = StepLongValues.newMax(clock, 10L, false);
+        v.record(5L);
+        v.record(3L);
+        clock.setWallTime(10L);
+        Assert.assertEquals(5L, v.poll());
+    }
+
+    @Test
+    public void setStepResets() {
+        StepLongValue v = StepLongValues.newSum(clock, 10L, true);
+        v.record(1L);
+        clock.setWallTime(10L);
+        v.setStep(20L);
+        Assert.assertEquals(20L, v.getStep());
+        Assert.assertEquals(0L, v.poll());
+    }
+
+    @Test
+    public void concurrentIncrement() throws InterruptedException {
+        final StepLongValue v = StepLongValues.newSum(clock, 10L, true);
+        final int threads = 8;
+        final int loops = 10000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < loops; j++) {
+                        v.record(1L);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        clock.setWallTime(10L);
+        Assert.assertEquals((long) threads * loops, v.poll());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.step;
+
+import com.alipay.lookout.api.NoopRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelSchedulerTest {
+    private TimingWheelScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testScheduleBeyondOneRound() throws InterruptedException {
+        // 一圈只有 4 * 10ms, 200ms 的任务需要经过多圈
+        scheduler = new TimingWheelScheduler(NoopRegistry.INSTANCE, "wheel", "wheel", 1, 10, 4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("fired too early: " + elapsed, elapsed >= 200);
+    }
+
+    @Test
+    public void testFixedRateAlignedToPhase() throws InterruptedException {
+        scheduler = new TimingWheelScheduler(NoopRegistry.INSTANCE, "wheel", 1);
+        final List<Long> times = new CopyOnWriteArrayList<Long>();
+        final long period = 100;
+        long first = System.currentTimeMillis() + 50;
+        scheduler.scheduleAtFixedRateSkipIfLong(new Runnable() {
+            @Override
+            public void run() {
+                times.add(System.currentTimeMillis());
+            }
+        }, 50, period, TimeUnit.MILLISECONDS);
+        Thread.sleep(1000);
+        scheduler.shutdown();
+
+        Assert.assertTrue("runs: " + times.size(), times.size() >= 8 && times.size() <= 10);
+        for (int i = 0; i < times.size(); i++) {
+            // 每次执行都对齐到 first + i * period, 延迟不会累积
+            long lag = times.get(i) - (first + i * period);
+            Assert.assertTrue("run " + i + " lag " + lag, lag >= -1 && lag < period / 2);
+        }
+    }
+
+    @Test
+    public void testSkipIfLong() throws InterruptedException {
+        scheduler = new TimingWheelScheduler(NoopRegistry.INSTANCE, "wheel", 2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+        scheduler.scheduleAtFixedRateSkipIfLong(new Runnable() {
+            @Override
+            public void run() {
+                maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+                runs.incrementAndGet();
+                try {
+                    Thread.sleep(120);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        }, 0, 50, TimeUnit.MILLISECONDS);
+        Thread.sleep(1000);
+        scheduler.shutdown();
+
+        // 每次执行 120ms 跨越了 3 个周期, 错过的周期被跳过而不是补执行
+        Assert.assertEquals(1, maxRunning.get());
+        Assert.assertTrue("runs: " + runs.get(), runs.get() >= 5 && runs.get() <= 8);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        scheduler = new TimingWheelScheduler(NoopRegistry.INSTANCE, "wheel", 1);
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRateSkipIfLong(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 100, 100, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(future.getDelay(TimeUnit.MILLISECONDS) > 0);
+        future.cancel(false);
+        Thread.sleep(300);
+        Assert.assertEquals(0, runs.get());
+        Assert.assertTrue(future.isCancelled());
+    }
+}
@@ -17,15 +17,13 @@
 package com.alipay.lookout.reg.prometheus;
 
 import com.alipay.lookout.api.Clock;
-import com.alipay.lookout.api.Metric;
-import com.alipay.lookout.api.info.Info;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.core.CommonTagsAccessor;
 import com.alipay.lookout.core.DefaultRegistry;
 import com.alipay.lookout.core.config.MetricConfig;
-import com.alipay.lookout.reg.prometheus.common.PromWriter;
+import com.alipay.lookout.reg.prometheus.common.PromFormat;
+import com.alipay.lookout.reg.prometheus.common.PromStreamWriter;
 import com.alipay.lookout.reg.prometheus.exporter.ExporterServer;
-import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -34,9 +32,10 @@ import org.slf4j.Logger;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.Iterator;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
 
 import static com.alipay.lookout.core.config.LookoutConfig.APP_NAME;
 import static com.alipay.lookout.core.config.LookoutConfig.DEFAULT_PROMETHEUS_EXPORTER_SERVER_PORT;
@@ -46,11 +45,11 @@ import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_PROMETHEUS_EX
  * Created by kevin.luy@alipay.com on 2018/5/10.
  */
 public class PrometheusRegistry extends DefaultRegistry implements Closeable, CommonTagsAccessor {
-    private static final Logger       logger     = LookoutLoggerFactory
-                                                     .getLogger(PrometheusRegistry.class);
+    private static final Logger       logger           = LookoutLoggerFactory
+                                                           .getLogger(PrometheusRegistry.class);
     private final ExporterServer      exporterServer;
-    private final PromWriter          promWriter = new PromWriter();
-    private final Map<String, String> commonTags = new ConcurrentHashMap<String, String>();
+    private final PromStreamWriter    promStreamWriter = new PromStreamWriter();
+    private final Map<String, String> commonTags       = new ConcurrentHashMap<String, String>();
 
     public PrometheusRegistry(MetricConfig config) {
         this(Clock.SYSTEM, config);
@@ -68,18 +67,31 @@ public class PrometheusRegistry extends DefaultRegistry implements Closeable, Co
         exporterServer.addMetricsQueryHandler(new HttpHandler() {
             @Override
             public void handle(HttpExchange httpExchange) throws IOException {
-                String promText = "";
+                int samples = 0;
                 try {
-                    promText = getMetricsSnapshot(PrometheusRegistry.this.iterator());
-                    byte[] respContents = promText.getBytes("UTF-8");
-                    httpExchange.sendResponseHeaders(200, respContents.length);
-                    httpExchange.getResponseHeaders().add("Content-Type",
-                        "text/plain; charset=UTF-8");
-                    httpExchange.getResponseBody().write(respContents);
-                    httpExchange.close();
+                    PromFormat format = PromFormat.negotiate(httpExchange.getRequestHeaders()
+                        .getFirst("Accept"));
+                    boolean gzip = acceptsGzip(httpExchange);
+                    httpExchange.getResponseHeaders().set("Content-Type", format.getContentType());
+                    if (gzip) {
+                        httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    }
+                    // 长度为0表示使用 chunked 编码, 边生成边发送, 不在内存里拼接整个响应
+                    httpExchange.sendResponseHeaders(200, 0);
+                    OutputStream os = httpExchange.getResponseBody();
+                    if (gzip) {
+                        os = new GZIPOutputStream(os, 8192);
+                    }
+                    try {
+                        samples = promStreamWriter.write(PrometheusRegistry.this.iterator(),
+                            PrometheusRegistry.this, pollSnapshot(), format, os);
+                    } finally {
+                        os.close();
+                    }
                 } finally {
-                    logger.debug("{} scrapes prometheus metrics:\n{}", httpExchange
-                        .getRemoteAddress().getAddress(), promText);
+                    httpExchange.close();
+                    logger.debug("{} scrapes {} prometheus samples.", httpExchange
+                        .getRemoteAddress().getAddress(), samples);
                 }
             }
         });
@@ -87,26 +99,15 @@ public class PrometheusRegistry extends DefaultRegistry implements Closeable, Co
         logger.info("lookout client exporter is started. server port:{}", serverPort);
     }
 
-    /**
-     * @param metricIterator
-     * @return
-     */
-    private String getMetricsSnapshot(Iterator<Metric> metricIterator) {
-        StringBuilder sb = new StringBuilder();
-        while (metricIterator.hasNext()) {
-            Metric metric = metricIterator.next();
-            if (metric instanceof Info) {
-                continue;
-            }
-            LookoutMeasurement measurement = LookoutMeasurement.from(metric, this);
-            sb.append(promWriter.printFromLookoutMeasurement(measurement));
-        }
-        return sb.toString();
+    private static boolean acceptsGzip(HttpExchange httpExchange) {
+        String encoding = httpExchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return encoding != null && encoding.toLowerCase().contains("gzip");
     }
 
     @Override
     public void close() throws IOException {
         exporterServer.stop();
+        destroy();
         logger.info("lookout client exporter is stopped.");
 
     }
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.reg.prometheus.common;
+
+/**
+ * prometheus exposition 格式, 根据请求的 Accept 头协商.
+ */
+public enum PromFormat {
+    /**
+     * prometheus text format 0.0.4
+     */
+    TEXT("text/plain; version=0.0.4; charset=utf-8"),
+    /**
+     * OpenMetrics text format 1.0.0
+     */
+    OPENMETRICS("application/openmetrics-text; version=1.0.0; charset=utf-8"),
+    /**
+     * 长度分隔的 io.prometheus.client.MetricFamily protobuf 消息
+     */
+    PROTOBUF("application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; "
+             + "encoding=delimited");
+
+    private final String contentType;
+
+    PromFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * 按照 Accept 头里各媒体类型的 q 值选择格式, q 值相同时取先出现的, 没有匹配时使用 {@link #TEXT}
+     *
+     * @param accept Accept header, 可以为null
+     * @return format
+     */
+    public static PromFormat negotiate(String accept) {
+        if (accept == null) {
+            return TEXT;
+        }
+        PromFormat best = TEXT;
+        double bestQ = -1;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            String mediaType = params[0].trim().toLowerCase();
+            PromFormat format;
+            if (mediaType.equals("application/vnd.google.protobuf")) {
+                if (!range.contains("io.prometheus.client.MetricFamily")
+                    || !range.contains("delimited")) {
+                    continue;
+                }
+                format = PROTOBUF;
+            } else if (mediaType.equals("application/openmetrics-text")) {
+                format = OPENMETRICS;
+            } else if (mediaType.equals("text/plain") || mediaType.equals("*/*")) {
+                format = TEXT;
+            } else {
+                continue;
+            }
+            double q = quality(params);
+            if (q > 0 && q > bestQ) {
+                best = format;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.reg.prometheus.common;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.MetricSnapshot;
+import com.alipay.lookout.api.info.Info;
+import com.alipay.lookout.core.CommonTagsAccessor;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 直接把 registry 里的 metric 以 prometheus 格式写到输出流, 不在内存里拼接整个 exposition.
+ * <p>
+ * 每个 Id 转义后的 metric 名和 label 串会被缓存, 稳定状态下 scrape 不再重复转义; 一次 scrape
+ * 中没有出现的 Id 会被移出缓存, common tags 变化时整个缓存失效.
+ * <p>
+ * 同名的 sample 需要连续输出(OpenMetrics 和 protobuf 的 MetricFamily 都要求如此), 因此按 metric
+ * 名分组, 只有一个分组内的数据会暂存在内存里.
+ */
+public class PromStreamWriter {
+    private static final Charset     UTF8           = Charset.forName("UTF-8");
+    private static final Pattern     labelChars     = Pattern.compile("[^a-zA-Z0-9_]");
+
+    // protobuf wire format: (field_number << 3) | wire_type
+    private static final int         FAMILY_NAME    = (1 << 3) | 2;
+    private static final int         FAMILY_TYPE    = (3 << 3);
+    private static final int         FAMILY_METRIC  = (4 << 3) | 2;
+    private static final int         METRIC_LABEL   = (1 << 3) | 2;
+    private static final int         METRIC_GAUGE   = (2 << 3) | 2;
+    private static final int         LABEL_NAME     = (1 << 3) | 2;
+    private static final int         LABEL_VALUE    = (2 << 3) | 2;
+    private static final int         GAUGE_VALUE    = (1 << 3) | 1;
+    private static final int         TYPE_GAUGE     = 1;
+
+    private final PromWriter         promWriter     = new PromWriter();
+    private final Map<Id, Series>    cache          = new HashMap<Id, Series>();
+    private final LookoutMeasurement measurement    = new LookoutMeasurement();
+    private final SampleVisitor      sampleVisitor  = new SampleVisitor();
+    private Map<String, String>      lastCommonTags = Collections.emptyMap();
+    private long                     generation;
+
+    /**
+     * 把 metrics 按照指定格式写到 out, 调用方负责关闭 out
+     *
+     * @param metrics            metrics
+     * @param commonTagsAccessor common tags, 可以为null
+     * @param format             format
+     * @param out                out
+     * @return 写出的 sample 数
+     * @throws IOException IOException
+     */
+    public int write(Iterator<Metric> metrics, CommonTagsAccessor commonTagsAccessor,
+                     PromFormat format, OutputStream out) throws IOException {
+        return write(metrics, commonTagsAccessor, null, format, out);
+    }
+
+    /**
+     * 把 metrics 按照指定格式写到 out, 调用方负责关闭 out
+     *
+     * @param metrics            metrics
+     * @param commonTagsAccessor common tags, 可以为null
+     * @param snapshot           共享的 measure 结果, 为null时直接 measure metric
+     * @param format             format
+     * @param out                out
+     * @return 写出的 sample 数
+     * @throws IOException IOException
+     */
+    public synchronized int write(Iterator<Metric> metrics,
+                                  CommonTagsAccessor commonTagsAccessor, MetricSnapshot snapshot,
+                                  PromFormat format, OutputStream out) throws IOException {
+        Map<String, String> commonTags = commonTagsAccessor == null ? Collections
+            .<String, String> emptyMap() : commonTagsAccessor.commonTags();
+        if (!lastCommonTags.equals(commonTags)) {
+            cache.clear();
+            lastCommonTags = new HashMap<String, String>(commonTags);
+        }
+        long gen = ++generation;
+
+        // 按转义后的 metric 名分组
+        Map<String, List<Metric>> groups = new LinkedHashMap<String, List<Metric>>();
+        while (metrics.hasNext()) {
+            Metric metric = metrics.next();
+            if (metric instanceof Info) {
+                continue;
+            }
+            Series series = cache.get(metric.id());
+            if (series == null) {
+                series = new Series(promWriter.formatMetricName(metric.id().name() + "_"));
+                cache.put(metric.id(), series);
+            }
+            series.generation = gen;
+            List<Metric> group = groups.get(series.prefix);
+            if (group == null) {
+                group = new ArrayList<Metric>();
+                groups.put(series.prefix, group);
+            }
+            group.add(metric);
+        }
+        for (Iterator<Series> it = cache.values().iterator(); it.hasNext();) {
+            if (it.next().generation != gen) {
+                it.remove();
+            }
+        }
+
+        Writer writer = null;
+        if (format != PromFormat.PROTOBUF) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, UTF8), 8192);
+        }
+        int samples = 0;
+        sampleVisitor.format = format;
+        for (List<Metric> group : groups.values()) {
+            sampleVisitor.families.clear();
+            for (Metric metric : group) {
+                measurement.reset(metric, commonTagsAccessor, snapshot);
+                sampleVisitor.series = cache.get(metric.id());
+                measurement.acceptValues(sampleVisitor);
+            }
+            for (Family family : sampleVisitor.families.values()) {
+                samples += family.samples;
+                if (writer != null) {
+                    if (format == PromFormat.OPENMETRICS) {
+                        writer.write("# TYPE ");
+                        writer.write(family.name);
+                        writer.write(" gauge\n");
+                    }
+                    writer.append(family.text);
+                } else {
+                    writeFamily(out, family);
+                }
+            }
+        }
+        sampleVisitor.families.clear();
+        sampleVisitor.series = null;
+        if (writer != null) {
+            if (format == PromFormat.OPENMETRICS) {
+                writer.write("# EOF\n");
+            }
+            writer.flush();
+        } else {
+            out.flush();
+        }
+        return samples;
+    }
+
+    private static void writeFamily(OutputStream out, Family family) throws IOException {
+        byte[] name = family.name.getBytes(UTF8);
+        ByteArrayOutputStream head = new ByteArrayOutputStream(name.length + 8);
+        head.write(FAMILY_NAME);
+        writeVarint(head, name.length);
+        head.write(name);
+        head.write(FAMILY_TYPE);
+        head.write(TYPE_GAUGE);
+        writeVarint(out, head.size() + family.proto.size());
+        head.writeTo(out);
+        family.proto.writeTo(out);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeField(ByteArrayOutputStream out, int tag, byte[] bytes)
+                                                                                    throws IOException {
+        out.write(tag);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String formatLabelName(String key) {
+        String sanitized = labelChars.matcher(key).replaceAll("_");
+        if (Character.isDigit(sanitized.charAt(0))) {
+            sanitized = "m_" + sanitized;
+        }
+        return sanitized;
+    }
+
+    /**
+     * label value 只需要转义反斜杠, 双引号和换行
+     */
+    static String escapeLabelValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped;
+            if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '"') {
+                escaped = "\\\"";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            sb.append(escaped);
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * 一个 Id 转义后的名字前缀和 label, label 在第一次输出时计算
+     */
+    private static final class Series {
+        final String prefix;
+        long         generation;
+        String       labels;
+        byte[]       protoLabels;
+        String[]     keys  = new String[0];
+        String[]     names = new String[0];
+
+        Series(String prefix) {
+            this.prefix = prefix;
+        }
+
+        String name(String key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return names[i];
+                }
+            }
+            String[] newKeys = new String[keys.length + 1];
+            String[] newNames = new String[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            System.arraycopy(names, 0, newNames, 0, keys.length);
+            newKeys[keys.length] = key;
+            newNames[keys.length] = prefix + labelChars.matcher(key).replaceAll("_");
+            keys = newKeys;
+            names = newNames;
+            return newNames[keys.length - 1];
+        }
+
+        String labels(LookoutMeasurement measurement) {
+            if (labels == null) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < measurement.tagCount(); i++) {
+                    if (measurement.tagKey(i).length() == 0) {
+                        continue;
+                    }
+                    sb.append(sb.length() == 0 ? '{' : ',');
+                    sb.append(formatLabelName(measurement.tagKey(i))).append("=\"")
+                        .append(escapeLabelValue(measurement.tagValue(i))).append('"');
+                }
+                if (sb.length() > 0) {
+                    sb.append('}');
+                }
+                labels = sb.toString();
+            }
+            return labels;
+        }
+
+        byte[] protoLabels(LookoutMeasurement measurement) throws IOException {
+            if (protoLabels == null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ByteArrayOutputStream pair = new ByteArrayOutputStream();
+                for (int i = 0; i < measurement.tagCount(); i++) {
+                    if (measurement.tagKey(i).length() == 0) {
+                        continue;
+                    }
+                    String value = measurement.tagValue(i);
+                    pair.reset();
+                    writeField(pair, LABEL_NAME,
+                        formatLabelName(measurement.tagKey(i)).getBytes(UTF8));
+                    writeField(pair, LABEL_VALUE, (value == null ? "" : value).getBytes(UTF8));
+                    writeField(bos, METRIC_LABEL, pair.toByteArray());
+                }
+                protoLabels = bos.toByteArray();
+            }
+            return protoLabels;
+        }
+    }
+
+    /**
+     * 一个分组内同名 sample 的暂存区
+     */
+    private static final class Family {
+        final String          name;
+        StringBuilder         text;
+        ByteArrayOutputStream proto;
+        int                   samples;
+
+        Family(String name) {
+            this.name = name;
+        }
+    }
+
+    private final class SampleVisitor implements MeasurementVisitor {
+        final Map<String, Family> families = new LinkedHashMap<String, Family>();
+        PromFormat                format;
+        Series                    series;
+
+        @Override
+        public void visit(String name, long value) {
+            if (format == PromFormat.PROTOBUF) {
+                sample(name, null, value);
+            } else {
+                sample(name, Long.toString(value), value);
+            }
+        }
+
+        @Override
+        public void visit(String name, double value) {
+            if (format == PromFormat.PROTOBUF) {
+                sample(name, null, value);
+            } else {
+                sample(name, formatValue(value), value);
+            }
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            // 非数值的数据无法以 prometheus 格式表示
+            if (value instanceof Long || value instanceof Integer) {
+                visit(name, ((Number) value).longValue());
+            } else if (value instanceof Number) {
+                visit(name, ((Number) value).doubleValue());
+            }
+        }
+
+        private void sample(String key, String text, double value) {
+            String name = series.name(key);
+            Family family = families.get(name);
+            if (family == null) {
+                family = new Family(name);
+                families.put(name, family);
+            }
+            family.samples++;
+            try {
+                if (format == PromFormat.PROTOBUF) {
+                    if (family.proto == null) {
+                        family.proto = new ByteArrayOutputStream();
+                    }
+                    byte[] labels = series.protoLabels(measurement);
+                    // Metric{label..., gauge{value}}: gauge 消息固定 9 个字节
+                    family.proto.write(FAMILY_METRIC);
+                    writeVarint(family.proto, labels.length + 11);
+                    family.proto.write(labels);
+                    family.proto.write(METRIC_GAUGE);
+                    family.proto.write(9);
+                    family.proto.write(GAUGE_VALUE);
+                    long bits = Double.doubleToRawLongBits(value);
+                    for (int i = 0; i < 8; i++) {
+                        family.proto.write((int) (bits >>> (i * 8)));
+                    }
+                } else {
+                    if (family.text == null) {
+                        family.text = new StringBuilder();
+                    }
+                    family.text.append(name).append(series.labels(measurement)).append(' ')
+                        .append(text).append('\n');
+                }
+            } catch (IOException e) {
+                // 内存流不会抛出IOException
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -44,9 +45,12 @@ public class ExporterServerTest {
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.setRequestMethod("GET"); //使用get请求
         conn.connect();
-        String length = conn.getHeaderField("Content-Length");
-        byte[] bytes = new byte[Integer.valueOf(length)];
-        IOUtils.readFully(conn.getInputStream(), bytes);
-        return new String(bytes, Charset.forName("utf-8"));
+        // metrics 使用 chunked 编码返回, 没有 Content-Length
+        InputStream in = conn.getInputStream();
+        try {
+            return new String(IOUtils.toByteArray(in), Charset.forName("utf-8"));
+        } finally {
+            in.close();
+        }
     }
 }
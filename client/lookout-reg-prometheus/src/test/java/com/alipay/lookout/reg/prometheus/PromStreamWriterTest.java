@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.reg.prometheus;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.reg.prometheus.common.PromFormat;
+import com.alipay.lookout.reg.prometheus.common.PromStreamWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class PromStreamWriterTest {
+
+    @Test
+    public void testNegotiate() {
+        Assert.assertEquals(PromFormat.TEXT, PromFormat.negotiate(null));
+        Assert.assertEquals(PromFormat.TEXT, PromFormat.negotiate("text/plain;version=0.0.4"));
+        Assert.assertEquals(PromFormat.OPENMETRICS, PromFormat
+            .negotiate("application/openmetrics-text;version=1.0.0,text/plain;q=0.5"));
+        Assert.assertEquals(PromFormat.PROTOBUF, PromFormat
+            .negotiate("application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;"
+                       + "encoding=delimited;q=0.8,application/openmetrics-text;q=0.7"));
+        Assert.assertEquals(PromFormat.TEXT, PromFormat
+            .negotiate("application/vnd.google.protobuf;q=0.9,text/plain;q=0.1"));
+    }
+
+    @Test
+    public void testText() throws IOException {
+        DefaultRegistry r = new DefaultRegistry();
+        r.counter(r.createId("aa.bb").withTag("k", "v\"1")).inc(3);
+        r.counter(r.createId("cc").withTag("k", "v2")).inc();
+        r.counter(r.createId("aa.bb").withTag("k", "v3")).inc();
+
+        PromStreamWriter writer = new PromStreamWriter();
+        String text = write(writer, r, PromFormat.TEXT);
+        Assert.assertTrue(text, text.contains("aa_bb_value{k=\"v\\\"1\",_type_=\"c\"} 3\n"));
+        // 同名的 sample 连续输出
+        String[] lines = text.split("\n");
+        int first = text.startsWith("cc_value") ? 1 : 0;
+        Assert.assertTrue(text, lines[first].startsWith("aa_bb_value"));
+        Assert.assertTrue(text, lines[first + 1].startsWith("aa_bb_value"));
+        Assert.assertFalse(text.contains("# EOF"));
+        // 缓存命中时输出不变
+        Assert.assertEquals(text, write(writer, r, PromFormat.TEXT));
+    }
+
+    @Test
+    public void testOpenMetrics() throws IOException {
+        DefaultRegistry r = new DefaultRegistry();
+        r.counter(r.createId("aa.bb")).inc();
+        String text = write(new PromStreamWriter(), r, PromFormat.OPENMETRICS);
+        Assert.assertTrue(text, text.startsWith("# TYPE aa_bb_value gauge\naa_bb_value{"));
+        Assert.assertTrue(text, text.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void testProtobuf() throws IOException {
+        DefaultRegistry r = new DefaultRegistry();
+        Id id = r.createId("aa");
+        r.counter(id).inc(2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PromStreamWriter().write(r.iterator(), null, PromFormat.PROTOBUF, bos);
+        byte[] bytes = bos.toByteArray();
+
+        // 长度前缀 + MetricFamily{name="aa_value", type=GAUGE, metric{...}}
+        Assert.assertEquals(bytes.length - 1, bytes[0]);
+        Assert.assertEquals(0x0a, bytes[1]);
+        Assert.assertEquals("aa_value", new String(bytes, 3, bytes[2], "UTF-8"));
+        Assert.assertEquals(0x18, bytes[3 + bytes[2]]);
+        Assert.assertEquals(1, bytes[4 + bytes[2]]);
+        Assert.assertEquals(0x22, bytes[5 + bytes[2]]);
+        // gauge 的值在最后8个字节, little-endian double
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (bytes[bytes.length - 8 + i] & 0xFFL) << (i * 8);
+        }
+        Assert.assertEquals(2.0, Double.longBitsToDouble(bits), 0);
+    }
+
+    private static String write(PromStreamWriter writer, DefaultRegistry r,
+                                PromFormat format) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writer.write(r.iterator(), null, format, bos);
+        return bos.toString("UTF-8");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
+
+/**
+ * 以 header 上报的 common tags: 每次上报只发送一次, 由 gateway 展开到每个 metric(metric 自身已有的 tag 优先),
+ * 代替在每个 measurement 中重复合并和序列化. 格式为 k1=v1&amp;k2=v2, key 和 value 按 UTF-8 做 URL 编码.
+ */
+final class CommonTagsHeader {
+    static final String NAME = "Common-Tags";
+
+    private CommonTagsHeader() {
+    }
+
+    /**
+     * @param commonTags common tags
+     * @return header 的值, 没有 common tags 时为 null
+     */
+    static String encode(Map<String, String> commonTags) {
+        if (commonTags == null || commonTags.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : commonTags.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(urlEncode(entry.getKey())).append('=').append(urlEncode(entry.getValue()));
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static String urlEncode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
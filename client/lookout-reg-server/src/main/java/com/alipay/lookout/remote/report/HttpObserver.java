@@ -21,26 +21,38 @@ import com.alipay.lookout.api.Registry;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
+import com.alipay.lookout.remote.report.support.AsyncReportSender;
+import com.alipay.lookout.remote.report.support.BinaryReportEncoder;
+import com.alipay.lookout.remote.report.support.JsonReportEncoder;
+import com.alipay.lookout.remote.report.support.ReportBuffer;
+import com.alipay.lookout.remote.report.support.ReportBufferPool;
+import com.alipay.lookout.remote.report.support.ReportEncoder;
+import com.alipay.lookout.remote.report.support.SpillBuffer;
 import com.alipay.lookout.remote.report.support.http.DefaultHttpRequestProcessor;
 import com.alipay.lookout.remote.report.support.http.HttpRequestProcessor;
 import com.alipay.lookout.remote.report.support.http.ReportDecider;
 import com.alipay.lookout.report.MetricObserver;
 import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.StringEntity;
 import org.slf4j.Logger;
 import org.xerial.snappy.Snappy;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.alipay.lookout.core.config.LookoutConfig.*;
 
@@ -48,20 +60,37 @@ import static com.alipay.lookout.core.config.LookoutConfig.*;
  * 将数据push到lookout-gateway
  * Created by kevin.luy@alipay.com on 2017/2/7.
  */
-public class HttpObserver implements MetricObserver<LookoutMeasurement> {
+public class HttpObserver implements MetricObserver<LookoutMeasurement>, Closeable {
     private static final Logger        logger                     = LookoutLoggerFactory
                                                                       .getLogger(HttpObserver.class);
     public static final String         UTF_8                      = "utf-8";
     static final String                AGENT_URL_PATTERN          = "http://%s:%d/datas";
     public static final String         APPLICATION_OCTET_STREAM   = "application/octet-stream";
     public static final String         SNAPPY                     = "snappy";
-    static final String                TEXT_MEDIATYPE             = "text/plain";
+    public static final String         SNAPPY_FRAMED              = "x-snappy-framed";
+    static final int                   MAX_REPLAY_BATCHES         = 16;
+    static final long                  MIN_REPLAY_BACKOFF_MILLIS  = 5000;
+    static final long                  MAX_REPLAY_BACKOFF_MILLIS  = 5 * 60 * 1000;
 
-    private static final char          MSG_SPLITOR                = '\t';
     private final AddressService       addressService;
     private final LookoutConfig        lookoutConfig;
 
     private final HttpRequestProcessor httpRequestProcessor;
+    private final ReportEncoder        jsonEncoder                = new JsonReportEncoder();
+    private final ReportEncoder        binaryEncoder              = new BinaryReportEncoder();
+    private final ReportBufferPool     bufferPool                 = new ReportBufferPool();
+    /**
+     * 不为 null 时异步发送
+     */
+    private final AsyncReportSender    asyncSender;
+    private final long                 asyncWaitMillis;
+    /**
+     * 不为 null 时暂存因网络异常发送失败的数据
+     */
+    private final SpillBuffer          spillBuffer;
+    private final AtomicBoolean        replaying                  = new AtomicBoolean(false);
+    private volatile long              nextReplayTime             = 0;
+    private volatile long              replayBackoffMillis        = MIN_REPLAY_BACKOFF_MILLIS;
 
     private int                        innerAgentPort             = -1;
 
@@ -93,6 +122,21 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
         //inner port
         innerAgentPort = lookoutConfig.getInt(LOOKOUT_AGENT_SERVER_PORT, -1);
         this.reg = registry;
+        if (lookoutConfig.getBoolean(LOOKOUT_REPORT_ASYNC_ENABLE, false)) {
+            asyncSender = new AsyncReportSender(lookoutConfig.getInt(
+                LOOKOUT_REPORT_ASYNC_MAX_INFLIGHT, 4));
+        } else {
+            asyncSender = null;
+        }
+        asyncWaitMillis = lookoutConfig.getLong(LOOKOUT_REPORT_ASYNC_WAIT_MILLIS, 1000);
+        String spillDir = lookoutConfig.getString(LOOKOUT_REPORT_SPILL_DIR);
+        if (StringUtils.isNotEmpty(spillDir)) {
+            spillBuffer = new SpillBuffer(new File(spillDir), lookoutConfig.getLong(
+                LOOKOUT_REPORT_SPILL_MAX_BYTES, 32 * 1024 * 1024), TimeUnit.SECONDS
+                .toMillis(lookoutConfig.getLong(LOOKOUT_REPORT_SPILL_MAX_AGE_SECONDS, 1800)));
+        } else {
+            spillBuffer = null;
+        }
     }
 
     private Registry registry() {
@@ -148,6 +192,16 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
         return enable;
     }
 
+    /**
+     * 关闭异步发送的线程池, 已经提交的批次继续发送完, 之后的批次被丢弃
+     */
+    @Override
+    public void close() {
+        if (asyncSender != null) {
+            asyncSender.close();
+        }
+    }
+
     @Override
     public void update(List<LookoutMeasurement> measures, Map<String, String> metadata) {
         if (measures.isEmpty()) {
@@ -167,8 +221,14 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
         logger.debug(">> send metrics to {}:\n{}\n", address, filteredMeasures);
         List<List<LookoutMeasurement>> batches = getBatches(filteredMeasures,
             lookoutConfig.getInt(LOOKOUT_REPORT_BATCH_SIZE, DEFAULT_REPORT_BATCH_SIZE));
+        boolean sent = false;
         for (List<LookoutMeasurement> batch : batches) {
-            reportBatch(batch, metadata, address);
+            sent |= reportBatch(batch, metadata, address);
+        }
+        // 异步发送时 reportBatch 只表示已经提交, 在发送成功的回调中重放
+        if (sent && asyncSender == null) {
+            //gateway 可用时才重放暂存的数据
+            replaySpilled(address, false);
         }
     }
 
@@ -198,29 +258,128 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
         return batches;
     }
 
-    private void reportBatch(List<LookoutMeasurement> measures, Map<String, String> metadata,
-                             Address address) {
-        String text = buildReportText(measures);
-        if (measures.size() < lookoutConfig.getInt(LOOKOUT_REPORT_COMPRESSION_THRESHOLD, 100)) {
-            report2Agent(address, text, metadata);
-        } else {
-            reportSnappy2Agent(address, text, metadata);
+    private boolean reportBatch(List<LookoutMeasurement> measures, Map<String, String> metadata,
+                                Address address) {
+        if (httpRequestProcessor instanceof ReportDecider) {
+            ReportDecider decider = (ReportDecider) httpRequestProcessor;
+            if (decider.isBinaryAccepted(address)) {
+                boolean sent = reportBatch(measures, metadata, address, binaryEncoder);
+                if (sent || decider.isBinaryAccepted(address)) {
+                    return sent;
+                }
+                // gateway 不再接受二进制格式, 使用文本格式重发
+            }
         }
+        return reportBatch(measures, metadata, address, jsonEncoder);
         //  Response response = httpClient.newCall(request).execute();
         //  String date = response.header("Date");
         //  recordClockSkew((date == null) ? 0L : date.toEpochMilli());
     }
 
-    String buildReportText(List<LookoutMeasurement> measures) {
-        Iterator<LookoutMeasurement> it = measures.iterator();
-        StringBuilder sb = new StringBuilder();
-        while (it.hasNext()) {
-            if (sb.length() > 0) {
-                sb.append(MSG_SPLITOR);
+    private boolean reportBatch(List<LookoutMeasurement> measures, Map<String, String> metadata,
+                                Address address, ReportEncoder encoder) {
+        ReportBuffer body = bufferPool.acquire();
+        ReportBuffer compressed = null;
+        try {
+            ReportBuffer payload = body;
+            String contentEncoding = null;
+            // 分帧压缩时边编码边压缩, 得不到原始大小
+            int rawBytes = -1;
+            if (measures.size() >= lookoutConfig.getInt(LOOKOUT_REPORT_COMPRESSION_THRESHOLD, 100)) {
+                compressed = bufferPool.acquire();
+                try {
+                    if (lookoutConfig.getBoolean(LOOKOUT_REPORT_SNAPPY_FRAMED_ENABLE, false)) {
+                        encoder.encodeSnappyFramed(measures, body, compressed);
+                        contentEncoding = SNAPPY_FRAMED;
+                    } else {
+                        encoder.encode(measures, body);
+                        rawBytes = body.size();
+                        ReportEncoder.snappyCompress(body, compressed);
+                        contentEncoding = SNAPPY;
+                    }
+                } catch (IOException e) {
+                    logger.info(">>WARNING: snappy compress report msg err:{}", e.getMessage());
+                    return false;
+                }
+                payload = compressed;
+            } else {
+                encoder.encode(measures, body);
+                rawBytes = body.size();
+            }
+            if (selfMetrics()) {
+                recordPayload(rawBytes, payload.size());
+            }
+            HttpPost httpPost = buildPost(address, payload, encoder.contentType(),
+                contentEncoding);
+            if (asyncSender == null) {
+                return sendHttpDataSilently(httpPost, metadata, payload);
+            }
+            // 编码已经完成, measures 可以被回收; payload 交给异步发送, 发送结束后再归还
+            if (payload == body) {
+                body = null;
+            } else {
+                compressed = null;
+            }
+            sendAsync(address, httpPost, metadata, payload);
+            return true;
+        } finally {
+            bufferPool.release(body);
+            bufferPool.release(compressed);
+        }
+    }
+
+    private boolean selfMetrics() {
+        return lookoutConfig.getBoolean(LOOKOUT_SELF_METRICS_ENABLE, false);
+    }
+
+    /**
+     * @param rawBytes 编码后压缩前的字节数, 未知时为 -1
+     * @param sentBytes 发送的字节数
+     */
+    private void recordPayload(int rawBytes, int sentBytes) {
+        Registry r = registry();
+        r.distributionSummary(r.createId("lookout.client.report.bytes").withTag("stage", "sent"))
+            .record(sentBytes);
+        if (rawBytes >= 0) {
+            r.distributionSummary(r.createId("lookout.client.report.bytes").withTag("stage", "raw"))
+                .record(rawBytes);
+        }
+        if (rawBytes > 0 && rawBytes != sentBytes) {
+            r.distributionSummary(r.createId("lookout.client.report.compression.percent")).record(
+                sentBytes * 100L / rawBytes);
+        }
+    }
+
+    private void sendAsync(final Address address, final HttpPost httpPost,
+                           final Map<String, String> metadata, final ReportBuffer payload) {
+        boolean submitted = asyncSender.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return sendHttpDataSilently(httpPost, metadata, payload);
             }
-            sb.append(it.next().toString());
+        }, new AsyncReportSender.Callback() {
+            @Override
+            public void onComplete(boolean success, long elapsedNanos) {
+                bufferPool.release(payload);
+                Registry r = registry();
+                r.counter(
+                    r.createId("lookout.client.report.async.count").withTag("result",
+                        success ? "success" : "fail")).inc();
+                r.timer(r.createId("lookout.client.report.async.latency")).record(elapsedNanos,
+                    TimeUnit.NANOSECONDS);
+                if (success) {
+                    //gateway 可用时才重放暂存的数据
+                    replaySpilled(address, true);
+                }
+            }
+        }, asyncWaitMillis, TimeUnit.MILLISECONDS);
+        if (!submitted) {
+            bufferPool.release(payload);
+            registry().counter(registry().createId("lookout.client.report.async.drop.count"))
+                .inc();
+            logger.info(">>WARNING: too many reports in flight({}), drop batch:{}",
+                asyncSender.getMaxInFlight(), httpPost);
         }
-        return sb.toString();
     }
 
     void reportSnappy2Agent(Address agentAddress, String msg, Map<String, String> metadata) {
@@ -238,24 +397,142 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
         sendHttpDataSilently(httpPost, metadata);
     }
 
-    void report2Agent(Address agentAddress, String msg, Map<String, String> metadata) {
+    private HttpPost buildPost(Address agentAddress, ReportBuffer body, String contentType,
+                               String contentEncoding) {
+        return buildPost(agentAddress, body.array(), body.size(), contentType, contentEncoding);
+    }
+
+    private HttpPost buildPost(Address agentAddress, byte[] body, int length, String contentType,
+                               String contentEncoding) {
         HttpPost httpPost = new HttpPost(buildRealAgentServerURL(agentAddress));
-        httpPost.setHeader(HttpHeaders.CONTENT_TYPE, TEXT_MEDIATYPE);
-        try {
-            httpPost.setEntity(new StringEntity(msg));
-        } catch (UnsupportedEncodingException e) {
-            logger.info(">>WARNING: report msg encoding err:{}", e.getMessage());
+        httpPost.setHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        if (contentEncoding != null) {
+            httpPost.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
         }
-        sendHttpDataSilently(httpPost, metadata);
+        httpPost.setEntity(new ByteArrayEntity(body, 0, length));
+        return httpPost;
     }
 
-    void sendHttpDataSilently(HttpRequest httpRequest, Map<String, String> metadata) {
+    /**
+     * 重放暂存的数据, 失败后按指数退避, 异步模式下占用一个发送窗口
+     *
+     * @param inline 在发送成功的回调中, 已经占用了一个发送窗口, 直接在当前线程重放
+     */
+    private void replaySpilled(final Address address, boolean inline) {
+        if (spillBuffer == null || System.currentTimeMillis() < nextReplayTime
+            || spillBuffer.isEmpty() || !replaying.compareAndSet(false, true)) {
+            return;
+        }
+        if (asyncSender == null || inline) {
+            try {
+                replay(address);
+            } finally {
+                replaying.set(false);
+            }
+            return;
+        }
+        boolean submitted = asyncSender.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return replay(address);
+            }
+        }, new AsyncReportSender.Callback() {
+            @Override
+            public void onComplete(boolean success, long elapsedNanos) {
+                replaying.set(false);
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+        if (!submitted) {
+            replaying.set(false);
+        }
+    }
+
+    private boolean replay(Address address) {
+        for (int i = 0; i < MAX_REPLAY_BATCHES; i++) {
+            SpillBuffer.Record record = spillBuffer.peek(System.currentTimeMillis());
+            if (record == null) {
+                break;
+            }
+            HttpPost httpPost = buildPost(address, record.getData(), record.getData().length,
+                record.getContentType(), record.getContentEncoding());
+            Map<String, String> metadata = new HashMap<String, String>(4);
+            if (record.getPriority() != null) {
+                metadata.put(SchedulerPoller.PRIORITY_NAME, record.getPriority());
+            }
+            // 使用暂存时的 common tags, 数据产生后 app/ip 可能已经改变
+            if (record.getCommonTags() != null) {
+                metadata.put(CommonTagsHeader.NAME, record.getCommonTags());
+            }
+            boolean sent;
+            try {
+                sent = httpRequestProcessor.sendPostRequest(httpPost, metadata);
+            } catch (Throwable e) {
+                logger.info(">>WARNING: replay spilled report to {} fail!cause:{}", address,
+                    e.getMessage());
+                sent = false;
+            }
+            if (!sent && isReplayRetryable()) {
+                nextReplayTime = System.currentTimeMillis() + replayBackoffMillis;
+                replayBackoffMillis = Math.min(replayBackoffMillis * 2, MAX_REPLAY_BACKOFF_MILLIS);
+                return false;
+            }
+            // gateway 明确拒绝(比如 415 不再接受二进制格式)的数据重试也不会成功, 直接丢弃
+            spillBuffer.commit(record);
+            registry().counter(
+                registry().createId("lookout.client.report.spill.count").withTag("action",
+                    sent ? "replay" : "discard")).inc();
+        }
+        replayBackoffMillis = MIN_REPLAY_BACKOFF_MILLIS;
+        return true;
+    }
+
+    /**
+     * 只有网络异常, 5xx, 408 和 429 值得重试; 无法得到响应码时总是重试
+     */
+    private boolean isReplayRetryable() {
+        if (!(httpRequestProcessor instanceof ReportDecider)) {
+            return true;
+        }
+        int status = ((ReportDecider) httpRequestProcessor).getLastPostStatus();
+        return status < 0 || status >= 500 || status == 408 || status == 429;
+    }
+
+    private void spill(HttpPost httpPost, ReportBuffer payload, Map<String, String> metadata) {
+        Header contentEncoding = httpPost.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        boolean spilled = spillBuffer.append(httpPost.getFirstHeader(HttpHeaders.CONTENT_TYPE)
+            .getValue(), contentEncoding == null ? null : contentEncoding.getValue(),
+            metadata == null ? null : metadata.get(SchedulerPoller.PRIORITY_NAME),
+            metadata == null ? null : metadata.get(CommonTagsHeader.NAME), payload.array(), 0,
+            payload.size(), System.currentTimeMillis());
+        registry().counter(
+            registry().createId("lookout.client.report.spill.count").withTag("action",
+                spilled ? "spill" : "drop")).inc();
+    }
+
+    boolean sendHttpDataSilently(HttpRequest httpRequest, Map<String, String> metadata) {
+        return sendHttpDataSilently(httpRequest, metadata, null);
+    }
+
+    /**
+     * @param payload 网络异常时暂存的数据, 为 null 则不暂存
+     */
+    private boolean sendHttpDataSilently(HttpRequest httpRequest, Map<String, String> metadata,
+                                         ReportBuffer payload) {
         try {
             if (httpRequest instanceof HttpPost) {
                 registry().counter(
                     registry().createId("lookout.client.report.count").withTag("mtd", "post"))
                     .inc();
-                httpRequestProcessor.sendPostRequest((HttpPost) httpRequest, metadata);
+                if (!selfMetrics()) {
+                    return httpRequestProcessor.sendPostRequest((HttpPost) httpRequest, metadata);
+                }
+                long start = System.nanoTime();
+                try {
+                    return httpRequestProcessor.sendPostRequest((HttpPost) httpRequest, metadata);
+                } finally {
+                    registry().timer(registry().createId("lookout.client.report.send.latency"))
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
             }
             //            else if (httpRequest instanceof HttpGet) {
             //                registry().counter(
@@ -278,7 +555,11 @@ public class HttpObserver implements MetricObserver<LookoutMeasurement> {
                 registry().counter(registry().createId("lookout.client.report.fail.count")).inc();
             }
             logger.info(">>WARNING: lookout agent:{} fail!cause:{}", httpRequest, e.getMessage());
+            if (payload != null && spillBuffer != null && e instanceof IOException) {
+                spill((HttpPost) httpRequest, payload, metadata);
+            }
         }
+        return false;
     }
 
     String buildRealAgentServerURL(Address agentAddress) {
@@ -36,18 +36,30 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Created by kevin.luy@alipay.com on 2017/2/23.
  */
 final class ReScheduleSupport {
-    private static final Logger    logger              = LookoutLoggerFactory
-                                                           .getLogger(SchedulerPoller.class);
+    private static final Logger      logger              = LookoutLoggerFactory
+                                                             .getLogger(SchedulerPoller.class);
 
-    static final String            THREAD_NAME_SPLITOR = "-";
-    private Set<TaskResult>        taskResults;
+    static final String              THREAD_NAME_SPLITOR = "-";
+    private Set<TaskResult>          taskResults;
 
-    private final ScheduledService scheduler;
-    private final LookoutConfig    config;
-    private final Clock            clock;
+    /**
+     * 下标为 priority 的 ordinal
+     */
+    private final ScheduledService[] schedulers;
+    private final LookoutConfig      config;
+    private final Clock              clock;
 
     public ReScheduleSupport(ScheduledService scheduler, LookoutConfig config, Clock clock) {
-        this.scheduler = scheduler;
+        this(new ScheduledService[] { scheduler, scheduler, scheduler }, config, clock);
+    }
+
+    /**
+     * @param schedulers 每个 priority 独立的调度器, 下标为 priority 的 ordinal
+     * @param config     config
+     * @param clock      clock
+     */
+    public ReScheduleSupport(ScheduledService[] schedulers, LookoutConfig config, Clock clock) {
+        this.schedulers = schedulers;
         this.config = config;
         this.clock = clock;
     }
@@ -77,7 +89,7 @@ final class ReScheduleSupport {
 
         final TaskResult taskResult = new TaskResult();
 
-        Future future = scheduler.scheduleAtFixedRateSkipIfLong(new Runnable() {
+        Future future = schedulers[priority.ordinal()].scheduleAtFixedRateSkipIfLong(new Runnable() {
             @Override
             public void run() {
                 if (taskResult.getEnable().get()) {//确保任务Cancel失败，导致重复采集;
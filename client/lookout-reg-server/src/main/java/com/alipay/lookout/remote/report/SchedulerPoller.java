@@ -18,7 +18,10 @@ package com.alipay.lookout.remote.report;
 
 import com.alipay.lookout.api.*;
 import com.alipay.lookout.api.composite.CompositeRegistry;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.api.info.Info;
 import com.alipay.lookout.common.Assert;
+import com.alipay.lookout.common.LookoutConstants;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.common.top.RollableTopGauge;
 import com.alipay.lookout.core.*;
@@ -26,6 +29,7 @@ import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.jdk8.Function;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.alipay.lookout.remote.step.LookoutBucketCounter;
+import com.alipay.lookout.remote.step.MetricObserverComposite;
 import com.alipay.lookout.remote.step.PollableInfoWrapper;
 import com.alipay.lookout.report.AbstractPoller;
 import com.alipay.lookout.report.MetricObserver;
@@ -33,33 +37,71 @@ import com.alipay.lookout.report.filter.PriorityMetricFilter;
 import com.alipay.lookout.spi.MetricFilter;
 import com.alipay.lookout.step.MeasurableScheduler;
 import com.alipay.lookout.step.ScheduledService;
+import com.alipay.lookout.step.TimingWheelScheduler;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by kevin.luy@alipay.com on 2017/2/7.
  */
 public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
-    private final Logger               logger               = LookoutLoggerFactory
-                                                                .getLogger(SchedulerPoller.class);
-    private ScheduledService           scheduler;
+    private final Logger                           logger               = LookoutLoggerFactory
+                                                                            .getLogger(SchedulerPoller.class);
+    /**
+     * 每个 priority 一个调度器(下标为 ordinal), 慢的 priority 不影响其他 priority 的 step
+     */
+    private ScheduledService[]                     schedulers;
+    /**
+     * metric 较多时并行 measure 的 worker, 所有 priority 共享
+     */
+    private ThreadPoolExecutor                     measureExecutor;
+    /**
+     * 每个 priority 的 poll 耗时等自监控数据, 下标同 schedulers
+     */
+    private PollStats[]                            pollStats;
+    /**
+     * 各类型 metric 的 measure 耗时, 未开启 {@link LookoutConfig#LOOKOUT_SELF_METRICS_ENABLE} 时为 null
+     */
+    private MeasureStats                           measureStats;
 
     //====>config
-    private final boolean              enabled              = true;
-    private MetricObserver             metricObserver;
-    private final LookoutConfig        config;
-    private final int                  numThreads           = 3;
+    private final boolean                          enabled              = true;
+    private MetricObserver                         metricObserver;
+    private final LookoutConfig                    config;
 
-    private CompositeRegistry          compositeRegistry;
-    private ReScheduleSupport          reScheduleSupport;
-    private final PriorityMetricsCache priorityMetricsCache = new PriorityMetricsCache();
+    private CompositeRegistry                      compositeRegistry;
+    private ReScheduleSupport                      reScheduleSupport;
+    private final PriorityMetricsCache             priorityMetricsCache = new PriorityMetricsCache();
+    /**
+     * 每个 priority 一个(下标为 ordinal, 最后一个用于不区分 priority 的 poll), 用于复用 LookoutMeasurement
+     */
+    private final AtomicReferenceArray<PollBuffer> pollBuffers          = new AtomicReferenceArray<PollBuffer>(
+                                                                            PRIORITY.values().length + 1);
+    /**
+     * 稀疏上报时每个 priority 一个, 下标同 pollBuffers
+     */
+    private final SparseReportFilter[]             sparseFilters;
+    /**
+     * 每个 priority 下一次 poll 开始 measure 的位置, 下标同 pollBuffers.
+     * 超过截止时间时从上次停下的地方继续, 避免每次都跳过同一批 metric
+     */
+    private final AtomicIntegerArray               measureOffsets       = new AtomicIntegerArray(
+                                                                            PRIORITY.values().length + 1);
 
-    public static final String         PRIORITY_NAME        = "pri";
+    public static final String                     PRIORITY_NAME        = "pri";
 
     public SchedulerPoller(MetricRegistry observerableRegistry, LookoutConfig config,
                            MetricObserver observer) {
@@ -87,6 +129,7 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
         //        }
         this.compositeRegistry = compositeRegistry;
         this.metricObserver = observer;
+        this.sparseFilters = new SparseReportFilter[PRIORITY.values().length + 1];
         Assert.notNull(this.metricObserver, "metricObserver is required!");
     }
 
@@ -94,14 +137,39 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
      * Start the scheduler to collect metrics data.
      */
     public void start() {
-        if (scheduler == null) {
+        if (schedulers == null) {
             // Setup main collection for publishing to lookup
             if (enabled) {
                 logger.debug("scheduler poller is starting...");
                 MetricRegistry r = compositeRegistry != null ? compositeRegistry : registry();
-                scheduler = new MeasurableScheduler(r, "poller", numThreads);
+                PRIORITY[] priorities = PRIORITY.values();
+                schedulers = new ScheduledService[priorities.length];
+                pollStats = new PollStats[priorities.length];
+                boolean selfMetrics = config.getBoolean(
+                    LookoutConfig.LOOKOUT_SELF_METRICS_ENABLE, false);
+                if (selfMetrics) {
+                    measureStats = new MeasureStats(r);
+                }
+                // 所有 priority 共享一个 timing wheel, 每个 priority 一个 worker, 互不影响
+                ScheduledService wheel = null;
+                if (config.getBoolean(LookoutConfig.LOOKOUT_SCHEDULER_TIMING_WHEEL_ENABLE, false)) {
+                    wheel = new TimingWheelScheduler(r, "poller", "poller", priorities.length,
+                        config.getLong(LookoutConfig.LOOKOUT_SCHEDULER_TICK_MILLIS,
+                            TimingWheelScheduler.DEFAULT_TICK_MILLIS),
+                        TimingWheelScheduler.DEFAULT_WHEEL_SIZE);
+                }
+                for (PRIORITY priority : priorities) {
+                    // 同名的调度器共享 lookout.scheduler.poller 自监控数据
+                    if (wheel != null) {
+                        schedulers[priority.ordinal()] = wheel;
+                    } else {
+                        schedulers[priority.ordinal()] = new MeasurableScheduler(r, "poller",
+                            "poller-" + priority.name().toLowerCase(), 1);
+                    }
+                    pollStats[priority.ordinal()] = new PollStats(r, priority, selfMetrics);
+                }
 
-                reScheduleSupport = new ReScheduleSupport(scheduler, config, registry().clock());
+                reScheduleSupport = new ReScheduleSupport(schedulers, config, registry().clock());
                 reScheduleSupport.reschedulePoll(new Function<MetricFilter, Object>() {
                     @Override
                     public Object apply(MetricFilter metricFilter) {
@@ -132,9 +200,17 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
      * Stop the scheduler reporting remote data.
      */
     public void stop() {
-        if (scheduler != null) {
-            scheduler.shutdown();
-            scheduler = null;
+        if (schedulers != null) {
+            for (ScheduledService scheduler : schedulers) {
+                scheduler.shutdown();
+            }
+            schedulers = null;
+            synchronized (this) {
+                if (measureExecutor != null) {
+                    measureExecutor.shutdown();
+                    measureExecutor = null;
+                }
+            }
             logger
                 .info("stopped collecting metrics every {}ms", config.stepMillis(PRIORITY.NORMAL));
         } else {
@@ -168,17 +244,118 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
         if (observer.isEnable()) {
             Map<String, String> metadata = Maps.newHashMap();
             metadata.put(PRIORITY_NAME, priority.name());
-            List<LookoutMeasurement> measurements = getMeasurements(priority, metricFilter);
+            String commonTags = commonTagsHeader();
+            if (commonTags != null) {
+                metadata.put(CommonTagsHeader.NAME, commonTags);
+            }
+            int bufferIndex = priority == null ? PRIORITY.values().length : priority.ordinal();
+            boolean recycle = config.getBoolean(LookoutConfig.LOOKOUT_POLL_RECYCLE_ENABLE, false);
+            // 同一个 priority 并发 poll 时, 后来者使用新的 buffer
+            PollBuffer buffer = recycle ? pollBuffers.getAndSet(bufferIndex, null) : null;
+            if (buffer == null) {
+                buffer = new PollBuffer();
+            }
+            long start = System.nanoTime();
+            long deadline = start + deadlineNanos(priority);
+            PollStats stats = priority != null && pollStats != null ? pollStats[priority.ordinal()]
+                : null;
+            long cpuStart = 0;
+            long allocatedStart = 0;
+            if (stats != null && stats.self) {
+                cpuStart = ThreadUsage.cpuNanos();
+                allocatedStart = ThreadUsage.allocatedBytes();
+            }
+            List<LookoutMeasurement> measurements = getMeasurements(priority, metricFilter, buffer,
+                deadline, stats);
+            if (stats != null) {
+                long end = System.nanoTime();
+                stats.duration.record(end - start, TimeUnit.NANOSECONDS);
+                if (end > deadline) {
+                    stats.deadlineMissed.inc();
+                }
+            }
             logger.debug("collect {} metrics", measurements.size());
-            observer.update(measurements, metadata);
+            try {
+                observer.update(measurements, metadata);
+            } finally {
+                if (stats != null && stats.self) {
+                    stats.recordUsage(measurements.size(), cpuStart, allocatedStart);
+                }
+                if (recycle) {
+                    pollBuffers.set(bufferIndex, buffer);
+                }
+            }
         }
     }
 
-    private List<LookoutMeasurement> getMeasurements(PRIORITY priority, MetricFilter metricFilter) {
+    /**
+     * @return 一次 poll 允许的耗时, 见 {@link LookoutConfig#LOOKOUT_POLL_DEADLINE_PERCENT}
+     */
+    private long deadlineNanos(PRIORITY priority) {
+        long stepMillis = config.stepMillis(priority == null ? PRIORITY.NORMAL : priority);
+        int percent = config.getInt(LookoutConfig.LOOKOUT_POLL_DEADLINE_PERCENT, 80);
+        return TimeUnit.MILLISECONDS.toNanos(stepMillis) / 100 * percent;
+    }
+
+    /**
+     * @return common tags header 的值, 未开启 {@link LookoutConfig#LOOKOUT_REPORT_COMMON_TAGS_HEADER}
+     *         时为 null
+     */
+    String commonTagsHeader() {
+        if (!commonTagsInHeader()) {
+            return null;
+        }
+        return CommonTagsHeader.encode(((CommonTagsAccessor) registry()).commonTags());
+    }
+
+    /**
+     * 只有所有 observer 都是 HttpObserver 时才以 header 上报 common tags,
+     * 其他 observer(比如 LogObserver)不认识 header, 仍需合并到每个 measurement
+     */
+    private boolean commonTagsInHeader() {
+        return registry() instanceof CommonTagsAccessor
+               && config.getBoolean(LookoutConfig.LOOKOUT_REPORT_COMMON_TAGS_HEADER, false)
+               && acceptsCommonTagsHeader(metricObserver);
+    }
+
+    private static boolean acceptsCommonTagsHeader(Object observer) {
+        if (observer instanceof MetricObserverComposite) {
+            List<?> observers = ((MetricObserverComposite<?>) observer).getMetricObservers();
+            if (observers.isEmpty()) {
+                return false;
+            }
+            for (Object o : observers) {
+                if (!acceptsCommonTagsHeader(o)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return observer instanceof HttpObserver;
+    }
+
+    List<LookoutMeasurement> getMeasurements(PRIORITY priority, MetricFilter metricFilter) {
+        return getMeasurements(priority, metricFilter, new PollBuffer(), Long.MAX_VALUE, null);
+    }
+
+    List<LookoutMeasurement> getMeasurements(PRIORITY priority, long deadline) {
+        return getMeasurements(priority, null, new PollBuffer(), deadline, null);
+    }
+
+    /**
+     * @return 下一次 poll 开始 measure 的位置
+     */
+    int measureOffset(PRIORITY priority) {
+        return measureOffsets.get(priority == null ? PRIORITY.values().length : priority
+            .ordinal());
+    }
+
+    private List<LookoutMeasurement> getMeasurements(PRIORITY priority, MetricFilter metricFilter,
+                                                     PollBuffer buffer, long deadline,
+                                                     PollStats stats) {
         //get measures from metrics of this registry
-        List<LookoutMeasurement> lookoutMeasurements = new ArrayList<LookoutMeasurement>();
+        List<Metric> metrics = buffer.collect();
         Iterator<Metric> it = getMetricsIterator(priority);
-
         long polledTime = System.currentTimeMillis();
 
         while (it.hasNext()) {
@@ -206,15 +383,76 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
                     it.remove();
                 }
             }
-            //deal with a metric
-            lookoutMeasurements.add(LookoutMeasurement
-                .from(metric,
-                    (registry() instanceof CommonTagsAccessor) ? (CommonTagsAccessor) registry()
-                        : null));
+            metrics.add(metric);
+        }
+
+        CommonTagsAccessor commonTagsAccessor = null;
+        // common tags 以 header 上报时, 不合并到每个 measurement
+        if (registry() instanceof CommonTagsAccessor && !commonTagsInHeader()) {
+            commonTagsAccessor = (CommonTagsAccessor) registry();
+        }
+        SparseReportFilter sparseFilter = null;
+        long heartbeatMillis = 0;
+        if (config.getBoolean(LookoutConfig.LOOKOUT_REPORT_SPARSE_ENABLE, false)) {
+            sparseFilter = sparseFilter(priority);
+            heartbeatMillis = TimeUnit.SECONDS.toMillis(config.getLong(
+                LookoutConfig.LOOKOUT_REPORT_SPARSE_HEARTBEAT_SECONDS, 300));
+        }
+        MetricSnapshot snapshot = null;
+        if (registry() instanceof AbstractRegistry) {
+            snapshot = ((AbstractRegistry) registry()).pollSnapshot(config
+                .stepMillis(priority == null ? PRIORITY.NORMAL : priority));
+        }
+        int offsetIndex = priority == null ? PRIORITY.values().length : priority.ordinal();
+        int offset = metrics.isEmpty() ? 0 : measureOffsets.get(offsetIndex) % metrics.size();
+        MeasureTask task = new MeasureTask(metrics, buffer, commonTagsAccessor, snapshot,
+            sparseFilter, polledTime, heartbeatMillis, deadline, measureStats, offset);
+
+        int threshold = config.getInt(LookoutConfig.LOOKOUT_POLL_PARALLEL_THRESHOLD, 5000);
+        if (threshold > 0 && metrics.size() >= threshold) {
+            task.runParallel(measureExecutor());
+        } else {
+            task.measure(0, metrics.size());
+        }
+        int skipped = task.skipped.get();
+        if (skipped > 0) {
+            // 并行时每个分段各自停下, 被跳过的 metric 不连续, 下一次从第一个被跳过的 metric 开始
+            measureOffsets.set(offsetIndex, (offset + task.firstSkipped.get()) % metrics.size());
+            if (stats != null) {
+                stats.skippedMetrics.inc(skipped);
+            }
+        }
+
+        //deal with the measured metrics in order
+        List<LookoutMeasurement> lookoutMeasurements = buffer.begin();
+        for (int i = 0; i < metrics.size(); i++) {
+            if (task.measured[i]) {
+                lookoutMeasurements.add(buffer.get(i));
+            }
         }
         return lookoutMeasurements;
     }
 
+    private synchronized ThreadPoolExecutor measureExecutor() {
+        if (measureExecutor == null) {
+            int threads = Math.max(1,
+                config.getInt(LookoutConfig.LOOKOUT_POLL_PARALLEL_THREADS, 2));
+            measureExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+                    .setNameFormat("lookout-poll-worker-%d").setDaemon(true).build());
+            measureExecutor.allowCoreThreadTimeOut(true);
+        }
+        return measureExecutor;
+    }
+
+    private synchronized SparseReportFilter sparseFilter(PRIORITY priority) {
+        int index = priority == null ? PRIORITY.values().length : priority.ordinal();
+        if (sparseFilters[index] == null) {
+            sparseFilters[index] = new SparseReportFilter();
+        }
+        return sparseFilters[index];
+    }
+
     private Iterator<Metric> getMetricsIterator(PRIORITY priority) {
         if (priority == null) {
             return registry().iterator();
@@ -223,4 +461,271 @@ public final class SchedulerPoller extends AbstractPoller<LookoutMeasurement> {
         }
     }
 
+    /**
+     * 一次 poll 使用的 LookoutMeasurement, 可以在下一次 poll 时复用.
+     * 第 i 个 metric 使用 pool 中第 i 个 LookoutMeasurement, 因此可以被多个线程分段填充.
+     */
+    private static final class PollBuffer {
+        private final List<Metric>             metrics      = new ArrayList<Metric>();
+        private final List<LookoutMeasurement> pool         = new ArrayList<LookoutMeasurement>();
+        private final List<LookoutMeasurement> measurements = new ArrayList<LookoutMeasurement>();
+
+        List<Metric> collect() {
+            metrics.clear();
+            return metrics;
+        }
+
+        /**
+         * 在分段填充前调用, 保证 pool 足够大
+         */
+        void ensureCapacity(int size) {
+            while (pool.size() < size) {
+                pool.add(new LookoutMeasurement());
+            }
+        }
+
+        LookoutMeasurement get(int i) {
+            return pool.get(i);
+        }
+
+        List<LookoutMeasurement> begin() {
+            measurements.clear();
+            return measurements;
+        }
+    }
+
+    /**
+     * measure 一次 poll 的所有 metric. metric 较多时分成多段, 由 worker 和 poll 线程一起领取;
+     * poll 线程只等待已经被 worker 领取的分段, 不会因为其他 priority 占用了 worker 而等待.
+     * 超过截止时间后, 未 measure 的 metric 计入 skipped.
+     * 从 offset 开始按环的顺序 measure, 结果仍然按 metrics 的顺序排列.
+     */
+    private static final class MeasureTask implements Runnable {
+        private static final int         CHECK_INTERVAL = 8;
+
+        private final List<Metric>       metrics;
+        private final PollBuffer         buffer;
+        private final CommonTagsAccessor commonTagsAccessor;
+        private final MetricSnapshot     snapshot;
+        private final SparseReportFilter sparseFilter;
+        private final long               polledTime;
+        private final long               heartbeatMillis;
+        private final long               deadline;
+        private final MeasureStats       measureStats;
+        private final int                offset;
+
+        final boolean[]                  measured;
+        final AtomicInteger              skipped        = new AtomicInteger();
+        /**
+         * 按环的顺序第一个被跳过的位置, 在它之前的 metric 都已经 measure
+         */
+        final AtomicInteger              firstSkipped   = new AtomicInteger(Integer.MAX_VALUE);
+
+        private int                      chunkSize;
+        private int                      chunks;
+        private final AtomicInteger      nextChunk      = new AtomicInteger();
+        private CountDownLatch           finished;
+        private volatile Throwable       error;
+
+        MeasureTask(List<Metric> metrics, PollBuffer buffer,
+                    CommonTagsAccessor commonTagsAccessor, MetricSnapshot snapshot,
+                    SparseReportFilter sparseFilter, long polledTime, long heartbeatMillis,
+                    long deadline, MeasureStats measureStats, int offset) {
+            this.metrics = metrics;
+            this.buffer = buffer;
+            this.commonTagsAccessor = commonTagsAccessor;
+            this.snapshot = snapshot;
+            this.sparseFilter = sparseFilter;
+            this.polledTime = polledTime;
+            this.heartbeatMillis = heartbeatMillis;
+            this.deadline = deadline;
+            this.measureStats = measureStats;
+            this.offset = offset;
+            this.measured = new boolean[metrics.size()];
+            buffer.ensureCapacity(metrics.size());
+        }
+
+        void runParallel(ThreadPoolExecutor executor) {
+            int workers = executor.getMaximumPoolSize();
+            chunks = Math.min(metrics.size(), (workers + 1) * 4);
+            chunkSize = (metrics.size() + chunks - 1) / chunks;
+            chunks = (metrics.size() + chunkSize - 1) / chunkSize;
+            finished = new CountDownLatch(chunks);
+            for (int i = 0; i < workers; i++) {
+                executor.execute(this);
+            }
+            run();
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while measuring metrics", e);
+            }
+            if (error != null) {
+                throw new IllegalStateException("failed to measure metrics", error);
+            }
+        }
+
+        /**
+         * 领取并 measure 分段, 直到没有剩余的分段
+         */
+        @Override
+        public void run() {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    measure(chunk * chunkSize, Math.min(metrics.size(), (chunk + 1) * chunkSize));
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }
+
+        /**
+         * @param from 按环的顺序(从 offset 开始)的起始位置
+         * @param to   按环的顺序的结束位置
+         */
+        void measure(int from, int to) {
+            // 开启自监控时按类型累加 measure 耗时, 每段结束后一次性计入
+            long[] counts = measureStats == null ? null : new long[MeasureStats.TYPES.length];
+            long[] nanos = measureStats == null ? null : new long[MeasureStats.TYPES.length];
+            int size = metrics.size();
+            try {
+                for (int j = from; j < to; j++) {
+                    if ((j - from) % CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                        skipped.addAndGet(to - j);
+                        skippedFrom(j);
+                        return;
+                    }
+                    int i = j + offset < size ? j + offset : j + offset - size;
+                    Metric metric = metrics.get(i);
+                    // 只计 reset 本身的耗时, 不把循环里其他开销算到下一个 metric 上
+                    long start = measureStats == null ? 0 : System.nanoTime();
+                    //deal with a metric
+                    LookoutMeasurement measurement = buffer.get(i).reset(metric,
+                        commonTagsAccessor, snapshot);
+                    if (measureStats != null) {
+                        int type = MeasureStats.typeOf(metric);
+                        counts[type]++;
+                        nanos[type] += System.nanoTime() - start;
+                    }
+                    // 没有新鲜值的 AsyncGauge 不上报, 其他 metric 即使没有值也照常上报
+                    boolean stale = metric instanceof AsyncGaugeWrapper
+                                    && measurement.valueCount() == 0;
+                    measured[i] = !stale
+                                  && (sparseFilter == null || sparseFilter.changed(metric,
+                                      measurement, polledTime, heartbeatMillis));
+                }
+            } finally {
+                if (measureStats != null) {
+                    measureStats.add(counts, nanos);
+                }
+            }
+        }
+
+        private void skippedFrom(int j) {
+            for (;;) {
+                int current = firstSkipped.get();
+                if (current <= j || firstSkipped.compareAndSet(current, j)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 每个 priority 的 poll 自监控数据
+     */
+    private static final class PollStats {
+        final Timer               duration;
+        final Counter             deadlineMissed;
+        final Counter             skippedMetrics;
+        /**
+         * 是否统计 CPU 时间/分配字节数/metric 数, 见 {@link LookoutConfig#LOOKOUT_SELF_METRICS_ENABLE}
+         */
+        final boolean             self;
+        final Timer               cpu;
+        final DistributionSummary allocated;
+        final DistributionSummary polledMetrics;
+
+        PollStats(Registry registry, PRIORITY priority, boolean self) {
+            MixinMetric mixin = registry.mixinMetric(registry.createId("lookout.poller")
+                .withTag("pollPriority", priority.name())
+                .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+            duration = mixin.timer("duration");
+            deadlineMissed = mixin.counter("deadlineMissed");
+            skippedMetrics = mixin.counter("skippedMetrics");
+            this.self = self;
+            cpu = self ? mixin.timer("cpu") : null;
+            allocated = self ? mixin.distributionSummary("allocatedBytes") : null;
+            polledMetrics = self ? mixin.distributionSummary("metrics") : null;
+        }
+
+        /**
+         * 只统计 poll 线程(measure 和同步上报), 并行 measure 的 worker 不计入
+         */
+        void recordUsage(int metrics, long cpuStart, long allocatedStart) {
+            polledMetrics.record(metrics);
+            if (cpuStart >= 0) {
+                cpu.record(ThreadUsage.cpuNanos() - cpuStart, TimeUnit.NANOSECONDS);
+            }
+            if (allocatedStart >= 0) {
+                allocated.record(ThreadUsage.allocatedBytes() - allocatedStart);
+            }
+        }
+    }
+
+    /**
+     * 各类型 metric 的 measure 次数和累计耗时, 所有 priority 共享
+     */
+    static final class MeasureStats {
+        static final String[]   TYPES = { "info", "counter", "timer", "gauge",
+                "distributionSummary", "mixin", "other" };
+
+        private final Counter[] counts;
+        private final Counter[] nanos;
+
+        MeasureStats(Registry registry) {
+            counts = new Counter[TYPES.length];
+            nanos = new Counter[TYPES.length];
+            for (int i = 0; i < TYPES.length; i++) {
+                MixinMetric mixin = registry.mixinMetric(registry.createId("lookout.poller.measure")
+                    .withTag("type", TYPES[i])
+                    .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+                counts[i] = mixin.counter("count");
+                nanos[i] = mixin.counter("nanos");
+            }
+        }
+
+        /**
+         * @return metric 在 {@link #TYPES} 中的下标, 与上报的 _type_ tag 的判断顺序一致
+         */
+        static int typeOf(Metric metric) {
+            if (metric instanceof Info) {
+                return 0;
+            } else if (metric instanceof Counter) {
+                return 1;
+            } else if (metric instanceof Timer) {
+                return 2;
+            } else if (metric instanceof Gauge) {
+                return 3;
+            } else if (metric instanceof DistributionSummary) {
+                return 4;
+            } else if (metric instanceof MixinMetric) {
+                return 5;
+            }
+            return 6;
+        }
+
+        void add(long[] counts, long[] nanos) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (counts[i] > 0) {
+                    this.counts[i].inc(counts[i]);
+                    this.nanos[i].inc(nanos[i]);
+                }
+            }
+        }
+    }
 }
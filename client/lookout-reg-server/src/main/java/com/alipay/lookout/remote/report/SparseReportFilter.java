@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.core.GaugeWrapper;
+import com.alipay.lookout.core.InfoWrapper;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 稀疏上报: 跳过本次 poll 中没有变化的 metric.
+ * <p>
+ * gauge/info 是拉取的, 值与上次上报相同即为没有变化; counter/timer 等 step 类型的 metric,
+ * 只有 step 内没有任何记录(所有值为 0)且上次上报的也是 0 时才算没有变化, 这样恒定速率的 counter 仍然会上报.
+ * 没有变化的 metric 每隔 heartbeat 仍会上报一次, 保证下游不会认为它已经消失.
+ * <p>
+ * 判断基于 poll 时已经读出的值, 不会在记录数据的路径上增加开销. 同一个 priority 的 poll 共用一个实例.
+ */
+final class SparseReportFilter implements MeasurementVisitor {
+    private final Map<Metric, long[]> reported = new WeakHashMap<Metric, long[]>();
+
+    private long                      fingerprint;
+    private boolean                   allZero;
+
+    /**
+     * @param metric          metric
+     * @param measurement     measured values of the metric
+     * @param now             poll time
+     * @param heartbeatMillis max interval between two reports of an unchanged metric
+     * @return true if the measurement should be reported
+     */
+    synchronized boolean changed(Metric metric, LookoutMeasurement measurement, long now,
+                                 long heartbeatMillis) {
+        fingerprint = 17;
+        allZero = true;
+        measurement.acceptValues(this);
+        long[] last = reported.get(metric);
+        if (last == null) {
+            reported.put(metric, new long[] { fingerprint, now });
+            return true;
+        }
+        boolean pulled = metric instanceof GaugeWrapper || metric instanceof InfoWrapper;
+        boolean unchanged = last[0] == fingerprint && (allZero || pulled);
+        if (unchanged && now - last[1] < heartbeatMillis) {
+            return false;
+        }
+        last[0] = fingerprint;
+        last[1] = now;
+        return true;
+    }
+
+    synchronized int size() {
+        return reported.size();
+    }
+
+    private void mix(String name, long bits) {
+        fingerprint = fingerprint * 31 + (name == null ? 0 : name.hashCode());
+        fingerprint = fingerprint * 31 + bits;
+    }
+
+    @Override
+    public void visit(String name, long value) {
+        allZero &= value == 0;
+        mix(name, value);
+    }
+
+    @Override
+    public void visit(String name, double value) {
+        allZero &= value == 0;
+        mix(name, Double.doubleToLongBits(value));
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+        if (value instanceof Number) {
+            visit(name, ((Number) value).doubleValue());
+            return;
+        }
+        allZero &= value == null;
+        mix(name, value == null ? 0 : value.hashCode());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 当前线程累计的 CPU 时间和分配字节数, 用于统计 client 自身的开销. JVM 不支持或未开启时返回 -1.
+ */
+final class ThreadUsage {
+    private static final ThreadMXBean THREADS              = ManagementFactory.getThreadMXBean();
+    private static final boolean      ALLOCATION_SUPPORTED = allocationSupported();
+
+    private ThreadUsage() {
+    }
+
+    /**
+     * @return 当前线程的 CPU 时间(纳秒), 不支持时为 -1
+     */
+    static long cpuNanos() {
+        try {
+            return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime()
+                : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return 当前线程累计分配的字节数, 不支持时为 -1
+     */
+    static long allocatedBytes() {
+        if (!ALLOCATION_SUPPORTED) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread
+            .currentThread().getId());
+    }
+
+    private static boolean allocationSupported() {
+        try {
+            // 非 HotSpot JVM 可能没有 com.sun.management
+            return THREADS instanceof com.sun.management.ThreadMXBean
+                   && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+                   && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
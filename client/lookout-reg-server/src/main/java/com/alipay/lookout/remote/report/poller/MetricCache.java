@@ -29,10 +29,12 @@ import java.util.Set;
  */
 public class MetricCache {
     private final long  rate;
+    /**
+     * 空的位置各自使用新的 {@link Slot}, 不共享同一个实例, 避免通过已废弃的修改方法互相影响
+     */
     private Slot[]      slots;
     private final Clock clock;
 
-    @SuppressWarnings("unchecked")
     public MetricCache(Clock clock, long rate, int slotCount) {
         Preconditions.checkArgument(rate > 0, "rate must greater than 0");
         Preconditions.checkArgument(slotCount > 0, "slotCount must greater than 0");
@@ -79,11 +81,12 @@ public class MetricCache {
     public List<Slot> getNextData(Set<Long> successCursors) {
         List<Slot> result = new ArrayList<Slot>();
         synchronized (this) {
-            for (Slot slot : slots) {
+            for (int i = 0; i < slots.length; i++) {
+                Slot slot = slots[i];
                 if (slot.getCursor() >= 0) {
                     if (successCursors != null && successCursors.contains(slot.getCursor())) {
-                        // 清理掉已经完成的slot
-                        slot.clear();
+                        // 清理掉已经完成的slot, slot 本身不可变, 已经返回给其他拉取方的引用不受影响
+                        slots[i] = new Slot();
                     } else {
                         // 其余slot加入结果
                         result.add(slot);
@@ -94,6 +97,24 @@ public class MetricCache {
         return result;
     }
 
+    /**
+     * 只读地获取 cursor 大于 since 的 slot, 不会清理任何 slot, 适合多个拉取方各自维护进度
+     *
+     * @param since 拉取方已经拿到的最大 cursor
+     * @return slots
+     */
+    public List<Slot> getDataSince(long since) {
+        List<Slot> result = new ArrayList<Slot>();
+        synchronized (this) {
+            for (Slot slot : slots) {
+                if (slot.getCursor() >= 0 && slot.getCursor() > since) {
+                    result.add(slot);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * 找出一个可用的位置, 第一个available=true 或者 所有slot里, cursor最小的那个
      *
@@ -114,15 +135,18 @@ public class MetricCache {
     }
 
     public synchronized void clear() {
-        for (Slot slot : slots) {
-            slot.clear();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
         }
     }
 
-    public synchronized void add(List<MetricDto> data) {
+    public void add(List<MetricDto> data) {
         long cursor = getCurrentCursor();
-        int index = findAvailableSlot();
-        slots[index] = new Slot(cursor, data);
+        // 编码在锁外完成, 每个 step 只做一次
+        Slot slot = new Slot(cursor, data);
+        synchronized (this) {
+            slots[findAvailableSlot()] = slot;
+        }
     }
 
     private long getCurrentCursor() {
@@ -16,8 +16,6 @@
  */
 package com.alipay.lookout.remote.report.poller;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.common.utils.CommonUtil;
 import com.google.common.collect.Sets;
@@ -29,6 +27,7 @@ import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
 import org.slf4j.Logger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
@@ -36,7 +35,6 @@ import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -44,6 +42,7 @@ import java.util.zip.GZIPOutputStream;
 
 import static com.alipay.lookout.core.config.LookoutConfig.DEFAULT_HTTP_EXPORTER_PORT;
 import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_EXPORTER_ACCESS_TOKEN;
+import static com.alipay.lookout.core.config.LookoutConfig.LOOKOUT_EXPORTER_THREADS;
 
 /**
  * @author xiangfeng.xzc
@@ -53,11 +52,14 @@ public class MetricsHttpExporter {
     static final Logger            logger          = LookoutLoggerFactory
                                                        .getLogger(MetricsHttpExporter.class);
     private static final Charset   UTF8            = Charset.forName("UTF-8");
-    private static final int       DEFAULT_BACKLOG = 2;
+    private static final int       DEFAULT_BACKLOG = 16;
+    private static final int       DEFAULT_THREADS = 4;
     private final PollerController controller;
     private final int              port;
     private final int              backlog;
     private HttpServer             httpServer;
+    private ThreadPoolExecutor     executor;
+    private volatile CachedBody    cachedBody;
 
     public MetricsHttpExporter(PollerController controller) {
         this(controller, DEFAULT_HTTP_EXPORTER_PORT, DEFAULT_BACKLOG);
@@ -75,13 +77,17 @@ public class MetricsHttpExporter {
      * @throws IOException IOException
      */
     public void start() throws IOException {
-        final ExecutorService singleThreadPool = new ThreadPoolExecutor(1, 1, 0L,
-            TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(10),
+        // slot 已经预先编码, 处理请求只是拷贝字节, 多个拉取方可以并发处理
+        int threads = Math.max(1, controller.getMetricConfig().getInt(LOOKOUT_EXPORTER_THREADS,
+            DEFAULT_THREADS));
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(64),
             CommonUtil.getNamedThreadFactory("client-exporter-pool"),
             new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
 
         httpServer = HttpServer.create(new InetSocketAddress(port), backlog);
-        httpServer.setExecutor(singleThreadPool);
+        httpServer.setExecutor(executor);
         httpServer.createContext("/get", getHandler);
         // 测试用接口 清理掉数据
         httpServer.createContext("/clear", clearHandler);
@@ -93,6 +99,10 @@ public class MetricsHttpExporter {
             httpServer.stop(5);
             httpServer = null;
         }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
         getController().close();
     }
 
@@ -104,52 +114,7 @@ public class MetricsHttpExporter {
                                                public void handle(HttpExchange exchange)
                                                                                         throws IOException {
                                                    try {
-                                                       if (!isAccessAllowed(exchange)) {
-                                                           sendErrResponse(exchange, 403,
-                                                               "Forbidden");
-                                                           return;
-                                                       }
-
-                                                       // 解析参数
-                                                       Set<Long> success = Collections.emptySet();
-                                                       long newStep = controller.getStep();
-                                                       int newSlotCount = controller.getSlotCount();
-
-                                                       try {
-                                                           for (NameValuePair nvp : parseParams(exchange)) {
-                                                               String name = nvp.getName();
-                                                               String value = nvp.getValue();
-                                                               if ("step".equalsIgnoreCase(name)) {
-                                                                   newStep = Long.parseLong(value);
-                                                               } else if ("slotCount"
-                                                                   .equalsIgnoreCase(name)) {
-                                                                   newSlotCount = Integer
-                                                                       .parseInt(value);
-                                                               } else if ("success"
-                                                                   .equalsIgnoreCase(name)) {
-                                                                   success = parseCursors(value);
-                                                               }
-                                                           }
-                                                       } catch (NumberFormatException nfe) {
-                                                           sendErrResponse(exchange, 400,
-                                                               nfe.getMessage());
-                                                           return;
-                                                       }
-
-                                                       Object data = controller
-                                                           .getNextData(success);
-
-                                                       JSONObject bodyEntity = new JSONObject();
-                                                       // 这里返回newStep给用户 表明我们已经接受了用户修改的step
-                                                       bodyEntity.put("step", newStep);
-                                                       bodyEntity.put("slotCount", newSlotCount);
-                                                       bodyEntity.put("data", data);
-                                                       sendResponse(exchange, bodyEntity);
-
-                                                       controller.update(newStep, newSlotCount);
-
-                                                       // if (oldRate != newStep || oldSlotCount != newSlotCount) {
-                                                       // }
+                                                       handleGet(exchange);
                                                    } catch (Throwable e) {
                                                        logger.warn("pull metrics failed."
                                                                    + e.getMessage());
@@ -177,6 +142,76 @@ public class MetricsHttpExporter {
                                                }
                                            };
 
+    /**
+     * 支持的参数:
+     * <ul>
+     * <li>step/slotCount: 调整采集的步长和槽数量</li>
+     * <li>success: 上一次成功处理的 cursors, 这些 slot 会被清理掉</li>
+     * <li>since: 只读地获取 cursor 大于 since 的 slot, 不清理数据, 指定时忽略 success</li>
+     * </ul>
+     * 响应带有 ETag, 请求带上 If-None-Match 且数据没有变化时返回 304.
+     */
+    private void handleGet(HttpExchange exchange) throws IOException {
+        if (!isAccessAllowed(exchange)) {
+            sendErrResponse(exchange, 403, "Forbidden");
+            return;
+        }
+
+        // 解析参数
+        Set<Long> success = Collections.emptySet();
+        long since = -1;
+        boolean hasSince = false;
+        long newStep = controller.getStep();
+        int newSlotCount = controller.getSlotCount();
+
+        try {
+            for (NameValuePair nvp : parseParams(exchange)) {
+                String name = nvp.getName();
+                String value = nvp.getValue();
+                if ("step".equalsIgnoreCase(name)) {
+                    newStep = Long.parseLong(value);
+                } else if ("slotCount".equalsIgnoreCase(name)) {
+                    newSlotCount = Integer.parseInt(value);
+                } else if ("success".equalsIgnoreCase(name)) {
+                    success = parseCursors(value);
+                } else if ("since".equalsIgnoreCase(name)) {
+                    since = Long.parseLong(value);
+                    hasSince = true;
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            sendErrResponse(exchange, 400, nfe.getMessage());
+            return;
+        }
+
+        List<Slot> data = hasSince ? controller.getDataSince(since) : controller
+            .getNextData(success);
+
+        String etag = etag(newStep, newSlotCount, data);
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            // 这里返回newStep给用户 表明我们已经接受了用户修改的step
+            sendResponse(exchange, etag, newStep, newSlotCount, data);
+        }
+
+        controller.update(newStep, newSlotCount);
+    }
+
+    /**
+     * 每个 slot 的 version 唯一且内容变化时 version 也变化, 因此直接拼接 step, slotCount 和所有 slot 的 version,
+     * ETag 相同时响应内容一定相同
+     */
+    static String etag(long step, int slotCount, List<Slot> data) {
+        StringBuilder sb = new StringBuilder(24 + data.size() * 8);
+        sb.append('"').append(step).append('-').append(slotCount);
+        for (Slot slot : data) {
+            sb.append('-').append(Long.toHexString(slot.getVersion()));
+        }
+        return sb.append('"').toString();
+    }
+
     private boolean isAccessAllowed(HttpExchange exchange) {
         if (controller.getMetricConfig().containsKey(LOOKOUT_EXPORTER_ACCESS_TOKEN)) {
             //check access token
@@ -198,16 +233,70 @@ public class MetricsHttpExporter {
         exchange.getResponseBody().close();
     }
 
-    private static void sendResponse(HttpExchange exchange, Object bodyEntity) throws IOException {
+    /**
+     * 同样的数据只序列化和压缩一次, 多个拉取方看到的数据相同时直接复用压缩好的响应体
+     */
+    private void sendResponse(HttpExchange exchange, String etag, long step, int slotCount,
+                              List<Slot> data) throws IOException {
+        CachedBody body = this.cachedBody;
+        if (body == null || !body.etag.equals(etag)) {
+            body = new CachedBody(etag, encodeBody(step, slotCount, data));
+            this.cachedBody = body;
+        }
         exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
         exchange.getResponseHeaders().set("Content-Encoding", "gzip");
-        exchange.sendResponseHeaders(200, 0);
-        OutputStream os = new GZIPOutputStream(exchange.getResponseBody());
+        exchange.sendResponseHeaders(200, body.bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(body.bytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * slot 已经预先编码成 json, 这里只需要拼接并压缩
+     */
+    static byte[] encodeBody(long step, int slotCount, List<Slot> data) throws IOException {
+        int size = 64;
+        for (Slot slot : data) {
+            byte[] payload = slot.getPayload();
+            size += payload == null ? 0 : payload.length + 1;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(size / 4 + 64);
+        OutputStream os = new GZIPOutputStream(bos);
         try {
-            JSON.writeJSONString(os, UTF8, bodyEntity);
+            os.write(("{\"step\":" + step + ",\"slotCount\":" + slotCount + ",\"data\":[")
+                .getBytes(UTF8));
+            boolean first = true;
+            for (Slot slot : data) {
+                byte[] payload = slot.getPayload();
+                // 被 clear 的 slot 没有数据
+                if (payload == null) {
+                    continue;
+                }
+                if (!first) {
+                    os.write(',');
+                }
+                os.write(payload);
+                first = false;
+            }
+            os.write(']');
+            os.write('}');
         } finally {
             os.close();
         }
+        return bos.toByteArray();
+    }
+
+    private static final class CachedBody {
+        final String etag;
+        final byte[] bytes;
+
+        CachedBody(String etag, byte[] bytes) {
+            this.etag = etag;
+            this.bytes = bytes;
+        }
     }
 
     private static Set<Long> parseCursors(String str) {
@@ -18,9 +18,11 @@ package com.alipay.lookout.remote.report.poller;
 
 import com.alipay.lookout.api.Gauge;
 import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.MetricSnapshot;
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.common.top.RollableTopGauge;
 import com.alipay.lookout.common.utils.CommonUtil;
+import com.alipay.lookout.core.AsyncGaugeWrapper;
 import com.alipay.lookout.core.GaugeWrapper;
 import com.alipay.lookout.core.InfoWrapper;
 import com.alipay.lookout.core.config.LookoutConfig;
@@ -222,6 +224,24 @@ public class PollerController implements Closeable {
         }
     }
 
+    /**
+     * 只读地获取 cursor 大于 since 的数据, 多个拉取方各自维护进度时使用, 不会清理 slot
+     *
+     * @param since 拉取方已经拿到的最大 cursor
+     * @return data
+     */
+    public List<Slot> getDataSince(long since) {
+        touchTimer();
+        MetricCache array = this.metricCache;
+        if (array == null) {
+            return Collections.emptyList();
+        } else {
+            List<Slot> data = array.getDataSince(since);
+            Collections.sort(data, COMPARATOR);
+            return data;
+        }
+    }
+
     public void clear() {
         MetricCache array = this.metricCache;
         if (array != null) {
@@ -269,6 +289,9 @@ public class PollerController implements Closeable {
         List<MetricDto> results = new ArrayList<MetricDto>();
 
         long polledTime = System.currentTimeMillis();
+        // getValues/getTags 每次都会拷贝, 因此可以复用同一个 measurement
+        LookoutMeasurement lookoutMeasurement = new LookoutMeasurement();
+        MetricSnapshot snapshot = registry.pollSnapshot(getStep());
         Iterator<Metric> it = registry.iterator();
         while (it.hasNext()) {
             Metric metric = it.next();
@@ -290,10 +313,14 @@ public class PollerController implements Closeable {
                 }
             }
 
+            lookoutMeasurement.reset(metric, registry, snapshot);
+            // 没有新鲜值的 AsyncGauge 不上报
+            if (metric instanceof AsyncGaugeWrapper && lookoutMeasurement.valueCount() == 0) {
+                continue;
+            }
             MetricDto dto = new MetricDto();
-            LookoutMeasurement lookoutMeasurement = LookoutMeasurement.from(metric, registry);
             dto.setName(lookoutMeasurement.metricId().name());
-            dto.setTimestamp(lookoutMeasurement.getDate().getTime());
+            dto.setTimestamp(lookoutMeasurement.getTimestamp());
             dto.setMetrics(lookoutMeasurement.getValues());
             dto.setTags(lookoutMeasurement.getTags());
             results.add(dto);
@@ -16,42 +16,119 @@
  */
 package com.alipay.lookout.remote.report.poller;
 
+import com.alibaba.fastjson.JSON;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * 一个 step 的采集结果. 数据在放入 cache 时就编码成 {"cursor":..,"data":[..]} 形式的 json,
+ * 之后不应再修改, 多个拉取方可以直接复用同一份字节.
+ *
  * @author xiangfeng.xzc
  * @since 2018/7/17
  */
 public class Slot {
-    private long            cursor = -1;
-    private List<MetricDto> data   = null;
+    static final Charset            UTF8     = Charset.forName("UTF-8");
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private volatile long           cursor;
+    private volatile long           version;
+    private volatile byte[]         payload;
 
     public Slot() {
+        this.cursor = -1;
+        this.version = 0;
+        this.payload = null;
     }
 
     public Slot(long cursor, List<MetricDto> data) {
         this.cursor = cursor;
-        this.data = data;
+        this.version = SEQUENCE.incrementAndGet();
+        this.payload = encode(cursor, data);
+    }
+
+    private static byte[] encode(long cursor, List<MetricDto> data) {
+        byte[] head = ("{\"cursor\":" + cursor + ",\"data\":").getBytes(UTF8);
+        byte[] body = JSON.toJSONBytes(data == null ? Collections.emptyList() : data);
+        byte[] json = new byte[head.length + body.length + 1];
+        System.arraycopy(head, 0, json, 0, head.length);
+        System.arraycopy(body, 0, json, head.length, body.length);
+        json[json.length - 1] = '}';
+        return json;
     }
 
-    public void clear() {
+    /**
+     * 清空数据并生成新的 version
+     *
+     * @deprecated slot 由多个拉取方共享, 应当创建新的 slot 而不是修改
+     */
+    @Deprecated
+    public synchronized void clear() {
         this.cursor = -1;
-        this.data = null;
+        this.payload = null;
+        this.version = SEQUENCE.incrementAndGet();
     }
 
     public long getCursor() {
         return cursor;
     }
 
-    public void setCursor(long cursor) {
+    /**
+     * @param cursor cursor
+     * @deprecated slot 由多个拉取方共享, 应当创建新的 slot 而不是修改
+     */
+    @Deprecated
+    public synchronized void setCursor(long cursor) {
+        if (payload != null) {
+            this.payload = encode(cursor, getData());
+        }
         this.cursor = cursor;
+        this.version = SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * 每次生成或修改 slot 时递增, 即使 cursor 相同, 内容不同的 slot 的 version 也不同
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 编码后的数据, 调用方不可修改
+     *
+     * @return payload
+     */
+    public byte[] getPayload() {
+        return payload;
     }
 
+    /**
+     * 解码出原始数据, 仅用于调试或测试, 拉取时直接使用 {@link #getPayload()}
+     *
+     * @return data
+     */
     public List<MetricDto> getData() {
-        return data;
+        if (payload == null) {
+            return null;
+        }
+        String s = new String(payload, UTF8);
+        // payload 由 encode 生成, data 数组从第一个 ":[" 开始
+        return JSON.parseArray(s.substring(s.indexOf(":[") + 1, s.length() - 1),
+            MetricDto.class);
     }
 
-    public void setData(List<MetricDto> data) {
-        this.data = data;
+    /**
+     * @param data data
+     * @deprecated slot 由多个拉取方共享, 应当创建新的 slot 而不是修改
+     */
+    @Deprecated
+    public synchronized void setData(List<MetricDto> data) {
+        this.payload = data == null ? null : encode(cursor, data);
+        this.version = SEQUENCE.incrementAndGet();
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.common.log.LookoutLoggerFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步发送上报数据, 同时在途(in-flight)的批次数不超过窗口大小.
+ * <p>
+ * 窗口已满时 {@link #submit} 最多等待指定的时间, 仍没有空位则放弃该批次, 由调用方决定如何处理,
+ * 这样慢的 gateway 不会拖住 poll 线程.
+ */
+public class AsyncReportSender implements Closeable {
+    private static final Logger      logger = LookoutLoggerFactory
+                                                .getLogger(AsyncReportSender.class);
+
+    private final Semaphore          window;
+    private final int                maxInFlight;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 每个批次发送结束(成功, 失败或异常)后回调一次, 在发送线程中执行
+     */
+    public interface Callback {
+        /**
+         * @param success      whether the batch was accepted
+         * @param elapsedNanos time spent sending
+         */
+        void onComplete(boolean success, long elapsedNanos);
+    }
+
+    public AsyncReportSender(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        // 窗口已经限制了任务数, 队列长度不会超过窗口大小
+        this.executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+                .setNameFormat("lookout-report-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * submit a batch.
+     *
+     * @param task     sends the batch, returns whether it was accepted
+     * @param callback invoked once the batch completes, only if it was submitted
+     * @param wait     max time to wait for a free slot of the window
+     * @param unit     unit of wait
+     * @return false if the window stayed full (or the wait was interrupted) or the sender is
+     *         closed, the task is dropped
+     */
+    public boolean submit(final Callable<Boolean> task, final Callback callback, long wait,
+                          TimeUnit unit) {
+        try {
+            if (!window.tryAcquire(wait, unit)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    boolean success = false;
+                    try {
+                        success = Boolean.TRUE.equals(task.call());
+                    } catch (Throwable e) {
+                        logger.info(">>WARNING: async report fail!cause:{}", e.getMessage());
+                    }
+                    try {
+                        callback.onComplete(success, System.nanoTime() - start);
+                    } catch (Throwable e) {
+                        logger.warn("async report callback err.{}", e.getMessage());
+                    } finally {
+                        // 回调也算在途, 回调中归还的 buffer 不会超过窗口大小
+                        window.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            window.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return batches being sent now
+     */
+    public int inFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 不再接受新的批次, 已经提交的批次继续发送完
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.apache.commons.lang3.time.DateFormatUtils;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字典编码的二进制上报格式, 与 json 文本格式相比, metric name 和 tags 不再在每条数据中重复.
+ * <pre>
+ * report  := 'L' 'K' version(1 byte) record*
+ * record  := timestampDelta(zigzag varint) name(str) tagCount(varint) (key(str) value(str))*
+ *            valueCount(varint) (valueName(str) type(1 byte) payload)*
+ * payload := zigzag varint          (TYPE_LONG)
+ *          | 8 bytes IEEE 754, big-endian (TYPE_DOUBLE)
+ *          | str                    (TYPE_STRING)
+ *          | empty                  (TYPE_NULL)
+ * str     := varint 0, byteLength(varint), utf-8 bytes   新字符串, 依次编号为 1,2,3...
+ *          | varint n (n &gt; 0)                            之前出现过的第 n 个字符串
+ * </pre>
+ * timestampDelta 是与上一条 record 时间戳的差值, 第一条与 0 比较.
+ * 字典只在一次上报内有效: 上报经过连接池和负载均衡, 无法保证多次上报落在同一个连接和同一台 gateway 上.
+ */
+public class BinaryReportEncoder extends ReportEncoder {
+    public static final String MEDIA_TYPE   = "application/x-lookout-binary";
+    public static final String CONTENT_TYPE = MEDIA_TYPE + ";version=1";
+
+    static final byte          MAGIC_0      = 'L';
+    static final byte          MAGIC_1      = 'K';
+    static final byte          VERSION      = 1;
+
+    static final byte          TYPE_LONG    = 0;
+    static final byte          TYPE_DOUBLE  = 1;
+    static final byte          TYPE_STRING  = 2;
+    static final byte          TYPE_NULL    = 3;
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    protected Session newSession(ReportBuffer out) {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(VERSION);
+        return new BinarySession(out);
+    }
+
+    private static final class BinarySession implements Session, MeasurementVisitor {
+        private final ReportBuffer         out;
+        private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        private long                       lastTimestamp;
+
+        BinarySession(ReportBuffer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(LookoutMeasurement measure) {
+            long timestamp = measure.getTimestamp();
+            out.writeZigZagLong(timestamp - lastTimestamp);
+            lastTimestamp = timestamp;
+            writeString(measure.metricId().name());
+            int tagCount = measure.tagCount();
+            out.writeVarLong(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                writeString(measure.tagKey(i));
+                writeString(measure.tagValue(i));
+            }
+            out.writeVarLong(measure.valueCount());
+            measure.acceptValues(this);
+        }
+
+        private void writeString(String s) {
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                out.writeVarLong(index);
+                return;
+            }
+            out.writeVarLong(0);
+            out.writeVarLong(ReportBuffer.utf8Length(s));
+            out.writeUtf8(s);
+            dictionary.put(s, dictionary.size() + 1);
+        }
+
+        @Override
+        public void visit(String name, long value) {
+            writeString(name);
+            out.write(TYPE_LONG);
+            out.writeZigZagLong(value);
+        }
+
+        @Override
+        public void visit(String name, double value) {
+            writeString(name);
+            out.write(TYPE_DOUBLE);
+            out.writeDoubleBits(value);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+                visit(name, ((Number) value).longValue());
+            } else if (value instanceof Number) {
+                visit(name, ((Number) value).doubleValue());
+            } else if (value == null) {
+                writeString(name);
+                out.write(TYPE_NULL);
+            } else {
+                writeString(name);
+                out.write(TYPE_STRING);
+                if (value instanceof Date) {
+                    writeString(DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format((Date) value));
+                } else {
+                    writeString(value.toString());
+                }
+            }
+        }
+    }
+}
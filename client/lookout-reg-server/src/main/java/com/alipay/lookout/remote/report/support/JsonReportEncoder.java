@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.apache.commons.lang3.time.DateFormatUtils;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将 measurements 编码成 json 文本上报格式(与 {@link LookoutMeasurement#toString()} 相同, 以 '\t' 分隔).
+ * <p>
+ * 每个 Id 的 tags 和 name 部分编码后会被缓存; 同一个 step 内的 measurement 时间戳相同, 因此格式化后的时间也会被缓存.
+ * 稳定状态下, 编码的开销只和写入的字节数相关. 超过 {@link #PREFIX_EXPIRE_MILLIS} 没有上报的 Id 会从缓存中移除.
+ */
+public class JsonReportEncoder extends ReportEncoder {
+    public static final String                  CONTENT_TYPE         = "text/plain";
+    static final int                            MAX_CACHED_PREFIXES  = 65536;
+    /**
+     * 不小于稀疏上报的默认 heartbeat, 仍在上报的 Id 不会被移除
+     */
+    static final long                           PREFIX_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final byte                   MSG_SPLITOR          = '\t';
+    private static final byte[]                 TIME_START           = ascii("{\"time\":\"");
+    private static final byte[]                 TAGS_START           = ascii("\",\"tags\":{");
+
+    private final ConcurrentHashMap<Id, Prefix> prefixes;
+    private volatile TimePrefix                 lastTime;
+    private volatile long                       lastSweep;
+
+    public JsonReportEncoder() {
+        this.prefixes = new ConcurrentHashMap<Id, Prefix>();
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    protected Session newSession(final ReportBuffer out) {
+        return new Session() {
+            private final ValueWriter valueWriter = new ValueWriter(out);
+            private boolean           first       = true;
+
+            @Override
+            public void write(LookoutMeasurement measure) {
+                if (first) {
+                    first = false;
+                } else {
+                    out.write(MSG_SPLITOR);
+                }
+                out.write(timePrefix(measure.getTimestamp()));
+                out.write(prefix(measure));
+                valueWriter.first = true;
+                measure.acceptValues(valueWriter);
+                out.write('}');
+                out.write('}');
+            }
+        };
+    }
+
+    /**
+     * @return bytes of {"time":"...","tags":{
+     */
+    private byte[] timePrefix(long timestamp) {
+        TimePrefix tp = lastTime;
+        if (tp == null || tp.timestamp != timestamp) {
+            ReportBuffer b = new ReportBuffer(64);
+            b.write(TIME_START);
+            b.writeUtf8(DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format(timestamp));
+            b.write(TAGS_START);
+            tp = new TimePrefix(timestamp, copyOf(b));
+            lastTime = tp;
+        }
+        return tp.bytes;
+    }
+
+    int cachedPrefixes() {
+        return prefixes.size();
+    }
+
+    /**
+     * @return bytes of "k1":"v1",..."kn":"vn"},"name":{
+     */
+    private byte[] prefix(LookoutMeasurement measure) {
+        long timestamp = measure.getTimestamp();
+        if (timestamp - lastSweep >= PREFIX_EXPIRE_MILLIS) {
+            sweep(timestamp);
+        }
+        Id id = measure.metricId();
+        Prefix prefix = prefixes.get(id);
+        if (prefix != null && prefix.matches(measure)) {
+            prefix.touch(timestamp);
+            return prefix.bytes;
+        }
+        int tagCount = measure.tagCount();
+        String[] kvs = new String[tagCount * 2];
+        ReportBuffer b = new ReportBuffer(128);
+        for (int i = 0; i < tagCount; i++) {
+            kvs[i * 2] = measure.tagKey(i);
+            kvs[i * 2 + 1] = measure.tagValue(i);
+            if (i > 0) {
+                b.write(',');
+            }
+            b.write('"');
+            b.writeUtf8(kvs[i * 2]);
+            b.write('"');
+            b.write(':');
+            b.writeJsonString(kvs[i * 2 + 1]);
+        }
+        b.write('}');
+        b.write(',');
+        b.write('"');
+        b.writeUtf8(id.name());
+        b.write('"');
+        b.write(':');
+        b.write('{');
+        prefix = new Prefix(kvs, copyOf(b), timestamp);
+        // 缓存满了以后只更新已有的 id, 不再加入新的 id, 避免清空后所有 id 一起重新编码
+        if (prefixes.size() < MAX_CACHED_PREFIXES) {
+            prefixes.put(id, prefix);
+        } else if (prefixes.containsKey(id)) {
+            prefixes.replace(id, prefix);
+        }
+        return prefix.bytes;
+    }
+
+    /**
+     * 移除超过 {@link #PREFIX_EXPIRE_MILLIS} 没有上报的 Id, 被删除或过期的 metric 不会一直占着缓存
+     */
+    private synchronized void sweep(long now) {
+        if (now - lastSweep < PREFIX_EXPIRE_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+        for (Iterator<Prefix> it = prefixes.values().iterator(); it.hasNext();) {
+            if (now - it.next().lastUsed >= PREFIX_EXPIRE_MILLIS) {
+                it.remove();
+            }
+        }
+    }
+
+    private static byte[] copyOf(ReportBuffer b) {
+        byte[] bytes = new byte[b.size()];
+        System.arraycopy(b.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static byte[] ascii(String s) {
+        ReportBuffer b = new ReportBuffer(s.length());
+        b.writeUtf8(s);
+        return copyOf(b);
+    }
+
+    private static final class TimePrefix {
+        final long   timestamp;
+        final byte[] bytes;
+
+        TimePrefix(long timestamp, byte[] bytes) {
+            this.timestamp = timestamp;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 编码后的 tags 和 name. 同一个 Id 的 common tags 可能会变化, 所以使用前要校验 tags 是否一致
+     */
+    private static final class Prefix {
+        final String[] kvs;
+        final byte[]   bytes;
+        volatile long  lastUsed;
+
+        Prefix(String[] kvs, byte[] bytes, long lastUsed) {
+            this.kvs = kvs;
+            this.bytes = bytes;
+            this.lastUsed = lastUsed;
+        }
+
+        void touch(long timestamp) {
+            // 同一个 step 内时间戳相同, 避免每次都写
+            if (lastUsed < timestamp) {
+                lastUsed = timestamp;
+            }
+        }
+
+        boolean matches(LookoutMeasurement measure) {
+            if (kvs.length != measure.tagCount() * 2) {
+                return false;
+            }
+            for (int i = 0; i < kvs.length; i += 2) {
+                if (!same(kvs[i], measure.tagKey(i >> 1))
+                    || !same(kvs[i + 1], measure.tagValue(i >> 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean same(String a, String b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+
+    /**
+     * 写出 "name":value,...
+     */
+    private static final class ValueWriter implements MeasurementVisitor {
+        private final ReportBuffer out;
+        boolean                    first;
+
+        ValueWriter(ReportBuffer out) {
+            this.out = out;
+        }
+
+        private void writeName(String name) {
+            if (first) {
+                first = false;
+            } else {
+                out.write(',');
+            }
+            out.write('"');
+            out.writeUtf8(name);
+            out.write('"');
+            out.write(':');
+        }
+
+        @Override
+        public void visit(String name, long value) {
+            writeName(name);
+            out.writeLong(value);
+        }
+
+        @Override
+        public void visit(String name, double value) {
+            writeName(name);
+            out.writeDouble(value);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            writeName(name);
+            if (value instanceof Number) {
+                out.writeUtf8(value.toString());
+            } else if (value instanceof Date) {
+                out.write('"');
+                out.writeUtf8(DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format((Date) value));
+                out.write('"');
+            } else {
+                out.writeJsonString(value == null ? null : value.toString());
+            }
+        }
+    }
+}
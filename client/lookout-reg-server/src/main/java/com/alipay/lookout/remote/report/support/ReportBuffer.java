@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 可复用的字节缓冲区, 上报数据直接以 UTF-8 编码写入, 不产生中间 String.
+ * 非线程安全.
+ */
+public class ReportBuffer extends OutputStream {
+    private static final String HEX  = "0123456789ABCDEF";
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private byte[]              buf;
+    private int                 count;
+
+    public ReportBuffer(int initialCapacity) {
+        buf = new byte[initialCapacity];
+    }
+
+    public byte[] array() {
+        return buf;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return buf.length;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    void setSize(int size) {
+        count = size;
+    }
+
+    void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            byte[] newBuf = new byte[Math.max(buf.length << 1, minCapacity)];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * write the string as utf-8 bytes, without escaping
+     *
+     * @param s string
+     */
+    public void writeUtf8(String s) {
+        int len = s.length();
+        // 最坏情况下一个 char 需要3个字节
+        ensureCapacity(count + len * 3);
+        byte[] b = buf;
+        int pos = count;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                       && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[pos++] = (byte) (0xF0 | (cp >> 18));
+                b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                b[pos++] = '?';
+            } else {
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        count = pos;
+    }
+
+    /**
+     * write a quoted json string, escaped the same way as StringEscapeUtils.escapeJson
+     * (non-ascii chars are written as \\uXXXX), or null.
+     *
+     * @param s string
+     */
+    public void writeJsonString(String s) {
+        if (s == null) {
+            write(NULL);
+            return;
+        }
+        int len = s.length();
+        // 最坏情况下一个 char 需要6个字节
+        ensureCapacity(count + len * 6 + 2);
+        byte[] b = buf;
+        int pos = count;
+        b[pos++] = '"';
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    b[pos++] = '\\';
+                    b[pos++] = (byte) c;
+                    break;
+                case '\b':
+                    b[pos++] = '\\';
+                    b[pos++] = 'b';
+                    break;
+                case '\n':
+                    b[pos++] = '\\';
+                    b[pos++] = 'n';
+                    break;
+                case '\t':
+                    b[pos++] = '\\';
+                    b[pos++] = 't';
+                    break;
+                case '\f':
+                    b[pos++] = '\\';
+                    b[pos++] = 'f';
+                    break;
+                case '\r':
+                    b[pos++] = '\\';
+                    b[pos++] = 'r';
+                    break;
+                default:
+                    if (c < 32 || c > 0x7f) {
+                        b[pos++] = '\\';
+                        b[pos++] = 'u';
+                        b[pos++] = (byte) HEX.charAt((c >> 12) & 0xF);
+                        b[pos++] = (byte) HEX.charAt((c >> 8) & 0xF);
+                        b[pos++] = (byte) HEX.charAt((c >> 4) & 0xF);
+                        b[pos++] = (byte) HEX.charAt(c & 0xF);
+                    } else {
+                        b[pos++] = (byte) c;
+                    }
+            }
+        }
+        b[pos++] = '"';
+        count = pos;
+    }
+
+    /**
+     * write the decimal digits of the value, same as String.valueOf(long)
+     *
+     * @param value value
+     */
+    public void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeUtf8(String.valueOf(value));
+            return;
+        }
+        ensureCapacity(count + 20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = count + digits;
+        count = pos;
+        do {
+            buf[--pos] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    /**
+     * write the value, same as String.valueOf(double).
+     * 整数值(最常见的情况, 比如0.0)直接写入, 其他情况退化为 Double.toString.
+     *
+     * @param value value
+     */
+    public void writeDouble(double value) {
+        long l = (long) value;
+        if (l == value && l > -10000000L && l < 10000000L
+            && (l != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+            writeLong(l);
+            ensureCapacity(count + 2);
+            buf[count++] = '.';
+            buf[count++] = '0';
+        } else {
+            writeUtf8(Double.toString(value));
+        }
+    }
+
+    /**
+     * write the value as an unsigned LEB128 varint
+     *
+     * @param value value
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(count + 10);
+        while ((value & ~0x7FL) != 0) {
+            buf[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte) value;
+    }
+
+    /**
+     * write the value as a zigzag varint, small negative values take few bytes too
+     *
+     * @param value value
+     */
+    public void writeZigZagLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * write the IEEE 754 bits of the value, big-endian
+     *
+     * @param value value
+     */
+    public void writeDoubleBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(count + 8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[count++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * @param s string
+     * @return number of bytes written by {@link #writeUtf8(String)}
+     */
+    public static int utf8Length(String s) {
+        int len = s.length();
+        int bytes = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                       && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
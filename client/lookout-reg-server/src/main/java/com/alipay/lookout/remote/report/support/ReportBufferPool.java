@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReportBuffer} 池, 每次上报结束后归还, 避免每次上报都重新分配大数组.
+ * <p>
+ * 容量过大的 buffer 不会被缓存, 以免偶尔的一次大上报长期占用内存.
+ */
+public class ReportBufferPool {
+    static final int                  DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+    static final int                  DEFAULT_MAX_POOLED       = 4;
+    static final int                  DEFAULT_MAX_RETAINED     = 4 * 1024 * 1024;
+
+    private final Queue<ReportBuffer> buffers;
+    private final AtomicInteger       pooled                   = new AtomicInteger();
+    private final int                 initialCapacity;
+    private final int                 maxPooled;
+    private final int                 maxRetainedCapacity;
+
+    public ReportBufferPool() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_POOLED, DEFAULT_MAX_RETAINED);
+    }
+
+    public ReportBufferPool(int initialCapacity, int maxPooled, int maxRetainedCapacity) {
+        this.buffers = new ConcurrentLinkedQueue<ReportBuffer>();
+        this.initialCapacity = initialCapacity;
+        this.maxPooled = maxPooled;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * @return an empty buffer
+     */
+    public ReportBuffer acquire() {
+        ReportBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return new ReportBuffer(initialCapacity);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * return the buffer to the pool, it must not be used anymore.
+     *
+     * @param buffer buffer, may be null
+     */
+    public void release(ReportBuffer buffer) {
+        if (buffer == null || buffer.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffer.reset();
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyFramedOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * 将 measurements 直接编码成上报的字节, 写入可复用的 {@link ReportBuffer}, 不产生中间 String.
+ * 实现需要是线程安全的, 每次编码的状态保存在 {@link Session} 中.
+ */
+public abstract class ReportEncoder {
+    /**
+     * 分块压缩时, 每累积这么多未压缩字节就交给压缩流, 与 framed snappy 的块大小一致
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * @return Content-Type of the encoded report
+     */
+    public abstract String contentType();
+
+    /**
+     * start a new report, header can be written into out here.
+     *
+     * @param out output, all the measurements of this report are written into it
+     * @return session of this report
+     */
+    protected abstract Session newSession(ReportBuffer out);
+
+    /**
+     * 一次上报的编码状态
+     */
+    protected interface Session {
+        void write(LookoutMeasurement measure);
+    }
+
+    /**
+     * encode the measures into out
+     *
+     * @param measures measures
+     * @param out      output
+     */
+    public void encode(List<LookoutMeasurement> measures, ReportBuffer out) {
+        try {
+            encode(measures, out, null);
+        } catch (IOException e) {
+            // never happens, ReportBuffer does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * encode the measures and compress them with framed snappy chunk by chunk,
+     * so the whole uncompressed report is never held in memory.
+     *
+     * @param measures measures
+     * @param chunk    buffer for the uncompressed chunk
+     * @param out      output of the compressed bytes
+     * @throws IOException compress error
+     */
+    public void encodeSnappyFramed(List<LookoutMeasurement> measures, ReportBuffer chunk,
+                                   ReportBuffer out) throws IOException {
+        SnappyFramedOutputStream snappyOut = new SnappyFramedOutputStream(out);
+        encode(measures, chunk, snappyOut);
+        snappyOut.close();
+    }
+
+    /**
+     * compress in with snappy(raw format, same as Snappy.compress)
+     *
+     * @param in  uncompressed bytes
+     * @param out output
+     * @throws IOException compress error
+     */
+    public static void snappyCompress(ReportBuffer in, ReportBuffer out) throws IOException {
+        out.reset();
+        out.ensureCapacity(Snappy.maxCompressedLength(in.size()));
+        out.setSize(Snappy.compress(in.array(), 0, in.size(), out.array(), 0));
+    }
+
+    /**
+     * @param sink 为 null 时全部写入 chunk, 否则 chunk 每满 {@link #CHUNK_SIZE} 就写入 sink
+     */
+    void encode(List<LookoutMeasurement> measures, ReportBuffer chunk, OutputStream sink)
+                                                                                         throws IOException {
+        Session session = newSession(chunk);
+        for (int i = 0, size = measures.size(); i < size; i++) {
+            session.write(measures.get(i));
+            if (sink != null && chunk.size() >= CHUNK_SIZE) {
+                chunk.writeTo(sink);
+                chunk.reset();
+            }
+        }
+        if (sink != null && chunk.size() > 0) {
+            chunk.writeTo(sink);
+            chunk.reset();
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.common.log.LookoutLoggerFactory;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 发送失败的上报数据的磁盘缓冲区, 由固定个数, 固定大小的内存映射(mmap)文件组成一个环.
+ * <p>
+ * 占用的磁盘空间固定为 segmentSize * segmentCount, 环满时淘汰最老的整个 segment;
+ * 超过最大保留时间的数据在读取时直接丢弃. 重放成功的记录会被标记, 进程重启后只重放未标记的记录.
+ * <p>
+ * 任何 IO 异常都会使缓冲区失效(之后的写入直接丢弃), 不会影响业务.
+ * <pre>
+ * segment: magic(int) version(int) sequence(long) record* 0(int)
+ * record:  length(int) state(byte) timestamp(long) contentType contentEncoding priority commonTags data
+ * </pre>
+ * 字符串为 short 长度加 utf-8 字节. version 1 的 segment 没有 commonTags, 仍然可以读取.
+ */
+public class SpillBuffer {
+    private static final Logger  logger              = LookoutLoggerFactory
+                                                         .getLogger(SpillBuffer.class);
+
+    static final int             MAGIC               = 0x4C4B5350;
+    static final int             VERSION             = 2;
+    static final int             MIN_VERSION         = 1;
+    static final int             SEGMENT_HEADER_SIZE = 16;
+    static final int             MIN_SEGMENT_SIZE    = 64 * 1024;
+    static final int             DEFAULT_SEGMENTS    = 8;
+    static final byte            STATE_PENDING       = 1;
+    static final byte            STATE_DONE          = 2;
+    static final String          SEGMENT_FILE_PREFIX = "spill-";
+    static final String          SEGMENT_FILE_SUFFIX = ".seg";
+    private static final Charset UTF8                = Charset.forName("UTF-8");
+
+    private final File           dir;
+    private final int            segmentSize;
+    private final int            segmentCount;
+    private final long           maxAgeMillis;
+
+    private MappedByteBuffer[]   segments;
+    private long[]               sequences;
+    private int[]                versions;
+    private long                 lastSequence;
+    private int                  writeSegment;
+    private int                  writePosition;
+    private int                  readSegment;
+    private int                  readPosition;
+    private boolean              disabled;
+    private long                 evictedSegments;
+    private long                 expiredRecords;
+
+    /**
+     * 已经持久化的一条记录
+     */
+    public static final class Record {
+        final int            segment;
+        final long           sequence;
+        final int            position;
+        final int            next;
+        private final long   timestamp;
+        private final String contentType;
+        private final String contentEncoding;
+        private final String priority;
+        private final String commonTags;
+        private final byte[] data;
+
+        Record(int segment, long sequence, int position, int next, long timestamp,
+               String contentType, String contentEncoding, String priority, String commonTags,
+               byte[] data) {
+            this.segment = segment;
+            this.sequence = sequence;
+            this.position = position;
+            this.next = next;
+            this.timestamp = timestamp;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.priority = priority;
+            this.commonTags = commonTags;
+            this.data = data;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return content encoding, null if not compressed
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        /**
+         * @return priority, may be null
+         */
+        public String getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return common tags header sent with the data, may be null
+         */
+        public String getCommonTags() {
+            return commonTags;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    public SpillBuffer(File dir, long maxBytes, long maxAgeMillis) {
+        this(dir, maxBytes, DEFAULT_SEGMENTS, maxAgeMillis);
+    }
+
+    SpillBuffer(File dir, long maxBytes, int segmentCount, long maxAgeMillis) {
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("at least 2 segments are required");
+        }
+        this.dir = dir;
+        this.segmentCount = segmentCount;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE,
+            Math.max(MIN_SEGMENT_SIZE, maxBytes / segmentCount));
+        this.maxAgeMillis = maxAgeMillis;
+        // 只有之前留有数据时才立即打开, 否则等到第一次写入时再创建文件
+        if (segmentFile(0).exists()) {
+            synchronized (this) {
+                ensureOpen();
+            }
+        }
+    }
+
+    /**
+     * append a batch which failed to send.
+     *
+     * @param contentType     content type of data
+     * @param contentEncoding content encoding of data, may be null
+     * @param priority        priority of data, may be null
+     * @param data            encoded batch
+     * @param offset          offset of data
+     * @param length          length of data
+     * @param timestamp       time the batch is created
+     * @return false if the buffer is disabled or the batch is too large
+     */
+    public boolean append(String contentType, String contentEncoding, String priority,
+                          byte[] data, int offset, int length, long timestamp) {
+        return append(contentType, contentEncoding, priority, null, data, offset, length,
+            timestamp);
+    }
+
+    /**
+     * append a batch which failed to send.
+     *
+     * @param contentType     content type of data
+     * @param contentEncoding content encoding of data, may be null
+     * @param priority        priority of data, may be null
+     * @param commonTags      common tags header in force when the batch is created, may be null
+     * @param data            encoded batch
+     * @param offset          offset of data
+     * @param length          length of data
+     * @param timestamp       time the batch is created
+     * @return false if the buffer is disabled or the batch is too large
+     */
+    public synchronized boolean append(String contentType, String contentEncoding,
+                                       String priority, String commonTags, byte[] data,
+                                       int offset, int length, long timestamp) {
+        if (disabled) {
+            return false;
+        }
+        byte[] type = bytes(contentType);
+        byte[] encoding = bytes(contentEncoding);
+        byte[] prio = bytes(priority);
+        byte[] tags = bytes(commonTags);
+        int recordLength = 1 + 8 + 8 + type.length + encoding.length + prio.length + tags.length
+                           + length;
+        if (SEGMENT_HEADER_SIZE + 4 + recordLength > segmentSize) {
+            return false;
+        }
+        if (!ensureOpen()) {
+            return false;
+        }
+        try {
+            if (writePosition + 4 + recordLength > segmentSize) {
+                nextWriteSegment();
+            }
+            MappedByteBuffer segment = segments[writeSegment];
+            int position = writePosition;
+            int end = position + 4 + recordLength;
+            if (end + 4 <= segmentSize) {
+                segment.putInt(end, 0);
+            }
+            segment.position(position + 4);
+            segment.put(STATE_PENDING);
+            segment.putLong(timestamp);
+            putString(segment, type);
+            putString(segment, encoding);
+            putString(segment, prio);
+            putString(segment, tags);
+            segment.put(data, offset, length);
+            // 最后写入长度, 进程中途退出时不会读到不完整的记录
+            segment.putInt(position, recordLength);
+            writePosition = end;
+            return true;
+        } catch (Throwable e) {
+            disable(e);
+            return false;
+        }
+    }
+
+    /**
+     * get the oldest pending record without removing it, expired records are dropped.
+     *
+     * @param now current time
+     * @return record, null if there is none
+     */
+    public synchronized Record peek(long now) {
+        if (disabled || segments == null) {
+            return null;
+        }
+        try {
+            while (true) {
+                if (readSegment == writeSegment && readPosition >= writePosition) {
+                    return null;
+                }
+                MappedByteBuffer segment = segments[readSegment];
+                int length = readPosition + 4 <= segmentSize ? segment.getInt(readPosition) : 0;
+                if (length <= 0 || readPosition + 4 + length > segmentSize) {
+                    if (readSegment == writeSegment) {
+                        return null;
+                    }
+                    readSegment = (readSegment + 1) % segmentCount;
+                    readPosition = SEGMENT_HEADER_SIZE;
+                    continue;
+                }
+                int position = readPosition + 4;
+                int next = position + length;
+                byte state = segment.get(position);
+                long timestamp = segment.getLong(position + 1);
+                if (state != STATE_PENDING) {
+                    readPosition = next;
+                    continue;
+                }
+                if (now - timestamp > maxAgeMillis) {
+                    segment.put(position, STATE_DONE);
+                    expiredRecords++;
+                    readPosition = next;
+                    continue;
+                }
+                ByteBuffer view = segment.duplicate();
+                view.position(position + 9);
+                String contentType = getString(view);
+                String contentEncoding = getString(view);
+                String priority = getString(view);
+                String commonTags = versions[readSegment] >= 2 ? getString(view) : null;
+                byte[] data = new byte[next - view.position()];
+                view.get(data);
+                return new Record(readSegment, sequences[readSegment], readPosition, next,
+                    timestamp, contentType, contentEncoding, priority, commonTags, data);
+            }
+        } catch (Throwable e) {
+            disable(e);
+            return null;
+        }
+    }
+
+    /**
+     * mark the record as sent, it will not be returned by peek again.
+     *
+     * @param record record returned by peek
+     */
+    public synchronized void commit(Record record) {
+        if (disabled || segments == null || sequences[record.segment] != record.sequence) {
+            //已经被淘汰
+            return;
+        }
+        try {
+            segments[record.segment].put(record.position + 4, STATE_DONE);
+            if (readSegment == record.segment && readPosition == record.position) {
+                readPosition = record.next;
+            }
+        } catch (Throwable e) {
+            disable(e);
+        }
+    }
+
+    /**
+     * @return true if there is nothing to replay (expired records may still be counted)
+     */
+    public synchronized boolean isEmpty() {
+        return disabled || segments == null
+               || (readSegment == writeSegment && readPosition >= writePosition);
+    }
+
+    public synchronized boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * @return segments dropped because the buffer is full
+     */
+    public synchronized long getEvictedSegments() {
+        return evictedSegments;
+    }
+
+    /**
+     * @return records dropped because they are too old
+     */
+    public synchronized long getExpiredRecords() {
+        return expiredRecords;
+    }
+
+    /**
+     * @return bytes used on disk once opened
+     */
+    public long capacity() {
+        return (long) segmentSize * segmentCount;
+    }
+
+    private boolean ensureOpen() {
+        if (segments != null) {
+            return true;
+        }
+        if (disabled) {
+            return false;
+        }
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can not create dir " + dir);
+            }
+            MappedByteBuffer[] mapped = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                mapped[i] = map(segmentFile(i));
+            }
+            segments = mapped;
+            sequences = new long[segmentCount];
+            versions = new int[segmentCount];
+            recover();
+            return true;
+        } catch (Throwable e) {
+            disable(e);
+            return false;
+        }
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() != segmentSize) {
+                //大小不一致(比如修改了配置), 作为空 segment 重新使用
+                raf.setLength(0);
+                raf.setLength(segmentSize);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 按 sequence 找回读写位置, segment 总是按环的顺序依次写入
+     */
+    private void recover() {
+        int oldest = -1;
+        int newest = -1;
+        for (int i = 0; i < segmentCount; i++) {
+            MappedByteBuffer segment = segments[i];
+            int version = segment.getInt(4);
+            long sequence = segment.getInt(0) == MAGIC && version >= MIN_VERSION
+                            && version <= VERSION ? segment.getLong(8) : 0;
+            sequences[i] = sequence;
+            versions[i] = version;
+            if (sequence <= 0) {
+                continue;
+            }
+            if (oldest < 0 || sequence < sequences[oldest]) {
+                oldest = i;
+            }
+            if (newest < 0 || sequence > sequences[newest]) {
+                newest = i;
+            }
+        }
+        if (newest >= 0 && isRing(oldest, newest)) {
+            lastSequence = sequences[newest];
+            readSegment = oldest;
+            readPosition = SEGMENT_HEADER_SIZE;
+            writeSegment = newest;
+            writePosition = scanEnd(segments[newest]);
+            if (versions[newest] != VERSION) {
+                // 旧版本的 segment 只读不写, 新记录从下一个 segment 开始
+                nextWriteSegment();
+            }
+            return;
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i].putInt(0, 0);
+            sequences[i] = 0;
+        }
+        initSegment(0);
+        readSegment = writeSegment = 0;
+        readPosition = writePosition = SEGMENT_HEADER_SIZE;
+    }
+
+    private boolean isRing(int oldest, int newest) {
+        for (int i = oldest; i != newest; i = (i + 1) % segmentCount) {
+            if (sequences[(i + 1) % segmentCount] <= sequences[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int scanEnd(MappedByteBuffer segment) {
+        int position = SEGMENT_HEADER_SIZE;
+        while (position + 4 <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length <= 0 || position + 4 + length > segmentSize) {
+                break;
+            }
+            position += 4 + length;
+        }
+        return position;
+    }
+
+    private void nextWriteSegment() {
+        int next = (writeSegment + 1) % segmentCount;
+        if (next == readSegment) {
+            // 环已满, 淘汰最老的 segment
+            evictedSegments++;
+            readSegment = (readSegment + 1) % segmentCount;
+            readPosition = SEGMENT_HEADER_SIZE;
+            logger.info(">>WARNING: spill buffer {} is full, drop the oldest {} bytes.", dir,
+                segmentSize);
+        }
+        initSegment(next);
+        writeSegment = next;
+        writePosition = SEGMENT_HEADER_SIZE;
+    }
+
+    private void initSegment(int index) {
+        MappedByteBuffer segment = segments[index];
+        segment.putInt(SEGMENT_HEADER_SIZE, 0);
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putLong(8, ++lastSequence);
+        sequences[index] = lastSequence;
+        versions[index] = VERSION;
+    }
+
+    private void disable(Throwable e) {
+        disabled = true;
+        logger.warn(">>WARNING: spill buffer {} is disabled!cause:{}", dir, e.getMessage());
+    }
+
+    File segmentFile(int index) {
+        return new File(dir, SEGMENT_FILE_PREFIX + index + SEGMENT_FILE_SUFFIX);
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? new byte[0] : s.getBytes(UTF8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -25,6 +25,7 @@ import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.core.config.MetricConfig;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.alipay.lookout.remote.report.AddressService;
+import com.alipay.lookout.remote.report.support.BinaryReportEncoder;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -38,6 +39,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 
@@ -61,6 +63,10 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
     public static final String         CLIENT_IP_HEADER_NAME        = "Client-Ip";
     public static final String         LOOKOUT_REPORT_FAIL_COUNT_ID = "lookout.report.fail";
     public static final String         WAIT_MINUTES                 = "Wait-Minutes";
+    /**
+     * gateway 通过这个响应头声明 POST 支持的 Content-Type
+     */
+    public static final String         ACCEPT_POST                  = "Accept-Post";
     static final String                CLIENT_VERSION               = "LOOKOUT-CLIENT-V1";
     static final String                APP_HEADER_NAME              = "app";
     static final String                CONFIG_HEADER_NAME           = "Conf-Id";
@@ -73,6 +79,11 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
     //HTTP
     static CloseableHttpClient         httpClientCache;
     private static Runnable            clearIdleConnectionsTask;
+    private static ConnPoolControl<?>  connPoolCache;
+    /**
+     * 异步上报时同一个 gateway 上可能有多个批次在途, 连接数要不少于在途窗口
+     */
+    private static volatile int        maxConnPerRoute              = 2;
 
     private static final AtomicBoolean httpClientInitialized        = new AtomicBoolean(false);
 
@@ -80,6 +91,21 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
 
     public DefaultHttpRequestProcessor(AddressService addressService, MetricConfig metricConfig) {
         super(addressService, metricConfig);
+        if (metricConfig.getBoolean(LookoutConfig.LOOKOUT_REPORT_ASYNC_ENABLE, false)) {
+            ensureMaxConnPerRoute(metricConfig.getInt(
+                LookoutConfig.LOOKOUT_REPORT_ASYNC_MAX_INFLIGHT, 4));
+        }
+    }
+
+    static synchronized void ensureMaxConnPerRoute(int perRoute) {
+        if (perRoute <= maxConnPerRoute) {
+            return;
+        }
+        maxConnPerRoute = perRoute;
+        if (connPoolCache != null) {
+            connPoolCache.setDefaultMaxPerRoute(perRoute);
+            connPoolCache.setMaxTotal(perRoute * 2);
+        }
     }
 
     @Override
@@ -115,6 +141,7 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
                 try {
                     if (200 == response.getStatusLine().getStatusCode()) {
                         logger.debug("check lookout gateway ok.{}", httpGet);
+                        checkAcceptPost(response, httpGet);
                         return true;
                     }
                     //client can not use this server address;
@@ -144,11 +171,19 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
         }
         addCommonHeaders(httpPost, metadata);
         httpPost.setConfig(reqConf);
+        setLastPostStatus(-1);
         try {
             return sendRequest(httpPost, new ResponseHandler<Boolean>() {
                 @Override
                 public Boolean handleResponse(HttpResponse response) throws IOException {
+                    setLastPostStatus(response.getStatusLine().getStatusCode());
                     try {
+                        if (415 == response.getStatusLine().getStatusCode()) {
+                            //unsupported content type, fall back to text
+                            setBinaryAccepted(httpPost.getURI().getHost(), false);
+                            handleErrorResponse(response, httpPost);
+                            return false;
+                        }
                         if (200 != response.getStatusLine().getStatusCode()) {
                             refreshAddressCache();
                             handleErrorResponse(response, httpPost);
@@ -159,6 +194,7 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
                             return false;
                         } else {//success
                             logger.debug("report to lookout gateway ok.{}", httpPost.toString());
+                            checkAcceptPost(response, httpPost);
                         }
                     } finally {
                         EntityUtils.consumeQuietly(response.getEntity());
@@ -174,6 +210,13 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
 
     }
 
+    private void checkAcceptPost(HttpResponse response, HttpRequestBase request) {
+        Header header = response.getFirstHeader(ACCEPT_POST);
+        boolean accepted = header != null && header.getValue() != null
+                           && header.getValue().contains(BinaryReportEncoder.MEDIA_TYPE);
+        setBinaryAccepted(request.getURI().getHost(), accepted);
+    }
+
     private void addCommonHeaders(HttpRequestBase httpMtd, Map<String, String> metadata) {
         httpMtd.setHeader(CLIENT_IP_HEADER_NAME, clientIp);
         String app = getMetricConfig().getString(LookoutConfig.APP_NAME);
@@ -243,8 +286,11 @@ public final class DefaultHttpRequestProcessor extends ReportDecider {
         }
         if (httpClientInitialized.compareAndSet(false, true)) {
             final PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
-            connManager.setDefaultMaxPerRoute(2);
-            connManager.setMaxTotal(4);
+            synchronized (DefaultHttpRequestProcessor.class) {
+                connManager.setDefaultMaxPerRoute(maxConnPerRoute);
+                connManager.setMaxTotal(maxConnPerRoute * 2);
+                connPoolCache = connManager;
+            }
             httpClientCache = HttpClientBuilder.create().setConnectionManager(connManager)
                 .setRetryHandler(new DefaultHttpRequestRetryHandler(1, false))
                 .setUserAgent(CLIENT_VERSION).build();
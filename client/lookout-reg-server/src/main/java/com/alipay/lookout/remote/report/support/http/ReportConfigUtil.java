@@ -91,8 +91,7 @@ class ReportConfigUtil {
             }
             if (!included && tagFilters != null) {
                 for (Map.Entry<String, String> e : tagFilters.entrySet()) {
-                    if (measurement.containsTag(e.getKey())
-                        && e.getValue().equals(measurement.getTags().get(e.getKey()))) {
+                    if (e.getValue().equals(measurement.getTag(e.getKey()))) {
                         included = true;
                         break;//符合一个条件
                     }
@@ -17,6 +17,7 @@
 package com.alipay.lookout.remote.report.support.http;
 
 import com.alipay.lookout.common.log.LookoutLoggerFactory;
+import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.core.config.MetricConfig;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.alipay.lookout.remote.report.Address;
@@ -45,6 +46,12 @@ public abstract class ReportDecider implements HttpRequestProcessor {
     private AddressService           addressService;
     private MetricConfig             metricConfig;
 
+    //声明支持二进制上报格式的 gateway ip
+    private volatile String          binaryAcceptedIp;
+
+    //当前线程最近一次 POST 的响应码, 没有收到响应时为 -1
+    private ThreadLocal<Integer>     lastPostStatus          = new ThreadLocal<Integer>();
+
     public ReportDecider(AddressService addressService, MetricConfig metricConfig) {
         Preconditions.checkNotNull(addressService, "An addressService is required!");
         Preconditions.checkNotNull(metricConfig, "A metricConfig is required!");
@@ -122,5 +129,52 @@ public abstract class ReportDecider implements HttpRequestProcessor {
         return addressLastModifiedTime + expiredTime < System.currentTimeMillis();
     }
 
+    /**
+     * @param address gateway address
+     * @return true if binary report is enabled and the gateway accepts it
+     */
+    public boolean isBinaryAccepted(Address address) {
+        if (address == null
+            || !metricConfig.getBoolean(LookoutConfig.LOOKOUT_REPORT_BINARY_ENABLE, false)) {
+            return false;
+        }
+        return address.ip().equals(binaryAcceptedIp);
+    }
+
+    /**
+     * record whether the gateway accepts binary report, according to its response
+     *
+     * @param ip       gateway ip
+     * @param accepted accepted or not
+     */
+    protected void setBinaryAccepted(String ip, boolean accepted) {
+        if (accepted) {
+            if (!ip.equals(binaryAcceptedIp)) {
+                logger.info(">>: gateway {} accepts binary report.", ip);
+                binaryAcceptedIp = ip;
+            }
+        } else if (ip.equals(binaryAcceptedIp)) {
+            logger.info(">>WARNING: gateway {} refuses binary report, fall back to text.", ip);
+            binaryAcceptedIp = null;
+        }
+    }
+
+    /**
+     * @return status code of the last POST sent by the current thread, -1 if no response is received
+     */
+    public int getLastPostStatus() {
+        Integer status = lastPostStatus.get();
+        return status == null ? -1 : status;
+    }
+
+    /**
+     * record the status code of the POST being sent by the current thread
+     *
+     * @param status status code, -1 before sending
+     */
+    protected void setLastPostStatus(int status) {
+        lastPostStatus.set(status);
+    }
+
     public abstract List<LookoutMeasurement> filter(List<LookoutMeasurement> measures);
 }
@@ -17,30 +17,40 @@
 package com.alipay.lookout.remote.step;
 
 import com.alipay.lookout.api.*;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
 import com.alipay.lookout.core.MetricIterable;
+import com.alipay.lookout.step.LogLinearHistogram;
+import com.alipay.lookout.step.StepSketch;
+import com.google.common.base.Preconditions;
 
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
+ * 记录落在各个 bucket 区间的次数.
+ * <p>
+ * 数据先记录在一个 {@link LogLinearHistogram} 中(O(1) 定位, 预分配, 无锁), 每个 step 滚动时再按 slot
+ * 汇总到用户设置的 bucket 中, 以 "_bucket" tag 输出. 跨越 bucket 边界的少数 slot 直接按 bucket 计数, 保证边界精确.
+ *
  * @author zhangzhuo
  * @version $Id: BucketDistributionSummary.java, v 0.1 2018年09月07日 上午11:47 zhangzhuo Exp $
  */
 public abstract class LookoutBucketCounter implements Metric, MetricIterable {
 
-    private static final String   BUCKET_TAG_NAME = "_bucket";
+    static final String         BUCKET_TAG_NAME = "_bucket";
 
-    protected Clock               clock;
+    protected Clock             clock;
 
-    private long                  step;
+    private long                step;
 
-    private long[]                buckets;
+    private int                 precisionBits   = LogLinearHistogram.DEFAULT_PRECISION_BITS;
 
-    private volatile AtomicLong[] counts;
+    private volatile Buckets    buckets;
 
-    private volatile AtomicLong[] prevCounts;
+    private volatile StepSketch sketch;
 
-    private AtomicLong            lastInitPos;
+    private AtomicLong          lastInitPos;
 
     public LookoutBucketCounter(Clock clock, long step) {
         this.clock = clock;
@@ -51,37 +61,59 @@ public abstract class LookoutBucketCounter implements Metric, MetricIterable {
     public void setStep(long step) {
         this.step = step;
         this.lastInitPos.set(clock.wallTime() / step);
+        StepSketch s = sketch;
+        if (s != null) {
+            s.setStep(step);
+        }
+    }
+
+    /**
+     * 设置 histogram 的精度, 在 {@link #buckets(long[])} 之前调用才生效.
+     *
+     * @param precisionBits precisionBits
+     */
+    void setPrecisionBits(int precisionBits) {
+        this.precisionBits = precisionBits;
     }
 
     public void buckets(long[] buckets) {
-        this.buckets = buckets;
-        this.counts = new AtomicLong[buckets.length + 1];
+        this.buckets = new Buckets(buckets, precisionBits);
     }
 
-    public void recordBucket(long amount) {
-        if (buckets == null) {
-            return;
-        }
-        int i = 0;
-        for (; i < buckets.length; ++i) {
-            if (amount <= buckets[i]) {
-                break;
-            }
-        }
-        if (counts[i] == null) {
-            counts[i] = new AtomicLong();
-        }
-        counts[i].incrementAndGet();
+    /**
+     * 额外记录一个可合并的 quantile sketch, 每个 step 以 {@link Statistic#sketch} 上报.
+     *
+     * @param highestTrackableValue 超过该值的数据计入溢出 slot
+     * @param precisionBits         精度
+     * @param scaleExponent         见 {@link LogLinearSketch#getScaleExponent()}
+     */
+    void enableSketch(long highestTrackableValue, int precisionBits, int scaleExponent) {
+        this.sketch = new StepSketch(clock, step, highestTrackableValue, precisionBits,
+            scaleExponent);
     }
 
-    private String getBucketTag(int i) {
-        if (i == 0) {
-            return "0-" + buckets[0];
+    protected void recordSketch(long amount) {
+        StepSketch s = sketch;
+        if (s != null) {
+            s.record(amount);
         }
-        if (i == buckets.length) {
-            return buckets[buckets.length - 1] + "-";
+    }
+
+    /**
+     * @return 上一个 step 的 sketch 编码, 未开启或没有数据时为 null
+     */
+    protected String pollSketch() {
+        StepSketch s = sketch;
+        LogLinearSketch previous = s == null ? null : s.poll();
+        return previous == null ? null : previous.encode();
+    }
+
+    public void recordBucket(long amount) {
+        Buckets b = buckets;
+        if (b == null) {
+            return;
         }
-        return buckets[i - 1] + "-" + buckets[i];
+        b.record(amount);
     }
 
     private void roll() {
@@ -89,24 +121,23 @@ public abstract class LookoutBucketCounter implements Metric, MetricIterable {
         final long lastInit = lastInitPos.get();
         // 如果正好到达下一个步长区间，则并发竞争成功的线程做实际更新；
         if (lastInit < stepTime && lastInitPos.compareAndSet(lastInit, stepTime)) {
+            Buckets b = buckets;
             // 每次取出当前值，并设置初始值重新开始新一轮计数；
-            if (lastInit == stepTime - 1) {
-                prevCounts = counts;
-            } else {
-                prevCounts = null;
-            }
-            counts = new AtomicLong[buckets.length + 1];
+            long[] counts = b.drain();
+            b.prevCounts = lastInit == stepTime - 1 ? counts : null;
         }
     }
 
     public Iterator<Metric> iterator() {
-
-        if (buckets == null) {
+        final Buckets b = buckets;
+        if (b == null) {
             return null;
         }
 
         roll();
 
+        final long[] prevCounts = b.prevCounts;
+
         return new Iterator<Metric>() {
 
             int            i = 0;
@@ -120,8 +151,8 @@ public abstract class LookoutBucketCounter implements Metric, MetricIterable {
                 }
                 if (metric == null) {
                     while (i < prevCounts.length) {
-                        if (prevCounts[i] != null) {
-                            metric = new BucketMetric(i);
+                        if (prevCounts[i] > 0) {
+                            metric = new BucketMetric(b.getBucketTag(i), prevCounts[i]);
                             i++;
                             break;
                         } else {
@@ -145,15 +176,105 @@ public abstract class LookoutBucketCounter implements Metric, MetricIterable {
         };
     }
 
+    /**
+     * 用户设置的 bucket 边界, 及其对应的 histogram
+     */
+    static final class Buckets {
+        private final long[]             bounds;
+        private final LogLinearHistogram histogram;
+        /**
+         * histogram slot 到 bucket 的映射, -1 表示该 slot 跨越了 bucket 边界
+         */
+        private final int[]              slotToBucket;
+        /**
+         * 跨越边界的 slot 中的值直接计入 bucket
+         */
+        private final AtomicLongArray    straddleCounts;
+
+        private volatile long[]          prevCounts;
+
+        Buckets(long[] bounds, int precisionBits) {
+            Preconditions.checkArgument(bounds != null && bounds.length > 0,
+                "buckets must not be empty");
+            this.bounds = bounds.clone();
+            this.histogram = new LogLinearHistogram(bounds[bounds.length - 1], precisionBits);
+            this.slotToBucket = new int[histogram.length()];
+            this.straddleCounts = new AtomicLongArray(bounds.length + 1);
+            for (int slot = 0; slot < slotToBucket.length; slot++) {
+                int low = bucketOf(histogram.lowestEquivalentValue(slot));
+                int high = bucketOf(histogram.highestEquivalentValue(slot));
+                slotToBucket[slot] = low == high ? low : -1;
+            }
+        }
+
+        void record(long amount) {
+            int slot = histogram.indexOf(amount);
+            if (slotToBucket[slot] >= 0) {
+                histogram.increment(slot);
+            } else {
+                straddleCounts.incrementAndGet(bucketOf(amount));
+            }
+        }
+
+        private int bucketOf(long amount) {
+            return LookoutBucketCounter.bucketOf(bounds, amount);
+        }
+
+        long[] drain() {
+            long[] counts = new long[bounds.length + 1];
+            for (int slot = 0; slot < slotToBucket.length; slot++) {
+                if (slotToBucket[slot] >= 0 && histogram.get(slot) != 0) {
+                    counts[slotToBucket[slot]] += histogram.getAndReset(slot);
+                }
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (straddleCounts.get(i) != 0) {
+                    counts[i] += straddleCounts.getAndSet(i, 0L);
+                }
+            }
+            return counts;
+        }
+
+        String getBucketTag(int i) {
+            return bucketTag(bounds, i);
+        }
+    }
+
+    /**
+     * @return 第一个不小于 amount 的边界的位置, 都小于 amount 时为 bounds.length
+     */
+    static int bucketOf(long[] bounds, long amount) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] < amount) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static String bucketTag(long[] bounds, int i) {
+        if (i == 0) {
+            return "0-" + bounds[0];
+        }
+        if (i == bounds.length) {
+            return bounds[bounds.length - 1] + "-";
+        }
+        return bounds[i - 1] + "-" + bounds[i];
+    }
+
     class BucketMetric implements Metric {
 
         Id   id;
         long count;
 
-        public BucketMetric(int i) {
-            String bucketTag = getBucketTag(i);
+        public BucketMetric(String bucketTag, long count) {
             id = LookoutBucketCounter.this.id().withTag(BUCKET_TAG_NAME, bucketTag);
-            this.count = prevCounts[i].get();
+            this.count = count;
         }
 
         @Override
@@ -170,4 +291,4 @@ public abstract class LookoutBucketCounter implements Metric, MetricIterable {
         }
 
     }
-}
\ No newline at end of file
+}
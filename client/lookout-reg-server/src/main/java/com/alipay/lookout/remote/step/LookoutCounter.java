@@ -21,22 +21,32 @@ import com.alipay.lookout.api.Clock;
 import com.alipay.lookout.api.Counter;
 import com.alipay.lookout.api.Id;
 import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.MeasurementVisitor;
 import com.alipay.lookout.api.Statistic;
-import com.alipay.lookout.step.StepLong;
+import com.alipay.lookout.api.VisitableMetric;
+import com.alipay.lookout.core.ActivityTracker;
+import com.alipay.lookout.core.Expirable;
+import com.alipay.lookout.step.StepLongValue;
+import com.alipay.lookout.step.StepLongValues;
 import com.google.common.annotations.VisibleForTesting;
 
 /**
  * 时间步长内的累计值（而DefaultCounter是从启动时到当前的统计）
  * Created by kevin.luy@alipay.com on 2017/2/6.
  */
-public class LookoutCounter implements Counter, ResettableStep {
+public class LookoutCounter implements Counter, VisitableMetric, ResettableStep, Expirable {
 
-    private final Id       id;
-    private final StepLong value;
+    private final Id              id;
+    private final StepLongValue   value;
+    private final ActivityTracker activity = new ActivityTracker();
 
     LookoutCounter(Id id, Clock clock, long step) {
+        this(id, clock, step, false);
+    }
+
+    LookoutCounter(Id id, Clock clock, long step, boolean striped) {
         this.id = id;
-        this.value = new StepLong(0L, clock, step);
+        this.value = StepLongValues.newSum(clock, step, striped);
     }
 
     @Override
@@ -44,6 +54,11 @@ public class LookoutCounter implements Counter, ResettableStep {
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public Indicator measure() {
         double rate = value.pollAsRate();
@@ -51,14 +66,24 @@ public class LookoutCounter implements Counter, ResettableStep {
             value.previous()).addMeasurement(Statistic.rate.name(), rate);
     }
 
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        double rate = value.pollAsRate();
+        visitor.visit(Statistic.count.name(), value.previous());
+        visitor.visit(Statistic.rate.name(), rate);
+        return value.timestamp();
+    }
+
     @Override
     public void inc() {
-        value.getCurrent().incrementAndGet();
+        activity.touch();
+        value.record(1L);
     }
 
     @Override
     public void inc(long amount) {
-        value.getCurrent().addAndGet(amount);
+        activity.touch();
+        value.record(amount);
     }
 
     public void dec() {
@@ -17,29 +17,36 @@
 package com.alipay.lookout.remote.step;
 
 import com.alipay.lookout.api.*;
-import com.alipay.lookout.step.StepLong;
+import com.alipay.lookout.core.ActivityTracker;
+import com.alipay.lookout.core.Expirable;
+import com.alipay.lookout.step.StepLongValue;
+import com.alipay.lookout.step.StepLongValues;
 import com.alipay.lookout.step.StepValue;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
  * Created by kevin.luy@alipay.com on 2017/2/6.
  */
 public class LookoutDistributionSummary extends LookoutBucketCounter implements
                                                                     DistributionSummary,
-                                                                    ResettableStep {
+                                                                    VisitableMetric,
+                                                                    ResettableStep, Expirable {
 
-    private final Id       id;
-    private final StepLong count;
-    private final StepLong total;
-    private final StepLong max;
+    private final Id              id;
+    private final StepLongValue   count;
+    private final StepLongValue   total;
+    private final StepLongValue   max;
+    private final ActivityTracker activity = new ActivityTracker();
 
     LookoutDistributionSummary(Id id, Clock clock, long step) {
+        this(id, clock, step, false);
+    }
+
+    LookoutDistributionSummary(Id id, Clock clock, long step, boolean striped) {
         super(clock, step);
         this.id = id;
-        this.count = new StepLong(0L, clock, step);
-        this.total = new StepLong(0L, clock, step);
-        this.max = new StepLong(0L, clock, step);
+        this.count = StepLongValues.newSum(clock, step, striped);
+        this.total = StepLongValues.newSum(clock, step, striped);
+        this.max = StepLongValues.newMax(clock, step, striped);
     }
 
     @Override
@@ -47,6 +54,11 @@ public class LookoutDistributionSummary extends LookoutBucketCounter implements
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public Indicator measure() {
         double rate = count.pollAsRate();
@@ -56,14 +68,33 @@ public class LookoutDistributionSummary extends LookoutBucketCounter implements
         indicator.addMeasurement(new Measurement(Statistic.rate.name(), rate));
         indicator.addMeasurement(newMeasurement(Statistic.totalAmount.name(), total));
         indicator.addMeasurement(newMaxMeasurement(Statistic.max.name(), max));
+        String sketch = pollSketch();
+        if (sketch != null) {
+            indicator.addMeasurement(new Measurement<String>(Statistic.sketch.name(), sketch));
+        }
         return indicator;
     }
 
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        double rate = count.pollAsRate();
+        long timestamp = count.timestamp();
+
+        visitor.visit(Statistic.rate.name(), rate);
+        visitor.visit(Statistic.totalAmount.name(), total.pollAsRate());
+        visitor.visit(Statistic.max.name(), max.poll());
+        String sketch = pollSketch();
+        if (sketch != null) {
+            visitor.visit(Statistic.sketch.name(), sketch);
+        }
+        return timestamp;
+    }
+
     private Measurement<Double> newMeasurement(String mid, StepValue v) {
         return new Measurement<Double>(mid, v.pollAsRate());
     }
 
-    private Measurement<Long> newMaxMeasurement(String mid, StepLong max) {
+    private Measurement<Long> newMaxMeasurement(String mid, StepLongValue max) {
         return new Measurement<Long>(mid, max.poll());
     }
 
@@ -77,17 +108,13 @@ public class LookoutDistributionSummary extends LookoutBucketCounter implements
 
     @Override
     public void record(long amount) {
+        activity.touch();
         if (amount > 0) {
-            count.getCurrent().incrementAndGet();
-            total.getCurrent().addAndGet(amount);
-            refreshMax(max.getCurrent(), amount);
+            count.record(1L);
+            total.record(amount);
+            max.record(amount);
             recordBucket(amount);
-        }
-    }
-
-    private void refreshMax(AtomicLong maxValue, long v) {
-        for (long max = maxValue.get(); (v > max && !maxValue.compareAndSet(max, v)); max = maxValue
-            .get()) {
+            recordSketch(amount);
         }
     }
 
@@ -23,25 +23,36 @@ import com.alipay.lookout.api.Gauge;
 import com.alipay.lookout.api.Id;
 import com.alipay.lookout.api.Indicator;
 import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.MeasurementVisitor;
 import com.alipay.lookout.api.Metric;
 import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.api.Utils;
+import com.alipay.lookout.api.VisitableMetric;
 import com.alipay.lookout.api.composite.MixinMetric;
 import com.alipay.lookout.core.common.MeasurementUtil;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import static com.alipay.lookout.common.LookoutConstants.DOT;
 
 /**
  * Created by kevin.luy@alipay.com on 2017/3/26.
  */
-final class LookoutMixinMetric implements MixinMetric, ResettableStep {
-    private final Id           id;
-    private final StepRegistry registry; //inner registry with fixed StepMillis
-    private final StepClock    stepClock;
+final class LookoutMixinMetric implements MixinMetric, VisitableMetric, ResettableStep {
+    private final Id                                                   id;
+    private final StepRegistry                                         registry;     //inner registry with fixed StepMillis
+    private final StepClock                                            stepClock;
+    /**
+     * component name -> (measure name -> component name + DOT + measure name)
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> measureNames;
 
     public LookoutMixinMetric(Id id, StepRegistry registry, StepClock stepClock) {
         this.id = id;
         this.registry = registry;
         this.stepClock = stepClock;
+        this.measureNames = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
     }
 
     @Override
@@ -94,4 +105,62 @@ final class LookoutMixinMetric implements MixinMetric, ResettableStep {
         }
         return indicator;
     }
+
+    @Override
+    public long accept(final MeasurementVisitor visitor) {
+        long timestamp = stepClock.wallTime();
+        ComponentVisitor componentVisitor = new ComponentVisitor(visitor);
+        for (Metric metricEntry : registry) {
+            componentVisitor.componentName = metricEntry.id().name();
+            Utils.accept(metricEntry, componentVisitor);
+        }
+        return timestamp;
+    }
+
+    /**
+     * add componentName to measureName, the joined names are cached.
+     */
+    private String measureName(String componentName, String measureName) {
+        if (MeasurementUtil.isEmptyMeasureName(measureName)) {
+            return componentName;
+        }
+        ConcurrentMap<String, String> names = measureNames.get(componentName);
+        if (names == null) {
+            names = new ConcurrentHashMap<String, String>();
+            ConcurrentMap<String, String> old = measureNames.putIfAbsent(componentName, names);
+            if (old != null) {
+                names = old;
+            }
+        }
+        String name = names.get(measureName);
+        if (name == null) {
+            name = componentName + DOT + measureName;
+            names.put(measureName, name);
+        }
+        return name;
+    }
+
+    private final class ComponentVisitor implements MeasurementVisitor {
+        private final MeasurementVisitor delegate;
+        private String                   componentName;
+
+        ComponentVisitor(MeasurementVisitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visit(String name, long value) {
+            delegate.visit(measureName(componentName, name), value);
+        }
+
+        @Override
+        public void visit(String name, double value) {
+            delegate.visit(measureName(componentName, name), value);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            delegate.visit(measureName(componentName, name), value);
+        }
+    }
 }
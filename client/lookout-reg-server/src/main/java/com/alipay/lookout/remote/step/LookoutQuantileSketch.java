@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Clock;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.api.QuantileSketch;
+import com.alipay.lookout.api.ResettableStep;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.VisitableMetric;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.lookout.step.StepSketch;
+
+/**
+ * 时间步长内的 quantile sketch, 每个 step 上报记录次数和 sketch 编码, 服务端可以跨实例合并后计算分位数.
+ */
+public class LookoutQuantileSketch implements QuantileSketch, VisitableMetric, ResettableStep {
+
+    /**
+     * 默认可精确记录的最大值, 超过的计入溢出 slot
+     */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 1L << 32;
+
+    private final Id         id;
+    private final StepSketch sketch;
+
+    LookoutQuantileSketch(Id id, Clock clock, long step, int precisionBits) {
+        this.id = id;
+        this.sketch = new StepSketch(clock, step, DEFAULT_HIGHEST_TRACKABLE_VALUE, precisionBits,
+            0);
+    }
+
+    @Override
+    public Id id() {
+        return id;
+    }
+
+    @Override
+    public Indicator measure() {
+        LogLinearSketch previous = sketch.poll();
+        Indicator indicator = new Indicator(sketch.timestamp(), id);
+        indicator.addMeasurement(Statistic.count.name(),
+            previous == null ? 0L : previous.getCount());
+        if (previous != null) {
+            indicator.addMeasurement(Statistic.sketch.name(), previous.encode());
+        }
+        return indicator;
+    }
+
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        LogLinearSketch previous = sketch.poll();
+        visitor.visit(Statistic.count.name(), previous == null ? 0L : previous.getCount());
+        if (previous != null) {
+            visitor.visit(Statistic.sketch.name(), previous.encode());
+        }
+        return sketch.timestamp();
+    }
+
+    @Override
+    public void record(long amount) {
+        sketch.record(amount);
+    }
+
+    @Override
+    public long count() {
+        LogLinearSketch previous = sketch.poll();
+        return previous == null ? 0L : previous.getCount();
+    }
+
+    @Override
+    public void setStep(long step) {
+        sketch.setStep(step);
+    }
+}
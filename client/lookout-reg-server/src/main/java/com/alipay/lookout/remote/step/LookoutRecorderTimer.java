@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Clock;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.ResettableStep;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.api.VisitableMetric;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.lookout.core.ActivityTracker;
+import com.alipay.lookout.core.Expirable;
+import com.alipay.lookout.core.MetricIterable;
+import com.alipay.lookout.step.LogLinearHistogram;
+import com.alipay.lookout.step.WriterReaderPhaser;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个记录线程写自己的统计数据的 Timer, 见 LookoutConfig#LOOKOUT_TIMER_PER_THREAD_ENABLE.
+ * <p>
+ * 每个线程持有一对 active/inactive 缓冲, 记录时只写本线程的 active 缓冲(普通的 long 字段, 不与其他线程共享缓存行),
+ * 前后各一次无竞争的原子自增, 不会等待. 采集时发现 step 切换, 则逐个线程交换缓冲并通过 {@link WriterReaderPhaser}
+ * 等待仍在写旧缓冲的写者退出, 再把旧缓冲合并成上一个 step 的快照, 写者全程不会被阻塞.
+ * <p>
+ * 与 {@link LookoutTimer} 不同, 记录时不读取时钟判断 step 切换, 数据归属于相位切换时(即 step 切换后的第一次采集)所在的 step.
+ */
+public class LookoutRecorderTimer implements Timer, VisitableMetric, ResettableStep,
+                                 MetricIterable, Expirable {
+
+    private final Id                    id;
+    private final Clock                 clock;
+    private volatile long               step;
+    private long                        lastInitPos;
+    private volatile Snapshot           previous;
+
+    private volatile long[]             bounds;
+    // 开启 sketch 时的 slot 布局, 只使用其 indexOf 等无状态方法
+    private volatile LogLinearHistogram layout;
+
+    private final List<Recorder>        recorders = new CopyOnWriteArrayList<Recorder>();
+    private final ThreadLocal<Recorder> local     = new ThreadLocal<Recorder>();
+    private final ActivityTracker       activity  = new ActivityTracker();
+
+    LookoutRecorderTimer(Id id, Clock clock, long step) {
+        this.id = id;
+        this.clock = clock;
+        this.step = step;
+        this.lastInitPos = clock.wallTime() / step;
+    }
+
+    /**
+     * 额外以微秒记录 quantile sketch, 上报单位为秒. 每个线程需要额外的 slot 数组, 只适合线程数有限的场景.
+     *
+     * @param highestTrackableMicros 超过该值的数据计入溢出 slot
+     * @param precisionBits          精度
+     */
+    void enableSketch(long highestTrackableMicros, int precisionBits) {
+        this.layout = new LogLinearHistogram(highestTrackableMicros, precisionBits);
+    }
+
+    @Override
+    public Id id() {
+        return id;
+    }
+
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
+    @Override
+    public void buckets(long[] buckets) {
+        this.bounds = buckets.clone();
+    }
+
+    @Override
+    public void record(long amount, TimeUnit unit) {
+        activity.touch();
+        if (amount <= 0) {
+            return;
+        }
+        long nanos = unit.toNanos(amount);
+        Recorder recorder = local.get();
+        if (recorder == null) {
+            recorder = new Recorder();
+            local.set(recorder);
+            recorders.add(recorder);
+        }
+        long epoch = recorder.phaser.writerCriticalSectionEnter();
+        try {
+            recorder.active.record(nanos, bounds, layout);
+        } finally {
+            recorder.phaser.writerCriticalSectionExit(epoch);
+        }
+    }
+
+    @Override
+    public <T> T record(Callable<T> callable) throws Exception {
+        long start = clock.monotonicTime();
+        try {
+            return callable.call();
+        } finally {
+            record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void record(Runnable runnable) {
+        long start = clock.monotonicTime();
+        try {
+            runnable.run();
+        } finally {
+            record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return 上一个 step 的快照, 没有时为 {@link Snapshot#EMPTY}
+     */
+    private synchronized Snapshot poll() {
+        long stepTime = clock.wallTime() / step;
+        if (lastInitPos < stepTime) {
+            Snapshot snapshot = flip();
+            // 切换比预期延后超过1步时, 取出的数据已经过期
+            previous = lastInitPos == stepTime - 1 ? snapshot : null;
+            lastInitPos = stepTime;
+        }
+        Snapshot s = previous;
+        return s == null ? Snapshot.EMPTY : s;
+    }
+
+    /**
+     * 交换所有线程的缓冲, 合并旧缓冲. 调用方持有 this 锁, 保证同一时刻只有一个读者.
+     */
+    private Snapshot flip() {
+        long[] currentBounds = bounds;
+        LogLinearHistogram currentLayout = layout;
+        Snapshot snapshot = new Snapshot(currentBounds, currentLayout);
+        for (Recorder recorder : recorders) {
+            // 切换前线程已经结束, 新的 active 缓冲不会再有数据
+            boolean ownerDead = !recorder.isOwnerAlive();
+            Interval inactive = recorder.inactive;
+            recorder.inactive = recorder.active;
+            recorder.active = inactive;
+            recorder.phaser.flipPhase();
+            // 没有写者再访问旧缓冲了
+            snapshot.merge(recorder.inactive, currentBounds, currentLayout);
+            recorder.inactive.reset();
+            if (ownerDead) {
+                recorders.remove(recorder);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Indicator measure() {
+        Snapshot s = poll();
+        Indicator indicator = new Indicator(timestamp(), id);
+        indicator.addMeasurement(new Measurement(Statistic.elapPerExec.name(), s.elapPerExec()));
+        indicator.addMeasurement(new Measurement(Statistic.totalTime.name(), s.total * 1e-9));
+        indicator.addMeasurement(new Measurement(Statistic.max.name(), s.max / 1e9));
+        String sketch = s.encodeSketch();
+        if (sketch != null) {
+            indicator.addMeasurement(new Measurement(Statistic.sketch.name(), sketch));
+        }
+        return indicator;
+    }
+
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        Snapshot s = poll();
+        visitor.visit(Statistic.elapPerExec.name(), s.elapPerExec());
+        visitor.visit(Statistic.totalTime.name(), s.total * 1e-9);
+        visitor.visit(Statistic.max.name(), s.max / 1e9);
+        String sketch = s.encodeSketch();
+        if (sketch != null) {
+            visitor.visit(Statistic.sketch.name(), sketch);
+        }
+        return timestamp();
+    }
+
+    private synchronized long timestamp() {
+        return lastInitPos * step;
+    }
+
+    @Override
+    public Iterator<Metric> iterator() {
+        if (bounds == null) {
+            return null;
+        }
+        Snapshot s = poll();
+        if (s.bounds == null) {
+            return null;
+        }
+        long time = timestamp();
+        List<Metric> metrics = new ArrayList<Metric>();
+        for (int i = 0; i < s.buckets.length; i++) {
+            if (s.buckets[i] > 0) {
+                metrics.add(new BucketMetric(id.withTag(LookoutBucketCounter.BUCKET_TAG_NAME,
+                    LookoutBucketCounter.bucketTag(s.bounds, i)), time, s.buckets[i]));
+            }
+        }
+        return metrics.iterator();
+    }
+
+    @Override
+    public long count() {
+        return poll().count;
+    }
+
+    @Override
+    public long totalTime() {
+        return poll().total;
+    }
+
+    @Override
+    public synchronized void setStep(long step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must greater than 0");
+        }
+        flip();
+        this.step = step;
+        this.lastInitPos = clock.wallTime() / step;
+        this.previous = null;
+    }
+
+    /**
+     * 一个线程的一段时间内的数据, 只被一个写者修改
+     */
+    static final class Interval {
+        long   count;
+        long   total;
+        long   max;
+        long[] bounds;
+        long[] buckets;
+        long[] slots;
+
+        void record(long nanos, long[] currentBounds, LogLinearHistogram currentLayout) {
+            count++;
+            total += nanos;
+            if (nanos > max) {
+                max = nanos;
+            }
+            if (currentBounds != null) {
+                if (bounds != currentBounds) {
+                    bounds = currentBounds;
+                    buckets = new long[currentBounds.length + 1];
+                }
+                buckets[LookoutBucketCounter.bucketOf(currentBounds,
+                    TimeUnit.NANOSECONDS.toMillis(nanos))]++;
+            }
+            if (currentLayout != null) {
+                if (slots == null || slots.length != currentLayout.length()) {
+                    slots = new long[currentLayout.length()];
+                }
+                slots[currentLayout.indexOf(TimeUnit.NANOSECONDS.toMicros(nanos))]++;
+            }
+        }
+
+        void reset() {
+            count = 0;
+            total = 0;
+            max = 0;
+            if (buckets != null) {
+                Arrays.fill(buckets, 0L);
+            }
+            if (slots != null) {
+                Arrays.fill(slots, 0L);
+            }
+        }
+    }
+
+    static final class Recorder {
+        final WriterReaderPhaser    phaser   = new WriterReaderPhaser();
+        final WeakReference<Thread> owner    = new WeakReference<Thread>(Thread.currentThread());
+        volatile Interval           active   = new Interval();
+        Interval                    inactive = new Interval();
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+
+    /**
+     * 合并后的上一个 step 的数据
+     */
+    static final class Snapshot {
+        static final Snapshot            EMPTY = new Snapshot(null, null);
+
+        long                             count;
+        long                             total;
+        long                             max;
+        final long[]                     bounds;
+        final long[]                     buckets;
+        private final LogLinearHistogram layout;
+        private final long[]             slots;
+
+        Snapshot(long[] bounds, LogLinearHistogram layout) {
+            this.bounds = bounds;
+            this.buckets = bounds == null ? null : new long[bounds.length + 1];
+            this.layout = layout;
+            this.slots = layout == null ? null : new long[layout.length()];
+        }
+
+        void merge(Interval interval, long[] currentBounds, LogLinearHistogram currentLayout) {
+            count += interval.count;
+            total += interval.total;
+            max = Math.max(max, interval.max);
+            // 切换 bucket 设置前记录的数据不再计入 bucket
+            if (currentBounds != null && interval.bounds == currentBounds) {
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] += interval.buckets[i];
+                }
+            }
+            if (currentLayout != null && interval.slots != null
+                && interval.slots.length == slots.length) {
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] += interval.slots[i];
+                }
+            }
+        }
+
+        double elapPerExec() {
+            return count <= 0 ? 0 : total * 1e-9 / count;
+        }
+
+        /**
+         * @return sketch 编码, 未开启或没有数据时为 null
+         */
+        String encodeSketch() {
+            if (slots == null || count == 0) {
+                return null;
+            }
+            int n = 0;
+            for (long c : slots) {
+                if (c > 0) {
+                    n++;
+                }
+            }
+            int[] indexes = new int[n];
+            long[] counts = new long[n];
+            n = 0;
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] > 0) {
+                    indexes[n] = i;
+                    counts[n++] = slots[i];
+                }
+            }
+            return new LogLinearSketch(layout.getPrecisionBits(), layout.getHighestTrackableValue(),
+                -6, indexes, counts).encode();
+        }
+    }
+
+    static final class BucketMetric implements Metric {
+        private final Id   id;
+        private final long time;
+        private final long count;
+
+        BucketMetric(Id id, long time, long count) {
+            this.id = id;
+            this.time = time;
+            this.count = count;
+        }
+
+        @Override
+        public Id id() {
+            return id;
+        }
+
+        @Override
+        public Indicator measure() {
+            return new Indicator(time, id).addMeasurement(Statistic.buckets.name(), count);
+        }
+    }
+}
@@ -17,19 +17,25 @@
 package com.alipay.lookout.remote.step;
 
 import com.alipay.lookout.api.Clock;
+import com.alipay.lookout.common.log.LookoutLoggerFactory;
 import com.alipay.lookout.common.utils.ClassUtil;
 import com.alipay.lookout.core.CommonTagsAccessor;
 import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.alipay.lookout.remote.report.*;
 import com.alipay.lookout.report.MetricObserver;
+import org.slf4j.Logger;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Collection;
 
 /**
  * Created by kevin.luy@alipay.com on 2017/2/6.
  */
 public final class LookoutRegistry extends ResettableStepRegistry implements CommonTagsAccessor {
+    private static final Logger           logger                  = LookoutLoggerFactory
+                                                                      .getLogger(LookoutRegistry.class);
 
     private SchedulerPoller               poller;
     private final MetricObserverComposite metricObserverComposite = new MetricObserverComposite();
@@ -91,8 +97,22 @@ public final class LookoutRegistry extends ResettableStepRegistry implements Com
         return this.poller;
     }
 
+    /**
+     * 停止 poller 和空闲 meter 的回收, 并关闭实现了 {@link Closeable} 的 observer(比如 {@link HttpObserver} 的异步发送线程池)
+     */
+    @Override
     public void destroy() {
+        super.destroy();
         this.poller().stop();
+        for (MetricObserver observer : getMetricObservers()) {
+            if (observer instanceof Closeable) {
+                try {
+                    ((Closeable) observer).close();
+                } catch (IOException e) {
+                    logger.warn("close metric observer {} fail.{}", observer, e.getMessage());
+                }
+            }
+        }
     }
 
     public void addMetricObserver(MetricObserver metricObserver) {
@@ -17,29 +17,37 @@
 package com.alipay.lookout.remote.step;
 
 import com.alipay.lookout.api.*;
-import com.alipay.lookout.step.StepLong;
+import com.alipay.lookout.core.ActivityTracker;
+import com.alipay.lookout.core.Expirable;
+import com.alipay.lookout.step.StepLongValue;
+import com.alipay.lookout.step.StepLongValues;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by kevin.luy@alipay.com on 2017/2/6.
  */
-class LookoutTimer extends LookoutBucketCounter implements Timer, ResettableStep {
+class LookoutTimer extends LookoutBucketCounter implements Timer, VisitableMetric, ResettableStep,
+                                                 Expirable {
 
-    private final Id       id;
-    private final StepLong count;
-    private final StepLong total;
-    private final StepLong max;
+    private final Id              id;
+    private final StepLongValue   count;
+    private final StepLongValue   total;
+    private final StepLongValue   max;
+    private final ActivityTracker activity = new ActivityTracker();
 
     LookoutTimer(Id id, Clock clock, long step) {
+        this(id, clock, step, false);
+    }
+
+    LookoutTimer(Id id, Clock clock, long step, boolean striped) {
         super(clock, step);
         this.id = id;
         this.clock = clock;
-        this.count = new StepLong(0L, clock, step);
-        this.total = new StepLong(0L, clock, step);
-        this.max = new StepLong(0L, clock, step);
+        this.count = StepLongValues.newSum(clock, step, striped);
+        this.total = StepLongValues.newSum(clock, step, striped);
+        this.max = StepLongValues.newMax(clock, step, striped);
     }
 
     @Override
@@ -55,6 +63,11 @@ class LookoutTimer extends LookoutBucketCounter implements Timer, ResettableStep
         return id;
     }
 
+    @Override
+    public ActivityTracker activity() {
+        return activity;
+    }
+
     @Override
     public Indicator measure() {
         long timestamp = count.timestamp();
@@ -67,27 +80,45 @@ class LookoutTimer extends LookoutBucketCounter implements Timer, ResettableStep
         indicator.addMeasurement(new Measurement(Statistic.elapPerExec.name(), epe));
         indicator.addMeasurement(new Measurement(Statistic.totalTime.name(), totalSeconds));
         indicator.addMeasurement(newMaxMeasurement(Statistic.max.name(), max));
+        String sketch = pollSketch();
+        if (sketch != null) {
+            indicator.addMeasurement(new Measurement(Statistic.sketch.name(), sketch));
+        }
         return indicator;
     }
 
-    private Measurement newMaxMeasurement(String mName, StepLong v) {
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        long timestamp = count.timestamp();
+
+        double totalSeconds = total.poll() * 1e-9;
+        long countValue = count.poll();
+        double epe = countValue <= 0 ? 0 : totalSeconds / countValue;
+
+        visitor.visit(Statistic.elapPerExec.name(), epe);
+        visitor.visit(Statistic.totalTime.name(), totalSeconds);
+        visitor.visit(Statistic.max.name(), max.poll() / 1e9);
+        String sketch = pollSketch();
+        if (sketch != null) {
+            visitor.visit(Statistic.sketch.name(), sketch);
+        }
+        return timestamp;
+    }
+
+    private Measurement newMaxMeasurement(String mName, StepLongValue v) {
         return new Measurement(mName, v.poll() / 1e9);
     }
 
     @Override
     public void record(long amount, TimeUnit unit) {
+        activity.touch();
         if (amount > 0) {
             long nanos = unit.toNanos(amount);
-            count.getCurrent().incrementAndGet();
-            total.getCurrent().addAndGet(nanos);
-            refreshMax(max.getCurrent(), nanos);
+            count.record(1L);
+            total.record(nanos);
+            max.record(nanos);
             recordBucket(unit.toMillis(amount));
-        }
-    }
-
-    private void refreshMax(AtomicLong maxValue, long v) {
-        for (long max = maxValue.get(); (v > max && !maxValue.compareAndSet(max, v)); max = maxValue
-            .get()) {
+            recordSketch(unit.toMicros(amount));
         }
     }
 
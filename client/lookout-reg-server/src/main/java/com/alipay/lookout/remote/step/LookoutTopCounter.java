@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Clock;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.MeasurementVisitor;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.ResettableStep;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.Tag;
+import com.alipay.lookout.api.TopCounter;
+import com.alipay.lookout.api.VisitableMetric;
+import com.alipay.lookout.common.Assert;
+import com.alipay.lookout.common.top.SpaceSavingSketch;
+import com.alipay.lookout.core.MetricIterable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间步长内权重最大的 key(heavy hitters). 数据记录在 {@link SpaceSavingSketch} 中, 计数器数量固定;
+ * 每个 step 上报该 step 记录的总权重, 以及前 maxNumber 个 key 各自的一条数据(key 的 tags 追加在 id 上).
+ * sketch 以 key 的 tags 为键, 只在上报时为前 maxNumber 个 key 生成 id.
+ * <p>
+ * 与 {@link com.alipay.lookout.common.top.TopUtil} 不同, key 不会注册为 registry 里的 gauge,
+ * 上一个 step 的结果是一个不变的快照.
+ */
+public class LookoutTopCounter implements TopCounter, VisitableMetric, ResettableStep,
+                              MetricIterable {
+
+    private final Id                        id;
+    private final Clock                     clock;
+    private final int                       maxNumber;
+    private final int                       capacity;
+    private volatile long                   step;
+
+    private volatile SpaceSavingSketch<Key> current;
+    private volatile Snapshot               previous;
+
+    private final AtomicLong                lastInitPos;
+
+    LookoutTopCounter(Id id, Clock clock, long step, int maxNumber, int capacity) {
+        if (maxNumber <= 0 || capacity < maxNumber) {
+            throw new IllegalArgumentException("illegal maxNumber: " + maxNumber + ", capacity: "
+                                               + capacity);
+        }
+        this.id = id;
+        this.clock = clock;
+        this.step = step;
+        this.maxNumber = maxNumber;
+        this.capacity = capacity;
+        this.current = new SpaceSavingSketch<Key>(capacity);
+        this.lastInitPos = new AtomicLong(clock.wallTime() / step);
+    }
+
+    /**
+     * 默认的计数器数量, 计数器越多误差越小: 每个 key 的高估量不超过 step 总权重 / 计数器数量
+     *
+     * @param maxNumber top N
+     * @return capacity
+     */
+    static int defaultCapacity(int maxNumber) {
+        return Math.max(maxNumber * 10, 256);
+    }
+
+    @Override
+    public Id id() {
+        return id;
+    }
+
+    @Override
+    public void record(long weight, Tag... tags) {
+        if (tags == null || tags.length == 0 || weight <= 0) {
+            return;
+        }
+        roll();
+        current.add(Key.of(tags), weight);
+    }
+
+    @Override
+    public void record(long weight, Map<String, String> tags) {
+        if (tags == null || tags.isEmpty() || weight <= 0) {
+            return;
+        }
+        roll();
+        current.add(Key.of(tags), weight);
+    }
+
+    private void roll() {
+        final long stepTime = clock.wallTime() / step;
+        final long lastInit = lastInitPos.get();
+        if (lastInit < stepTime && lastInitPos.compareAndSet(lastInit, stepTime)) {
+            SpaceSavingSketch<Key> sketch = current;
+            current = new SpaceSavingSketch<Key>(capacity);
+            // 滚动比预期延后超过1步时, 取出的数据已经过期
+            previous = lastInit == stepTime - 1 ? new Snapshot(sketch) : null;
+        }
+    }
+
+    private Snapshot poll() {
+        roll();
+        return previous;
+    }
+
+    private long timestamp() {
+        return lastInitPos.get() * step;
+    }
+
+    @Override
+    public Indicator measure() {
+        Snapshot snapshot = poll();
+        return new Indicator(timestamp(), id).addMeasurement(Statistic.count.name(),
+            snapshot == null ? 0L : snapshot.total());
+    }
+
+    @Override
+    public long accept(MeasurementVisitor visitor) {
+        Snapshot snapshot = poll();
+        visitor.visit(Statistic.count.name(), snapshot == null ? 0L : snapshot.total());
+        return timestamp();
+    }
+
+    @Override
+    public Iterator<Metric> iterator() {
+        Snapshot snapshot = poll();
+        if (snapshot == null) {
+            return null;
+        }
+        final long time = timestamp();
+        final Iterator<SpaceSavingSketch.Entry<Id>> entries = snapshot.top().iterator();
+        return new Iterator<Metric>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Metric next() {
+                SpaceSavingSketch.Entry<Id> entry = entries.next();
+                return new TopMetric(entry.getKey(), time, entry.getCount());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return 上一个 step 中前 maxNumber 个 key, 按估计值降序
+     */
+    public List<SpaceSavingSketch.Entry<Id>> top() {
+        Snapshot snapshot = poll();
+        return snapshot == null ? Collections.<SpaceSavingSketch.Entry<Id>> emptyList() : snapshot
+            .top();
+    }
+
+    @Override
+    public void setStep(long step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must greater than 0");
+        }
+        this.step = step;
+        this.lastInitPos.set(clock.wallTime() / step);
+        this.previous = null;
+        this.current = new SpaceSavingSketch<Key>(capacity);
+    }
+
+    /**
+     * 上一个 step 的结果, 在第一次被读取时才排序, 此时该 step 的写入已经结束
+     */
+    private final class Snapshot {
+        private final SpaceSavingSketch<Key>               sketch;
+        private volatile List<SpaceSavingSketch.Entry<Id>> top;
+        private volatile long                              total;
+
+        Snapshot(SpaceSavingSketch<Key> sketch) {
+            this.sketch = sketch;
+        }
+
+        List<SpaceSavingSketch.Entry<Id>> top() {
+            List<SpaceSavingSketch.Entry<Id>> result = top;
+            if (result == null) {
+                synchronized (this) {
+                    result = top;
+                    if (result == null) {
+                        total = sketch.total();
+                        List<SpaceSavingSketch.Entry<Key>> entries = sketch.top(maxNumber);
+                        result = new ArrayList<SpaceSavingSketch.Entry<Id>>(entries.size());
+                        for (SpaceSavingSketch.Entry<Key> entry : entries) {
+                            result.add(entry.withKey(entry.getKey().toId(id)));
+                        }
+                        top = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        long total() {
+            top();
+            return total;
+        }
+    }
+
+    /**
+     * key 的 tags, 按 tag key 排序的 k0,v0,k1,v1... 同名的 tag 后者覆盖前者, 与 {@link Id#withTags} 一致
+     */
+    static final class Key {
+        private final String[] kvs;
+        private final int      hash;
+
+        private Key(String[] kvs, int length) {
+            this.kvs = length == kvs.length ? kvs : Arrays.copyOf(kvs, length);
+            this.hash = Arrays.hashCode(this.kvs);
+        }
+
+        static Key of(Tag[] tags) {
+            String[] kvs = new String[tags.length * 2];
+            int length = 0;
+            for (Tag tag : tags) {
+                length = put(kvs, length, tag.key(), tag.value());
+            }
+            return new Key(kvs, length);
+        }
+
+        static Key of(Map<String, String> tags) {
+            String[] kvs = new String[tags.size() * 2];
+            int length = 0;
+            for (Map.Entry<String, String> entry : tags.entrySet()) {
+                length = put(kvs, length, entry.getKey(), entry.getValue());
+            }
+            return new Key(kvs, length);
+        }
+
+        /**
+         * 插入排序, tag 数量很少
+         *
+         * @return new length
+         */
+        private static int put(String[] kvs, int length, String k, String v) {
+            Assert.notNull(k, "tag key");
+            int i = length - 2;
+            while (i >= 0 && kvs[i].compareTo(k) > 0) {
+                i -= 2;
+            }
+            if (i >= 0 && kvs[i].equals(k)) {
+                kvs[i + 1] = v == null ? "" : v;
+                return length;
+            }
+            System.arraycopy(kvs, i + 2, kvs, i + 4, length - i - 2);
+            kvs[i + 2] = k;
+            kvs[i + 3] = v == null ? "" : v;
+            return length + 2;
+        }
+
+        Id toId(Id base) {
+            Map<String, String> tags = new LinkedHashMap<String, String>(kvs.length);
+            for (int i = 0; i < kvs.length; i += 2) {
+                tags.put(kvs[i], kvs[i + 1]);
+            }
+            return base.withTags(tags);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Arrays.equals(kvs, other.kvs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(kvs);
+        }
+    }
+
+    static final class TopMetric implements Metric {
+        private final Id   id;
+        private final long time;
+        private final long count;
+
+        TopMetric(Id id, long time, long count) {
+            this.id = id;
+            this.time = time;
+            this.count = count;
+        }
+
+        @Override
+        public Id id() {
+            return id;
+        }
+
+        @Override
+        public Indicator measure() {
+            return new Indicator(time, id).addMeasurement(Statistic.count.name(), count);
+        }
+    }
+}
@@ -23,8 +23,12 @@ import com.alipay.lookout.core.AbstractRegistry;
 import com.alipay.lookout.core.GaugeWrapper;
 import com.alipay.lookout.core.common.NewMetricFunction;
 import com.alipay.lookout.core.config.LookoutConfig;
+import com.alipay.lookout.step.CoarseClock;
+import com.alipay.lookout.step.LogLinearHistogram;
 import com.google.common.base.Preconditions;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * proactive mode; different fixed steps by different priorities. reactive mode; step is determined by collector;
  * <p>
@@ -63,15 +67,54 @@ public class StepRegistry extends AbstractRegistry {
         return getConfig();
     }
 
+    /**
+     * 是否使用分段(striped)的 step 数据, 见 {@link LookoutConfig#LOOKOUT_STEP_STRIPED_ENABLE}
+     */
+    private boolean isStriped() {
+        return getLookoutConfig().getBoolean(LookoutConfig.LOOKOUT_STEP_STRIPED_ENABLE, false);
+    }
+
+    /**
+     * step 类型 metric 使用的时钟, 见 {@link LookoutConfig#LOOKOUT_STEP_COARSE_CLOCK_ENABLE}.
+     * 只替换系统时钟, 测试等场景传入的时钟保持不变.
+     */
+    protected Clock meterClock() {
+        boolean coarse = getLookoutConfig().getBoolean(
+            LookoutConfig.LOOKOUT_STEP_COARSE_CLOCK_ENABLE, false);
+        if (coarse && clock == Clock.SYSTEM) {
+            return CoarseClock.system(getLookoutConfig().getLong(
+                LookoutConfig.LOOKOUT_STEP_COARSE_CLOCK_RESOLUTION, 10));
+        }
+        return clock;
+    }
+
+    private int getBucketPrecisionBits() {
+        return getLookoutConfig().getInt(LookoutConfig.LOOKOUT_BUCKET_PRECISION_BITS,
+            LogLinearHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    private boolean isSketchEnabled() {
+        return getLookoutConfig().getBoolean(LookoutConfig.LOOKOUT_SKETCH_ENABLE, false);
+    }
+
+    private int getSketchPrecisionBits() {
+        return getLookoutConfig().getInt(LookoutConfig.LOOKOUT_SKETCH_PRECISION_BITS, 6);
+    }
+
     @Override
     protected Counter newCounter(Id id) {
-        return new LookoutCounter(id, clock, getStepMillis(id));
+        return new LookoutCounter(id, meterClock(), getStepMillis(id), isStriped());
     }
 
     @Override
     protected DistributionSummary newDistributionSummary(Id id) {
-        LookoutDistributionSummary distributionSummary = new LookoutDistributionSummary(id, clock,
-            getStepMillis(id));
+        LookoutDistributionSummary distributionSummary = new LookoutDistributionSummary(id,
+            meterClock(), getStepMillis(id), isStriped());
+        distributionSummary.setPrecisionBits(getBucketPrecisionBits());
+        if (isSketchEnabled()) {
+            distributionSummary.enableSketch(LookoutQuantileSketch.DEFAULT_HIGHEST_TRACKABLE_VALUE,
+                getSketchPrecisionBits(), 0);
+        }
         return distributionSummary;
     }
 
@@ -86,15 +129,102 @@ public class StepRegistry extends AbstractRegistry {
 
     @Override
     protected Timer newTimer(Id id) {
-        return new LookoutTimer(id, clock, getStepMillis(id));
+        if (getLookoutConfig().getBoolean(LookoutConfig.LOOKOUT_TIMER_PER_THREAD_ENABLE, false)) {
+            LookoutRecorderTimer timer = new LookoutRecorderTimer(id, meterClock(),
+                getStepMillis(id));
+            if (isSketchEnabled()) {
+                timer.enableSketch(TimeUnit.HOURS.toMicros(1), getSketchPrecisionBits());
+            }
+            return timer;
+        }
+        LookoutTimer timer = new LookoutTimer(id, meterClock(), getStepMillis(id), isStriped());
+        timer.setPrecisionBits(getBucketPrecisionBits());
+        if (isSketchEnabled()) {
+            // sketch 以微秒记录, 上报单位与 timer 一致为秒
+            timer.enableSketch(TimeUnit.HOURS.toMicros(1), getSketchPrecisionBits(), -6);
+        }
+        return timer;
+    }
+
+    /**
+     * 获取或创建一个 quantile sketch, 精度见 {@link LookoutConfig#LOOKOUT_SKETCH_PRECISION_BITS}
+     *
+     * @param id metric id
+     * @return quantile sketch, metric 数量超过上限或 id 已被其他类型占用时返回 noop 实例
+     */
+    public QuantileSketch quantileSketch(Id id) {
+        Metric m = computeIfAbsent(id, new NewMetricFunction<Metric>() {
+            @Override
+            public Metric apply(Id id) {
+                return new LookoutQuantileSketch(id, meterClock(), getStepMillis(id),
+                    getSketchPrecisionBits());
+            }
+
+            @Override
+            public Metric noopMetric() {
+                return NoopQuantileSketch.INSTANCE;
+            }
+        });
+        if (!(m instanceof QuantileSketch)) {
+            logger.warn("cannot access '{}' as a QuantileSketch, it already exists as a {}", id,
+                m.getClass().getName());
+            return NoopQuantileSketch.INSTANCE;
+        }
+        return (QuantileSketch) m;
+    }
+
+    /**
+     * 获取或创建一个 top counter, 计数器数量默认为 max(maxNumber * 10, 256)
+     *
+     * @param id        metric id
+     * @param maxNumber 每个 step 上报的 key 数量
+     * @return top counter, metric 数量超过上限或 id 已被其他类型占用时返回 noop 实例
+     */
+    public TopCounter topCounter(Id id, int maxNumber) {
+        return topCounter(id, maxNumber, LookoutTopCounter.defaultCapacity(maxNumber));
+    }
+
+    /**
+     * 获取或创建一个 top counter
+     *
+     * @param id        metric id
+     * @param maxNumber 每个 step 上报的 key 数量
+     * @param capacity  计数器数量, 每个 key 的高估量不超过 step 总权重 / capacity
+     * @return top counter, metric 数量超过上限或 id 已被其他类型占用时返回 noop 实例
+     */
+    public TopCounter topCounter(Id id, final int maxNumber, final int capacity) {
+        Metric m = computeIfAbsent(id, new NewMetricFunction<Metric>() {
+            @Override
+            public Metric apply(Id id) {
+                return new LookoutTopCounter(id, meterClock(), getStepMillis(id), maxNumber,
+                    capacity);
+            }
+
+            @Override
+            public Metric noopMetric() {
+                return NoopTopCounter.INSTANCE;
+            }
+        });
+        if (!(m instanceof TopCounter)) {
+            logger.warn("cannot access '{}' as a TopCounter, it already exists as a {}", id, m
+                .getClass().getName());
+            return NoopTopCounter.INSTANCE;
+        }
+        return (TopCounter) m;
     }
 
     @Override
     protected Metric newMixinMetric(Id id) {
         long stepSize = getStepMillis(id);
         //mixin 的 step registry ，mode 不需要切换了,因为有了 stepClock;
-        return new LookoutMixinMetric(id, new StepRegistry(clock, getLookoutConfig(), stepSize),
-            stepClock(id));
+        StepRegistry componentRegistry = new StepRegistry(clock, getLookoutConfig(), stepSize) {
+            @Override
+            protected int idleStepsBeforeExpiry() {
+                // 组件随 mixin 一起存在, 不单独回收
+                return 0;
+            }
+        };
+        return new LookoutMixinMetric(id, componentRegistry, stepClock(id));
     }
 
     @Override
@@ -16,28 +16,45 @@
  */
 package com.alipay.lookout.remote.report;
 
+import com.alipay.lookout.api.Counter;
+import com.alipay.lookout.api.DistributionSummary;
+import com.alipay.lookout.api.Id;
 import com.alipay.lookout.api.Registry;
 import com.alipay.lookout.core.DefaultRegistry;
 import com.alipay.lookout.core.config.LookoutConfig;
 import com.alipay.lookout.remote.model.LookoutMeasurement;
 import com.alipay.lookout.remote.report.support.http.HttpRequestProcessor;
+import com.alipay.lookout.remote.report.support.http.ReportDecider;
 import com.alipay.lookout.remote.report.support.http.ResultConsumer;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by kevin.luy@alipay.com on 2017/3/15.
  */
 public class HttpObserverTest {
-    static HttpPost httpPost;
+    static HttpPost        httpPost;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Test
     public void testReportSnappy() {
@@ -66,6 +83,265 @@ public class HttpObserverTest {
         Assert.assertEquals(2, list.size());
     }
 
+    @Test
+    public void testAsyncReport() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_ASYNC_ENABLE, true);
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_BATCH_SIZE, 1);
+        AddressService addressService = new DefaultAddressService();
+        Registry registry = new DefaultRegistry();
+        final CountDownLatch sent = new CountDownLatch(3);
+
+        HttpObserver observer = new HttpObserver(config, addressService, registry,
+            new TestHttpRequestProcessor() {
+                @Override
+                public Address getAvailableAddress() {
+                    return new Address("localhost");
+                }
+
+                @Override
+                public boolean sendPostRequest(HttpPost post, Map<String, String> metadata) {
+                    sent.countDown();
+                    return true;
+                }
+            });
+        List<LookoutMeasurement> measurements = new ArrayList<LookoutMeasurement>();
+        for (String name : new String[] { "a", "b", "c" }) {
+            LookoutMeasurement measurement = new LookoutMeasurement(new Date(),
+                registry.createId(name));
+            measurement.put("value", 1);
+            measurements.add(measurement);
+        }
+        observer.update(measurements, null);
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+
+        Counter counter = registry.counter(registry.createId("lookout.client.report.async.count")
+            .withTag("result", "success"));
+        for (int i = 0; i < 50 && counter.count() < 3; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(3, counter.count());
+        Assert.assertEquals(3,
+            registry.timer(registry.createId("lookout.client.report.async.latency")).count());
+    }
+
+    @Test
+    public void testSelfMetrics() {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_SELF_METRICS_ENABLE, true);
+        AddressService addressService = new DefaultAddressService();
+        Registry registry = new DefaultRegistry();
+
+        HttpObserver observer = new HttpObserver(config, addressService, registry,
+            new TestHttpRequestProcessor() {
+                @Override
+                public Address getAvailableAddress() {
+                    return new Address("localhost");
+                }
+
+                @Override
+                public boolean sendPostRequest(HttpPost post, Map<String, String> metadata) {
+                    return true;
+                }
+            });
+        LookoutMeasurement measurement = new LookoutMeasurement(new Date(),
+            registry.createId("a"));
+        measurement.put("value", 1);
+        observer.update(Collections.singletonList(measurement), null);
+
+        Assert.assertEquals(1,
+            registry.timer(registry.createId("lookout.client.report.send.latency")).count());
+        Id bytes = registry.createId("lookout.client.report.bytes");
+        DistributionSummary sent = registry.distributionSummary(bytes.withTag("stage", "sent"));
+        DistributionSummary raw = registry.distributionSummary(bytes.withTag("stage", "raw"));
+        Assert.assertEquals(1, sent.count());
+        Assert.assertEquals(1, raw.count());
+        // 未达到压缩阈值, 发送的就是原始数据
+        Assert.assertEquals(raw.totalAmount(), sent.totalAmount());
+    }
+
+    @Test
+    public void testSpillAndReplay() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_SPILL_DIR, folder.getRoot()
+            .getAbsolutePath());
+        AddressService addressService = new DefaultAddressService();
+        Registry registry = new DefaultRegistry();
+        final List<String> sent = new ArrayList<String>();
+        final boolean[] down = { true };
+
+        HttpObserver observer = new HttpObserver(config, addressService, registry,
+            new TestHttpRequestProcessor() {
+                @Override
+                public Address getAvailableAddress() {
+                    return new Address("localhost");
+                }
+
+                @Override
+                public boolean sendPostRequest(HttpPost post, Map<String, String> metadata)
+                                                                                           throws IOException {
+                    if (down[0]) {
+                        throw new ConnectException("mock");
+                    }
+                    sent.add(metadata.get(SchedulerPoller.PRIORITY_NAME) + ":"
+                             + metadata.get(CommonTagsHeader.NAME));
+                    return true;
+                }
+            });
+        List<LookoutMeasurement> measurements = new ArrayList<LookoutMeasurement>();
+        LookoutMeasurement measurement = new LookoutMeasurement(new Date(),
+            registry.createId("a"));
+        measurement.put("value", 1);
+        measurements.add(measurement);
+        Map<String, String> metadata = new HashMap<String, String>();
+        metadata.put(SchedulerPoller.PRIORITY_NAME, "HIGH");
+        metadata.put(CommonTagsHeader.NAME, "ip=10.0.0.1");
+        observer.update(measurements, metadata);
+        Assert.assertEquals(1, registry.counter(
+            registry.createId("lookout.client.report.spill.count").withTag("action", "spill"))
+            .count());
+
+        down[0] = false;
+        metadata.put(SchedulerPoller.PRIORITY_NAME, "NORMAL");
+        metadata.put(CommonTagsHeader.NAME, "ip=10.0.0.2");
+        observer.update(measurements, metadata);
+        // the new batch first, then the spilled one with the common tags of its own
+        Assert.assertEquals(Arrays.asList("NORMAL:ip=10.0.0.2", "HIGH:ip=10.0.0.1"), sent);
+        Assert.assertEquals(1, registry.counter(
+            registry.createId("lookout.client.report.spill.count").withTag("action", "replay"))
+            .count());
+    }
+
+    @Test
+    public void testAsyncReplayAfterSuccess() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_ASYNC_ENABLE, true);
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_SPILL_DIR, folder.getRoot()
+            .getAbsolutePath());
+        AddressService addressService = new DefaultAddressService();
+        Registry registry = new DefaultRegistry();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicBoolean down = new AtomicBoolean(true);
+
+        HttpObserver observer = new HttpObserver(config, addressService, registry,
+            new TestHttpRequestProcessor() {
+                @Override
+                public Address getAvailableAddress() {
+                    return new Address("localhost");
+                }
+
+                @Override
+                public boolean sendPostRequest(HttpPost post, Map<String, String> metadata)
+                                                                                           throws IOException {
+                    attempts.incrementAndGet();
+                    if (down.get()) {
+                        throw new ConnectException("mock");
+                    }
+                    return true;
+                }
+            });
+        LookoutMeasurement measurement = new LookoutMeasurement(new Date(),
+            registry.createId("a"));
+        measurement.put("value", 1);
+        List<LookoutMeasurement> measurements = Collections.singletonList(measurement);
+        Counter failed = registry.counter(registry.createId("lookout.client.report.async.count")
+            .withTag("result", "fail"));
+        for (int i = 1; i <= 2; i++) {
+            observer.update(measurements, null);
+            waitFor(failed, i);
+        }
+        Thread.sleep(100);
+        // 提交成功不代表 gateway 可用, 发送失败时不重放
+        Assert.assertEquals(2, attempts.get());
+
+        down.set(false);
+        observer.update(measurements, null);
+        waitFor(registry.counter(registry.createId("lookout.client.report.spill.count").withTag(
+            "action", "replay")), 2);
+        Assert.assertEquals(5, attempts.get());
+    }
+
+    private static void waitFor(Counter counter, long count) throws InterruptedException {
+        for (int i = 0; i < 50 && counter.count() < count; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(count, counter.count());
+    }
+
+    @Test
+    public void testDiscardSpilledOnRejection() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_REPORT_SPILL_DIR, folder.getRoot()
+            .getAbsolutePath());
+        AddressService addressService = new DefaultAddressService();
+        Registry registry = new DefaultRegistry();
+        final List<String> sent = new ArrayList<String>();
+        final boolean[] down = { true };
+
+        HttpObserver observer = new HttpObserver(config, addressService, registry,
+            new ReportDecider(addressService, config) {
+                @Override
+                public Address getAvailableAddress() {
+                    return new Address("localhost");
+                }
+
+                @Override
+                public boolean sendPostRequest(HttpPost post, Map<String, String> metadata)
+                                                                                           throws IOException {
+                    setLastPostStatus(-1);
+                    if (down[0]) {
+                        throw new ConnectException("mock");
+                    }
+                    String priority = metadata.get(SchedulerPoller.PRIORITY_NAME);
+                    if ("HIGH".equals(priority)) {
+                        // the spilled batch is refused
+                        setLastPostStatus(415);
+                        return false;
+                    }
+                    setLastPostStatus(200);
+                    sent.add(priority);
+                    return true;
+                }
+
+                @Override
+                public boolean sendGetRequest(HttpGet httpGet, Map<String, String> metadata) {
+                    return false;
+                }
+
+                @Override
+                public boolean sendGetRequest(HttpGet httpGet, Map<String, String> metadata,
+                                              ResultConsumer resultConsumer) {
+                    return false;
+                }
+
+                @Override
+                public List<LookoutMeasurement> filter(List<LookoutMeasurement> measures) {
+                    return measures;
+                }
+            });
+        List<LookoutMeasurement> measurements = new ArrayList<LookoutMeasurement>();
+        LookoutMeasurement measurement = new LookoutMeasurement(new Date(),
+            registry.createId("a"));
+        measurement.put("value", 1);
+        measurements.add(measurement);
+        observer.update(measurements,
+            Collections.singletonMap(SchedulerPoller.PRIORITY_NAME, "HIGH"));
+
+        down[0] = false;
+        observer.update(measurements,
+            Collections.singletonMap(SchedulerPoller.PRIORITY_NAME, "NORMAL"));
+        Assert.assertEquals(1, registry.counter(
+            registry.createId("lookout.client.report.spill.count").withTag("action", "discard"))
+            .count());
+        // not replayed again
+        observer.update(measurements,
+            Collections.singletonMap(SchedulerPoller.PRIORITY_NAME, "NORMAL"));
+        Assert.assertEquals(Arrays.asList("NORMAL", "NORMAL"), sent);
+        Assert.assertEquals(1, registry.counter(
+            registry.createId("lookout.client.report.spill.count").withTag("action", "discard"))
+            .count());
+    }
+
     class TestHttpRequestProcessor implements HttpRequestProcessor {
 
         @Override
@@ -110,6 +110,57 @@ public class LookoutMeasurementTest {
 
     }
 
+    @Test
+    public void testResetReuse() {
+        LookoutRegistry lookoutRegistry = new LookoutRegistry(clock, new LogObserver(),
+            new LookoutConfig());
+        Counter counter = lookoutRegistry.counter(lookoutRegistry.createId("m_name").withTag("k1",
+            "v1"));
+        com.alipay.lookout.api.Timer timer = lookoutRegistry.timer(lookoutRegistry.createId(
+            "m_name2").withTag("k2", "v2"));
+        LookoutMeasurement m = LookoutMeasurement.from(timer, null);
+        String timerText = m.toString();
+        m.reset(counter, null);
+        Assert.assertEquals(LookoutMeasurement.from(counter, null).toString(), m.toString());
+        Assert.assertEquals(2, m.getValues().size());
+        Assert.assertEquals("v1", m.getTag("k1"));
+        Assert.assertNull(m.getTag("k2"));
+        m.reset(timer, null);
+        Assert.assertEquals(timerText, m.toString());
+    }
+
+    @Test
+    public void testAcceptMatchesMeasure() {
+        LookoutRegistry lookoutRegistry = new LookoutRegistry(clock, new LogObserver(),
+            new LookoutConfig());
+        DistributionSummary summary = lookoutRegistry.distributionSummary(lookoutRegistry.createId(
+            "m_name"));
+        summary.record(10);
+        final Map<String, Object> visited = new HashMap<String, Object>();
+        Utils.accept(summary, new MeasurementVisitor() {
+            @Override
+            public void visit(String name, long value) {
+                visited.put(name, value);
+            }
+
+            @Override
+            public void visit(String name, double value) {
+                visited.put(name, value);
+            }
+
+            @Override
+            public void visit(String name, Object value) {
+                visited.put(name, value);
+            }
+        });
+        Map<String, Object> measured = new HashMap<String, Object>();
+        Indicator<?> indicator = summary.measure();
+        for (Measurement<?> measurement : indicator.measurements()) {
+            measured.put(measurement.name(), measurement.value());
+        }
+        Assert.assertEquals(measured, visited);
+    }
+
     @Test
     public void testJsonPerf() {
         long t1 = System.currentTimeMillis();
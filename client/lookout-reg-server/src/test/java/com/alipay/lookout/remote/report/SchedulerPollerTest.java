@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import com.alipay.lookout.api.AsyncGauge;
+import com.alipay.lookout.api.Counter;
+import com.alipay.lookout.api.Gauge;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.PRIORITY;
+import com.alipay.lookout.api.composite.MixinMetric;
+import com.alipay.lookout.common.LookoutConstants;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.core.config.LookoutConfig;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import com.alipay.lookout.remote.step.LookoutRegistry;
+import com.alipay.lookout.remote.step.MetricObserverComposite;
+import com.alipay.lookout.remote.step.StepRegistry;
+import com.alipay.lookout.report.MetricObserver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SchedulerPollerTest {
+
+    private static class RecordingObserver implements MetricObserver<LookoutMeasurement> {
+        final List<Integer> highSizes = new CopyOnWriteArrayList<Integer>();
+
+        @Override
+        public void update(List<LookoutMeasurement> measures, Map<String, String> metadata) {
+            if (PRIORITY.HIGH.name().equals(metadata.get(SchedulerPoller.PRIORITY_NAME))) {
+                highSizes.add(measures.size());
+            }
+        }
+
+        @Override
+        public boolean isEnable() {
+            return true;
+        }
+    }
+
+    private static List<Id> measuredIds(SchedulerPoller poller) {
+        List<Id> ids = new ArrayList<Id>();
+        for (LookoutMeasurement measurement : poller.getMeasurements(null, null)) {
+            ids.add(measurement.metricId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testParallelMeasure() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        StepRegistry registry = new StepRegistry(new ManualClock(), config);
+        for (int i = 0; i < 500; i++) {
+            registry.counter(registry.createId("counter." + i)).inc();
+        }
+        SchedulerPoller poller = new SchedulerPoller(registry, config,
+            new RecordingObserver());
+
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_PARALLEL_THRESHOLD, 0);
+        List<Id> serial = measuredIds(poller);
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_PARALLEL_THRESHOLD, 10);
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_PARALLEL_THREADS, 3);
+        List<Id> parallel = measuredIds(poller);
+
+        Assert.assertEquals(500, serial.size());
+        Assert.assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void testSkipOnlyStaleAsyncGauge() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        // StepRegistry 不支持 AsyncGauge
+        DefaultRegistry registry = new DefaultRegistry(new ManualClock(), config);
+        // 没有任何值的 metric 仍然上报
+        registry.mixinMetric(registry.createId("empty"));
+        registry.gauge(registry.createId("async.failed"), AsyncGauge.of(new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                throw new IllegalStateException("unavailable");
+            }
+        }));
+        SchedulerPoller poller = new SchedulerPoller(registry, config,
+            new RecordingObserver());
+
+        List<Id> ids = measuredIds(poller);
+        Assert.assertTrue(ids.contains(registry.createId("empty")));
+        Assert.assertFalse(ids.contains(registry.createId("async.failed")));
+    }
+
+    @Test
+    public void testMeasureStats() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        ManualClock clock = new ManualClock();
+        StepRegistry registry = new StepRegistry(clock, config);
+        for (int i = 0; i < 3; i++) {
+            registry.counter(registry.createId("counter." + i)).inc();
+        }
+        registry.timer(registry.createId("timer")).record(1, TimeUnit.MILLISECONDS);
+        config.setProperty(LookoutConfig.LOOKOUT_SELF_METRICS_ENABLE, true);
+        SchedulerPoller poller = new SchedulerPoller(registry, config,
+            new RecordingObserver());
+        // 自监控数据在 start 时注册, 立即 stop 避免定时 poll 影响计数
+        poller.start();
+        poller.stop();
+
+        measuredIds(poller);
+        clock.setWallTime(config.stepMillis(PRIORITY.NORMAL));
+        Assert.assertEquals(3, measureCounter(registry, "counter", "count").count());
+        Assert.assertEquals(1, measureCounter(registry, "timer", "count").count());
+        Assert.assertTrue(measureCounter(registry, "counter", "nanos").count() > 0);
+        Assert.assertEquals(0, measureCounter(registry, "gauge", "count").count());
+    }
+
+    private static Counter measureCounter(StepRegistry registry, String type, String name) {
+        return registry.mixinMetric(
+            registry.createId("lookout.poller.measure").withTag("type", type)
+                .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name())).counter(name);
+    }
+
+    @Test
+    public void testCommonTagsHeader() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        LookoutRegistry registry = new LookoutRegistry(new ManualClock(), new RecordingObserver(),
+            config);
+        try {
+            registry.setCommonTag("app", "demo app");
+            registry.setCommonTag("ip", "10.0.0.1");
+            registry.counter(registry.createId("counter").withTag("ip", "10.0.0.2")).inc();
+            SchedulerPoller poller = new SchedulerPoller(registry, config,
+                new RecordingObserver());
+            Assert.assertNull(poller.commonTagsHeader());
+            LookoutMeasurement merged = measurement(poller, "counter");
+            Assert.assertEquals("demo app", merged.getTag("app"));
+            Assert.assertEquals("10.0.0.2", merged.getTag("ip"));
+
+            config.setProperty(LookoutConfig.LOOKOUT_REPORT_COMMON_TAGS_HEADER, true);
+            // 不认识 header 的 observer 仍然合并 common tags
+            Assert.assertNull(poller.commonTagsHeader());
+            Assert.assertEquals("demo app", measurement(poller, "counter").getTag("app"));
+
+            SchedulerPoller httpPoller = new SchedulerPoller(registry, config, new HttpObserver(
+                config, new DefaultAddressService(), registry));
+            String value = httpPoller.commonTagsHeader();
+            Assert.assertTrue(value, value.contains("app=demo+app"));
+            Assert.assertTrue(value, value.contains("ip=10.0.0.1"));
+            LookoutMeasurement folded = measurement(httpPoller, "counter");
+            Assert.assertNull(folded.getTag("app"));
+            Assert.assertEquals("10.0.0.2", folded.getTag("ip"));
+
+            MetricObserverComposite<LookoutMeasurement> mixed = new MetricObserverComposite<LookoutMeasurement>(
+                new HttpObserver(config, new DefaultAddressService(), registry),
+                new RecordingObserver());
+            SchedulerPoller mixedPoller = new SchedulerPoller(registry, config, mixed);
+            Assert.assertNull(mixedPoller.commonTagsHeader());
+            Assert.assertEquals("demo app", measurement(mixedPoller, "counter").getTag("app"));
+        } finally {
+            registry.destroy();
+        }
+    }
+
+    private static LookoutMeasurement measurement(SchedulerPoller poller, String name) {
+        for (LookoutMeasurement measurement : poller.getMeasurements(null, null)) {
+            if (measurement.metricId().name().equals(name)) {
+                return measurement;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setStepInterval(PRIORITY.HIGH, 1000);
+        // 截止时间为 step 的 2%, 即 20ms
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_DEADLINE_PERCENT, 2);
+        StepRegistry registry = new StepRegistry(new ManualClock(), config);
+        for (int i = 0; i < 100; i++) {
+            registry.gauge(
+                registry.createId("slow." + i).withTag(LookoutConstants.TAG_PRIORITY_KEY,
+                    PRIORITY.HIGH.name()), new Gauge<Long>() {
+                    @Override
+                    public Long value() {
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return 1L;
+                    }
+                });
+        }
+        RecordingObserver observer = new RecordingObserver();
+        SchedulerPoller poller = new SchedulerPoller(registry, config, observer);
+        poller.start();
+        try {
+            long waitUntil = System.currentTimeMillis() + 5000;
+            while (observer.highSizes.isEmpty() && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(50);
+            }
+        } finally {
+            poller.stop();
+        }
+        Assert.assertFalse(observer.highSizes.isEmpty());
+        Assert.assertTrue(observer.highSizes.get(0) < 100);
+
+        MixinMetric stats = registry.get(registry.createId("lookout.poller")
+            .withTag("pollPriority", PRIORITY.HIGH.name())
+            .withTag(LookoutConstants.TAG_PRIORITY_KEY, PRIORITY.LOW.name()));
+        Assert.assertNotNull(stats);
+    }
+
+    @Test
+    public void testDeadlineResumes() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        StepRegistry registry = new StepRegistry(new ManualClock(), config);
+        for (int i = 0; i < 100; i++) {
+            registry.gauge(registry.createId("slow." + i), new Gauge<Long>() {
+                @Override
+                public Long value() {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                }
+            });
+        }
+        SchedulerPoller poller = new SchedulerPoller(registry, config, new RecordingObserver());
+
+        long timeout = TimeUnit.MILLISECONDS.toNanos(20);
+        Set<Id> first = new HashSet<Id>();
+        for (LookoutMeasurement measurement : poller.getMeasurements(null, System.nanoTime()
+                                                                           + timeout)) {
+            first.add(measurement.metricId());
+        }
+        Assert.assertFalse(first.isEmpty());
+        Assert.assertTrue(first.size() < 100);
+        // 下一次从上次停下的地方继续, 而不是再次 measure 同一批
+        List<LookoutMeasurement> second = poller.getMeasurements(null, System.nanoTime() + timeout);
+        Assert.assertFalse(second.isEmpty());
+        for (LookoutMeasurement measurement : second) {
+            Assert.assertFalse(first.contains(measurement.metricId()));
+        }
+    }
+
+    @Test
+    public void testParallelDeadlineResumes() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_PARALLEL_THRESHOLD, 10);
+        config.setProperty(LookoutConfig.LOOKOUT_POLL_PARALLEL_THREADS, 1);
+        StepRegistry registry = new StepRegistry(new ManualClock(), config);
+        final AtomicBoolean stall = new AtomicBoolean();
+        for (int i = 0; i < 160; i++) {
+            registry.gauge(registry.createId("gauge." + i), new Gauge<Long>() {
+                @Override
+                public Long value() {
+                    // 第一个被 measure 的 gauge 拖过截止时间, 它所在的分段在中间停下
+                    if (stall.compareAndSet(true, false)) {
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return 1L;
+                }
+            });
+        }
+        SchedulerPoller poller = new SchedulerPoller(registry, config, new RecordingObserver());
+        List<Id> all = measuredIds(poller);
+        Assert.assertEquals(160, all.size());
+
+        stall.set(true);
+        Set<Id> first = new HashSet<Id>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        for (LookoutMeasurement measurement : poller.getMeasurements(null, deadline)) {
+            first.add(measurement.metricId());
+        }
+        Assert.assertTrue(first.size() < 160);
+        // 下一次从第一个没有 measure 的 metric 开始, 在它之前的都已经 measure
+        int offset = poller.measureOffset(null);
+        Assert.assertFalse(first.contains(all.get(offset)));
+        for (int i = 0; i < offset; i++) {
+            Assert.assertTrue(first.contains(all.get(i)));
+        }
+    }
+
+    @Test
+    public void testSlowLowNotDelayHigh() throws Exception {
+        LookoutConfig config = new LookoutConfig();
+        config.setStepInterval(PRIORITY.HIGH, 1000);
+        config.setStepInterval(PRIORITY.NORMAL, 1000);
+        config.setStepInterval(PRIORITY.LOW, 1000);
+        StepRegistry registry = new StepRegistry(new ManualClock(), config);
+        registry.counter(
+            registry.createId("fast").withTag(LookoutConstants.TAG_PRIORITY_KEY,
+                PRIORITY.HIGH.name())).inc();
+        final CountDownLatch lowStarted = new CountDownLatch(1);
+        final CountDownLatch lowRelease = new CountDownLatch(1);
+        registry.gauge(
+            registry.createId("slow").withTag(LookoutConstants.TAG_PRIORITY_KEY,
+                PRIORITY.LOW.name()), new Gauge<Long>() {
+                @Override
+                public Long value() {
+                    lowStarted.countDown();
+                    try {
+                        lowRelease.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                }
+            });
+        RecordingObserver observer = new RecordingObserver();
+        SchedulerPoller poller = new SchedulerPoller(registry, config, observer);
+        poller.start();
+        try {
+            Assert.assertTrue(lowStarted.await(5, TimeUnit.SECONDS));
+            // LOW 的 poll 阻塞期间, HIGH 仍然按 step 上报
+            int before = observer.highSizes.size();
+            Thread.sleep(3500);
+            Assert.assertTrue(observer.highSizes.size() - before >= 2);
+        } finally {
+            lowRelease.countDown();
+            poller.stop();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import com.alipay.lookout.api.Gauge;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.Registry;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class SparseReportFilterTest {
+
+    private final Registry registry = new DefaultRegistry();
+
+    private static LookoutMeasurement measure(Id id, long count, double rate) {
+        LookoutMeasurement measurement = new LookoutMeasurement(new Date(), id);
+        measurement.visit("count", count);
+        measurement.visit("rate", rate);
+        return measurement;
+    }
+
+    @Test
+    public void testGauge() {
+        Id id = registry.createId("gauge");
+        registry.gauge(id, new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return 1;
+            }
+        });
+        Metric gauge = registry.get(id);
+        SparseReportFilter filter = new SparseReportFilter();
+        Assert.assertTrue(filter.changed(gauge, measure(id, 0, 1.5), 0, 1000));
+        Assert.assertFalse(filter.changed(gauge, measure(id, 0, 1.5), 100, 1000));
+        Assert.assertTrue(filter.changed(gauge, measure(id, 0, 2.5), 200, 1000));
+        Assert.assertFalse(filter.changed(gauge, measure(id, 0, 2.5), 1100, 1000));
+        // heartbeat
+        Assert.assertTrue(filter.changed(gauge, measure(id, 0, 2.5), 1200, 1000));
+        Assert.assertFalse(filter.changed(gauge, measure(id, 0, 2.5), 1300, 1000));
+    }
+
+    @Test
+    public void testStepMetric() {
+        Id id = registry.createId("counter");
+        Metric counter = registry.counter(id);
+        SparseReportFilter filter = new SparseReportFilter();
+        // constant rate is still reported
+        Assert.assertTrue(filter.changed(counter, measure(id, 5, 0.5), 0, 1000));
+        Assert.assertTrue(filter.changed(counter, measure(id, 5, 0.5), 100, 1000));
+        // the first idle step is reported, the following are skipped
+        Assert.assertTrue(filter.changed(counter, measure(id, 0, 0), 200, 1000));
+        Assert.assertFalse(filter.changed(counter, measure(id, 0, 0), 300, 1000));
+        Assert.assertTrue(filter.changed(counter, measure(id, 0, 0), 1200, 1000));
+        Assert.assertTrue(filter.changed(counter, measure(id, 1, 0.1), 1300, 1000));
+        Assert.assertEquals(1, filter.size());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThreadUsageTest {
+
+    @Test
+    public void testCpuNanos() {
+        long start = ThreadUsage.cpuNanos();
+        Assert.assertTrue(start >= -1);
+        if (start >= 0) {
+            Assert.assertTrue(ThreadUsage.cpuNanos() >= start);
+        }
+    }
+
+    @Test
+    public void testAllocatedBytes() {
+        long start = ThreadUsage.allocatedBytes();
+        Assert.assertTrue(start >= -1);
+        byte[] data = new byte[1024 * 1024];
+        long end = ThreadUsage.allocatedBytes();
+        if (start >= 0) {
+            Assert.assertTrue(end - start >= data.length);
+        } else {
+            Assert.assertEquals(-1, end);
+        }
+    }
+}
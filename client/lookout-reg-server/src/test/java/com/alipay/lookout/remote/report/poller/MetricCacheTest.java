@@ -21,6 +21,7 @@ import com.google.common.collect.Sets;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -112,4 +113,63 @@ public class MetricCacheTest {
         slots = mc.getNextData(Sets.newHashSet(5000L, 6000L));
         assertThat(slots).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_since() {
+        ManualClock tc = new ManualClock();
+        tc.setWallTime(1000);
+        MetricCache mc = new MetricCache(tc, 1000, 4);
+        mc.add(Collections.<MetricDto> emptyList());
+        tc.setWallTime(2000);
+        mc.add(Collections.<MetricDto> emptyList());
+
+        assertThat(mc.getDataSince(-1)).hasSize(2);
+        List<Slot> slots = mc.getDataSince(1000);
+        assertThat(slots).hasSize(1);
+        assertThat(slots.get(0).getCursor()).isEqualTo(2000L);
+        // since 是只读的, 不会清理数据
+        assertThat(mc.getDataSince(-1)).hasSize(2);
+        assertThat(mc.getDataSince(2000)).isEmpty();
+    }
+
+    @Test
+    public void test_slot_immutable() {
+        ManualClock tc = new ManualClock();
+        tc.setWallTime(1000);
+        MetricCache mc = new MetricCache(tc, 1000, 4);
+        mc.add(Collections.<MetricDto> emptyList());
+        Slot slot = mc.getNextData(Collections.<Long> emptySet()).get(0);
+
+        // 确认后 cache 里的 slot 被清理, 但已经拿到的 slot 不受影响
+        mc.getNextData(Sets.newHashSet(1000L));
+        assertThat(mc.getNextData(Collections.<Long> emptySet())).isEmpty();
+        assertEquals(1000L, slot.getCursor());
+        assertNotNull(slot.getPayload());
+    }
+
+    @Test
+    public void test_payload() throws Exception {
+        Slot s1 = new Slot(1000, Collections.<MetricDto> emptyList());
+        Slot s2 = new Slot(1000, Collections.<MetricDto> emptyList());
+        assertEquals("{\"cursor\":1000,\"data\":[]}", new String(s1.getPayload(), "UTF-8"));
+        assertTrue(s1.getData().isEmpty());
+        // cursor 相同但是重新生成的 slot, version 不同
+        assertTrue(s2.getVersion() > s1.getVersion());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void test_etag() {
+        Slot s1 = new Slot(1000, Collections.<MetricDto> emptyList());
+        Slot s2 = new Slot(2000, Collections.<MetricDto> emptyList());
+        String etag = MetricsHttpExporter.etag(1000, 4, Arrays.asList(s1, s2));
+        assertEquals(etag, MetricsHttpExporter.etag(1000, 4, Arrays.asList(s1, s2)));
+        assertFalse(etag.equals(MetricsHttpExporter.etag(1000, 4, Arrays.asList(s2, s1))));
+        assertFalse(etag.equals(MetricsHttpExporter.etag(1000, 4, Arrays.asList(s1))));
+        assertFalse(etag.equals(MetricsHttpExporter.etag(2000, 4, Arrays.asList(s1, s2))));
+
+        // 修改 slot 后 version 变化
+        s2.setData(Collections.<MetricDto> emptyList());
+        assertFalse(etag.equals(MetricsHttpExporter.etag(1000, 4, Arrays.asList(s1, s2))));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncReportSenderTest {
+
+    @Test
+    public void testWindow() throws Exception {
+        AsyncReportSender sender = new AsyncReportSender(2);
+        final CountDownLatch block = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicInteger success = new AtomicInteger();
+        Callable<Boolean> task = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                block.await();
+                return true;
+            }
+        };
+        AsyncReportSender.Callback callback = new AsyncReportSender.Callback() {
+            @Override
+            public void onComplete(boolean ok, long elapsedNanos) {
+                if (ok) {
+                    success.incrementAndGet();
+                }
+                done.countDown();
+            }
+        };
+        Assert.assertTrue(sender.submit(task, callback, 0, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(sender.submit(task, callback, 0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, sender.inFlight());
+        // window is full
+        Assert.assertFalse(sender.submit(task, callback, 10, TimeUnit.MILLISECONDS));
+
+        block.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, success.get());
+        Assert.assertTrue(sender.submit(task, callback, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AsyncReportSender sender = new AsyncReportSender(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+        sender.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                throw new IllegalStateException("mock");
+            }
+        }, new AsyncReportSender.Callback() {
+            @Override
+            public void onComplete(boolean ok, long elapsedNanos) {
+                if (!ok) {
+                    failed.incrementAndGet();
+                }
+                done.countDown();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, failed.get());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        AsyncReportSender sender = new AsyncReportSender(2);
+        final CountDownLatch block = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Callable<Boolean> task = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                block.await();
+                return true;
+            }
+        };
+        AsyncReportSender.Callback callback = new AsyncReportSender.Callback() {
+            @Override
+            public void onComplete(boolean ok, long elapsedNanos) {
+                done.countDown();
+            }
+        };
+        Assert.assertTrue(sender.submit(task, callback, 0, TimeUnit.MILLISECONDS));
+        sender.close();
+        // no new batch after close, the submitted one still completes
+        Assert.assertFalse(sender.submit(task, callback, 0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, sender.inFlight());
+        block.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
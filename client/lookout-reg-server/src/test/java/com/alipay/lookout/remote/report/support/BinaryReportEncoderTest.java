@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Registry;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class BinaryReportEncoderTest {
+
+    private final Registry registry = new DefaultRegistry();
+
+    /**
+     * decodes the report back into the json of each measurement, values are compared by their text
+     */
+    static class Decoder {
+        final byte[]       bytes;
+        int                pos;
+        final List<String> strings = new ArrayList<String>();
+
+        Decoder(ReportBuffer buffer) {
+            bytes = new byte[buffer.size()];
+            System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        }
+
+        long varint() {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = bytes[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        long zigzag() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String string() throws Exception {
+            int ref = (int) varint();
+            if (ref > 0) {
+                return strings.get(ref - 1);
+            }
+            int len = (int) varint();
+            String s = new String(bytes, pos, len, "UTF-8");
+            pos += len;
+            strings.add(s);
+            return s;
+        }
+
+        List<String> decode() throws Exception {
+            Assert.assertEquals('L', bytes[0]);
+            Assert.assertEquals('K', bytes[1]);
+            Assert.assertEquals(BinaryReportEncoder.VERSION, bytes[2]);
+            pos = 3;
+            long timestamp = 0;
+            List<String> result = new ArrayList<String>();
+            while (pos < bytes.length) {
+                timestamp += zigzag();
+                LookoutMeasurement m = new LookoutMeasurement(new Date(timestamp),
+                    new DefaultRegistry().createId(string()));
+                long tagCount = varint();
+                for (int i = 0; i < tagCount; i++) {
+                    m.addTag(string(), string());
+                }
+                long valueCount = varint();
+                for (int i = 0; i < valueCount; i++) {
+                    String name = string();
+                    switch (bytes[pos++]) {
+                        case BinaryReportEncoder.TYPE_LONG:
+                            m.visit(name, zigzag());
+                            break;
+                        case BinaryReportEncoder.TYPE_DOUBLE:
+                            long bits = 0;
+                            for (int j = 0; j < 8; j++) {
+                                bits = (bits << 8) | (bytes[pos++] & 0xFF);
+                            }
+                            m.visit(name, Double.longBitsToDouble(bits));
+                            break;
+                        case BinaryReportEncoder.TYPE_STRING:
+                            m.put(name, string());
+                            break;
+                        default:
+                            m.put(name, null);
+                    }
+                }
+                result.add(m.toString());
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            Id id = registry.createId("jvm.gc." + (i % 3));
+            LookoutMeasurement m = new LookoutMeasurement(new Date(60000L * (i / 10)), id);
+            m.addTag("app", "demo");
+            m.addTag("host", "主机" + (i % 5));
+            m.visit("count", (long) -i);
+            m.visit("rate", i / 3.0);
+            m.put("info", "v" + (i % 2));
+            m.put("null", null);
+            measures.add(m);
+            expected.add(m.toString());
+        }
+        ReportBuffer out = new ReportBuffer(16);
+        new BinaryReportEncoder().encode(measures, out);
+        Assert.assertEquals(expected, new Decoder(out).decode());
+
+        ReportBuffer json = new ReportBuffer(16);
+        new JsonReportEncoder().encode(measures, json);
+        Assert.assertTrue(out.size() * 3 < json.size());
+    }
+
+    @Test
+    public void testDictionaryPerReport() throws Exception {
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        LookoutMeasurement m = new LookoutMeasurement(new Date(1000), registry.createId("a"));
+        m.visit("value", 1L);
+        measures.add(m);
+        BinaryReportEncoder encoder = new BinaryReportEncoder();
+        ReportBuffer first = new ReportBuffer(16);
+        encoder.encode(measures, first);
+        ReportBuffer second = new ReportBuffer(16);
+        encoder.encode(measures, second);
+        Assert.assertEquals(first.size(), second.size());
+        Assert.assertEquals(new Decoder(first).decode(), new Decoder(second).decode());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Registry;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.remote.model.LookoutMeasurement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class ReportEncoderTest {
+
+    private final Registry registry = new DefaultRegistry();
+
+    private static String expected(List<LookoutMeasurement> measures) {
+        StringBuilder sb = new StringBuilder();
+        for (LookoutMeasurement measure : measures) {
+            if (sb.length() > 0) {
+                sb.append('\t');
+            }
+            measure.appendTo(sb);
+        }
+        return sb.toString();
+    }
+
+    private static String decode(ReportBuffer buffer) throws Exception {
+        return new String(buffer.array(), 0, buffer.size(), "UTF-8");
+    }
+
+    @Test
+    public void testSameAsToString() throws Exception {
+        Id id = registry.createId("m_name").withTag("k1", "v1").withTag("k2", "a\"b\\c/d\n中文");
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        for (int i = 0; i < 3; i++) {
+            LookoutMeasurement m = new LookoutMeasurement(new Date(1000L * i), id);
+            m.addTag("k1", "v1");
+            m.addTag("k2", "a\"b\\c/d\n中文");
+            m.visit("count", (long) i - 1);
+            m.visit("rate", i * 1.5);
+            m.visit("max", 0.0);
+            m.visit("big", 1e20);
+            m.put("info", "x\ty");
+            m.put("date", new Date(0));
+            m.put("num", 12);
+            m.put("null", null);
+            measures.add(m);
+        }
+        ReportEncoder encoder = new JsonReportEncoder();
+        ReportBuffer out = new ReportBuffer(16);
+        encoder.encode(measures, out);
+        Assert.assertEquals(expected(measures), decode(out));
+
+        // cached prefixes
+        out.reset();
+        encoder.encode(measures, out);
+        Assert.assertEquals(expected(measures), decode(out));
+    }
+
+    @Test
+    public void testTagsChanged() throws Exception {
+        Id id = registry.createId("m_name");
+        LookoutMeasurement m = new LookoutMeasurement(new Date(), id);
+        m.addTag("k1", "v1");
+        m.visit("value", 1L);
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        measures.add(m);
+        ReportEncoder encoder = new JsonReportEncoder();
+        ReportBuffer out = new ReportBuffer(16);
+        encoder.encode(measures, out);
+
+        // same id, different common tags
+        m.addTag("k1", "v2");
+        m.addTag("app", "demo");
+        out.reset();
+        encoder.encode(measures, out);
+        Assert.assertEquals(expected(measures), decode(out));
+    }
+
+    @Test
+    public void testPrefixCacheBounded() throws Exception {
+        JsonReportEncoder encoder = new JsonReportEncoder();
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        for (int i = 0; i <= JsonReportEncoder.MAX_CACHED_PREFIXES; i++) {
+            Id id = registry.createId("m" + i);
+            LookoutMeasurement m = new LookoutMeasurement(new Date(0), id);
+            m.visit("value", 1L);
+            measures.add(m);
+        }
+        ReportBuffer out = new ReportBuffer(16);
+        encoder.encode(measures, out);
+        // full cache is kept instead of being cleared
+        Assert.assertEquals(JsonReportEncoder.MAX_CACHED_PREFIXES, encoder.cachedPrefixes());
+
+        out.reset();
+        encoder.encode(measures, out);
+        Assert.assertEquals(expected(measures), decode(out));
+        Assert.assertEquals(JsonReportEncoder.MAX_CACHED_PREFIXES, encoder.cachedPrefixes());
+    }
+
+    @Test
+    public void testPrefixCacheExpires() throws Exception {
+        JsonReportEncoder encoder = new JsonReportEncoder();
+        ReportBuffer out = new ReportBuffer(16);
+        encoder.encode(measures(0, "gone", "kept"), out);
+        Assert.assertEquals(2, encoder.cachedPrefixes());
+
+        out.reset();
+        encoder.encode(measures(JsonReportEncoder.PREFIX_EXPIRE_MILLIS / 2, "kept"), out);
+        out.reset();
+        List<LookoutMeasurement> measures = measures(JsonReportEncoder.PREFIX_EXPIRE_MILLIS,
+            "kept", "new");
+        encoder.encode(measures, out);
+        // 超过过期时间没有上报的 Id 被移除, 新的 Id 仍然会被缓存
+        Assert.assertEquals(2, encoder.cachedPrefixes());
+        Assert.assertEquals(expected(measures), decode(out));
+    }
+
+    private List<LookoutMeasurement> measures(long timestamp, String... names) {
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        for (String name : names) {
+            LookoutMeasurement m = new LookoutMeasurement(new Date(timestamp),
+                registry.createId(name));
+            m.visit("value", 1L);
+            measures.add(m);
+        }
+        return measures;
+    }
+
+    @Test
+    public void testWriteNumbers() throws Exception {
+        long[] longs = { 0, 1, -1, 9, 10, 123456789, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long l : longs) {
+            ReportBuffer out = new ReportBuffer(1);
+            out.writeLong(l);
+            Assert.assertEquals(String.valueOf(l), decode(out));
+        }
+        double[] doubles = { 0.0, -0.0, 1.0, -3.0, 0.5, 9999999.0, 10000000.0, 1e-5, Double.NaN,
+                Double.POSITIVE_INFINITY };
+        for (double d : doubles) {
+            ReportBuffer out = new ReportBuffer(1);
+            out.writeDouble(d);
+            Assert.assertEquals(String.valueOf(d), decode(out));
+        }
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        List<LookoutMeasurement> measures = new ArrayList<LookoutMeasurement>();
+        for (int i = 0; i < 2000; i++) {
+            LookoutMeasurement m = new LookoutMeasurement(new Date(), registry.createId("m" + i));
+            m.addTag("k", "v" + i);
+            m.visit("value", (long) i);
+            measures.add(m);
+        }
+        ReportBuffer chunk = new ReportBuffer(16);
+        final List<Integer> writes = new ArrayList<Integer>();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes.add(len);
+                super.write(b, off, len);
+            }
+        };
+        new JsonReportEncoder().encode(measures, chunk, sink);
+        Assert.assertEquals(expected(measures), sink.toString("UTF-8"));
+        Assert.assertTrue(writes.size() > 1);
+        Assert.assertEquals(0, chunk.size());
+        Assert.assertTrue(chunk.capacity() <= ReportEncoder.CHUNK_SIZE * 2);
+    }
+
+    @Test
+    public void testPool() {
+        ReportBufferPool pool = new ReportBufferPool(16, 1, 1024);
+        ReportBuffer b1 = pool.acquire();
+        b1.write(1);
+        pool.release(b1);
+        ReportBuffer b2 = pool.acquire();
+        Assert.assertSame(b1, b2);
+        Assert.assertEquals(0, b2.size());
+        b2.ensureCapacity(2048);
+        pool.release(b2);
+        Assert.assertNotSame(b2, pool.acquire());
+    }
+}
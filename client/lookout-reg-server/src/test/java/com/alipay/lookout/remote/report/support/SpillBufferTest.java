@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.report.support;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class SpillBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] data(int i, int size) {
+        byte[] data = new byte[size];
+        for (int j = 0; j < size; j++) {
+            data[j] = (byte) (i + j);
+        }
+        return data;
+    }
+
+    @Test
+    public void testAppendAndReplay() throws Exception {
+        File dir = new File(folder.getRoot(), "spill");
+        SpillBuffer buffer = new SpillBuffer(dir, 1024 * 1024, 60000);
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertFalse(dir.exists());
+
+        Assert.assertTrue(buffer.append("text/plain", "snappy", "HIGH", "app=demo", data(1, 100),
+            0, 100, 1000));
+        Assert.assertTrue(buffer.append("text/plain", null, null, data(2, 50), 10, 20, 2000));
+        Assert.assertFalse(buffer.isEmpty());
+
+        SpillBuffer.Record record = buffer.peek(3000);
+        Assert.assertEquals("text/plain", record.getContentType());
+        Assert.assertEquals("snappy", record.getContentEncoding());
+        Assert.assertEquals("HIGH", record.getPriority());
+        Assert.assertEquals("app=demo", record.getCommonTags());
+        Assert.assertEquals(1000, record.getTimestamp());
+        Assert.assertArrayEquals(data(1, 100), record.getData());
+        // not committed yet
+        Assert.assertEquals(1000, buffer.peek(3000).getTimestamp());
+        buffer.commit(record);
+
+        record = buffer.peek(3000);
+        Assert.assertNull(record.getContentEncoding());
+        Assert.assertNull(record.getPriority());
+        Assert.assertNull(record.getCommonTags());
+        Assert.assertEquals(20, record.getData().length);
+        Assert.assertEquals(12, record.getData()[0]);
+        buffer.commit(record);
+        Assert.assertNull(buffer.peek(3000));
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        File dir = folder.getRoot();
+        SpillBuffer buffer = new SpillBuffer(dir, 1024 * 1024, 60000);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(buffer.append("text/plain", null, null, data(i, 10), 0, 10, i));
+        }
+        buffer.commit(buffer.peek(0));
+
+        // the pending records survive a restart, the sent one is not replayed
+        buffer = new SpillBuffer(dir, 1024 * 1024, 60000);
+        Assert.assertFalse(buffer.isEmpty());
+        SpillBuffer.Record record = buffer.peek(0);
+        Assert.assertArrayEquals(data(1, 10), record.getData());
+        buffer.commit(record);
+        Assert.assertTrue(buffer.append("text/plain", null, null, data(3, 10), 0, 10, 3));
+        Assert.assertArrayEquals(data(2, 10), buffer.peek(0).getData());
+    }
+
+    @Test
+    public void testRecoverVersion1() throws Exception {
+        File dir = folder.getRoot();
+        SpillBuffer buffer = new SpillBuffer(dir, 1024 * 1024, 60000);
+        Assert.assertTrue(buffer.append("text/plain", null, null, data(0, 10), 0, 10, 0));
+        // rewrite the first segment as version 1, whose records have no common tags
+        RandomAccessFile file = new RandomAccessFile(buffer.segmentFile(0), "rw");
+        try {
+            ByteBuffer segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                SpillBuffer.SEGMENT_HEADER_SIZE + 64);
+            segment.putInt(4, 1);
+            segment.position(SpillBuffer.SEGMENT_HEADER_SIZE);
+            segment.putInt(1 + 8 + 6 + "text/plain".length() + 10);
+            segment.put(SpillBuffer.STATE_PENDING);
+            segment.putLong(0);
+            segment.putShort((short) "text/plain".length());
+            segment.put("text/plain".getBytes("UTF-8"));
+            segment.putShort((short) 0);
+            segment.putShort((short) 0);
+            segment.put(data(1, 10));
+            segment.putInt(0);
+        } finally {
+            file.close();
+        }
+
+        buffer = new SpillBuffer(dir, 1024 * 1024, 60000);
+        Assert.assertTrue(buffer.append("text/plain", null, null, "ip=10.0.0.1", data(2, 10), 0,
+            10, 1));
+        SpillBuffer.Record record = buffer.peek(0);
+        Assert.assertNull(record.getCommonTags());
+        Assert.assertArrayEquals(data(1, 10), record.getData());
+        buffer.commit(record);
+        record = buffer.peek(0);
+        Assert.assertEquals("ip=10.0.0.1", record.getCommonTags());
+        Assert.assertArrayEquals(data(2, 10), record.getData());
+    }
+
+    @Test
+    public void testEvictOldest() throws Exception {
+        int segmentSize = SpillBuffer.MIN_SEGMENT_SIZE;
+        SpillBuffer buffer = new SpillBuffer(folder.getRoot(), segmentSize * 2, 2, 60000);
+        Assert.assertEquals(segmentSize * 2, buffer.capacity());
+        int size = segmentSize / 4;
+        // each segment holds 3 records, the 7th record evicts the first segment
+        for (int i = 0; i < 7; i++) {
+            Assert.assertTrue(buffer.append("text/plain", null, null, data(i, size), 0, size, i));
+        }
+        Assert.assertEquals(1, buffer.getEvictedSegments());
+        Assert.assertArrayEquals(data(3, size), buffer.peek(0).getData());
+        Assert.assertEquals(2 * segmentSize,
+            buffer.segmentFile(0).length() + buffer.segmentFile(1).length());
+
+        // too large
+        byte[] large = new byte[segmentSize];
+        Assert.assertFalse(buffer.append("text/plain", null, null, large, 0, large.length, 0));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        SpillBuffer buffer = new SpillBuffer(folder.getRoot(), 1024 * 1024, 1000);
+        buffer.append("text/plain", null, null, data(0, 10), 0, 10, 0);
+        buffer.append("text/plain", null, null, data(1, 10), 0, 10, 1500);
+        Assert.assertEquals(1500, buffer.peek(2000).getTimestamp());
+        Assert.assertEquals(1, buffer.getExpiredRecords());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.QuantileSketch;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LookoutQuantileSketchTest {
+
+    private static Object valueOf(Indicator<?> indicator, Statistic statistic) {
+        for (Measurement<?> measurement : indicator.measurements()) {
+            if (measurement.name().equals(statistic.name())) {
+                return measurement.value();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testStepSnapshot() {
+        ManualClock clock = new ManualClock();
+        StepRegistry registry = new StepRegistry(clock, new LookoutConfig());
+        Id id = registry.createId("rt");
+        QuantileSketch sketch = registry.quantileSketch(id);
+        Assert.assertSame(sketch, registry.quantileSketch(id));
+
+        for (int i = 1; i <= 1000; i++) {
+            sketch.record(i);
+        }
+        sketch.record(-1);
+        Assert.assertEquals(0, sketch.count());
+
+        long step = registry.getStepMillis(id);
+        clock.setWallTime(step);
+        Indicator<?> indicator = sketch.measure();
+        Assert.assertEquals(step, indicator.getTimestamp());
+        Assert.assertEquals(1000L, valueOf(indicator, Statistic.count));
+        LogLinearSketch decoded = LogLinearSketch.decode((String) valueOf(indicator,
+            Statistic.sketch));
+        Assert.assertEquals(1000, decoded.getCount());
+        Assert.assertEquals(990, decoded.quantile(0.99), 990 / 64.0);
+
+        // 过期的数据不再上报
+        clock.setWallTime(step * 3);
+        indicator = sketch.measure();
+        Assert.assertEquals(0L, valueOf(indicator, Statistic.count));
+        Assert.assertNull(valueOf(indicator, Statistic.sketch));
+    }
+
+    @Test
+    public void testMergeAcrossInstances() {
+        ManualClock clock = new ManualClock();
+        LookoutQuantileSketch a = new LookoutQuantileSketch(null, clock, 10, 6);
+        LookoutQuantileSketch b = new LookoutQuantileSketch(null, clock, 10, 6);
+        for (int i = 1; i <= 900; i++) {
+            a.record(i);
+        }
+        for (int i = 901; i <= 1000; i++) {
+            b.record(i);
+        }
+        clock.setWallTime(10);
+        LogLinearSketch merged = LogLinearSketch.decode(
+            (String) valueOf(a.measure(), Statistic.sketch)).merge(
+            LogLinearSketch.decode((String) valueOf(b.measure(), Statistic.sketch)));
+        Assert.assertEquals(1000, merged.getCount());
+        Assert.assertEquals(950, merged.quantile(0.95), 950 / 64.0);
+    }
+
+    @Test
+    public void testTimerSketch() {
+        ManualClock clock = new ManualClock();
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_SKETCH_ENABLE, true);
+        StepRegistry registry = new StepRegistry(clock, config);
+        Id id = registry.createId("timer");
+        Timer timer = registry.timer(id);
+        for (int i = 1; i <= 100; i++) {
+            timer.record(i, TimeUnit.MILLISECONDS);
+        }
+        clock.setWallTime(registry.getStepMillis(id));
+        LogLinearSketch sketch = LogLinearSketch.decode((String) valueOf(timer.measure(),
+            Statistic.sketch));
+        Assert.assertEquals(100, sketch.getCount());
+        Assert.assertEquals(0.099, sketch.quantile(0.99), 0.099 / 64);
+
+        // 未开启时不上报 sketch
+        registry = new StepRegistry(clock, new LookoutConfig());
+        timer = registry.timer(id);
+        timer.record(1, TimeUnit.MILLISECONDS);
+        clock.setWallTime(registry.getStepMillis(id) * 2);
+        Assert.assertNull(valueOf(timer.measure(), Statistic.sketch));
+    }
+}
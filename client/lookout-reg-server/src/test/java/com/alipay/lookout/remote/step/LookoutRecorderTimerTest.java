@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.lookout.core.DefaultRegistry;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LookoutRecorderTimerTest {
+
+    private static Object valueOf(Indicator<?> indicator, Statistic statistic) {
+        for (Measurement<?> measurement : indicator.measurements()) {
+            if (measurement.name().equals(statistic.name())) {
+                return measurement.value();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testStep() {
+        ManualClock clock = new ManualClock();
+        DefaultRegistry registry = new DefaultRegistry(clock);
+        LookoutRecorderTimer timer = new LookoutRecorderTimer(registry.createId("timer"), clock,
+            10L);
+        timer.record(10, TimeUnit.MILLISECONDS);
+        timer.record(30, TimeUnit.MILLISECONDS);
+        timer.record(0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(0, timer.count());
+
+        clock.setWallTime(10L);
+        Assert.assertEquals(2, timer.count());
+        Assert.assertEquals(40000000L, timer.totalTime());
+        Indicator<?> indicator = timer.measure();
+        Assert.assertEquals(10L, indicator.getTimestamp());
+        Assert.assertEquals(0.02, (Double) valueOf(indicator, Statistic.elapPerExec), 1e-9);
+        Assert.assertEquals(0.03, (Double) valueOf(indicator, Statistic.max), 1e-9);
+
+        // 超过一个 step 没有采集, 数据过期
+        timer.record(10, TimeUnit.MILLISECONDS);
+        clock.setWallTime(30L);
+        Assert.assertEquals(0, timer.count());
+
+        timer.setStep(20L);
+        timer.record(10, TimeUnit.MILLISECONDS);
+        clock.setWallTime(40L);
+        Assert.assertEquals(1, timer.count());
+    }
+
+    @Test
+    public void testConcurrentRecordWithoutLoss() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final LookoutRecorderTimer timer = new LookoutRecorderTimer(
+            new DefaultRegistry(clock).createId("timer"), clock, 10L);
+        final int threads = 8;
+        final int perThread = 20000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        timer.record(1, TimeUnit.MICROSECONDS);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        long total = 0;
+        long step = 0;
+        while (done.getCount() > 0) {
+            clock.setWallTime(++step * 10L);
+            total += timer.count();
+        }
+        done.await();
+        clock.setWallTime(++step * 10L);
+        total += timer.count();
+        Assert.assertEquals(threads * perThread, total);
+    }
+
+    @Test
+    public void testBucketsAndSketch() {
+        ManualClock clock = new ManualClock();
+        LookoutConfig config = new LookoutConfig();
+        config.setProperty(LookoutConfig.LOOKOUT_TIMER_PER_THREAD_ENABLE, true);
+        config.setProperty(LookoutConfig.LOOKOUT_SKETCH_ENABLE, true);
+        StepRegistry registry = new StepRegistry(clock, config);
+        Timer timer = registry.timer(registry.createId("rt"));
+        Assert.assertTrue(timer instanceof LookoutRecorderTimer);
+        timer.buckets(new long[] { 10, 100 });
+        for (int i = 1; i <= 200; i++) {
+            timer.record(i, TimeUnit.MILLISECONDS);
+        }
+        clock.setWallTime(registry.getStepMillis(timer.id()));
+
+        LogLinearSketch sketch = LogLinearSketch.decode((String) valueOf(timer.measure(),
+            Statistic.sketch));
+        Assert.assertEquals(200, sketch.getCount());
+        Assert.assertEquals(0.1, sketch.quantile(0.5), 0.1 / 64);
+
+        Map<String, Long> buckets = new HashMap<String, Long>();
+        Iterator<Metric> it = ((LookoutRecorderTimer) timer).iterator();
+        while (it.hasNext()) {
+            Metric m = it.next();
+            buckets.put(m.id().tags().iterator().next().value(),
+                (Long) valueOf(m.measure(), Statistic.buckets));
+        }
+        Assert.assertEquals(Long.valueOf(10), buckets.get("0-10"));
+        Assert.assertEquals(Long.valueOf(90), buckets.get("10-100"));
+        Assert.assertEquals(Long.valueOf(100), buckets.get("100-"));
+    }
+}
@@ -26,6 +26,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -124,4 +126,27 @@ public class LookoutTimerTest {
         }
         Assert.assertEquals(1000, sum);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBucketBoundaries() {
+        final ManualClock clock = new ManualClock();
+        DefaultRegistry registry = new DefaultRegistry(clock);
+        LookoutTimer timer = new LookoutTimer(registry.createId("timer"), clock, 10L);
+        timer.buckets(new long[] { 100, 200, 300, 400, 500 });
+        for (int i = 1; i <= 1000; i++) {
+            timer.record(i, TimeUnit.MILLISECONDS);
+        }
+        clock.setWallTime(10l);
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Metric metric : timer) {
+            Measurement<Long> measurement = (Measurement<Long>) metric.measure().measurements()
+                .iterator().next();
+            counts.put(metric.id().tags().iterator().next().value(), measurement.value());
+        }
+        Assert.assertEquals(6, counts.size());
+        Assert.assertEquals(100L, counts.get("0-100").longValue());
+        Assert.assertEquals(100L, counts.get("200-300").longValue());
+        Assert.assertEquals(100L, counts.get("400-500").longValue());
+        Assert.assertEquals(500L, counts.get("500-").longValue());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.BasicTag;
+import com.alipay.lookout.api.Id;
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.NoopTopCounter;
+import com.alipay.lookout.api.TopCounter;
+import com.alipay.lookout.common.top.SpaceSavingSketch;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class LookoutTopCounterTest {
+
+    @Test
+    public void testStepSnapshot() {
+        ManualClock clock = new ManualClock();
+        StepRegistry registry = new StepRegistry(clock, new LookoutConfig());
+        Id id = registry.createId("sql.top");
+        TopCounter top = registry.topCounter(id, 2);
+        Assert.assertSame(top, registry.topCounter(id, 2));
+
+        top.record(10, new BasicTag("sql", "a"));
+        top.record(30, new BasicTag("sql", "b"));
+        top.record(20, Collections.singletonMap("sql", "c"));
+        top.record(5, new BasicTag("sql", "a"));
+        top.record(100);
+
+        // 当前 step 还没有结束
+        Assert.assertNull(((LookoutTopCounter) top).iterator());
+
+        long step = registry.getStepMillis(id);
+        clock.setWallTime(step);
+        List<String> ids = new ArrayList<String>();
+        Iterator<Metric> it = registry.iterator();
+        while (it.hasNext()) {
+            ids.add(it.next().id().toString());
+        }
+        // 父 metric 和前 2 个 key, 没有为每个 key 注册 gauge
+        Assert.assertEquals(ids.toString(), 3, ids.size());
+        Assert.assertTrue(ids.toString(), ids.toString().contains("sql=b"));
+        Assert.assertTrue(ids.toString(), ids.toString().contains("sql=c"));
+        Assert.assertFalse(ids.toString(), ids.toString().contains("sql=a"));
+        Indicator<?> indicator = top.measure();
+        Measurement<?> total = indicator.measurements().iterator().next();
+        Assert.assertEquals(65L, total.value());
+
+        List<SpaceSavingSketch.Entry<Id>> entries = ((LookoutTopCounter) top).top();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(id.withTag("sql", "b"), entries.get(0).getKey());
+        Assert.assertEquals(30, entries.get(0).getCount());
+        Assert.assertEquals(20, entries.get(1).getCount());
+
+        // 下一个 step 没有数据
+        clock.setWallTime(step * 2);
+        Assert.assertTrue(((LookoutTopCounter) top).top().isEmpty());
+        Assert.assertFalse(((LookoutTopCounter) top).iterator().hasNext());
+    }
+
+    @Test
+    public void testSameTagsSameKey() {
+        ManualClock clock = new ManualClock();
+        StepRegistry registry = new StepRegistry(clock, new LookoutConfig());
+        Id id = registry.createId("sql.top").withTag("db", "main");
+        TopCounter top = registry.topCounter(id, 5);
+
+        Map<String, String> tags = new HashMap<String, String>();
+        tags.put("sql", "a");
+        tags.put("user", "u1");
+        top.record(10, new BasicTag("user", "u1"), new BasicTag("sql", "a"));
+        top.record(20, tags);
+        // 同名的 tag 后者覆盖前者
+        top.record(5, new BasicTag("sql", "b"), new BasicTag("user", "u1"),
+            new BasicTag("sql", "a"));
+
+        clock.setWallTime(registry.getStepMillis(id));
+        List<SpaceSavingSketch.Entry<Id>> entries = ((LookoutTopCounter) top).top();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(35, entries.get(0).getCount());
+        Assert.assertEquals(id.withTags(tags), entries.get(0).getKey());
+    }
+
+    @Test
+    public void testTypeConflict() {
+        StepRegistry registry = new StepRegistry(new ManualClock(), new LookoutConfig());
+        Id id = registry.createId("conflict");
+        registry.counter(id);
+        Assert.assertSame(NoopTopCounter.INSTANCE, registry.topCounter(id, 5));
+    }
+}
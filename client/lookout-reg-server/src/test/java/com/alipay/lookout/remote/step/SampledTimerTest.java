@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.lookout.remote.step;
+
+import com.alipay.lookout.api.Indicator;
+import com.alipay.lookout.api.ManualClock;
+import com.alipay.lookout.api.Measurement;
+import com.alipay.lookout.api.Metric;
+import com.alipay.lookout.api.PRIORITY;
+import com.alipay.lookout.api.Sampler;
+import com.alipay.lookout.api.Statistic;
+import com.alipay.lookout.api.Timer;
+import com.alipay.lookout.core.MetricIterable;
+import com.alipay.lookout.core.config.LookoutConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class SampledTimerTest {
+
+    @Test
+    public void testScaledToExactCount() {
+        ManualClock clock = new ManualClock();
+        LookoutConfig config = new LookoutConfig();
+        StepRegistry registry = new StepRegistry(clock, config);
+        Timer timer = registry.sampledTimer(registry.createId("rpc.rt"), Sampler.fixed(0.1));
+        timer.buckets(new long[] { 100, 200 });
+        for (int i = 0; i < 10000; i++) {
+            timer.record(5, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 100; i++) {
+            timer.record(150, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertSame(timer, registry.get(registry.createId("rpc.rt")));
+
+        clock.setWallTime(config.stepMillis(PRIORITY.NORMAL));
+        Assert.assertEquals(10100, timer.count());
+        Map<String, Object> values = values(timer.measure());
+        double rate = (Double) values.get(Statistic.sampleRate.name());
+        Assert.assertTrue(String.valueOf(rate), rate > 0.07 && rate < 0.13);
+        // 放大后的 totalTime 与精确值的误差来自两种耗时的采样比例, 远小于采样率本身的误差
+        Assert.assertEquals(10000 * 0.005 + 100 * 0.15,
+            (Double) values.get(Statistic.totalTime.name()), 10);
+        double epe = (Double) values.get(Statistic.elapPerExec.name());
+        Assert.assertTrue(String.valueOf(epe), epe >= 0.005 && epe <= 0.15);
+
+        long buckets = 0;
+        Iterator<Metric> it = ((MetricIterable) timer).iterator();
+        while (it.hasNext()) {
+            buckets += (Long) values(it.next().measure()).get(Statistic.buckets.name());
+        }
+        Assert.assertEquals(10100, buckets, 2);
+        try {
+            it.remove();
+            Assert.fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testFullySampled() {
+        ManualClock clock = new ManualClock();
+        LookoutConfig config = new LookoutConfig();
+        StepRegistry registry = new StepRegistry(clock, config);
+        Timer timer = registry.sampledTimer(registry.createId("rpc.rt"), Sampler.fixed(1));
+        for (int i = 0; i < 10; i++) {
+            timer.record(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            timer.record(2, TimeUnit.SECONDS);
+        }
+        clock.setWallTime(config.stepMillis(PRIORITY.NORMAL));
+        Map<String, Object> values = values(timer.measure());
+        Assert.assertEquals(1.0, (Double) values.get(Statistic.sampleRate.name()), 0);
+        Assert.assertEquals(20.0, (Double) values.get(Statistic.totalTime.name()), 1e-9);
+        Assert.assertEquals(20, timer.count());
+    }
+
+    private static Map<String, Object> values(Indicator<?> indicator) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (Measurement<?> m : indicator.measurements()) {
+            values.put(m.name(), m.value());
+        }
+        return values;
+    }
+}
@@ -19,6 +19,7 @@ package com.alipay.lookout.starter.support.reader;
 import com.alipay.lookout.api.Id;
 import com.alipay.lookout.api.Indicator;
 import com.alipay.lookout.api.MetricRegistry;
+import com.alipay.lookout.api.MetricSnapshot;
 import com.alipay.lookout.event.MetricRegistryListener;
 import com.alipay.lookout.starter.support.actuator.SpringBootActuatorRegistry;
 import com.alipay.lookout.starter.support.actuator.LookoutSpringBootMetricsImpl;
@@ -76,7 +77,9 @@ public class LookoutRegistryMetricReader implements MetricReader, MetricRegistry
         if (lookoutMetric == null) {
             return null;
         }
-        Indicator indicator = lookoutMetric.measure();
+        MetricSnapshot snapshot = this.springBootActuatorRegistry.pollSnapshot();
+        Indicator indicator = snapshot == null ? lookoutMetric.measure() : snapshot
+            .measure(lookoutMetric);
         return IndicatorConvert.convertFromIndicator(indicator);
     }
 
@@ -21,9 +21,13 @@ package com.alipay.sofa.lookout.gateway.core.common;
  * @create: 2019-05-07 21:38
  **/
 public interface Constants {
-    String TOKEN_HEADER_NAME     = "X-Lookout-Token";
-    String CLIENT_IP_HEADER_NAME = "Client-Ip";
-    String PRIORITY_HEADER_NAME  = "pri";
-    String APP_HEADER_NAME       = "app";
+    String TOKEN_HEADER_NAME       = "X-Lookout-Token";
+    String CLIENT_IP_HEADER_NAME   = "Client-Ip";
+    String PRIORITY_HEADER_NAME    = "pri";
+    String APP_HEADER_NAME         = "app";
+    /**
+     * 标准客户端以该 header 发送一次 common tags, 代替在每个 metric 中重复
+     */
+    String COMMON_TAGS_HEADER_NAME = "Common-Tags";
 
 }
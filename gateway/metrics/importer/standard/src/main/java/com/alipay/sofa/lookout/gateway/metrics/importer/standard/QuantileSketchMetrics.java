@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.lookout.gateway.metrics.importer.standard;
+
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.common.MetricUtils;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.Metric;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 展开客户端上报的 quantile sketch (statistic 为 sketch 的值):
+ * 生成 p50/p90/p99/p999 分位数 metric, 并保留原始 sketch 作为 info, 供下游跨实例合并后重新计算分位数.
+ */
+final class QuantileSketchMetrics {
+    static final String           SKETCH    = "sketch";
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] SUFFIXES  = { "p50", "p90", "p99", "p999" };
+
+    private QuantileSketchMetrics() {
+    }
+
+    /**
+     * @param name      metric name, 不含 statistic
+     * @param text      sketch 编码
+     * @param timestamp timestamp
+     * @param tags      格式化后的 tags
+     * @param out       输出, sketch 无法解析时不输出任何 metric
+     */
+    static void expand(String name, String text, long timestamp, Map<String, String> tags,
+                       List<Metric> out) {
+        LogLinearSketch sketch;
+        try {
+            sketch = LogLinearSketch.decode(text);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        if (sketch.getCount() == 0) {
+            return;
+        }
+        for (int i = 0; i < QUANTILES.length; i++) {
+            Metric m = newMetric(name + "." + SUFFIXES[i], timestamp, tags);
+            m.setValue(sketch.quantile(QUANTILES[i]));
+            out.add(m);
+        }
+        Metric m = newMetric(name + "." + SKETCH, timestamp, tags);
+        m.setInfo(text);
+        out.add(m);
+    }
+
+    private static Metric newMetric(String name, long timestamp, Map<String, String> tags) {
+        Metric m = new Metric();
+        m.setName(MetricUtils.formatMetricName(name));
+        m.setTimestamp(timestamp);
+        m.getTags().putAll(tags);
+        return m;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.lookout.gateway.metrics.importer.standard;
+
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.RawMetric;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * 接收 lookout 客户端以二进制格式({@link StandardBinaryMetricReader})上报的数据, 其余逻辑与 {@link StandardMetricImporter} 相同.
+ * 不支持的格式版本返回 415, 客户端会退回到文本格式.
+ */
+public class StandardBinaryMetricImporter extends StandardMetricImporter {
+
+    public StandardBinaryMetricImporter() {
+        super("standard-binary");
+    }
+
+    @Override
+    protected Mono<ServerResponse> doHandle(ServerRequest request, RawMetric rm) {
+        MediaType contentType = request.headers().contentType().orElse(null);
+        String version = contentType == null ? null : contentType.getParameter("version");
+        if (version != null && !StandardBinaryMetricReader.VERSION_STRING.equals(version)) {
+            return ServerResponse.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                .header(ACCEPT_POST, ACCEPTED_TYPES)
+                .header(ERR, "UNSUPPORTED_VERSION").build();
+        }
+        rm.getHead().setBinary(true);
+        return super.doHandle(request, rm);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.lookout.gateway.metrics.importer.standard;
+
+import com.alipay.sofa.lookout.gateway.core.prototype.reader.AbstractReader;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.common.MetricUtils;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.Metric;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.RawMetric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 读取 lookout 客户端的二进制上报格式, 解析结果与 {@link StandardMetricReader} 读取等价的 json 文本相同.
+ * <pre>
+ * report  := 'L' 'K' version(1 byte) record*
+ * record  := timestampDelta(zigzag varint) name(str) tagCount(varint) (key(str) value(str))*
+ *            valueCount(varint) (valueName(str) type(1 byte) payload)*
+ * payload := zigzag varint          (TYPE_LONG)
+ *          | 8 bytes IEEE 754, big-endian (TYPE_DOUBLE)
+ *          | str                    (TYPE_STRING)
+ *          | empty                  (TYPE_NULL)
+ * str     := varint 0, byteLength(varint), utf-8 bytes   新字符串, 依次编号为 1,2,3...
+ *          | varint n (n &gt; 0)                            之前出现过的第 n 个字符串
+ * </pre>
+ * 字典只在一次上报内有效. 由于同一个字符串只出现一次, tag 和 metric name 的格式化也只需要做一次.
+ */
+public class StandardBinaryMetricReader extends AbstractReader<RawMetric, Metric> {
+    private static final Logger LOGGER         = LoggerFactory
+                                                   .getLogger(StandardBinaryMetricReader.class);
+
+    public static final String  MEDIA_TYPE     = "application/x-lookout-binary";
+    static final String         VERSION_STRING = "1";
+    public static final String  CONTENT_TYPE   = MEDIA_TYPE + ";version=" + VERSION_STRING;
+
+    static final byte           MAGIC_0        = 'L';
+    static final byte           MAGIC_1        = 'K';
+    static final byte           VERSION        = 1;
+
+    static final byte           TYPE_LONG      = 0;
+    static final byte           TYPE_DOUBLE    = 1;
+    static final byte           TYPE_STRING    = 2;
+    static final byte           TYPE_NULL      = 3;
+
+    @Override
+    public Stream<Metric> read(RawMetric rm) {
+        byte[] bytes = StandardMetricReader.uncompress(rm);
+        if (bytes == null) {
+            return Stream.empty();
+        }
+        List<Metric> metrics = new ArrayList<>();
+        try {
+            new Decoder(bytes, StandardCommonTags.parse(rm.getHead().getStandardCommonTags()))
+                .decode(metrics);
+        } catch (RuntimeException e) {
+            // 数据不完整时, 保留已经完整解析出来的 record
+            LOGGER.warn("decode binary metrics error {}", e.toString());
+        }
+        return metrics.stream();
+    }
+
+    static final class Decoder {
+        private final byte[]              bytes;
+        private int                       pos;
+        private long                      timestamp;
+
+        private String[]                  strings   = new String[64];
+        private int                       stringCount;
+        // 格式化后的 tag key / tag value, 按字典下标缓存
+        private String[]                  tagKeys   = new String[64];
+        private String[]                  tagValues = new String[64];
+        // (name下标 << 32 | valueName下标) -> 格式化后的 metric name
+        private final Map<Long, String>   names     = new HashMap<>();
+        // report 级别的 common tags, 已格式化
+        private final Map<String, String> commonTags;
+
+        Decoder(byte[] bytes) {
+            this(bytes, Collections.<String, String> emptyMap());
+        }
+
+        Decoder(byte[] bytes, Map<String, String> commonTags) {
+            this.bytes = bytes;
+            this.commonTags = commonTags;
+        }
+
+        void decode(List<Metric> out) {
+            if (bytes.length < 3 || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+                throw new IllegalArgumentException("not a lookout binary report");
+            }
+            if (bytes[2] != VERSION) {
+                throw new IllegalArgumentException("unsupported version " + bytes[2]);
+            }
+            pos = 3;
+            List<Metric> record = new ArrayList<>();
+            Map<String, String> tags = new HashMap<>();
+            while (pos < bytes.length) {
+                record.clear();
+                tags.clear();
+                timestamp += readZigZag();
+                int name = readString();
+                boolean isInfo = false;
+                int tagCount = readCount();
+                for (int i = 0; i < tagCount; i++) {
+                    int key = readString();
+                    int value = readString();
+                    // 与文本格式一样, 忽略 _type_ 和 priority
+                    if ("_type_".equals(strings[key])) {
+                        isInfo = "i".equals(strings[value]);
+                        continue;
+                    }
+                    if ("priority".equals(strings[key])) {
+                        continue;
+                    }
+                    tags.put(tagKey(key), tagValue(value));
+                }
+                StandardCommonTags.expand(commonTags, tags);
+                int valueCount = readCount();
+                for (int i = 0; i < valueCount; i++) {
+                    int valueName = readString();
+                    byte type = bytes[pos++];
+                    Metric m;
+                    switch (type) {
+                        case TYPE_LONG:
+                            long l = readZigZag();
+                            m = newMetric(name, valueName, tags);
+                            if (isInfo) {
+                                m.setInfo(Long.toString(l));
+                            } else {
+                                m.setValue(l);
+                            }
+                            break;
+                        case TYPE_DOUBLE:
+                            double d = Double.longBitsToDouble(readFixed64());
+                            m = newMetric(name, valueName, tags);
+                            if (isInfo) {
+                                m.setInfo(Double.toString(d));
+                            } else {
+                                m.setValue(d);
+                            }
+                            break;
+                        case TYPE_STRING:
+                            String s = strings[readString()];
+                            if (!isInfo && QuantileSketchMetrics.SKETCH.equals(strings[valueName])) {
+                                QuantileSketchMetrics.expand(strings[name], s, timestamp, tags, record);
+                                continue;
+                            }
+                            // 非 info 的字符串值无法转成数值, 忽略
+                            if (!isInfo) {
+                                continue;
+                            }
+                            m = newMetric(name, valueName, tags);
+                            m.setInfo(s);
+                            break;
+                        case TYPE_NULL:
+                            continue;
+                        default:
+                            throw new IllegalArgumentException("unknown value type " + type);
+                    }
+                    record.add(m);
+                }
+                out.addAll(record);
+            }
+        }
+
+        private Metric newMetric(int name, int valueName, Map<String, String> tags) {
+            long key = ((long) name << 32) | valueName;
+            String metricName = names.get(key);
+            if (metricName == null) {
+                metricName = MetricUtils.formatMetricName(strings[name] + "." + strings[valueName]);
+                names.put(key, metricName);
+            }
+            Metric m = new Metric();
+            m.setName(metricName);
+            m.setTimestamp(timestamp);
+            m.getTags().putAll(tags);
+            return m;
+        }
+
+        private String tagKey(int index) {
+            String key = tagKeys[index];
+            if (key == null) {
+                key = MetricUtils.formatMetricTagKey(strings[index]);
+                tagKeys[index] = key;
+            }
+            return key;
+        }
+
+        private String tagValue(int index) {
+            String value = tagValues[index];
+            if (value == null) {
+                value = MetricUtils.formatTagValue(strings[index]);
+                tagValues[index] = value;
+            }
+            return value;
+        }
+
+        /**
+         * @return index of the string in the dictionary
+         */
+        private int readString() {
+            long ref = readVarLong();
+            if (ref != 0) {
+                if (ref > stringCount) {
+                    throw new IllegalArgumentException("illegal string reference " + ref);
+                }
+                return (int) ref - 1;
+            }
+            int len = readCount();
+            String s = new String(bytes, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            if (stringCount == strings.length) {
+                int capacity = stringCount * 2;
+                strings = Arrays.copyOf(strings, capacity);
+                tagKeys = Arrays.copyOf(tagKeys, capacity);
+                tagValues = Arrays.copyOf(tagValues, capacity);
+            }
+            strings[stringCount] = s;
+            return stringCount++;
+        }
+
+        /**
+         * a count or length, which can not be larger than the remaining bytes
+         */
+        private int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > bytes.length - pos) {
+                throw new IllegalArgumentException("illegal length " + count);
+            }
+            return (int) count;
+        }
+
+        private long readZigZag() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        private long readFixed64() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (bytes[pos++] & 0xFF);
+            }
+            return v;
+        }
+    }
+}
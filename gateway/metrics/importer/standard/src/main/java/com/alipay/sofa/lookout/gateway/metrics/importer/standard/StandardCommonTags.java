@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.lookout.gateway.metrics.importer.standard;
+
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.common.MetricUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 标准客户端以 Common-Tags header 发送的 common tags, 格式为 k1=v1&amp;k2=v2(URL 编码).
+ * <p>
+ * 每次上报只解析和格式化一次, 再展开到每个 metric; metric 自身已有的 tag 优先, 与客户端合并 common tags 的语义一致.
+ */
+final class StandardCommonTags {
+    private StandardCommonTags() {
+    }
+
+    /**
+     * @param header header 的值, 可以为 null
+     * @return 格式化后的 tags, 忽略 _type_ 和 priority
+     */
+    static Map<String, String> parse(String header) {
+        if (StringUtils.isEmpty(header)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> tags = new HashMap<>();
+        for (String pair : StringUtils.split(header, '&')) {
+            int i = pair.indexOf('=');
+            if (i <= 0) {
+                continue;
+            }
+            String key = decode(pair.substring(0, i));
+            if ("_type_".equals(key) || "priority".equals(key)) {
+                continue;
+            }
+            tags.put(MetricUtils.formatMetricTagKey(key),
+                MetricUtils.formatTagValue(decode(pair.substring(i + 1))));
+        }
+        return tags;
+    }
+
+    /**
+     * @param commonTags 见 {@link #parse(String)}
+     * @param tags       metric 的 tags
+     */
+    static void expand(Map<String, String> commonTags, Map<String, String> tags) {
+        for (Map.Entry<String, String> entry : commonTags.entrySet()) {
+            tags.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
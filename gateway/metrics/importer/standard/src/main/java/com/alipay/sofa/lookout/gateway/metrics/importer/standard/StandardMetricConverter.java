@@ -22,7 +22,10 @@ import com.alipay.sofa.lookout.gateway.core.common.TimeUtil;
 import com.alipay.sofa.lookout.gateway.metrics.pipeline.common.MetricUtils;
 import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.Metric;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
@@ -42,6 +45,15 @@ public final class StandardMetricConverter {
      * @return
      */
     public static Stream<Metric> parse(String inputSource) {
+        return parse(inputSource, Collections.emptyMap());
+    }
+
+    /**
+     * @param inputSource 一行标准格式
+     * @param commonTags  report 级别的 common tags, 见 {@link StandardCommonTags#parse(String)}
+     * @return metrics
+     */
+    public static Stream<Metric> parse(String inputSource, Map<String, String> commonTags) {
         // TODO 感觉标准格式得改一下, 怎么解析起来这么麻烦?
 
         JSONObject json = JSON.parseObject(inputSource);
@@ -64,6 +76,7 @@ public final class StandardMetricConverter {
                     }
                     tags.put(MetricUtils.formatMetricTagKey(k), MetricUtils.formatTagValue(v.toString()));
                 });
+        StandardCommonTags.expand(commonTags, tags);
 
         json.remove("time");
         json.remove("tags");
@@ -87,9 +100,17 @@ public final class StandardMetricConverter {
                     Map<String, Object> subMetrics = (Map<String, Object>) entryValue;
                     return subMetrics.entrySet()
                             .stream()
-                            .map(subEntry -> {
-                                String key = MetricUtils.formatMetricName(keyPrefix + "." + subEntry.getKey());
+                            .flatMap(subEntry -> {
                                 Object value = subEntry.getValue();
+                                // quantile sketch 展开为分位数
+                                if (!isInfo[0] && QuantileSketchMetrics.SKETCH.equals(subEntry.getKey())
+                                        && value instanceof String) {
+                                    List<Metric> sketchMetrics = new ArrayList<>();
+                                    QuantileSketchMetrics.expand(keyPrefix, (String) value, timestamp, tags,
+                                            sketchMetrics);
+                                    return sketchMetrics.stream();
+                                }
+                                String key = MetricUtils.formatMetricName(keyPrefix + "." + subEntry.getKey());
 
                                 Metric m = new Metric();
                                 m.setName(key);
@@ -101,7 +122,7 @@ public final class StandardMetricConverter {
                                 } else {
                                     m.setValue(((Number) value).doubleValue());
                                 }
-                                return m;
+                                return Stream.of(m);
                             });
                 });
     }
@@ -39,14 +39,26 @@ import static com.alipay.sofa.lookout.gateway.core.common.Constants.*;
  */
 public class StandardMetricImporter extends AbstractWebfluxImporter {
     public static final String  SNAPPY           = "snappy";
+    public static final String  SNAPPY_FRAMED    = "x-snappy-framed";
     public static final String  CONTENT_ENCODING = "Content-Encoding";
     public static final String  WAIT_MINUTES     = "Wait-Minutes";
-    private static final String ERR              = "Err";
+    /**
+     * 声明支持的上报格式, 客户端据此决定是否使用二进制格式
+     */
+    public static final String  ACCEPT_POST      = "Accept-Post";
+    static final String         ERR              = "Err";
+
+    static final String         ACCEPTED_TYPES   = "text/plain, "
+                                                   + StandardBinaryMetricReader.CONTENT_TYPE;
 
     public StandardMetricImporter() {
         super("standard");
     }
 
+    protected StandardMetricImporter(String name) {
+        super(name);
+    }
+
     @Override
     protected Mono<ServerResponse> doHandle(ServerRequest request, RawMetric rm) {
         RawMetricHead head = rm.getHead();
@@ -58,6 +70,7 @@ public class StandardMetricImporter extends AbstractWebfluxImporter {
         }
         head.setStandardAppName(appName);
         head.setStandardPriority(priority);
+        head.setStandardCommonTags(WebfluxUtils.getHeaderValue(request, COMMON_TAGS_HEADER_NAME));
 
         String uri = request.uri().getPath();
         // 非lookout sdk
@@ -81,17 +94,18 @@ public class StandardMetricImporter extends AbstractWebfluxImporter {
         // TODO 原先这里有 access control 黑名单的逻辑, 新版如果还需要的话可以做在filter里
 
         if (request.method() == HttpMethod.GET) {
-            return ServerResponse.ok().syncBody("OK");
+            return ServerResponse.ok().header(ACCEPT_POST, ACCEPTED_TYPES).syncBody("OK");
         }
 
         String contentEncoding = WebfluxUtils.getHeaderValue(request, CONTENT_ENCODING);
 
         head.setSnappy(SNAPPY.equals(contentEncoding));
+        head.setSnappyFramed(SNAPPY_FRAMED.equals(contentEncoding));
         rm.setSourceType(SourceType.STANDARD);
         rm.setPushMode(true);
 
         super.fire(rm);
 
-        return ServerResponse.ok().build();
+        return ServerResponse.ok().header(ACCEPT_POST, ACCEPTED_TYPES).build();
     }
 }
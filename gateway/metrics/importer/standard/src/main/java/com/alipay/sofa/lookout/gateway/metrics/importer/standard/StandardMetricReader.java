@@ -24,9 +24,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyFramedInputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -38,27 +42,58 @@ public class StandardMetricReader extends AbstractReader<RawMetric, Metric> {
 
     @Override
     public Stream<Metric> read(RawMetric rm) {
-        // TODO 可以将解压的逻辑做到父类/通用类, 可能其他reader也会有解压的逻辑
-        boolean snappy = rm.getHead().isSnappy();
-        byte[] bytes = rm.getRawBody();
-        if (snappy) {
-            try {
-                bytes = Snappy.uncompress(bytes);
-            } catch (IOException e) {
-                LOGGER.warn("snappy uncompress error {}", e.getMessage());
-                return Stream.empty();
-            }
+        byte[] bytes = uncompress(rm);
+        if (bytes == null) {
+            return Stream.empty();
         }
         String body = readUTF8(bytes);
+        // common tags 每次上报只解析一次
+        Map<String, String> commonTags = StandardCommonTags.parse(rm.getHead()
+            .getStandardCommonTags());
         return Arrays.stream(StringUtils.split(body, '\t'))
                 .flatMap(line -> {
                     // 一行的失败, 不要影响其他行, 所以这里要try/catch
                     try {
-                        return StandardMetricConverter.parse(line);
+                        return StandardMetricConverter.parse(line, commonTags);
                     } catch (Exception e) {
                         LogUtils.READER_LOGGER.warn("{}", line);
                         return Stream.empty();
                     }
                 });
     }
+
+    /**
+     * 按照 head 中的压缩方式解压 body
+     *
+     * @param rm
+     * @return 解压后的 body, 解压失败返回 null
+     */
+    static byte[] uncompress(RawMetric rm) {
+        // TODO 可以将解压的逻辑做到父类/通用类, 可能其他reader也会有解压的逻辑
+        byte[] bytes = rm.getRawBody();
+        try {
+            if (rm.getHead().isSnappy()) {
+                return Snappy.uncompress(bytes);
+            } else if (rm.getHead().isSnappyFramed()) {
+                return uncompressFramed(bytes);
+            }
+            return bytes;
+        } catch (IOException e) {
+            LOGGER.warn("snappy uncompress error {}", e.getMessage());
+            return null;
+        }
+    }
+
+    static byte[] uncompressFramed(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (SnappyFramedInputStream in = new SnappyFramedInputStream(new ByteArrayInputStream(
+            bytes))) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
 }
@@ -18,13 +18,17 @@ package com.alipay.sofa.lookout.gateway.metrics.importer.standard.spring.bean.co
 
 import com.alipay.sofa.lookout.gateway.core.common.MonitorComponent;
 import com.alipay.sofa.lookout.gateway.core.prototype.importer.ConditionalOnImporterComponent;
+import com.alipay.sofa.lookout.gateway.metrics.importer.standard.StandardBinaryMetricImporter;
+import com.alipay.sofa.lookout.gateway.metrics.importer.standard.StandardBinaryMetricReader;
 import com.alipay.sofa.lookout.gateway.metrics.importer.standard.StandardMetricImporter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.server.*;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 
 /**
  * @author: kevin.luy@antfin.com
@@ -41,9 +45,13 @@ public class StandardImporterConfiguration {
      */
     @Bean
     RouterFunction<ServerResponse> standardImporter_router() {
+        // 二进制格式优先匹配, 其余的仍然按文本格式处理
+        RequestPredicate binaryPredicate = POST("/datas").and(
+            contentType(MediaType.valueOf(StandardBinaryMetricReader.MEDIA_TYPE)));
+        HandlerFunction<ServerResponse> binaryHandler = standardBinaryMetricImporter()::handle;
         RequestPredicate predicate = GET("/datas").or(POST("/datas"));
         HandlerFunction<ServerResponse> handler = standardMetricImporter()::handle;
-        return RouterFunctions.route(predicate, handler);
+        return RouterFunctions.route(binaryPredicate, binaryHandler).andRoute(predicate, handler);
     }
 
     /**
@@ -64,4 +72,9 @@ public class StandardImporterConfiguration {
         return new StandardMetricImporter();
     }
 
+    @Bean
+    public StandardBinaryMetricImporter standardBinaryMetricImporter() {
+        return new StandardBinaryMetricImporter();
+    }
+
 }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.lookout.gateway.metrics.importer.standard;
+
+import com.alipay.lookout.common.sketch.LogLinearSketch;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.Metric;
+import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.RawMetric;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class StandardBinaryMetricReaderTest {
+
+    private static void varint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static void zigzag(ByteArrayOutputStream out, long v) {
+        varint(out, (v << 1) ^ (v >> 63));
+    }
+
+    private static void newString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        varint(out, 0);
+        varint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static ByteArrayOutputStream header() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('L');
+        out.write('K');
+        out.write(1);
+        return out;
+    }
+
+    private static List<Metric> read(byte[] body) {
+        RawMetric rm = new RawMetric();
+        rm.setRawBody(body);
+        return new StandardBinaryMetricReader().read(rm).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRead() {
+        ByteArrayOutputStream out = header();
+        // record 1: jvm.mem{app=demo,_type_=g} value=1.5
+        zigzag(out, 60000);
+        newString(out, "jvm.mem"); // 1
+        varint(out, 2);
+        newString(out, "app"); // 2
+        newString(out, "de mo"); // 3
+        newString(out, "_type_"); // 4
+        newString(out, "g"); // 5
+        varint(out, 1);
+        newString(out, "value"); // 6
+        out.write(1);
+        long bits = Double.doubleToLongBits(1.5);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+        // record 2: same name and tags, 1s later, count=-3
+        zigzag(out, 1000);
+        varint(out, 1);
+        varint(out, 2);
+        varint(out, 2);
+        varint(out, 3);
+        varint(out, 4);
+        varint(out, 5);
+        varint(out, 1);
+        newString(out, "count");
+        out.write(0);
+        zigzag(out, -3);
+
+        List<Metric> metrics = read(out.toByteArray());
+        Assert.assertEquals(2, metrics.size());
+        Metric m1 = metrics.get(0);
+        Assert.assertEquals("jvm.mem.value", m1.getName());
+        Assert.assertEquals(60000, m1.getTimestamp());
+        Assert.assertEquals(1.5, m1.getValue(), 0);
+        Assert.assertEquals(1, m1.getTags().size());
+        Assert.assertEquals("de_mo", m1.getTags().get("app"));
+        Metric m2 = metrics.get(1);
+        Assert.assertEquals("jvm.mem.count", m2.getName());
+        Assert.assertEquals(61000, m2.getTimestamp());
+        Assert.assertEquals(-3, m2.getValue(), 0);
+        Assert.assertNotSame(m1.getTags(), m2.getTags());
+    }
+
+    @Test
+    public void testReadInfo() {
+        ByteArrayOutputStream out = header();
+        zigzag(out, 1000);
+        newString(out, "jvm.info");
+        varint(out, 1);
+        newString(out, "_type_");
+        newString(out, "i");
+        varint(out, 2);
+        newString(out, "version");
+        out.write(2);
+        newString(out, "1.8");
+        newString(out, "pid");
+        out.write(0);
+        zigzag(out, 42);
+
+        List<Metric> metrics = read(out.toByteArray());
+        Assert.assertEquals(2, metrics.size());
+        Assert.assertEquals("1.8", metrics.get(0).getInfo());
+        Assert.assertEquals("42", metrics.get(1).getInfo());
+        Assert.assertTrue(metrics.get(0).getTags().isEmpty());
+    }
+
+    @Test
+    public void testTruncated() {
+        ByteArrayOutputStream out = header();
+        zigzag(out, 1000);
+        newString(out, "a");
+        varint(out, 0);
+        varint(out, 1);
+        newString(out, "count");
+        out.write(0);
+        zigzag(out, 1);
+        // incomplete record
+        zigzag(out, 1000);
+        varint(out, 1);
+        varint(out, 3);
+
+        List<Metric> metrics = read(out.toByteArray());
+        Assert.assertEquals(1, metrics.size());
+        Assert.assertEquals("a.count", metrics.get(0).getName());
+    }
+
+    @Test
+    public void testReadSketch() {
+        // 10 个 1ms 和 1 个 100ms, 以微秒记录, 上报单位为秒
+        LogLinearSketch sketch = new LogLinearSketch(6, 3600000000L, -6, new int[] { 190, 400 },
+            new long[] { 10, 1 });
+        ByteArrayOutputStream out = header();
+        zigzag(out, 1000);
+        newString(out, "rpc.rt");
+        varint(out, 0);
+        varint(out, 2);
+        newString(out, "totalTime");
+        out.write(0);
+        zigzag(out, 1);
+        newString(out, "sketch");
+        out.write(2);
+        newString(out, sketch.encode());
+
+        List<Metric> metrics = read(out.toByteArray());
+        Assert.assertEquals(6, metrics.size());
+        Assert.assertEquals("rpc.rt.totalTime", metrics.get(0).getName());
+        Assert.assertEquals("rpc.rt.p50", metrics.get(1).getName());
+        Assert.assertEquals(0.001, metrics.get(1).getValue(), 0.001 / 64);
+        Assert.assertEquals("rpc.rt.p999", metrics.get(4).getName());
+        Assert.assertEquals(0.1, metrics.get(4).getValue(), 0.1 / 64);
+        Assert.assertEquals("rpc.rt.sketch", metrics.get(5).getName());
+        Assert.assertEquals(sketch.encode(), metrics.get(5).getInfo());
+
+        // json 格式的结果相同
+        String json = "{\"time\":\"1000\",\"tags\":{},\"rpc.rt\":{\"sketch\":\""
+                      + sketch.encode() + "\"}}";
+        List<Metric> parsed = StandardMetricConverter.parse(json).collect(Collectors.toList());
+        Assert.assertEquals(5, parsed.size());
+        Assert.assertEquals("rpc.rt.p999", parsed.get(3).getName());
+        Assert.assertEquals(metrics.get(4).getValue(), parsed.get(3).getValue(), 0);
+    }
+
+    @Test
+    public void testCommonTags() {
+        ByteArrayOutputStream out = header();
+        zigzag(out, 1000);
+        newString(out, "jvm.mem");
+        varint(out, 1);
+        newString(out, "ip");
+        newString(out, "10.0.0.2");
+        varint(out, 1);
+        newString(out, "value");
+        out.write(0);
+        zigzag(out, 7);
+
+        RawMetric rm = new RawMetric();
+        rm.setRawBody(out.toByteArray());
+        rm.getHead().setStandardCommonTags("app=de+mo&ip=10.0.0.1&priority=HIGH");
+        List<Metric> metrics = new StandardBinaryMetricReader().read(rm).collect(
+            Collectors.toList());
+        Assert.assertEquals(1, metrics.size());
+        Assert.assertEquals(2, metrics.get(0).getTags().size());
+        Assert.assertEquals("de_mo", metrics.get(0).getTags().get("app"));
+        // metric 自身的 tag 优先
+        Assert.assertEquals("10.0.0.2", metrics.get(0).getTags().get("ip"));
+
+        // json 格式的结果相同
+        rm = new RawMetric();
+        String json = "{\"time\":\"1000\",\"tags\":{\"ip\":\"10.0.0.2\"},"
+                      + "\"jvm.mem\":{\"value\":7}}";
+        rm.setRawBody(json.getBytes(StandardCharsets.UTF_8));
+        rm.getHead().setStandardCommonTags("app=de+mo&ip=10.0.0.1&priority=HIGH");
+        List<Metric> parsed = new StandardMetricReader().read(rm).collect(Collectors.toList());
+        Assert.assertEquals(1, parsed.size());
+        Assert.assertEquals(metrics.get(0).getTags(), parsed.get(0).getTags());
+    }
+
+    @Test
+    public void testBadHeader() {
+        Assert.assertTrue(read("{\"time\":1}".getBytes(StandardCharsets.UTF_8)).isEmpty());
+    }
+}
@@ -26,6 +26,16 @@ public class RawMetricHead {
      */
     private boolean snappy;
 
+    /**
+     * body是否被framed snappy(分块)压缩, 与 snappy 互斥
+     */
+    private boolean snappyFramed;
+
+    /**
+     * body是否是standard的二进制格式, 否则是json文本格式
+     */
+    private boolean binary;
+
     /**
      * 上报的token, 非标准importer将会进行鉴权
      */
@@ -51,6 +61,11 @@ public class RawMetricHead {
      */
     private String  standardPriority;
 
+    /**
+     * 标准importer上报时的 common tags header, 由 reader 展开到每个 metric
+     */
+    private String  standardCommonTags;
+
     public boolean isSnappy() {
         return snappy;
     }
@@ -59,6 +74,22 @@ public class RawMetricHead {
         this.snappy = snappy;
     }
 
+    public boolean isSnappyFramed() {
+        return snappyFramed;
+    }
+
+    public void setSnappyFramed(boolean snappyFramed) {
+        this.snappyFramed = snappyFramed;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
     public String getToken() {
         return token;
     }
@@ -99,10 +130,20 @@ public class RawMetricHead {
         this.standardPriority = standardPriority;
     }
 
+    public String getStandardCommonTags() {
+        return standardCommonTags;
+    }
+
+    public void setStandardCommonTags(String standardCommonTags) {
+        this.standardCommonTags = standardCommonTags;
+    }
+
     @Override
     public String toString() {
-        return "RawMetricHead{" + "snappy=" + snappy + ", token='" + token + '\'' + ", clientIp='"
-               + clientIp + '\'' + ", debugId='" + debugId + '\'' + ", standardAppName='"
-               + standardAppName + '\'' + ", standardPriority='" + standardPriority + '\'' + '}';
+        return "RawMetricHead{" + "snappy=" + snappy + ", snappyFramed=" + snappyFramed
+               + ", binary=" + binary + ", token='" + token + '\'' + ", clientIp='" + clientIp
+               + '\'' + ", debugId='" + debugId + '\'' + ", standardAppName='" + standardAppName
+               + '\'' + ", standardPriority='" + standardPriority + '\''
+               + ", standardCommonTags='" + standardCommonTags + '\'' + '}';
     }
 }
@@ -20,6 +20,7 @@ import com.alipay.sofa.lookout.gateway.core.prototype.reader.Reader;
 import com.alipay.sofa.lookout.gateway.metrics.importer.metricbeat.MetricbeatMetricReader;
 import com.alipay.sofa.lookout.gateway.metrics.importer.opentsdb.OpentsdbMetricReader;
 import com.alipay.sofa.lookout.gateway.metrics.importer.prometheus.PrometheusMetricReader;
+import com.alipay.sofa.lookout.gateway.metrics.importer.standard.StandardBinaryMetricReader;
 import com.alipay.sofa.lookout.gateway.metrics.importer.standard.StandardMetricReader;
 import com.alipay.sofa.lookout.gateway.metrics.pipeline.common.MetricImporterUtils;
 import com.alipay.sofa.lookout.gateway.metrics.pipeline.model.Metric;
@@ -38,18 +39,19 @@ import java.util.stream.Stream;
  * @date 2018/11/15
  */
 public class DefaultReaderManager implements ReaderManager {
-    private static final Logger          LOGGER     = LoggerFactory
-                                                        .getLogger(DefaultReaderManager.class);
+    private static final Logger              LOGGER         = LoggerFactory
+                                                                .getLogger(DefaultReaderManager.class);
 
-    private final StandardMetricReader   standard   = new StandardMetricReader();
-    private final PrometheusMetricReader prometheus = new PrometheusMetricReader();
-    private final OpentsdbMetricReader   opentsdb   = new OpentsdbMetricReader();
-    private final MetricbeatMetricReader metricbeat = new MetricbeatMetricReader();
+    private final StandardMetricReader       standard       = new StandardMetricReader();
+    private final StandardBinaryMetricReader standardBinary = new StandardBinaryMetricReader();
+    private final PrometheusMetricReader     prometheus     = new PrometheusMetricReader();
+    private final OpentsdbMetricReader       opentsdb       = new OpentsdbMetricReader();
+    private final MetricbeatMetricReader     metricbeat     = new MetricbeatMetricReader();
 
-    private Reader<RawMetric, Metric> getReader(SourceType sourceType) {
-        switch (sourceType) {
+    private Reader<RawMetric, Metric> getReader(RawMetric rm) {
+        switch (rm.getSourceType()) {
             case STANDARD:
-                return standard;
+                return rm.getHead().isBinary() ? standardBinary : standard;
             case PROMETHEUS:
                 return prometheus;
             case OPENTSDB:
@@ -64,7 +66,7 @@ public class DefaultReaderManager implements ReaderManager {
     @Override
     public Stream<Metric> read(RawMetric rm) {
         SourceType sourceType = rm.getSourceType();
-        Reader<RawMetric, Metric> r = getReader(sourceType);
+        Reader<RawMetric, Metric> r = getReader(rm);
         if (r != null) {
             try {
                 Stream<Metric> stream = r.read(rm);